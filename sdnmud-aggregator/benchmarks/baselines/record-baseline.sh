@@ -0,0 +1,12 @@
+#!/bin/bash
+# Record a JMH baseline for the current commit as benchmarks/baselines/<commit>.json.
+# Run from sdnmud-aggregator. Extra arguments go to JMH (e.g. a suite name).
+set -e
+if [ -n "$(git status --porcelain -- impl benchmarks)" ]; then
+	echo "impl or benchmarks has uncommitted changes -- commit them first"
+	exit 1
+fi
+commit=$(git rev-parse --short HEAD)
+mvn -B -Pbenchmarks -DskipTests package
+java -jar benchmarks/target/benchmarks.jar -prof gc -rf json -rff benchmarks/baselines/$commit.json "$@"
+echo "Recorded benchmarks/baselines/$commit.json -- commit it with the change it measures"
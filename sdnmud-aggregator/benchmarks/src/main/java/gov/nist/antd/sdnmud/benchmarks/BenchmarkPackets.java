@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import gov.nist.antd.sdnmud.impl.dhcp.DhcpPacket;
+import gov.nist.antd.sdnmud.impl.dns.ARecord;
+import gov.nist.antd.sdnmud.impl.dns.DClass;
+import gov.nist.antd.sdnmud.impl.dns.Message;
+import gov.nist.antd.sdnmud.impl.dns.Name;
+import gov.nist.antd.sdnmud.impl.dns.Section;
+import gov.nist.antd.sdnmud.impl.dns.TextParseException;
+
+/**
+ * Canned packets for the benchmarks.
+ *
+ * @author mranga
+ *
+ */
+final class BenchmarkPackets {
+
+	static final byte[] SRC_MAC = { 0x00, 0x11, 0x22, 0x33, 0x44, 0x55 };
+
+	static final byte[] DST_MAC = { 0x00, 0x66, 0x77, (byte) 0x88, (byte) 0x99, (byte) 0xaa };
+
+	private BenchmarkPackets() {
+	}
+
+	private static void putEthernetIpv4Header(ByteBuffer buffer, int protocol, int ipPayloadLength) {
+		buffer.put(DST_MAC).put(SRC_MAC).putShort((short) 0x0800);
+		buffer.put((byte) 0x45).put((byte) 0).putShort((short) (20 + ipPayloadLength));
+		buffer.putShort((short) 1).putShort((short) 0x4000);
+		buffer.put((byte) 64).put((byte) protocol).putShort((short) 0);
+		// 10.0.0.1 -> 203.0.113.10
+		buffer.putInt(0x0a000001).putInt(0xcb00710a);
+	}
+
+	/**
+	 * @return an ethernet frame carrying a TCP SYN.
+	 */
+	static byte[] tcpSyn() {
+		ByteBuffer buffer = ByteBuffer.allocate(14 + 20 + 20);
+		putEthernetIpv4Header(buffer, 6, 20);
+		buffer.putShort((short) 49152).putShort((short) 443);
+		buffer.putInt(1).putInt(0);
+		buffer.put((byte) 0x50).put((byte) 0x02).putShort((short) 65535);
+		buffer.putShort((short) 0).putShort((short) 0);
+		return buffer.array();
+	}
+
+	/**
+	 * @return the wire form of a DNS response with one A record.
+	 */
+	static byte[] dnsResponse() {
+		try {
+			Message message = new Message();
+			Name name = Name.fromString("www.nist.gov.");
+			message.addRecord(new ARecord(name, DClass.IN, 300, InetAddress.getByName("129.6.13.49")),
+					Section.ANSWER);
+			return message.toWire();
+		} catch (TextParseException | UnknownHostException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * @return an ethernet frame carrying a DNS response.
+	 */
+	static byte[] dnsResponseFrame() {
+		byte[] dns = dnsResponse();
+		ByteBuffer buffer = ByteBuffer.allocate(14 + 20 + 8 + dns.length);
+		putEthernetIpv4Header(buffer, 17, 8 + dns.length);
+		buffer.putShort((short) 53).putShort((short) 53000).putShort((short) (8 + dns.length)).putShort((short) 0);
+		buffer.put(dns);
+		return buffer.array();
+	}
+
+	/**
+	 * @return an ethernet frame carrying a DHCP request.
+	 */
+	static byte[] dhcpRequest() {
+		try {
+			ByteBuffer buffer = DhcpPacket.buildRequestPacket(DhcpPacket.ENCAP_L2, 1234,
+					InetAddress.getByName("0.0.0.0"), true, SRC_MAC, InetAddress.getByName("10.0.0.20"),
+					InetAddress.getByName("10.0.0.1"), new byte[] { 1, 3, 6 }, "sensor");
+			byte[] frame = new byte[buffer.limit()];
+			buffer.rewind();
+			buffer.get(frame);
+			return frame;
+		} catch (UnknownHostException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
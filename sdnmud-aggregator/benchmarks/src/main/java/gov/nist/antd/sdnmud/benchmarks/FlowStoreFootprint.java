@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigInteger;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Ipv4Address;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
+
+import gov.nist.antd.sdnmud.impl.FlowStore;
+import gov.nist.antd.sdnmud.impl.FlowUtils;
+
+/**
+ * Heap held by the FlowStore for a set of flows that differ only in their
+ * addresses and ports, as the flows of resolved names and learned devices do.
+ * Each flow is built, interned and dropped, so only the store and its records
+ * stay reachable. Run it on two commits to compare the footprint:
+ *
+ * java -cp benchmarks/target/benchmarks.jar gov.nist.antd.sdnmud.benchmarks.FlowStoreFootprint 100000
+ *
+ * @author mranga
+ *
+ */
+public class FlowStoreFootprint {
+
+	private static final BigInteger METADATA = BigInteger.valueOf(0x123456789L);
+
+	private static final BigInteger METADATA_MASK = BigInteger.valueOf(0xfffffffffL);
+
+	private static final FlowCookie FLOW_COOKIE = new FlowCookie(BigInteger.valueOf(0x1234));
+
+	private static long usedHeap(MemoryMXBean memoryBean) throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return memoryBean.getHeapMemoryUsage().getUsed();
+	}
+
+	private static Flow createFlow(int i) {
+		Ipv4Address address = new Ipv4Address("10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff));
+		FlowId flowId = new FlowId("footprint/" + i);
+		return FlowUtils.createSrcIpAddressProtocolMatchGoToNext(address, 1024 + (i % 1000), (short) 6, (short) 2,
+				METADATA, METADATA_MASK, 120, flowId, FLOW_COOKIE).build();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int flowCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+		// Load the classes before the baseline is taken.
+		new FlowStore().intern(createFlow(0));
+
+		long before = usedHeap(memoryBean);
+		FlowStore flowStore = new FlowStore();
+		FlowStore.Record[] records = new FlowStore.Record[flowCount];
+		for (int i = 0; i < flowCount; i++) {
+			records[i] = flowStore.intern(createFlow(i));
+		}
+		long after = usedHeap(memoryBean);
+
+		System.out.println("flows             " + flowCount);
+		System.out.println("matches           " + flowStore.getMatchCount());
+		System.out.println("instructions      " + flowStore.getInstructionsCount());
+		System.out.println("attribute sets    " + flowStore.getAttributesCount());
+		System.out.println("heap held (bytes) " + (after - before));
+		System.out.println("bytes per flow    " + (after - before) / flowCount);
+		// Keep the records reachable until the measurement is done.
+		System.out.println("records           " + records.length);
+	}
+
+}
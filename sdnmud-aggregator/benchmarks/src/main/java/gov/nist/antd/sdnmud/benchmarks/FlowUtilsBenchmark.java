@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Ipv4Address;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.antd.sdnmud.impl.FlowStore;
+import gov.nist.antd.sdnmud.impl.FlowUtils;
+
+/**
+ * Flow construction, and the cost of keeping a flow in the shared FlowStore
+ * (interning it, and rebuilding it from its compact record).
+ *
+ * @author mranga
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlowUtilsBenchmark {
+
+	private static final BigInteger METADATA = BigInteger.valueOf(0x123456789L);
+
+	private static final BigInteger METADATA_MASK = BigInteger.valueOf(0xfffffffffL);
+
+	private static final FlowCookie FLOW_COOKIE = new FlowCookie(BigInteger.valueOf(0x1234));
+
+	private static final Ipv4Address SRC_IP = new Ipv4Address("10.0.0.1");
+
+	private final FlowId flowId = new FlowId("benchmark/flow");
+
+	private FlowStore flowStore;
+
+	private Flow flow;
+
+	private FlowStore.Record record;
+
+	@Setup
+	public void setup() {
+		flowStore = new FlowStore();
+		flow = metadataMatchGoToNextTableFlow().build();
+		// Held for the whole run so the benchmarks find the parts already interned.
+		record = flowStore.intern(flow);
+	}
+
+	private FlowBuilder metadataMatchGoToNextTableFlow() {
+		return FlowUtils.createMetadataMatchGoToNextTableFlow(METADATA, METADATA_MASK, (short) 2, (short) 3, 30,
+				flowId, FLOW_COOKIE, "benchmark");
+	}
+
+	@Benchmark
+	public FlowBuilder metadataMatchGoToNextTableFlowBuilder() {
+		return metadataMatchGoToNextTableFlow();
+	}
+
+	@Benchmark
+	public FlowBuilder srcIpAddressProtocolMatchGoToNext() {
+		return FlowUtils.createSrcIpAddressProtocolMatchGoToNext(SRC_IP, 443, (short) 6, (short) 2, METADATA,
+				METADATA_MASK, 120, flowId, FLOW_COOKIE);
+	}
+
+	/*
+	 * Building the immutable flow from the builder, which the callers do for every
+	 * flow they write.
+	 */
+	@Benchmark
+	public Object buildFlow() {
+		return metadataMatchGoToNextTableFlow().build();
+	}
+
+	/*
+	 * Recording a flow whose match, instructions and attributes are already in
+	 * the store, as happens when the same profile is written to another switch.
+	 */
+	@Benchmark
+	public FlowStore.Record internFlow() {
+		FlowStore.Record interned = flowStore.intern(flow);
+		flowStore.release(interned);
+		return interned;
+	}
+
+	@Benchmark
+	public Flow recordToFlow() {
+		return flowStore.toFlow(record);
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.antd.sdnmud.impl.IdUtils;
+
+/**
+ * Model id lookup (with the given number of MUD URLs already registered) and
+ * flow hashing.
+ *
+ * @author mranga
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdUtilsBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int registeredModels;
+
+	private String lastModel;
+
+	@Setup
+	public void setup() {
+		for (int i = 0; i < registeredModels; i++) {
+			lastModel = "https://www.nist.gov/models/device-" + i + ".json";
+			IdUtils.getModelId(lastModel);
+		}
+	}
+
+	/*
+	 * Worst case -- the model registered last.
+	 */
+	@Benchmark
+	public int getModelId() {
+		return IdUtils.getModelId(lastModel);
+	}
+
+	@Benchmark
+	public int getFlowHash() {
+		return IdUtils.getFlowHash("www.nist.gov", "from-device-model");
+	}
+
+}
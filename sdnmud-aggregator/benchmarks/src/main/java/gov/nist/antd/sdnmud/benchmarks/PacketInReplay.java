@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.controller.md.sal.binding.api.NotificationPublishService;
+import org.opendaylight.controller.md.sal.binding.api.NotificationService;
+import org.opendaylight.controller.md.sal.binding.api.WriteTransaction;
+import org.opendaylight.controller.md.sal.binding.test.DataBrokerTestModule;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.controller.md.sal.dom.api.DOMDataBroker;
+import org.opendaylight.controller.sal.binding.api.RpcProviderRegistry;
+import org.opendaylight.controller.sal.core.api.model.SchemaService;
+import org.opendaylight.mdsal.binding.dom.codec.api.BindingNormalizedNodeSerializer;
+import org.opendaylight.mdsal.dom.api.DOMSchemaService;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Uri;
+import org.opendaylight.yang.gen.v1.urn.nist.params.xml.ns.yang.nist.mud.controllerclass.mapping.rev170915.ControllerclassMapping;
+import org.opendaylight.yang.gen.v1.urn.nist.params.xml.ns.yang.nist.mud.controllerclass.mapping.rev170915.ControllerclassMappingBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.direct.statistics.rev160511.OpendaylightDirectStatisticsService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNode;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNodeBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.statistics.rev130819.OpendaylightFlowStatisticsService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.NodeConnectorId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.NodeConnectorRef;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.NodeId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.Nodes;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.node.NodeConnector;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.node.NodeConnectorKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.nodes.Node;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.nodes.NodeKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.service.rev130918.SalMeterService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketProcessingService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceived;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceivedBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.packet.received.MatchBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.openflowplugin.extension.onf.bundle.service.rev170124.SalBundleService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfigBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.table.types.rev131026.TableId;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import gov.nist.antd.sdnmud.impl.PacketInStats;
+import gov.nist.antd.sdnmud.impl.SdnmudProvider;
+
+/**
+ * Offline replay of captured traffic through the packet-in path. A private
+ * SdnmudProvider is built on an in memory DataBroker; flows for the switch go
+ * to a RecordingSalFlowService and the other openflowplugin and MD-SAL services
+ * are stubs that succeed right away. Nothing is shared with a running
+ * controller.
+ *
+ * A controller class mapping and a flow capable node are written for the
+ * switch so that it comes up the way a real switch does. Every frame of the
+ * capture is then delivered as a packet-in notification, so it goes through
+ * the per switch queues of the packet-in pipeline and its classify and install
+ * stages. Latencies are taken from the packet-in stats of the dispatcher.
+ *
+ * Usage (from sdnmud-aggregator, after building with -Pbenchmarks):
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar gov.nist.antd.sdnmud.benchmarks.PacketInReplay \
+ *      capture.pcap [switch-id [table-id [flow-cookie [in-port]]]]
+ * </pre>
+ *
+ * @author mranga
+ *
+ */
+public final class PacketInReplay {
+
+	private static final long STARTUP_TIMEOUT_MILLIS = 30000;
+
+	private static final long DRAIN_TIMEOUT_MILLIS = 60000;
+
+	private PacketInReplay() {
+	}
+
+	/*
+	 * Stands in for a service that the replay does not exercise. RPCs succeed
+	 * with an empty result and registrations are stubs themselves.
+	 */
+	private static final class StubHandler implements InvocationHandler {
+		private final Class<?> type;
+
+		StubHandler(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getDeclaringClass() == Object.class) {
+				if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				} else if (method.getName().equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				return "stub " + type.getSimpleName();
+			}
+			Class<?> returnType = method.getReturnType();
+			if (returnType == void.class) {
+				return null;
+			} else if (returnType == boolean.class) {
+				return false;
+			} else if (returnType == long.class) {
+				return 0L;
+			} else if (returnType == int.class) {
+				return 0;
+			} else if (returnType == short.class) {
+				return (short) 0;
+			} else if (returnType == byte.class) {
+				return (byte) 0;
+			} else if (returnType.isAssignableFrom(ListenableFuture.class)) {
+				return Futures.immediateFuture(RpcResultBuilder.success().build());
+			} else if (returnType.isInterface()) {
+				return stub(returnType);
+			}
+			return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> type) {
+		return (T) Proxy.newProxyInstance(PacketInReplay.class.getClassLoader(), new Class<?>[] { type },
+				new StubHandler(type));
+	}
+
+	/*
+	 * The defaults of initial/sdnmud-config.xml.
+	 */
+	private static SdnmudConfig createConfig() {
+		SdnmudConfigBuilder scb = new SdnmudConfigBuilder();
+		scb.setCaCerts("lib/security/cacerts");
+		scb.setKeyPass("changeit");
+		scb.setTrustSelfSignedCert(true);
+		scb.setMfgIdRuleCacheTimeout(30L);
+		scb.setTableStart(0L);
+		scb.setDropRuleTable(4L);
+		scb.setRelaxedAcl(true);
+		scb.setPacketInWorkerThreads(4L);
+		scb.setPacketInQueueDepth(1024L);
+		scb.setSendToControllerMeterRate(1000L);
+		scb.setDnsMeterRate(1000L);
+		scb.setDhcpMeterRate(200L);
+		scb.setDropMeterRate(200L);
+		scb.setFlowBatchSize(64L);
+		scb.setFlowBatchDeadlineMillis(50L);
+		scb.setFlowWriteWindow(32L);
+		scb.setBundleInstall(false);
+		scb.setReconnectGraceSeconds(60L);
+		scb.setFlowRetryQueueSize(4096L);
+		scb.setFlowRetryMaxAttempts(6);
+		scb.setMudInstallThreads(0L);
+		scb.setDemandInstall(false);
+		scb.setDemandInstallIdleSeconds(600L);
+		return scb.build();
+	}
+
+	private static PacketReceived createPacketReceived(byte[] frame, NodeKey nodeKey, NodeConnectorId inPort,
+			short tableId, BigInteger cookie) {
+		InstanceIdentifier<NodeConnector> ingress = InstanceIdentifier.builder(Nodes.class).child(Node.class, nodeKey)
+				.child(NodeConnector.class, new NodeConnectorKey(inPort)).build();
+		PacketReceivedBuilder prb = new PacketReceivedBuilder();
+		prb.setPayload(frame);
+		prb.setIngress(new NodeConnectorRef(ingress));
+		prb.setTableId(new TableId(tableId));
+		prb.setFlowCookie(new FlowCookie(cookie));
+		prb.setMatch(new MatchBuilder().setInPort(inPort).build());
+		return prb.build();
+	}
+
+	/*
+	 * Bring the switch up as the controller sees a real one: its controller
+	 * class mapping is configured and its flow capable node appears.
+	 */
+	private static void connectSwitch(DataBroker dataBroker, SdnmudProvider sdnmudProvider, String switchId,
+			InstanceIdentifier<FlowCapableNode> nodePath) throws Exception {
+		ControllerclassMapping controllerclassMapping = new ControllerclassMappingBuilder()
+				.setSwitchId(new Uri(switchId)).build();
+		WriteTransaction tx = dataBroker.newWriteOnlyTransaction();
+		tx.put(LogicalDatastoreType.CONFIGURATION, InstanceIdentifier.create(ControllerclassMapping.class),
+				controllerclassMapping, true);
+		tx.put(LogicalDatastoreType.OPERATIONAL, nodePath, new FlowCapableNodeBuilder().build(), true);
+		tx.submit().checkedGet();
+
+		long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+		while (!sdnmudProvider.isCpeNode(switchId) || sdnmudProvider.getNode(switchId) == null) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("Switch " + switchId + " did not come up");
+			}
+			Thread.sleep(10);
+		}
+		sdnmudProvider.getFlowCommitWrapper().flushAndWait(nodePath);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: PacketInReplay capture.pcap [switch-id [table-id [flow-cookie [in-port]]]]");
+			System.exit(1);
+		}
+		String pcapFile = args[0];
+		String switchId = args.length > 1 ? args[1] : "openflow:1";
+		short tableId = args.length > 2 ? Short.parseShort(args[2]) : 0;
+		BigInteger cookie = args.length > 3 ? new BigInteger(args[3]) : BigInteger.ZERO;
+		NodeConnectorId inPort = new NodeConnectorId(args.length > 4 ? args[4] : switchId + ":1");
+
+		DataBroker dataBroker = new DataBrokerTestModule(false).getDataBroker();
+		RecordingSalFlowService recordingFlowService = new RecordingSalFlowService();
+		SdnmudProvider sdnmudProvider = new SdnmudProvider(dataBroker, createConfig(), recordingFlowService,
+				stub(OpendaylightFlowStatisticsService.class), stub(OpendaylightDirectStatisticsService.class),
+				stub(PacketProcessingService.class), stub(NotificationService.class), stub(DOMDataBroker.class),
+				stub(SchemaService.class), stub(DOMSchemaService.class), stub(NotificationPublishService.class),
+				stub(BindingNormalizedNodeSerializer.class), stub(RpcProviderRegistry.class),
+				stub(SalMeterService.class), stub(SalBundleService.class));
+		sdnmudProvider.init();
+
+		NodeKey nodeKey = new NodeKey(new NodeId(switchId));
+		InstanceIdentifier<FlowCapableNode> nodePath = InstanceIdentifier.builder(Nodes.class)
+				.child(Node.class, nodeKey).augmentation(FlowCapableNode.class).build();
+		try (PcapReader pcapReader = new PcapReader(pcapFile)) {
+			connectSwitch(dataBroker, sdnmudProvider, switchId, nodePath);
+			// Only the flows caused by the capture are counted.
+			long startAdds = recordingFlowService.getAddCount();
+			long startRemoves = recordingFlowService.getRemoveCount();
+			sdnmudProvider.getPacketInDispatcher().getPacketInStats().clear();
+
+			long packetCount = 0;
+			long startTime = System.nanoTime();
+			byte[] frame;
+			while ((frame = pcapReader.next()) != null) {
+				sdnmudProvider.getPacketInDispatcher()
+						.onPacketReceived(createPacketReceived(frame, nodeKey, inPort, tableId, cookie));
+				packetCount++;
+			}
+			if (!sdnmudProvider.getPacketInPipeline().awaitIdle(switchId, DRAIN_TIMEOUT_MILLIS)) {
+				System.err.println("Packet-in queues did not drain for " + switchId);
+			}
+			sdnmudProvider.getFlowCommitWrapper().flushAndWait(nodePath);
+			long elapsedNanos = System.nanoTime() - startTime;
+
+			System.out.println("packets            " + packetCount);
+			System.out.println("elapsed ms         " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+			System.out.println(
+					"packets/s          " + (elapsedNanos == 0 ? 0 : packetCount * 1000000000L / elapsedNanos));
+			System.out.println("flows written      " + (recordingFlowService.getAddCount() - startAdds));
+			System.out.println("flows removed      " + (recordingFlowService.getRemoveCount() - startRemoves));
+			Collection<Flow> datastoreFlows = sdnmudProvider.getFlowCommitWrapper().getFlows(nodePath);
+			System.out.println("datastore flows    " + (datastoreFlows == null ? 0 : datastoreFlows.size()));
+			for (PacketInStats.Recorder recorder : sdnmudProvider.getPacketInDispatcher().getPacketInStats()
+					.getRecorders()) {
+				if (recorder.getPacketInCount() == 0 && recorder.getFlowCommitCount() == 0) {
+					continue;
+				}
+				System.out.println("table " + recorder.getTableId() + " cookie 0x" + recorder.getCookie().toString(16)
+						+ ": packet-ins " + recorder.getPacketInCount() + " decision us p50/p99/max "
+						+ recorder.getDecisionLatency(50) + "/" + recorder.getDecisionLatency(99) + "/"
+						+ recorder.getMaxDecisionLatency() + " flows " + recorder.getFlowCommitCount()
+						+ " commit us p50/p99/max " + recorder.getCommitLatency(50) + "/"
+						+ recorder.getCommitLatency(99) + "/" + recorder.getMaxCommitLatency());
+			}
+		} finally {
+			sdnmudProvider.close();
+		}
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import gov.nist.antd.sdnmud.impl.PacketHeader;
+import gov.nist.antd.sdnmud.impl.PacketUtils;
+
+/**
+ * Header extraction from a packet-in payload: the PacketUtils helpers against
+ * the PacketHeader flyweight the dispatcher uses.
+ *
+ * @author mranga
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketParsingBenchmark {
+
+	private final byte[] tcpSyn = BenchmarkPackets.tcpSyn();
+
+	private final PacketHeader packetHeader = new PacketHeader();
+
+	@Benchmark
+	public void packetUtilsExtract(Blackhole blackhole) {
+		blackhole.consume(PacketUtils.extractSrcMacAddress(tcpSyn));
+		blackhole.consume(PacketUtils.extractDstMacAddress(tcpSyn));
+		blackhole.consume(PacketUtils.extractSrcIpStr(tcpSyn));
+		blackhole.consume(PacketUtils.extractDstIpStr(tcpSyn));
+		blackhole.consume(PacketUtils.extractIpProtocol(tcpSyn));
+		blackhole.consume(PacketUtils.getSourcePort(tcpSyn));
+		blackhole.consume(PacketUtils.isSYNFlagOnAndACKFlagOff(tcpSyn));
+	}
+
+	@Benchmark
+	public void packetHeaderExtract(Blackhole blackhole) {
+		PacketHeader header = packetHeader.wrap(tcpSyn);
+		blackhole.consume(header.getSrcMac());
+		blackhole.consume(header.getDstMac());
+		blackhole.consume(header.getSrcIp());
+		blackhole.consume(header.getDstIp());
+		blackhole.consume(header.getProtocol());
+		blackhole.consume(header.getSrcPort());
+		blackhole.consume(header.isTcpSynFlagOnAndAckFlagOff());
+	}
+
+	/*
+	 * What the dispatcher pays when it needs the string forms.
+	 */
+	@Benchmark
+	public void packetHeaderToStrings(Blackhole blackhole) {
+		PacketHeader header = packetHeader.wrap(tcpSyn);
+		blackhole.consume(PacketHeader.toMacAddress(header.getSrcMac()));
+		blackhole.consume(PacketHeader.toIpString(header.getSrcIp()));
+	}
+
+}
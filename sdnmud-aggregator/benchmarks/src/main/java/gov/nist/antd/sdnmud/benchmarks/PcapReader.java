@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Minimal reader for classic libpcap capture files of ethernet frames (as
+ * written by tcpdump and wireshark). Both byte orders and both microsecond and
+ * nanosecond timestamp resolution are supported. pcapng is not.
+ *
+ * @author mranga
+ *
+ */
+public class PcapReader implements Closeable {
+
+	private static final int MAGIC_MICROS = 0xa1b2c3d4;
+
+	private static final int MAGIC_NANOS = 0xa1b23c4d;
+
+	private static final int LINKTYPE_ETHERNET = 1;
+
+	// Guards against a corrupt record length.
+	private static final int MAX_SNAPLEN = 256 * 1024;
+
+	private final DataInputStream in;
+
+	private final boolean swapped;
+
+	private final boolean nanos;
+
+	private long timestampNanos;
+
+	public PcapReader(String fileName) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			int magic = in.readInt();
+			if (magic == MAGIC_MICROS || magic == MAGIC_NANOS) {
+				swapped = false;
+			} else if (Integer.reverseBytes(magic) == MAGIC_MICROS || Integer.reverseBytes(magic) == MAGIC_NANOS) {
+				swapped = true;
+				magic = Integer.reverseBytes(magic);
+			} else {
+				throw new IOException("Not a pcap file " + fileName);
+			}
+			nanos = magic == MAGIC_NANOS;
+			// version major, version minor, thiszone, sigfigs, snaplen.
+			in.skipBytes(16);
+			int linkType = readInt();
+			if (linkType != LINKTYPE_ETHERNET) {
+				throw new IOException("Unsupported pcap link type " + linkType);
+			}
+		} catch (IOException ex) {
+			in.close();
+			throw ex;
+		}
+	}
+
+	private int readInt() throws IOException {
+		int value = in.readInt();
+		return swapped ? Integer.reverseBytes(value) : value;
+	}
+
+	/**
+	 * @return the next captured frame or null at the end of the file.
+	 */
+	public byte[] next() throws IOException {
+		int seconds;
+		try {
+			seconds = readInt();
+		} catch (EOFException ex) {
+			return null;
+		}
+		int fraction = readInt();
+		int capturedLength = readInt();
+		// Original length on the wire -- not needed.
+		readInt();
+		if (capturedLength < 0 || capturedLength > MAX_SNAPLEN) {
+			throw new IOException("Bad pcap record length " + capturedLength);
+		}
+		timestampNanos = (seconds & 0xffffffffL) * 1000000000L
+				+ (nanos ? (fraction & 0xffffffffL) : (fraction & 0xffffffffL) * 1000L);
+		byte[] frame = new byte[capturedLength];
+		in.readFully(frame);
+		return frame;
+	}
+
+	/**
+	 * @return the capture time of the frame last returned by next.
+	 */
+	public long getTimestampNanos() {
+		return timestampNanos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gov.nist.antd.sdnmud.impl.dhcp.DhcpPacket;
+import gov.nist.antd.sdnmud.impl.dns.Message;
+
+/**
+ * Decoding of the DHCP requests and DNS responses that are sent to the
+ * controller.
+ *
+ * @author mranga
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolDecodeBenchmark {
+
+	private final byte[] dhcpRequest = BenchmarkPackets.dhcpRequest();
+
+	private final byte[] dnsResponse = BenchmarkPackets.dnsResponse();
+
+	@Benchmark
+	public DhcpPacket dhcpDecodeFullPacket() {
+		return DhcpPacket.decodeFullPacket(dhcpRequest, DhcpPacket.ENCAP_L2);
+	}
+
+	@Benchmark
+	public Message dnsMessageParse() throws IOException {
+		return new Message(dnsResponse);
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.benchmarks;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.AddFlowInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.AddFlowOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.AddFlowOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.RemoveFlowInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.RemoveFlowOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.RemoveFlowOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.SalFlowService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.UpdateFlowInput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.UpdateFlowOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.UpdateFlowOutputBuilder;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.opendaylight.yangtools.yang.common.RpcResultBuilder;
+
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * In memory stand-in for the openflowplugin flow service. Every request succeeds
+ * right away and is only counted. Used by the packet-in replay so the controller
+ * logic can be driven without switches.
+ *
+ * @author mranga
+ *
+ */
+public class RecordingSalFlowService implements SalFlowService {
+
+	private final LongAdder addCount = new LongAdder();
+
+	private final LongAdder removeCount = new LongAdder();
+
+	private final LongAdder updateCount = new LongAdder();
+
+	@Override
+	public Future<RpcResult<AddFlowOutput>> addFlow(AddFlowInput input) {
+		addCount.increment();
+		return Futures.immediateFuture(RpcResultBuilder.success(new AddFlowOutputBuilder().build()).build());
+	}
+
+	@Override
+	public Future<RpcResult<RemoveFlowOutput>> removeFlow(RemoveFlowInput input) {
+		removeCount.increment();
+		return Futures.immediateFuture(RpcResultBuilder.success(new RemoveFlowOutputBuilder().build()).build());
+	}
+
+	@Override
+	public Future<RpcResult<UpdateFlowOutput>> updateFlow(UpdateFlowInput input) {
+		updateCount.increment();
+		return Futures.immediateFuture(RpcResultBuilder.success(new UpdateFlowOutputBuilder().build()).build());
+	}
+
+	public long getAddCount() {
+		return addCount.sum();
+	}
+
+	public long getRemoveCount() {
+		return removeCount.sum();
+	}
+
+	public long getUpdateCount() {
+		return updateCount.sum();
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Ipv4Address;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiled IPv4 classification for one switch. The local networks, the hosts
+ * excluded from the local networks and the controller class addresses are
+ * compiled into a binary trie over the 32 bit address. A lookup walks at most 32
+ * nodes and returns the class of the longest matching prefix. Excluded hosts
+ * and controller addresses are /32 entries so they always win over the local
+ * network prefix that contains them.
+ *
+ * Instances are immutable. A new classifier is built whenever the controller
+ * class mapping of the switch changes.
+ *
+ * @author mranga
+ *
+ */
+public final class AddressClassifier {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AddressClassifier.class);
+
+	static final byte UNKNOWN = 0;
+
+	static final byte LOCAL = 1;
+
+	static final byte EXCLUDED = 2;
+
+	static final byte CONTROLLER = 3;
+
+	private static final int NO_CHILD = 0;
+
+	// children[2 * n] and children[2 * n + 1] are the 0 and 1 children of node n.
+	// Node 0 is the root so 0 doubles as "no child".
+	private int[] children;
+
+	private byte[] classes;
+
+	private int nodeCount;
+
+	private AddressClassifier() {
+		this.children = new int[64];
+		this.classes = new byte[32];
+		this.nodeCount = 1;
+	}
+
+	/**
+	 * Compile the classifier for a switch.
+	 *
+	 * @param localNetworks       -- local network prefixes (a.b.c.d/len).
+	 * @param excludedHosts       -- hosts excluded from the local networks.
+	 * @param controllerAddresses -- controller class name to addresses.
+	 */
+	public static AddressClassifier build(Collection<String> localNetworks, Collection<String> excludedHosts,
+			Map<String, List<Ipv4Address>> controllerAddresses) {
+		AddressClassifier classifier = new AddressClassifier();
+		if (localNetworks != null) {
+			for (String localNetwork : localNetworks) {
+				String[] pieces = localNetwork.trim().split("/");
+				int address = parseAddress(pieces[0]);
+				int prefixLength = 32;
+				try {
+					if (pieces.length > 1) {
+						prefixLength = Integer.parseInt(pieces[1]);
+					}
+				} catch (NumberFormatException ex) {
+					prefixLength = -1;
+				}
+				if (address == -1 && !pieces[0].equals("255.255.255.255") || prefixLength < 0 || prefixLength > 32) {
+					LOG.error("AddressClassifier: ignoring invalid local network " + localNetwork);
+					continue;
+				}
+				classifier.insert(address, prefixLength, LOCAL);
+			}
+		}
+		// Exclusions and controllers are inserted last so they override a local
+		// network entry for the same /32.
+		if (excludedHosts != null) {
+			for (String host : excludedHosts) {
+				classifier.insertHost(host, EXCLUDED);
+			}
+		}
+		if (controllerAddresses != null) {
+			for (List<Ipv4Address> addresses : controllerAddresses.values()) {
+				if (addresses != null) {
+					for (Ipv4Address address : addresses) {
+						classifier.insertHost(address.getValue(), CONTROLLER);
+					}
+				}
+			}
+		}
+		return classifier;
+	}
+
+	/*
+	 * Parse a dotted quad. Returns -1 (which is also 255.255.255.255) on error.
+	 */
+	static int parseAddress(String address) {
+		int value = 0;
+		int octet = 0;
+		int digits = 0;
+		int octets = 0;
+		for (int i = 0; i < address.length(); i++) {
+			char c = address.charAt(i);
+			if (c >= '0' && c <= '9' && digits < 3) {
+				octet = octet * 10 + (c - '0');
+				digits++;
+			} else if (c == '.' && digits > 0 && octets < 3) {
+				if (octet > 255) {
+					return -1;
+				}
+				value = (value << 8) | octet;
+				octet = 0;
+				digits = 0;
+				octets++;
+			} else {
+				return -1;
+			}
+		}
+		if (digits == 0 || octets != 3 || octet > 255) {
+			return -1;
+		}
+		return (value << 8) | octet;
+	}
+
+	private void insertHost(String host, byte addressClass) {
+		int address = parseAddress(host.trim());
+		if (address == -1 && !host.trim().equals("255.255.255.255")) {
+			LOG.error("AddressClassifier: ignoring invalid address " + host);
+			return;
+		}
+		insert(address, 32, addressClass);
+	}
+
+	private void insert(int address, int prefixLength, byte addressClass) {
+		int node = 0;
+		for (int depth = 0; depth < prefixLength; depth++) {
+			int bit = (address >>> (31 - depth)) & 1;
+			int child = children[2 * node + bit];
+			if (child == NO_CHILD) {
+				child = newNode();
+				children[2 * node + bit] = child;
+			}
+			node = child;
+		}
+		classes[node] = addressClass;
+	}
+
+	private int newNode() {
+		if (nodeCount == classes.length) {
+			classes = Arrays.copyOf(classes, nodeCount * 2);
+			children = Arrays.copyOf(children, nodeCount * 4);
+		}
+		return nodeCount++;
+	}
+
+	/**
+	 * @param address -- IPv4 address in network order.
+	 * @return the class of the longest matching prefix or UNKNOWN.
+	 */
+	public byte classify(int address) {
+		byte result = classes[0];
+		int node = 0;
+		for (int depth = 0; depth < 32; depth++) {
+			node = children[2 * node + ((address >>> (31 - depth)) & 1)];
+			if (node == NO_CHILD) {
+				break;
+			}
+			if (classes[node] != UNKNOWN) {
+				result = classes[node];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the address is in a local network and is neither an
+	 *         excluded host nor a controller class address.
+	 */
+	public boolean isLocalAddress(int address) {
+		return classify(address) == LOCAL;
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNode;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.NodeRef;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.openflowplugin.extension.onf.rev170124.BundleControlType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.openflowplugin.extension.onf.rev170124.BundleFlags;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.openflowplugin.extension.onf.rev170124.BundleId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.openflowplugin.extension.onf.rev170124.bundle.inner.message.grouping.bundle.inner.message.BundleAddFlowCaseBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.openflowplugin.extension.onf.rev170124.bundle.inner.message.grouping.bundle.inner.message.BundleRemoveFlowCaseBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.openflowplugin.extension.onf.rev170124.bundle.inner.message.grouping.bundle.inner.message.bundle.add.flow._case.AddFlowCaseDataBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.openflowplugin.extension.onf.rev170124.bundle.inner.message.grouping.bundle.inner.message.bundle.remove.flow._case.RemoveFlowCaseDataBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.openflowplugin.extension.onf.bundle.service.rev170124.AddBundleMessagesInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.openflowplugin.extension.onf.bundle.service.rev170124.ControlBundleInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.openflowplugin.extension.onf.bundle.service.rev170124.SalBundleService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.openflowplugin.extension.onf.bundle.service.rev170124.add.bundle.messages.input.MessagesBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.openflowplugin.extension.onf.bundle.service.rev170124.add.bundle.messages.input.messages.Message;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.openflowplugin.extension.onf.bundle.service.rev170124.add.bundle.messages.input.messages.MessageBuilder;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Installs the flows of a MUD profile on a switch as one OpenFlow bundle.
+ *
+ * The bundle removes the flows of the profile that are no longer wanted (and
+ * the old versions of changed flows) and adds the new and changed flows, as
+ * worked out by {@link MudProfileReconciler}. It is atomic and
+ * ordered so the switch goes from the old policy to the new one in one step
+ * and packet processing does not have to be stopped while the profile is
+ * replaced. The flows are then recorded with the other flows of the switch
+ * (see {@link FlowCommitWrapper#recordBundledFlows}) but not written to the
+ * configuration datastore, which would have FRM send them again.
+ *
+ * Switches that do not support bundles fail the open request; the caller then
+ * writes the changes to the datastore instead.
+ *
+ * @author mranga
+ *
+ */
+public class BundleFlowInstaller {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BundleFlowInstaller.class);
+
+	private static final long BUNDLE_TIMEOUT_SECONDS = 30;
+
+	private static final BundleFlags BUNDLE_FLAGS = new BundleFlags(true, true);
+
+	private final SdnmudProvider sdnmudProvider;
+
+	private final SalBundleService bundleService;
+
+	private final AtomicLong bundleIds = new AtomicLong();
+
+	private final AtomicLong committedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	public BundleFlowInstaller(SdnmudProvider sdnmudProvider, SalBundleService bundleService) {
+		this.sdnmudProvider = sdnmudProvider;
+		this.bundleService = bundleService;
+	}
+
+	/**
+	 * Apply the changes to the flows of a MUD profile on a switch.
+	 *
+	 * @param node -- the switch.
+	 * @param diff -- the changes (flows with their meters attached).
+	 * @return true if the bundle committed. The switch is unchanged otherwise.
+	 */
+	public boolean installProfile(InstanceIdentifier<FlowCapableNode> node, MudProfileReconciler.Diff diff) {
+		if (bundleService == null) {
+			return false;
+		}
+		List<Flow> staleFlows = diff.getRemovals();
+		List<Flow> newFlows = diff.getWrites();
+
+		NodeRef nodeRef = new NodeRef(FlowWriter.getNodePath(node));
+		List<Message> messages = new ArrayList<Message>();
+		for (Flow flow : staleFlows) {
+			messages.add(new MessageBuilder().setNode(nodeRef)
+					.setBundleInnerMessage(new BundleRemoveFlowCaseBuilder()
+							.setRemoveFlowCaseData(new RemoveFlowCaseDataBuilder(flow).setStrict(true).build())
+							.build())
+					.build());
+		}
+		for (Flow flow : newFlows) {
+			messages.add(new MessageBuilder().setNode(nodeRef)
+					.setBundleInnerMessage(new BundleAddFlowCaseBuilder()
+							.setAddFlowCaseData(new AddFlowCaseDataBuilder(flow).build()).build())
+					.build());
+		}
+
+		BundleId bundleId = new BundleId(bundleIds.incrementAndGet() & 0xffffffffL);
+		LOG.info("installProfile : " + IdUtils.getNodeUri(node) + " bundle " + bundleId.getValue() + " remove "
+				+ staleFlows.size() + " add " + newFlows.size());
+		try {
+			await(bundleService.controlBundle(new ControlBundleInputBuilder().setNode(nodeRef).setBundleId(bundleId)
+					.setFlags(BUNDLE_FLAGS).setType(BundleControlType.ONFBCTOPENREQUEST).build()));
+			try {
+				await(bundleService.addBundleMessages(new AddBundleMessagesInputBuilder().setNode(nodeRef)
+						.setBundleId(bundleId).setFlags(BUNDLE_FLAGS)
+						.setMessages(new MessagesBuilder().setMessage(messages).build()).build()));
+				await(bundleService.controlBundle(new ControlBundleInputBuilder().setNode(nodeRef)
+						.setBundleId(bundleId).setFlags(BUNDLE_FLAGS).setType(BundleControlType.ONFBCTCOMMITREQUEST)
+						.build()));
+			} catch (ExecutionException | TimeoutException ex) {
+				// Best effort -- the switch drops the bundle when the connection closes.
+				bundleService.controlBundle(new ControlBundleInputBuilder().setNode(nodeRef).setBundleId(bundleId)
+						.setFlags(BUNDLE_FLAGS).setType(BundleControlType.ONFBCTDISCARDREQUEST).build());
+				throw ex;
+			}
+		} catch (InterruptedException | ExecutionException | TimeoutException ex) {
+			LOG.error("installProfile : bundle " + bundleId.getValue() + " failed", ex);
+			failedCount.incrementAndGet();
+			return false;
+		}
+		committedCount.incrementAndGet();
+
+		// Record what the switch now has without sending it a second time through FRM.
+		return sdnmudProvider.getFlowCommitWrapper().recordBundledFlows(node, staleFlows, newFlows);
+	}
+
+	private static void await(Future<? extends RpcResult<?>> future)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		RpcResult<?> result = future.get(BUNDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		if (!result.isSuccessful()) {
+			throw new ExecutionException(new IllegalStateException("Bundle request failed " + result.getErrors()));
+		}
+	}
+
+	public long getCommittedCount() {
+		return committedCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+}
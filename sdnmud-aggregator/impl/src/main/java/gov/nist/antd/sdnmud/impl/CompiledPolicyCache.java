@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.access.control.list.rev190304.acls.acl.aces.ace.Matches;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the switch independent part of compiled MUD profiles. An entry is
+ * kept per MUD URL together with the content it was compiled from (the MUD
+ * profile, the ACLs it references and the table ids). It is used as long as
+ * the content hashes and compares equal; a changed profile replaces it.
+ *
+ * A policy holds the compiled flows that are the same on every switch and the
+ * ACEs whose addresses are only known per switch (DNS names and controller
+ * classes). Installing the profile on a switch binds those to the addresses
+ * of the switch.
+ *
+ * @author mranga
+ *
+ */
+public class CompiledPolicyCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CompiledPolicyCache.class);
+
+	private final ConcurrentHashMap<String, CompiledPolicy> policies = new ConcurrentHashMap<String, CompiledPolicy>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * An ACE that matches addresses that are resolved per switch.
+	 */
+	static final class AddressBinding {
+		final String aclName;
+		final String aceName;
+		final Matches matches;
+		final MudFlowsInstaller.MatchesType matchesType;
+		final boolean toDevice;
+		final boolean qFlag;
+
+		AddressBinding(String aclName, String aceName, Matches matches, MudFlowsInstaller.MatchesType matchesType,
+				boolean toDevice, boolean qFlag) {
+			this.aclName = aclName;
+			this.aceName = aceName;
+			this.matches = matches;
+			this.matchesType = matchesType;
+			this.toDevice = toDevice;
+			this.qFlag = qFlag;
+		}
+	}
+
+	/**
+	 * The compiled form of a MUD profile.
+	 */
+	static final class CompiledPolicy {
+		private final List<Object> content;
+		private final int contentHash;
+		final List<Flow> flows;
+		final List<AddressBinding> bindings;
+		// Whether the profile had its ACLs and only ACEs we can install.
+		final boolean complete;
+
+		CompiledPolicy(List<Object> content, List<Flow> flows, List<AddressBinding> bindings, boolean complete) {
+			this.content = content;
+			this.contentHash = content.hashCode();
+			this.flows = Collections.unmodifiableList(flows);
+			this.bindings = Collections.unmodifiableList(bindings);
+			this.complete = complete;
+		}
+	}
+
+	/**
+	 * @param mudUrl  -- the MUD URL of the profile.
+	 * @param content -- what the profile is compiled from.
+	 * @return the policy compiled from the same content or null.
+	 */
+	CompiledPolicy get(String mudUrl, List<Object> content) {
+		CompiledPolicy policy = policies.get(mudUrl);
+		if (policy != null && policy.contentHash == content.hashCode() && policy.content.equals(content)) {
+			hitCount.incrementAndGet();
+			return policy;
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	void put(String mudUrl, CompiledPolicy policy) {
+		LOG.info("put : " + mudUrl + " flows " + policy.flows.size() + " bindings " + policy.bindings.size());
+		policies.put(mudUrl, policy);
+	}
+
+	public void remove(String mudUrl) {
+		policies.remove(mudUrl);
+	}
+
+	public void clear() {
+		policies.clear();
+	}
+
+	public int getSize() {
+		return policies.size();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Uri;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.mud.rev190128.Mud;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Installs MUD profiles on demand (when sdnmud-config demand-install is set).
+ * A profile is installed on a switch when a device mapped to its MUD URL is
+ * first classified there (i.e. when the packet-in dispatcher stamps the MAC
+ * address of the device) rather than on every switch up front. A profile that
+ * has seen no classification on a switch for demand-install-idle-seconds is
+ * removed from that switch again.
+ *
+ * The classification flows time out (mfg-id-rule-cache-timeout) and are put
+ * back when the device sends again, so an active device keeps its profile
+ * installed. The idle time should be well above that timeout.
+ *
+ * An install that failed (or found no profile yet) is tried again every time
+ * the installer runs, for as long as the device is not idle. The demands of a
+ * switch are dropped when it disconnects.
+ *
+ * @author mranga
+ *
+ */
+public class DemandProfileInstaller implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DemandProfileInstaller.class);
+
+	private static final long DEFAULT_IDLE_SECONDS = 600;
+
+	private final SdnmudProvider sdnmudProvider;
+
+	// Install key (see MudInstallEngine.getInstallKey) to demand.
+	private final ConcurrentHashMap<String, Demand> demands = new ConcurrentHashMap<String, Demand>();
+
+	private final AtomicLong installCount = new AtomicLong();
+
+	private final AtomicLong reclaimCount = new AtomicLong();
+
+	/**
+	 * A MUD profile wanted on a switch.
+	 */
+	private static class Demand {
+		private final String cpeNodeId;
+		private final String mudUrl;
+		private final String key;
+		private volatile long lastSeen;
+		// Guarded by this.
+		private boolean installing;
+		private boolean installed;
+		// No longer in the map -- a classification makes a new demand.
+		private boolean removed;
+
+		Demand(String cpeNodeId, String mudUrl, String key) {
+			this.cpeNodeId = cpeNodeId;
+			this.mudUrl = mudUrl;
+			this.key = key;
+		}
+	}
+
+	public DemandProfileInstaller(SdnmudProvider sdnmudProvider) {
+		this.sdnmudProvider = sdnmudProvider;
+	}
+
+	/**
+	 * @return true if profiles are installed on demand.
+	 */
+	public boolean isEnabled() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		return sdnmudConfig != null && sdnmudConfig.isDemandInstall() != null && sdnmudConfig.isDemandInstall();
+	}
+
+	private long getIdleMillis() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getDemandInstallIdleSeconds() != null) {
+			return sdnmudConfig.getDemandInstallIdleSeconds() * 1000;
+		}
+		return DEFAULT_IDLE_SECONDS * 1000;
+	}
+
+	/**
+	 * Note that a device mapped to a MUD URL was classified at a switch. Installs
+	 * the profile on the switch if it is not there yet.
+	 *
+	 * @param cpeNodeId -- the switch.
+	 * @param mudUrl    -- the MUD URL of the device.
+	 */
+	public void onClassified(String cpeNodeId, String mudUrl) {
+		if (!isEnabled() || mudUrl == null || mudUrl.equals(SdnMudConstants.UNCLASSIFIED)) {
+			return;
+		}
+		String key = MudInstallEngine.getInstallKey(cpeNodeId, mudUrl);
+		while (true) {
+			Demand demand = demands.get(key);
+			if (demand == null) {
+				Demand newDemand = new Demand(cpeNodeId, mudUrl, key);
+				demand = demands.putIfAbsent(key, newDemand);
+				if (demand == null) {
+					demand = newDemand;
+				}
+			}
+			demand.lastSeen = System.currentTimeMillis();
+			synchronized (demand) {
+				if (demand.removed) {
+					// Reclaimed meanwhile -- go again with a new one.
+					continue;
+				}
+				if (!demand.installed && !demand.installing) {
+					startInstall(demand);
+				}
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Called with the demand locked.
+	 */
+	private void startInstall(Demand demand) {
+		Mud mud = sdnmudProvider.getMud(new Uri(demand.mudUrl));
+		if (mud == null) {
+			LOG.debug("startInstall : no MUD profile for " + demand.mudUrl);
+			return;
+		}
+		LOG.info("startInstall : installing " + demand.mudUrl + " on " + demand.cpeNodeId);
+		demand.installing = true;
+		install(demand, mud);
+	}
+
+	private void install(final Demand demand, Mud mud) {
+		CompletableFuture<Boolean> future = sdnmudProvider.getMudInstallEngine().submit(mud, demand.cpeNodeId);
+		future.whenComplete(new BiConsumer<Boolean, Throwable>() {
+			@Override
+			public void accept(Boolean result, Throwable error) {
+				synchronized (demand) {
+					demand.installing = false;
+					// A failed install is tried again when the installer runs.
+					demand.installed = error == null && result != null && result;
+				}
+				if (demand.installed) {
+					installCount.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return true if the profile was installed on the switch on demand.
+	 */
+	public boolean isInstalled(String cpeNodeId, String mudUrl) {
+		Demand demand = demands.get(MudInstallEngine.getInstallKey(cpeNodeId, mudUrl));
+		if (demand == null) {
+			return false;
+		}
+		synchronized (demand) {
+			return demand.installed;
+		}
+	}
+
+	/*
+	 * Remove the profiles that have been idle on a switch for too long and try
+	 * the failed installs of the others again.
+	 */
+	@Override
+	public void run() {
+		long idleMillis = getIdleMillis();
+		if (!isEnabled() || idleMillis <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (Demand demand : demands.values()) {
+			try {
+				if (now - demand.lastSeen > idleMillis) {
+					reclaim(demand, now, idleMillis);
+				} else {
+					retry(demand);
+				}
+			} catch (RuntimeException ex) {
+				LOG.error("DemandProfileInstaller: could not reclaim or install " + demand.key, ex);
+			}
+		}
+	}
+
+	private void retry(Demand demand) {
+		synchronized (demand) {
+			if (demand.removed || demand.installed || demand.installing
+					|| sdnmudProvider.getNode(demand.cpeNodeId) == null) {
+				return;
+			}
+			startInstall(demand);
+		}
+	}
+
+	/*
+	 * Classifications of the device wait while the flows are removed so that a
+	 * fresh install is not undone. The demand is dropped from the map.
+	 */
+	private void reclaim(Demand demand, long now, long idleMillis) {
+		boolean reclaimed = false;
+		synchronized (demand) {
+			if (demand.removed || demand.installing || now - demand.lastSeen <= idleMillis) {
+				return;
+			}
+			if (demand.installed) {
+				if (sdnmudProvider.getNode(demand.cpeNodeId) == null) {
+					// Switch is away -- try again when it is back.
+					return;
+				}
+				LOG.info("reclaim : removing idle MUD profile " + demand.mudUrl + " from " + demand.cpeNodeId);
+				sdnmudProvider.getMudFlowsInstaller().removeFlows(new Uri(demand.mudUrl), demand.cpeNodeId);
+				sdnmudProvider.getStateChangeScanner().forgetInstall(demand.key);
+				demand.installed = false;
+				reclaimed = true;
+			}
+			demand.removed = true;
+			demands.remove(demand.key, demand);
+		}
+		if (reclaimed) {
+			reclaimCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Drop the demands of a switch that went away. The profiles are installed
+	 * again as devices are classified there.
+	 *
+	 * @param cpeNodeId -- the switch.
+	 */
+	public void removeNode(String cpeNodeId) {
+		for (Demand demand : demands.values()) {
+			if (!demand.cpeNodeId.equals(cpeNodeId)) {
+				continue;
+			}
+			synchronized (demand) {
+				demand.removed = true;
+				demands.remove(demand.key, demand);
+			}
+			sdnmudProvider.getStateChangeScanner().forgetInstall(demand.key);
+		}
+	}
+
+	/**
+	 * @return the number of switch and MUD profile pairs in use.
+	 */
+	public int getDemandCount() {
+		return demands.size();
+	}
+
+	/**
+	 * @return the number of profiles installed on demand.
+	 */
+	public long getInstallCount() {
+		return installCount.get();
+	}
+
+	/**
+	 * @return the number of idle profiles removed from switches.
+	 */
+	public long getReclaimCount() {
+		return reclaimCount.get();
+	}
+
+}
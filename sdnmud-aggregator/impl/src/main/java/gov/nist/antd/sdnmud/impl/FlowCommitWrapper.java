@@ -3,10 +3,15 @@ package gov.nist.antd.sdnmud.impl;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
-import java.util.ArrayList;
 import java.util.Set;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
 import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
@@ -21,15 +26,36 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.ta
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.Instruction;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.CheckedFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * Flow commit wrapper.
+ *
+ * Besides writing one flow per transaction, flows can be queued per node with
+ * {@link #writeFlowBatched(Flow, InstanceIdentifier)}. The queued flows for a
+ * node go to the datastore in one transaction when the batch reaches
+ * flow-batch-size, when flow-batch-deadline-millis have passed since the first
+ * flow was queued or when {@link #flush(InstanceIdentifier)} is called.
+ *
+ * Writing a flow that is already recorded for the node with the same content
+ * is a no-op: no transaction is made.
+ *
+ * Transactions are submitted with the lock of this object held, which keeps
+ * the transactions of a node in order. Their commits are waited for after the
+ * lock is released, so a slow commit for one node does not hold up the
+ * installs on the other nodes.
+ *
+ * Transactions that fail are handed to the FlowRetryQueue and submitted again
+ * with backoff. Flushing a node waits for its retries as well.
  */
 
 public class FlowCommitWrapper {
@@ -37,137 +63,621 @@ public class FlowCommitWrapper {
 
 	private DataBroker dataBrokerService;
 
-	// Set of flows that have been written to a node.
-	private HashMap<InstanceIdentifier<FlowCapableNode>, HashSet<Flow>> flowTable = new HashMap<InstanceIdentifier<FlowCapableNode>, HashSet<Flow>>();
+	// Flows that have been written to each node.
+	private FlowRegistry flowRegistry;
+
+	// Nodes whose flows have been loaded from the datastore into the registry.
+	private HashSet<InstanceIdentifier<FlowCapableNode>> loadedNodes = new HashSet<InstanceIdentifier<FlowCapableNode>>();
+
+	private MeterManager meterManager;
+
+	private SdnmudProvider sdnmudProvider;
+
+	static final int DEFAULT_BATCH_SIZE = 64;
+
+	static final long DEFAULT_BATCH_DEADLINE_MILLIS = 50;
+
+	// Time to wait for the outstanding batches of a node before deleting flows.
+	private static final long BATCH_WAIT_MILLIS = 30000;
+
+	// Batches being filled, one per node.
+	private HashMap<InstanceIdentifier<FlowCapableNode>, Batch> pendingBatches = new HashMap<InstanceIdentifier<FlowCapableNode>, Batch>();
+
+	// Future of the most recently submitted batch of each node.
+	private HashMap<InstanceIdentifier<FlowCapableNode>, CompletableFuture<Void>> lastSubmittedBatches = new HashMap<InstanceIdentifier<FlowCapableNode>, CompletableFuture<Void>>();
+
+	// Futures of the batches of each node that are being retried.
+	private ConcurrentHashMap<InstanceIdentifier<FlowCapableNode>, Set<CompletableFuture<Void>>> retryingBatches = new ConcurrentHashMap<InstanceIdentifier<FlowCapableNode>, Set<CompletableFuture<Void>>>();
+
+	private static final String RETRY_KEY_PREFIX = "datastore:";
+
+	private final AtomicLong retrySequence = new AtomicLong();
 
-	public FlowCommitWrapper(DataBroker dataBrokerService) {
+	private final AtomicLong suppressedCount = new AtomicLong();
+
+	/*
+	 * Flows (table:flowId) of each node that were put on the switch by an
+	 * OpenFlow bundle. They are recorded in the registry only: writing them to the
+	 * datastore would make FRM push every flow mod of the bundle a second time.
+	 * They are removed from the switch directly.
+	 */
+	private HashMap<InstanceIdentifier<FlowCapableNode>, HashSet<String>> bundledFlows = new HashMap<InstanceIdentifier<FlowCapableNode>, HashSet<String>>();
+
+	private static class Batch {
+		final InstanceIdentifier<FlowCapableNode> node;
+		final ArrayList<Flow> flows = new ArrayList<Flow>();
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		TimingWheel.Timeout deadline;
+
+		Batch(InstanceIdentifier<FlowCapableNode> node) {
+			this.node = node;
+		}
+	}
+
+	public FlowCommitWrapper(SdnmudProvider sdnmudProvider, DataBroker dataBrokerService, MeterManager meterManager) {
+		this.sdnmudProvider = sdnmudProvider;
 		this.dataBrokerService = dataBrokerService;
+		this.meterManager = meterManager;
+		this.flowRegistry = new FlowRegistry(sdnmudProvider.getFlowStore());
 	}
 
-	public synchronized void writeFlow(FlowBuilder flow, InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
+	private int getBatchSize() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getFlowBatchSize() != null && sdnmudConfig.getFlowBatchSize() > 0) {
+			return sdnmudConfig.getFlowBatchSize().intValue();
+		}
+		return DEFAULT_BATCH_SIZE;
+	}
 
-		writeFlow(flow.build(), flowNodeIdent);
+	private long getBatchDeadlineMillis() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getFlowBatchDeadlineMillis() != null) {
+			return sdnmudConfig.getFlowBatchDeadlineMillis().longValue();
+		}
+		return DEFAULT_BATCH_DEADLINE_MILLIS;
 	}
 
-	public synchronized void writeFlow(Flow flow, InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
-		ReadWriteTransaction modification = dataBrokerService.newReadWriteTransaction();
-		LOG.info("writeFlow : " + flowNodeIdent + " Flow : " + flow.getFlowName() + " tableId " + flow.getTableId()
-				+ " flowId " + flow.getId().getValue());
+	public void writeFlow(FlowBuilder flow, InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
 
-		final InstanceIdentifier<Flow> path1 = flowNodeIdent.child(Table.class, new TableKey(flow.getTableId()))
-				.child(Flow.class, flow.getKey());
+		writeFlow(flow.build(), flowNodeIdent);
+	}
 
-		modification.merge(LogicalDatastoreType.CONFIGURATION, path1, flow, true);
+	public void writeFlow(Flow flow, InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
+		CheckedFuture<Void, TransactionCommitFailedException> commit;
+		synchronized (this) {
+			flow = meterManager.attachMeter(flow, flowNodeIdent);
+			if (flowRegistry.containsSame(flowNodeIdent, flow)) {
+				suppressedCount.incrementAndGet();
+				return;
+			}
+			ReadWriteTransaction modification = dataBrokerService.newReadWriteTransaction();
+			LOG.info("writeFlow : " + flowNodeIdent + " Flow : " + flow.getFlowName() + " tableId "
+					+ flow.getTableId() + " flowId " + flow.getId().getValue());
+
+			final InstanceIdentifier<Flow> path1 = flowNodeIdent.child(Table.class, new TableKey(flow.getTableId()))
+					.child(Flow.class, flow.getKey());
+
+			modification.merge(LogicalDatastoreType.CONFIGURATION, path1, flow, true);
+			forgetBundled(flowNodeIdent, flow);
+			commit = submit(flowNodeIdent, modification);
+			// Recorded at submit, like a batch.
+			flowRegistry.add(flowNodeIdent, flow);
+		}
 		try {
-			modification.submit().get();
-			HashSet<Flow> flows = this.flowTable.get(flowNodeIdent);
-			if (flows == null) {
-				flows = new HashSet<Flow>();
-				flowTable.put(flowNodeIdent, flows);
-			}
-		    flows.add(flow);
-		} catch (InterruptedException | ExecutionException e) {
+			commit.checkedGet();
+		} catch (TransactionCommitFailedException e) {
 			LOG.error("Error writing transaction to data store", e);
+			// Try again in the background, like a failed batch of one.
+			Batch batch = new Batch(flowNodeIdent);
+			batch.flows.add(flow);
+			watch(batch);
+			retry(batch, e);
 		}
 	}
 
-	private boolean deleteFlow(FlowKey flowKey, short tableId, InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
-		ReadWriteTransaction modification = dataBrokerService.newReadWriteTransaction();
-		LOG.info("deleteFlow : " + flowKey.getId().getValue());
-		final InstanceIdentifier<Flow> path = flowNodeIdent.child(Table.class, new TableKey(tableId)).child(Flow.class,
-				flowKey);
-		modification.delete(LogicalDatastoreType.CONFIGURATION, path);
-		CheckedFuture<Void, TransactionCommitFailedException> commitFuture = modification.submit();
+	public CompletableFuture<Void> writeFlowBatched(FlowBuilder flow,
+			InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
+		return writeFlowBatched(flow.build(), flowNodeIdent);
+	}
+
+	/**
+	 * Queue a flow to be written to a node together with the other flows queued
+	 * for the node.
+	 *
+	 * @param flow          -- the flow.
+	 * @param flowNodeIdent -- the node.
+	 * @return the future of the batch the flow was added to. It completes when
+	 *         the batch transaction commits. If the flow is already recorded
+	 *         unchanged it is not queued and the future of the last batch
+	 *         submitted to the node is returned.
+	 */
+	public synchronized CompletableFuture<Void> writeFlowBatched(Flow flow,
+			InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
+		flow = meterManager.attachMeter(flow, flowNodeIdent);
+		if (flowRegistry.containsSame(flowNodeIdent, flow)) {
+			suppressedCount.incrementAndGet();
+			CompletableFuture<Void> last = lastSubmittedBatches.get(flowNodeIdent);
+			return last != null ? last : CompletableFuture.<Void>completedFuture(null);
+		}
+		LOG.debug("writeFlowBatched : " + flowNodeIdent + " Flow : " + flow.getFlowName() + " tableId "
+				+ flow.getTableId() + " flowId " + flow.getId().getValue());
+		Batch batch = pendingBatches.get(flowNodeIdent);
+		if (batch == null) {
+			batch = new Batch(flowNodeIdent);
+			pendingBatches.put(flowNodeIdent, batch);
+		}
+		batch.flows.add(flow);
+		if (batch.flows.size() >= getBatchSize()) {
+			pendingBatches.remove(flowNodeIdent);
+			submitBatch(batch);
+		} else if (batch.deadline == null) {
+			final Batch expiring = batch;
+			batch.deadline = sdnmudProvider.getTimingWheel().schedule(new Runnable() {
+				@Override
+				public void run() {
+					// The wheel thread must not block on our lock.
+					CompletableFuture.runAsync(new Runnable() {
+						@Override
+						public void run() {
+							flushExpired(expiring);
+						}
+					});
+				}
+			}, getBatchDeadlineMillis());
+		}
+		return batch.future;
+	}
+
+	private synchronized void flushExpired(Batch batch) {
+		if (pendingBatches.get(batch.node) == batch) {
+			pendingBatches.remove(batch.node);
+			submitBatch(batch);
+		}
+	}
+
+	/**
+	 * Write out the flows queued for a node now.
+	 *
+	 * @param flowNodeIdent -- the node.
+	 * @return the future of the most recent batch written to the node. It is
+	 *         already complete if nothing has been written.
+	 */
+	public synchronized CompletableFuture<Void> flush(InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
+		Batch batch = pendingBatches.remove(flowNodeIdent);
+		if (batch != null) {
+			submitBatch(batch);
+		}
+		CompletableFuture<Void> last = lastSubmittedBatches.get(flowNodeIdent);
+		Set<CompletableFuture<Void>> retrying = retryingBatches.get(flowNodeIdent);
+		if (retrying != null && !retrying.isEmpty()) {
+			ArrayList<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(retrying);
+			if (last != null) {
+				futures.add(last);
+			}
+			return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+		}
+		return last != null ? last : CompletableFuture.<Void>completedFuture(null);
+	}
+
+	/*
+	 * Submit the batch being filled for a node without waiting for it.
+	 */
+	private synchronized void submitPending(InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
+		Batch batch = pendingBatches.remove(flowNodeIdent);
+		if (batch != null) {
+			submitBatch(batch);
+		}
+	}
+
+	/**
+	 * Flush the node and wait for its batches to commit.
+	 *
+	 * @return false if a batch failed or did not commit in time.
+	 */
+	public boolean flushAndWait(InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
 		try {
-			commitFuture.checkedGet();
-		} catch (TransactionCommitFailedException e) {
+			flush(flowNodeIdent).get(BATCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			LOG.error("Error writing flow batch to data store", e);
 			return false;
 		}
-		return true;
 	}
 
-	public boolean flowExists(String flowIdPrefix, short tableId, InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
-		InstanceIdentifier<Table> tableInstanceId = flowNodeIdent.child(Table.class, new TableKey(tableId));
-		CheckedFuture<Optional<Table>, ReadFailedException> commitFuture = dataBrokerService.newReadOnlyTransaction()
-				.read(LogicalDatastoreType.CONFIGURATION, tableInstanceId);
+	/*
+	 * Submit a transaction for a node. Called with our lock held so the
+	 * transactions of a node are submitted (and committed) in the order they are
+	 * made; the caller waits for the commit after releasing the lock. Flushing
+	 * the node waits for the commit.
+	 */
+	private CheckedFuture<Void, TransactionCommitFailedException> submit(
+			InstanceIdentifier<FlowCapableNode> flowNodeIdent, ReadWriteTransaction modification) {
+		CheckedFuture<Void, TransactionCommitFailedException> commit = modification.submit();
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		Futures.addCallback(commit, new FutureCallback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				future.complete(null);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				future.completeExceptionally(t);
+			}
+		}, MoreExecutors.directExecutor());
+		lastSubmittedBatches.put(flowNodeIdent, future);
+		return commit;
+	}
+
+	/*
+	 * Wait for a commit. Must not be called with our lock held.
+	 */
+	private static boolean awaitCommit(CheckedFuture<Void, TransactionCommitFailedException> commit,
+			String errorMessage) {
 		try {
-			Set<Table> tableSet = commitFuture.get().asSet();
-			for (Table table : tableSet) {
-				List<Flow> flows = table.getFlow();
-				for (Flow flow : flows) {
-					if (flow.getId().getValue().startsWith(flowIdPrefix)) {
-						return true;
+			commit.checkedGet();
+			return true;
+		} catch (TransactionCommitFailedException e) {
+			LOG.error(errorMessage, e);
+			return false;
+		}
+	}
+
+	private void submitBatch(final Batch batch) {
+		if (batch.deadline != null) {
+			batch.deadline.cancel();
+		}
+		ReadWriteTransaction modification = dataBrokerService.newReadWriteTransaction();
+		for (Flow flow : batch.flows) {
+			InstanceIdentifier<Flow> path = batch.node.child(Table.class, new TableKey(flow.getTableId()))
+					.child(Flow.class, flow.getKey());
+			modification.merge(LogicalDatastoreType.CONFIGURATION, path, flow, true);
+			forgetBundled(batch.node, flow);
+		}
+		LOG.info("submitBatch : " + batch.node + " flowCount " + batch.flows.size());
+		/*
+		 * Record the flows now rather than in the commit callback so that a thread
+		 * holding our lock while it waits for the batch cannot dead lock the callback.
+		 */
+		flowRegistry.addAll(batch.node, batch.flows);
+		lastSubmittedBatches.put(batch.node, batch.future);
+		watch(batch);
+		Futures.addCallback(modification.submit(), new FutureCallback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				batch.future.complete(null);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				LOG.error("Error writing flow batch to data store", t);
+				retry(batch, t);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/*
+	 * Forget the flows of the batch if it is given up.
+	 */
+	private void watch(final Batch batch) {
+		batch.future.whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override
+			public void accept(Void result, Throwable error) {
+				Set<CompletableFuture<Void>> retrying = retryingBatches.get(batch.node);
+				if (retrying != null) {
+					retrying.remove(batch.future);
+				}
+				if (error != null) {
+					forgetFlows(batch);
+				}
+			}
+		});
+	}
+
+	/*
+	 * Hand a failed batch to the retry queue. Runs without our lock - the thread
+	 * holding it may be waiting for the batch.
+	 */
+	private void retry(final Batch batch, Throwable error) {
+		Set<CompletableFuture<Void>> retrying = retryingBatches.get(batch.node);
+		if (retrying == null) {
+			Set<CompletableFuture<Void>> newSet = ConcurrentHashMap.<CompletableFuture<Void>>newKeySet();
+			retrying = retryingBatches.putIfAbsent(batch.node, newSet);
+			if (retrying == null) {
+				retrying = newSet;
+			}
+		}
+		retrying.add(batch.future);
+		FlowRetryQueue.Retry retry = new FlowRetryQueue.Retry() {
+			@Override
+			public CompletableFuture<Void> attempt() {
+				return mergeFlows(batch.node, batch.flows);
+			}
+		};
+		if (!sdnmudProvider.getFlowRetryQueue().retry(IdUtils.getNodeUri(batch.node),
+				RETRY_KEY_PREFIX + retrySequence.incrementAndGet(), retry, batch.future, error)) {
+			batch.future.completeExceptionally(error);
+		}
+		if (batch.future.isDone()) {
+			retrying.remove(batch.future);
+		}
+	}
+
+	/*
+	 * Write flows to the datastore in one transaction.
+	 */
+	private CompletableFuture<Void> mergeFlows(InstanceIdentifier<FlowCapableNode> node, Collection<Flow> flows) {
+		ReadWriteTransaction modification = dataBrokerService.newReadWriteTransaction();
+		for (Flow flow : flows) {
+			modification.merge(LogicalDatastoreType.CONFIGURATION,
+					node.child(Table.class, new TableKey(flow.getTableId())).child(Flow.class, flow.getKey()), flow,
+					true);
+		}
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		Futures.addCallback(modification.submit(), new FutureCallback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				future.complete(null);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				future.completeExceptionally(t);
+			}
+		}, MoreExecutors.directExecutor());
+		return future;
+	}
+
+	private void forgetFlows(Batch batch) {
+		for (Flow flow : batch.flows) {
+			flowRegistry.removeIfSame(batch.node, flow);
+		}
+	}
+
+	/**
+	 * Remove and write flows of a node in one transaction (used to push the
+	 * changes to a MUD profile, or to record them after a bundle install).
+	 *
+	 * @param staleFlows -- flows to remove unless they are re-written.
+	 * @param newFlows   -- flows to write (meters already attached).
+	 * @return true if the transaction committed.
+	 */
+	public boolean replaceFlows(InstanceIdentifier<FlowCapableNode> flowNodeIdent,
+			Collection<Flow> staleFlows, Collection<Flow> newFlows) {
+		// Wait outside the lock so writes to other nodes are not held up.
+		flushAndWait(flowNodeIdent);
+		// Flows are identified by table and key.
+		HashSet<String> newKeys = new HashSet<String>();
+		for (Flow flow : newFlows) {
+			newKeys.add(flow.getTableId() + ":" + flow.getId().getValue());
+		}
+		ArrayList<Flow> bundledStaleFlows = new ArrayList<Flow>();
+		CheckedFuture<Void, TransactionCommitFailedException> commit;
+		synchronized (this) {
+			// Flows queued for the node since then are written first.
+			submitPending(flowNodeIdent);
+			ReadWriteTransaction modification = dataBrokerService.newReadWriteTransaction();
+			for (Flow flow : staleFlows) {
+				if (!newKeys.contains(flow.getTableId() + ":" + flow.getId().getValue())) {
+					if (isBundled(flowNodeIdent, flow)) {
+						bundledStaleFlows.add(flow);
+					} else {
+						modification.delete(LogicalDatastoreType.CONFIGURATION, flowNodeIdent
+								.child(Table.class, new TableKey(flow.getTableId())).child(Flow.class, flow.getKey()));
 					}
 				}
 			}
+			for (Flow flow : newFlows) {
+				modification.put(LogicalDatastoreType.CONFIGURATION,
+						flowNodeIdent.child(Table.class, new TableKey(flow.getTableId())).child(Flow.class, flow.getKey()),
+						flow, true);
+			}
+			commit = submit(flowNodeIdent, modification);
+		}
+		if (!awaitCommit(commit, "Error writing transaction to data store")) {
 			return false;
-		} catch (InterruptedException e) {
-			LOG.error("Error reading flows ", e);
-			return false;
-		} catch (ExecutionException e) {
-			LOG.error("Error reading flows ", e);
+		}
+		synchronized (this) {
+			removeBundledFlows(flowNodeIdent, bundledStaleFlows);
+			for (Flow flow : newFlows) {
+				forgetBundled(flowNodeIdent, flow);
+			}
+			for (Flow flow : staleFlows) {
+				if (!newKeys.contains(flow.getTableId() + ":" + flow.getId().getValue())) {
+					flowRegistry.remove(flowNodeIdent, flow.getTableId(), flow.getKey());
+				}
+			}
+			flowRegistry.addAll(flowNodeIdent, newFlows);
+			return true;
+		}
+	}
+
+	/**
+	 * Record the changes an OpenFlow bundle made to a switch.
+	 *
+	 * The flows the bundle added are kept in the registry only so that FRM does
+	 * not push them again. Flows that were in the datastore before stay there:
+	 * a changed one is updated in the datastore (FRM then re-sends that one flow)
+	 * and a removed one is deleted from it (FRM re-sends the remove), since FRM
+	 * would otherwise put the old version back when the switch reconnects. Once a
+	 * profile has been installed by bundle this leaves no flows to push twice.
+	 *
+	 * @param staleFlows -- flows the bundle removed unless it re-added them.
+	 * @param newFlows   -- flows the bundle added (meters already attached).
+	 * @return true if the record was made.
+	 */
+	public boolean recordBundledFlows(InstanceIdentifier<FlowCapableNode> flowNodeIdent,
+			Collection<Flow> staleFlows, Collection<Flow> newFlows) {
+		// Wait outside the lock so writes to other nodes are not held up.
+		flushAndWait(flowNodeIdent);
+		HashSet<String> newKeys = new HashSet<String>();
+		for (Flow flow : newFlows) {
+			newKeys.add(getFlowKey(flow));
+		}
+		ArrayList<Flow> datastoreDeletes = new ArrayList<Flow>();
+		ArrayList<Flow> datastoreWrites = new ArrayList<Flow>();
+		CheckedFuture<Void, TransactionCommitFailedException> commit = null;
+		synchronized (this) {
+			// Flows queued for the node since then are written first.
+			submitPending(flowNodeIdent);
+			loadFlows(flowNodeIdent);
+			for (Flow flow : staleFlows) {
+				if (!newKeys.contains(getFlowKey(flow)) && !isBundled(flowNodeIdent, flow)) {
+					datastoreDeletes.add(flow);
+				}
+			}
+			for (Flow flow : newFlows) {
+				if (flowRegistry.contains(flowNodeIdent, flow.getTableId(), flow.getKey())
+						&& !isBundled(flowNodeIdent, flow)) {
+					datastoreWrites.add(flow);
+				}
+			}
+			if (!datastoreDeletes.isEmpty() || !datastoreWrites.isEmpty()) {
+				ReadWriteTransaction modification = dataBrokerService.newReadWriteTransaction();
+				for (Flow flow : datastoreDeletes) {
+					modification.delete(LogicalDatastoreType.CONFIGURATION, flowNodeIdent
+							.child(Table.class, new TableKey(flow.getTableId())).child(Flow.class, flow.getKey()));
+				}
+				for (Flow flow : datastoreWrites) {
+					modification.put(LogicalDatastoreType.CONFIGURATION, flowNodeIdent
+							.child(Table.class, new TableKey(flow.getTableId())).child(Flow.class, flow.getKey()), flow,
+							true);
+				}
+				commit = submit(flowNodeIdent, modification);
+			}
+		}
+		if (commit != null && !awaitCommit(commit, "Error writing transaction to data store")) {
 			return false;
 		}
+		synchronized (this) {
+			HashSet<String> bundled = bundledFlows.get(flowNodeIdent);
+			if (bundled == null) {
+				bundled = new HashSet<String>();
+				bundledFlows.put(flowNodeIdent, bundled);
+			}
+			for (Flow flow : staleFlows) {
+				if (!newKeys.contains(getFlowKey(flow))) {
+					bundled.remove(getFlowKey(flow));
+					flowRegistry.remove(flowNodeIdent, flow.getTableId(), flow.getKey());
+				}
+			}
+			for (Flow flow : newFlows) {
+				if (!datastoreWrites.contains(flow)) {
+					bundled.add(getFlowKey(flow));
+				}
+			}
+			flowRegistry.addAll(flowNodeIdent, newFlows);
+			return true;
+		}
 	}
 
-	public Collection<FlowKey> readFlows(InstanceIdentifier<FlowCapableNode> flowNodeIdent, short tableId,
-			String uriPrefix, MacAddress srcMacAddress, MacAddress dstMacAddress) {
+	private static String getFlowKey(Flow flow) {
+		return flow.getTableId() + ":" + flow.getId().getValue();
+	}
 
-		HashSet<FlowKey> retval = new HashSet<FlowKey>();
+	private boolean isBundled(InstanceIdentifier<FlowCapableNode> flowNodeIdent, Flow flow) {
+		HashSet<String> bundled = bundledFlows.get(flowNodeIdent);
+		return bundled != null && bundled.contains(getFlowKey(flow));
+	}
 
-		InstanceIdentifier<Table> tableInstanceId = flowNodeIdent.child(Table.class, new TableKey(tableId));
-		CheckedFuture<Optional<Table>, ReadFailedException> commitFuture = dataBrokerService.newReadOnlyTransaction()
-				.read(LogicalDatastoreType.CONFIGURATION, tableInstanceId);
-		try {
-			Set<Table> tableSet = commitFuture.get().asSet();
-			for (Table table : tableSet) {
-				List<Flow> flows = table.getFlow();
-				for (Flow flow : flows) {
-					String flowId = flow.getId().getValue();
-					if (srcMacAddress != null) {
-						MacAddress flowSourceMacAddress = null;
-
-						if (flow.getMatch() != null && flow.getMatch().getEthernetMatch() != null
-								&& flow.getMatch().getEthernetMatch().getEthernetSource() != null) {
-							flowSourceMacAddress = flow.getMatch().getEthernetMatch().getEthernetSource().getAddress();
-						}
+	/*
+	 * The flow is being written to the datastore and is from now on pushed by FRM.
+	 */
+	private void forgetBundled(InstanceIdentifier<FlowCapableNode> flowNodeIdent, Flow flow) {
+		HashSet<String> bundled = bundledFlows.get(flowNodeIdent);
+		if (bundled != null) {
+			bundled.remove(getFlowKey(flow));
+		}
+	}
 
-						if (flowSourceMacAddress != null && flowId.startsWith(uriPrefix)
-								&& flowSourceMacAddress.equals(srcMacAddress)) {
-							retval.add(flow.getKey());
-						}
+	/*
+	 * Bundled flows are not in the datastore -- remove them from the switch.
+	 */
+	private void removeBundledFlows(InstanceIdentifier<FlowCapableNode> flowNodeIdent, Collection<Flow> flows) {
+		FlowWriter flowWriter = sdnmudProvider.getFlowWriter();
+		for (Flow flow : flows) {
+			forgetBundled(flowNodeIdent, flow);
+			flowWriter.deleteFlowAsync(flowNodeIdent, flow, true);
+		}
+	}
 
-					}
-					if (dstMacAddress != null) {
-						MacAddress flowDestinationMacAddress = null;
+	/*
+	 * Submit the delete of flows from the datastore in one transaction. Flows
+	 * installed by a bundle are added to bundled instead; they are to be removed
+	 * from the switch once the delete commits. Called with our lock held.
+	 */
+	private CheckedFuture<Void, TransactionCommitFailedException> deleteFromDatastore(
+			InstanceIdentifier<FlowCapableNode> flowNodeIdent, Collection<Flow> flows, Collection<Flow> bundled) {
+		ReadWriteTransaction modification = dataBrokerService.newReadWriteTransaction();
+		for (Flow flow : flows) {
+			if (isBundled(flowNodeIdent, flow)) {
+				bundled.add(flow);
+				continue;
+			}
+			modification.delete(LogicalDatastoreType.CONFIGURATION, flowNodeIdent
+					.child(Table.class, new TableKey(flow.getTableId())).child(Flow.class, flow.getKey()));
+		}
+		return submit(flowNodeIdent, modification);
+	}
 
-						if (flow.getMatch() != null && flow.getMatch().getEthernetMatch() != null
-								&& flow.getMatch().getEthernetMatch().getEthernetDestination() != null) {
-							flowDestinationMacAddress = flow.getMatch().getEthernetMatch().getEthernetDestination()
-									.getAddress();
-						}
+	/*
+	 * Forget deleted flows once their delete has committed.
+	 */
+	private synchronized void removeDeletedFlows(InstanceIdentifier<FlowCapableNode> flowNodeIdent,
+			Collection<Flow> flows, Collection<Flow> bundled) {
+		removeBundledFlows(flowNodeIdent, bundled);
+		for (Flow flow : flows) {
+			flowRegistry.remove(flowNodeIdent, flow.getTableId(), flow.getKey());
+		}
+	}
 
-						if (flowDestinationMacAddress != null && flowId.startsWith(uriPrefix)
-								&& flowDestinationMacAddress.equals(dstMacAddress)) {
-							retval.add(flow.getKey());
-						}
-					} else {
-						if (flowId.startsWith(uriPrefix)) {
-							retval.add(flow.getKey());
+	/*
+	 * Flows written before a controller restart are only in the datastore. Pick
+	 * them up the first time the node is looked at so they can be found and
+	 * deleted. This is the only full read of the node.
+	 */
+	private synchronized void loadFlows(InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
+		if (!loadedNodes.add(flowNodeIdent)) {
+			return;
+		}
+		CheckedFuture<Optional<FlowCapableNode>, ReadFailedException> readFuture = dataBrokerService
+				.newReadOnlyTransaction().read(LogicalDatastoreType.CONFIGURATION, flowNodeIdent);
+		try {
+			Optional<FlowCapableNode> flowCapableNode = readFuture.checkedGet();
+			if (flowCapableNode.isPresent() && flowCapableNode.get().getTable() != null) {
+				for (Table table : flowCapableNode.get().getTable()) {
+					if (table.getFlow() == null) {
+						continue;
+					}
+					for (Flow flow : table.getFlow()) {
+						// Do not clobber what we wrote ourselves.
+						if (!flowRegistry.contains(flowNodeIdent, table.getId(), flow.getKey())) {
+							flowRegistry.add(flowNodeIdent, flow);
 						}
 					}
 				}
 			}
-			return retval;
-		} catch (InterruptedException e) {
+		} catch (ReadFailedException e) {
 			LOG.error("Error reading flows ", e);
-			return null;
-		} catch (ExecutionException e) {
-			LOG.error("Error reading flows ", e);
-			return null;
+			loadedNodes.remove(flowNodeIdent);
 		}
 	}
 
+	public boolean flowExists(String flowIdPrefix, short tableId, InstanceIdentifier<FlowCapableNode> flowNodeIdent) {
+		loadFlows(flowNodeIdent);
+		return flowRegistry.exists(flowNodeIdent, tableId, flowIdPrefix);
+	}
+
+	public Collection<FlowKey> readFlows(InstanceIdentifier<FlowCapableNode> flowNodeIdent, short tableId,
+			String uriPrefix, MacAddress srcMacAddress, MacAddress dstMacAddress) {
+		loadFlows(flowNodeIdent);
+		HashSet<FlowKey> retval = new HashSet<FlowKey>();
+		for (Flow flow : flowRegistry.find(flowNodeIdent, tableId, uriPrefix, srcMacAddress, dstMacAddress)) {
+			retval.add(flow.getKey());
+		}
+		return retval;
+	}
+
 	/**
 	 * Delete the flows corresponding to a MUD uri and sourceMacAddress.
 	 *
@@ -177,46 +687,104 @@ public class FlowCommitWrapper {
 	 * 
 	 */
 
-	synchronized public void deleteFlows(InstanceIdentifier<FlowCapableNode> flowCapableNode, String uriPrefix,
+	public void deleteFlows(InstanceIdentifier<FlowCapableNode> flowCapableNode, String uriPrefix,
 			short table, MacAddress sourceMacAddress, MacAddress destinationMacAddress) {
 
-		Collection<FlowKey> flowKeys = readFlows(flowCapableNode, table, uriPrefix, sourceMacAddress,
-				destinationMacAddress);
-		for (FlowKey flowKey : flowKeys) {
-			deleteFlow(flowKey, table, flowCapableNode);
+		// Queued flows must be in the datastore before they can be deleted.
+		// Wait outside the lock so writes to other nodes are not held up.
+		flushAndWait(flowCapableNode);
+		Collection<Flow> flows;
+		ArrayList<Flow> bundled = new ArrayList<Flow>();
+		CheckedFuture<Void, TransactionCommitFailedException> commit;
+		synchronized (this) {
+			// Flows queued for the node since then are written first.
+			submitPending(flowCapableNode);
+			loadFlows(flowCapableNode);
+			flows = flowRegistry.find(flowCapableNode, table, uriPrefix, sourceMacAddress, destinationMacAddress);
+			if (flows.isEmpty()) {
+				return;
+			}
+			LOG.info("deleteFlows : " + uriPrefix + " table " + table + " flowCount " + flows.size());
+			commit = deleteFromDatastore(flowCapableNode, flows, bundled);
 		}
+		if (awaitCommit(commit, "Error deleting flows from data store")) {
+			removeDeletedFlows(flowCapableNode, flows, bundled);
+		}
+	}
 
-		if (flowTable.get(flowCapableNode) != null) {
-			HashSet<Flow> newFlowEntries = new HashSet<Flow>();
-
-			for (Flow flow : flowTable.get(flowCapableNode)) {
-				if (!flow.getId().getValue().startsWith(uriPrefix)) {
-					newFlowEntries.add(flow);
-				}
-			}
-			if (! newFlowEntries.isEmpty()) {
-				flowTable.put(flowCapableNode, newFlowEntries);
-			} else {
-				flowTable.remove(flowCapableNode);
+	/**
+	 * Delete the flows of a MUD profile from all the tables of a node in one
+	 * transaction.
+	 *
+	 * @param flowCapableNode -- the node from which to delete the flows.
+	 * @param uriPrefix       -- the flow id prefix of the profile.
+	 */
+	public void deleteFlows(InstanceIdentifier<FlowCapableNode> flowCapableNode, String uriPrefix) {
+		// Wait outside the lock so writes to other nodes are not held up.
+		flushAndWait(flowCapableNode);
+		Collection<Flow> flows;
+		ArrayList<Flow> bundled = new ArrayList<Flow>();
+		CheckedFuture<Void, TransactionCommitFailedException> commit;
+		synchronized (this) {
+			// Flows queued for the node since then are written first.
+			submitPending(flowCapableNode);
+			loadFlows(flowCapableNode);
+			flows = flowRegistry.findByUriPrefix(flowCapableNode, uriPrefix);
+			if (flows.isEmpty()) {
+				return;
 			}
-		} 
-
+			LOG.info("deleteFlows : " + uriPrefix + " flowCount " + flows.size());
+			commit = deleteFromDatastore(flowCapableNode, flows, bundled);
+		}
+		if (awaitCommit(commit, "Error deleting flows from data store")) {
+			removeDeletedFlows(flowCapableNode, flows, bundled);
+		}
 	}
 
-	synchronized public void deleteFlows(InstanceIdentifier<FlowCapableNode> flowCapableNode) {
-		HashSet<Flow> flows = this.flowTable.get(flowCapableNode);
-		if (flows != null) {
-			for (Flow flow : flows) {
-				FlowKey flowKey = flow.getKey();
-				short table = flow.getTableId();
-				deleteFlow(flowKey, table, flowCapableNode);
+	public void deleteFlows(InstanceIdentifier<FlowCapableNode> flowCapableNode) {
+		// The node is gone; do not wait for its retries.
+		sdnmudProvider.getFlowRetryQueue().cancelAll(IdUtils.getNodeUri(flowCapableNode), RETRY_KEY_PREFIX);
+		// Wait outside the lock so writes to other nodes are not held up.
+		flushAndWait(flowCapableNode);
+		CheckedFuture<Void, TransactionCommitFailedException> commit = null;
+		synchronized (this) {
+			// Flows queued for the node since then are written first.
+			submitPending(flowCapableNode);
+			// Nothing can be removed from a switch that is gone.
+			bundledFlows.remove(flowCapableNode);
+			Collection<Flow> flows = flowRegistry.removeNode(flowCapableNode);
+			if (!flows.isEmpty()) {
+				commit = deleteFromDatastore(flowCapableNode, flows, new ArrayList<Flow>());
 			}
-			flowTable.remove(flowCapableNode);
+			lastSubmittedBatches.remove(flowCapableNode);
+			retryingBatches.remove(flowCapableNode);
+			loadedNodes.remove(flowCapableNode);
 		}
+		if (commit != null) {
+			awaitCommit(commit, "Error deleting flows from data store");
+		}
+	}
+
+	/**
+	 * @return the number of flow writes skipped because the flow was already
+	 *         recorded unchanged.
+	 */
+	public long getSuppressedCount() {
+		return suppressedCount.get();
 	}
 
 	public Collection<Flow> getFlows(InstanceIdentifier<FlowCapableNode> node) {
-		return flowTable.get(node);
+		return flowRegistry.getFlows(node);
+	}
+
+	/**
+	 * @return the flows of a node (queued ones included) whose id starts with the
+	 *         MUD URI prefix.
+	 */
+	public Collection<Flow> getFlows(InstanceIdentifier<FlowCapableNode> node, String uriPrefix) {
+		flushAndWait(node);
+		loadFlows(node);
+		return flowRegistry.findByUriPrefix(node, uriPrefix);
 	}
 
 }
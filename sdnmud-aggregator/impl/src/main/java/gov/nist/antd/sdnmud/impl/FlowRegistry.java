@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.MacAddress;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNode;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowKey;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+
+/**
+ * In memory registry of the flows written to each node, indexed by table, by
+ * MUD URI prefix (the part of the flow id up to and including the first '/')
+ * and by the ethernet source and destination MAC of the match. Finding or
+ * removing the flows of a MUD URI or of a device costs time proportional to
+ * the number of matching flows rather than to the number of flows on the
+ * switch.
+ *
+ * Flows are held as compact records owned by a {@link FlowStore}, which may be
+ * shared with other registries; flows handed out are rebuilt from the records.
+ *
+ * All methods are synchronized.
+ *
+ * @author mranga
+ *
+ */
+public class FlowRegistry {
+
+	/*
+	 * A flow is identified by its table and key.
+	 */
+	private static final class EntryKey {
+		private final short tableId;
+		private final FlowKey flowKey;
+
+		EntryKey(short tableId, FlowKey flowKey) {
+			this.tableId = tableId;
+			this.flowKey = flowKey;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * tableId + flowKey.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof EntryKey)) {
+				return false;
+			}
+			EntryKey that = (EntryKey) other;
+			return tableId == that.tableId && flowKey.equals(that.flowKey);
+		}
+	}
+
+	private static final class Entry {
+		private final EntryKey key;
+		private final FlowStore.Record record;
+		private final String uriPrefix;
+		private final String srcMac;
+		private final String dstMac;
+
+		Entry(EntryKey key, Flow flow, FlowStore.Record record) {
+			this.key = key;
+			this.record = record;
+			this.uriPrefix = getUriPrefix(flow.getId().getValue());
+			this.srcMac = getSrcMac(flow);
+			this.dstMac = getDstMac(flow);
+		}
+	}
+
+	/*
+	 * The flows of one node and their indexes. Index buckets are insertion
+	 * ordered so flows come back in the order they were written.
+	 */
+	private static final class NodeFlows {
+		private final HashMap<EntryKey, Entry> entries = new HashMap<EntryKey, Entry>();
+		private final HashMap<Short, LinkedHashSet<Entry>> byTable = new HashMap<Short, LinkedHashSet<Entry>>();
+		private final HashMap<String, LinkedHashSet<Entry>> byUriPrefix = new HashMap<String, LinkedHashSet<Entry>>();
+		private final HashMap<String, LinkedHashSet<Entry>> bySrcMac = new HashMap<String, LinkedHashSet<Entry>>();
+		private final HashMap<String, LinkedHashSet<Entry>> byDstMac = new HashMap<String, LinkedHashSet<Entry>>();
+
+		Entry add(Entry entry) {
+			Entry previous = entries.put(entry.key, entry);
+			if (previous != null) {
+				unindex(previous);
+			}
+			index(byTable, entry.key.tableId, entry);
+			index(byUriPrefix, entry.uriPrefix, entry);
+			index(bySrcMac, entry.srcMac, entry);
+			index(byDstMac, entry.dstMac, entry);
+			return previous;
+		}
+
+		Entry remove(EntryKey key) {
+			Entry entry = entries.remove(key);
+			if (entry != null) {
+				unindex(entry);
+			}
+			return entry;
+		}
+
+		private void unindex(Entry entry) {
+			unindex(byTable, entry.key.tableId, entry);
+			unindex(byUriPrefix, entry.uriPrefix, entry);
+			unindex(bySrcMac, entry.srcMac, entry);
+			unindex(byDstMac, entry.dstMac, entry);
+		}
+
+		private static <K> void index(Map<K, LinkedHashSet<Entry>> index, K key, Entry entry) {
+			if (key == null) {
+				return;
+			}
+			LinkedHashSet<Entry> bucket = index.get(key);
+			if (bucket == null) {
+				bucket = new LinkedHashSet<Entry>();
+				index.put(key, bucket);
+			}
+			bucket.add(entry);
+		}
+
+		private static <K> void unindex(Map<K, LinkedHashSet<Entry>> index, K key, Entry entry) {
+			if (key == null) {
+				return;
+			}
+			LinkedHashSet<Entry> bucket = index.get(key);
+			if (bucket != null) {
+				bucket.remove(entry);
+				if (bucket.isEmpty()) {
+					index.remove(key);
+				}
+			}
+		}
+
+		private static Collection<Entry> bucket(Map<?, LinkedHashSet<Entry>> index, Object key) {
+			LinkedHashSet<Entry> bucket = key == null ? null : index.get(key);
+			return bucket == null ? new ArrayList<Entry>() : bucket;
+		}
+	}
+
+	private final HashMap<InstanceIdentifier<FlowCapableNode>, NodeFlows> nodes = new HashMap<InstanceIdentifier<FlowCapableNode>, NodeFlows>();
+
+	private final FlowStore flowStore;
+
+	public FlowRegistry(FlowStore flowStore) {
+		this.flowStore = flowStore;
+	}
+
+	static String getUriPrefix(String flowId) {
+		int index = flowId.indexOf('/');
+		return index < 0 ? null : flowId.substring(0, index + 1);
+	}
+
+	private static String getSrcMac(Flow flow) {
+		if (flow.getMatch() != null && flow.getMatch().getEthernetMatch() != null
+				&& flow.getMatch().getEthernetMatch().getEthernetSource() != null
+				&& flow.getMatch().getEthernetMatch().getEthernetSource().getAddress() != null) {
+			return flow.getMatch().getEthernetMatch().getEthernetSource().getAddress().getValue();
+		}
+		return null;
+	}
+
+	private static String getDstMac(Flow flow) {
+		if (flow.getMatch() != null && flow.getMatch().getEthernetMatch() != null
+				&& flow.getMatch().getEthernetMatch().getEthernetDestination() != null
+				&& flow.getMatch().getEthernetMatch().getEthernetDestination().getAddress() != null) {
+			return flow.getMatch().getEthernetMatch().getEthernetDestination().getAddress().getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * Record a flow written to a node, replacing the flow with the same table and
+	 * key.
+	 */
+	public synchronized void add(InstanceIdentifier<FlowCapableNode> node, Flow flow) {
+		NodeFlows nodeFlows = nodes.get(node);
+		if (nodeFlows == null) {
+			nodeFlows = new NodeFlows();
+			nodes.put(node, nodeFlows);
+		}
+		Entry previous = nodeFlows
+				.add(new Entry(new EntryKey(flow.getTableId(), flow.getKey()), flow, flowStore.intern(flow)));
+		if (previous != null) {
+			flowStore.release(previous.record);
+		}
+	}
+
+	public synchronized void addAll(InstanceIdentifier<FlowCapableNode> node, Collection<Flow> flows) {
+		for (Flow flow : flows) {
+			add(node, flow);
+		}
+	}
+
+	/**
+	 * @return the removed flow or null if it was not registered.
+	 */
+	public synchronized Flow remove(InstanceIdentifier<FlowCapableNode> node, short tableId, FlowKey flowKey) {
+		NodeFlows nodeFlows = nodes.get(node);
+		if (nodeFlows == null) {
+			return null;
+		}
+		Entry entry = nodeFlows.remove(new EntryKey(tableId, flowKey));
+		if (nodeFlows.entries.isEmpty()) {
+			nodes.remove(node);
+		}
+		if (entry == null) {
+			return null;
+		}
+		Flow flow = flowStore.toFlow(entry.record);
+		flowStore.release(entry.record);
+		return flow;
+	}
+
+	/**
+	 * Remove a flow if the registered flow with its table and key is the same
+	 * flow.
+	 */
+	public synchronized void removeIfSame(InstanceIdentifier<FlowCapableNode> node, Flow flow) {
+		NodeFlows nodeFlows = nodes.get(node);
+		if (nodeFlows == null) {
+			return;
+		}
+		EntryKey key = new EntryKey(flow.getTableId(), flow.getKey());
+		Entry entry = nodeFlows.entries.get(key);
+		if (entry != null && flowStore.toFlow(entry.record).equals(flow)) {
+			remove(node, flow.getTableId(), flow.getKey());
+		}
+	}
+
+	/**
+	 * Remove all the flows of a node.
+	 *
+	 * @return the flows that were registered for the node.
+	 */
+	public synchronized Collection<Flow> removeNode(InstanceIdentifier<FlowCapableNode> node) {
+		ArrayList<Flow> retval = new ArrayList<Flow>();
+		NodeFlows nodeFlows = nodes.remove(node);
+		if (nodeFlows != null) {
+			for (Entry entry : nodeFlows.entries.values()) {
+				retval.add(flowStore.toFlow(entry.record));
+				flowStore.release(entry.record);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Find the flows of a table whose id starts with uriPrefix. If MAC addresses
+	 * are given, only the flows whose match has the source MAC equal to
+	 * srcMacAddress or the destination MAC equal to dstMacAddress are returned.
+	 *
+	 * @return a snapshot of the matching flows.
+	 */
+	public synchronized Collection<Flow> find(InstanceIdentifier<FlowCapableNode> node, short tableId,
+			String uriPrefix, MacAddress srcMacAddress, MacAddress dstMacAddress) {
+		ArrayList<Flow> retval = new ArrayList<Flow>();
+		NodeFlows nodeFlows = nodes.get(node);
+		if (nodeFlows == null) {
+			return retval;
+		}
+		ArrayList<Collection<Entry>> candidates = new ArrayList<Collection<Entry>>();
+		if (srcMacAddress != null || dstMacAddress != null) {
+			if (srcMacAddress != null) {
+				candidates.add(NodeFlows.bucket(nodeFlows.bySrcMac, srcMacAddress.getValue()));
+			}
+			if (dstMacAddress != null) {
+				candidates.add(NodeFlows.bucket(nodeFlows.byDstMac, dstMacAddress.getValue()));
+			}
+		} else if (uriPrefix != null && uriPrefix.equals(getUriPrefix(uriPrefix))) {
+			candidates.add(NodeFlows.bucket(nodeFlows.byUriPrefix, uriPrefix));
+		} else {
+			candidates.add(NodeFlows.bucket(nodeFlows.byTable, tableId));
+		}
+		LinkedHashSet<Entry> matched = new LinkedHashSet<Entry>();
+		for (Collection<Entry> candidate : candidates) {
+			for (Entry entry : candidate) {
+				if (entry.key.tableId == tableId
+						&& (uriPrefix == null || entry.record.getFlowId().startsWith(uriPrefix))) {
+					matched.add(entry);
+				}
+			}
+		}
+		for (Entry entry : matched) {
+			retval.add(flowStore.toFlow(entry.record));
+		}
+		return retval;
+	}
+
+	public synchronized boolean contains(InstanceIdentifier<FlowCapableNode> node, short tableId, FlowKey flowKey) {
+		NodeFlows nodeFlows = nodes.get(node);
+		return nodeFlows != null && nodeFlows.entries.containsKey(new EntryKey(tableId, flowKey));
+	}
+
+	/**
+	 * @return a snapshot of the flows of the node, in any table, whose MUD URI
+	 *         prefix is uriPrefix.
+	 */
+	public synchronized Collection<Flow> findByUriPrefix(InstanceIdentifier<FlowCapableNode> node, String uriPrefix) {
+		ArrayList<Flow> retval = new ArrayList<Flow>();
+		NodeFlows nodeFlows = nodes.get(node);
+		if (nodeFlows != null) {
+			for (Entry entry : NodeFlows.bucket(nodeFlows.byUriPrefix, uriPrefix)) {
+				retval.add(flowStore.toFlow(entry.record));
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @return true if the flow registered with the table and key of flow has the
+	 *         same content (match, instructions, cookie and other attributes).
+	 */
+	public synchronized boolean containsSame(InstanceIdentifier<FlowCapableNode> node, Flow flow) {
+		NodeFlows nodeFlows = nodes.get(node);
+		if (nodeFlows == null) {
+			return false;
+		}
+		Entry entry = nodeFlows.entries.get(new EntryKey(flow.getTableId(), flow.getKey()));
+		if (entry == null) {
+			return false;
+		}
+		FlowStore.Record record = flowStore.intern(flow);
+		try {
+			return record.contentHash() == entry.record.contentHash() && record.sameContent(entry.record);
+		} finally {
+			flowStore.release(record);
+		}
+	}
+
+	/**
+	 * @return true if a flow of the table has an id that starts with the prefix.
+	 */
+	public synchronized boolean exists(InstanceIdentifier<FlowCapableNode> node, short tableId, String flowIdPrefix) {
+		NodeFlows nodeFlows = nodes.get(node);
+		if (nodeFlows == null) {
+			return false;
+		}
+		Collection<Entry> candidates = flowIdPrefix.equals(getUriPrefix(flowIdPrefix))
+				? NodeFlows.bucket(nodeFlows.byUriPrefix, flowIdPrefix)
+				: NodeFlows.bucket(nodeFlows.byTable, tableId);
+		for (Entry entry : candidates) {
+			if (entry.key.tableId == tableId && entry.record.getFlowId().startsWith(flowIdPrefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return a snapshot of the flows of the node or null if there are none.
+	 */
+	public synchronized Collection<Flow> getFlows(InstanceIdentifier<FlowCapableNode> node) {
+		NodeFlows nodeFlows = nodes.get(node);
+		if (nodeFlows == null) {
+			return null;
+		}
+		ArrayList<Flow> retval = new ArrayList<Flow>(nodeFlows.entries.size());
+		for (Entry entry : nodeFlows.entries.values()) {
+			retval.add(flowStore.toFlow(entry.record));
+		}
+		return retval;
+	}
+
+	/**
+	 * @return a snapshot of the nodes that have registered flows.
+	 */
+	public synchronized Collection<InstanceIdentifier<FlowCapableNode>> getNodes() {
+		return new ArrayList<InstanceIdentifier<FlowCapableNode>>(nodes.keySet());
+	}
+
+	public synchronized int getFlowCount(InstanceIdentifier<FlowCapableNode> node) {
+		NodeFlows nodeFlows = nodes.get(node);
+		return nodeFlows == null ? 0 : nodeFlows.entries.size();
+	}
+
+}
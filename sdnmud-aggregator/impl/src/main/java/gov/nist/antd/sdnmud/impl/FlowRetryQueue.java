@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in memory queue of flow writes that failed and are tried again.
+ *
+ * Each switch has its own queue that is worked off one write at a time. After
+ * a failure the switch backs off exponentially (doubling from
+ * INITIAL_BACKOFF_MILLIS up to MAX_BACKOFF_MILLIS); a success resets the
+ * backoff. A write is given up after flow-retry-max-attempts attempts. The
+ * queues of all switches together hold at most flow-retry-queue-size writes;
+ * writes that fail when it is full are not retried and producers are expected
+ * to hold back new work while {@link #isSaturated()} is true.
+ *
+ * A retry is superseded (and dropped) when a later write of the same key is
+ * made, so a retried write never overtakes a newer one.
+ *
+ * @author mranga
+ *
+ */
+public class FlowRetryQueue {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FlowRetryQueue.class);
+
+	static final int DEFAULT_QUEUE_SIZE = 4096;
+
+	static final int DEFAULT_MAX_ATTEMPTS = 6;
+
+	private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+	private static final long MAX_BACKOFF_MILLIS = 10000;
+
+	/**
+	 * One more attempt of a failed write.
+	 */
+	public interface Retry {
+		/**
+		 * @return a future that completes when the attempt succeeded and completes
+		 *         exceptionally when it failed.
+		 */
+		CompletableFuture<Void> attempt();
+	}
+
+	private static final class Entry {
+		final String key;
+		final Retry retry;
+		final CompletableFuture<Void> result;
+		Throwable lastError;
+		// Attempts made so far, the one that failed first included.
+		int attempts = 1;
+
+		Entry(String key, Retry retry, CompletableFuture<Void> result, Throwable lastError) {
+			this.key = key;
+			this.retry = retry;
+			this.result = result;
+			this.lastError = lastError;
+		}
+	}
+
+	/*
+	 * Retries of one switch. Guarded by the FlowRetryQueue monitor.
+	 */
+	private static final class SwitchRetries {
+		final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+		// Consecutive failed attempts; sets the backoff.
+		int failures;
+		// An attempt is outstanding or scheduled.
+		boolean busy;
+	}
+
+	private final SdnmudProvider sdnmudProvider;
+
+	private final HashMap<String, SwitchRetries> switches = new HashMap<String, SwitchRetries>();
+
+	private int size;
+
+	private final AtomicLong retryCount = new AtomicLong();
+
+	private final AtomicLong recoveredCount = new AtomicLong();
+
+	private final AtomicLong abandonedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	public FlowRetryQueue(SdnmudProvider sdnmudProvider) {
+		this.sdnmudProvider = sdnmudProvider;
+	}
+
+	private int getQueueSize() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getFlowRetryQueueSize() != null) {
+			return sdnmudConfig.getFlowRetryQueueSize().intValue();
+		}
+		return DEFAULT_QUEUE_SIZE;
+	}
+
+	private int getMaxAttempts() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getFlowRetryMaxAttempts() != null
+				&& sdnmudConfig.getFlowRetryMaxAttempts() > 0) {
+			return sdnmudConfig.getFlowRetryMaxAttempts().intValue();
+		}
+		return DEFAULT_MAX_ATTEMPTS;
+	}
+
+	private static long getBackoffMillis(int failures) {
+		if (failures <= 0) {
+			return 0;
+		}
+		return Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(failures - 1, 20));
+	}
+
+	/**
+	 * Queue a write that failed to be tried again.
+	 *
+	 * @param nodeId -- the switch.
+	 * @param key    -- identifies what is written (a later write with the same
+	 *               key supersedes this one).
+	 * @param retry  -- makes another attempt.
+	 * @param result -- completed with the outcome of the retries.
+	 * @param error  -- the failure.
+	 * @return false if the queue is full (the write is not retried and result is
+	 *         left alone).
+	 */
+	public boolean retry(String nodeId, String key, Retry retry, CompletableFuture<Void> result, Throwable error) {
+		synchronized (this) {
+			if (size >= getQueueSize() || getMaxAttempts() <= 1) {
+				rejectedCount.incrementAndGet();
+				return false;
+			}
+			SwitchRetries switchRetries = switches.get(nodeId);
+			if (switchRetries == null) {
+				switchRetries = new SwitchRetries();
+				switches.put(nodeId, switchRetries);
+			}
+			switchRetries.queue.add(new Entry(key, retry, result, error));
+			switchRetries.failures++;
+			size++;
+			if (switchRetries.busy) {
+				return true;
+			}
+			switchRetries.busy = true;
+			schedule(nodeId, switchRetries);
+		}
+		return true;
+	}
+
+	/*
+	 * Called with the monitor held.
+	 */
+	private void schedule(final String nodeId, SwitchRetries switchRetries) {
+		sdnmudProvider.getTimingWheel().schedule(new Runnable() {
+			@Override
+			public void run() {
+				// Attempts may block briefly - keep them off the timer thread.
+				CompletableFuture.runAsync(new Runnable() {
+					@Override
+					public void run() {
+						attemptNext(nodeId);
+					}
+				});
+			}
+		}, getBackoffMillis(switchRetries.failures));
+	}
+
+	private void attemptNext(final String nodeId) {
+		final Entry entry;
+		final SwitchRetries switchRetries;
+		synchronized (this) {
+			switchRetries = switches.get(nodeId);
+			if (switchRetries == null) {
+				return;
+			}
+			entry = switchRetries.queue.peek();
+			if (entry == null) {
+				switchRetries.busy = false;
+				switches.remove(nodeId);
+				return;
+			}
+		}
+		retryCount.incrementAndGet();
+		CompletableFuture<Void> attempt;
+		try {
+			attempt = entry.retry.attempt();
+		} catch (RuntimeException ex) {
+			attempt = new CompletableFuture<Void>();
+			attempt.completeExceptionally(ex);
+		}
+		attempt.whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override
+			public void accept(Void result, Throwable error) {
+				attemptDone(nodeId, switchRetries, entry, error);
+			}
+		});
+	}
+
+	private void attemptDone(String nodeId, SwitchRetries switchRetries, Entry entry, Throwable error) {
+		boolean finished;
+		synchronized (this) {
+			if (switches.get(nodeId) != switchRetries) {
+				// The switch went away while the attempt was outstanding.
+				return;
+			}
+			if (switchRetries.queue.peek() != entry) {
+				// Cancelled while the attempt was outstanding -- go on with the next.
+				schedule(nodeId, switchRetries);
+				return;
+			}
+			entry.attempts++;
+			entry.lastError = error;
+			finished = error == null || entry.attempts >= getMaxAttempts();
+			if (finished) {
+				switchRetries.queue.poll();
+				size--;
+			}
+			switchRetries.failures = error == null ? 0 : switchRetries.failures + 1;
+			schedule(nodeId, switchRetries);
+		}
+		if (error == null) {
+			recoveredCount.incrementAndGet();
+			entry.result.complete(null);
+		} else if (finished) {
+			abandonedCount.incrementAndGet();
+			LOG.error("Giving up on flow write " + entry.key + " to " + nodeId + " after " + entry.attempts
+					+ " attempts", error);
+			entry.result.completeExceptionally(error);
+		}
+	}
+
+	/**
+	 * Drop the retry of a write that has been superseded.
+	 */
+	public void cancel(String nodeId, String key) {
+		cancel(nodeId, key, false);
+	}
+
+	/**
+	 * Drop the retries of all the writes whose key starts with keyPrefix.
+	 */
+	public void cancelAll(String nodeId, String keyPrefix) {
+		cancel(nodeId, keyPrefix, true);
+	}
+
+	private void cancel(String nodeId, String key, boolean prefix) {
+		ArrayList<Entry> cancelled = new ArrayList<Entry>();
+		synchronized (this) {
+			SwitchRetries switchRetries = switches.get(nodeId);
+			if (switchRetries == null) {
+				return;
+			}
+			for (Iterator<Entry> it = switchRetries.queue.iterator(); it.hasNext();) {
+				Entry entry = it.next();
+				if (prefix ? entry.key.startsWith(key) : entry.key.equals(key)) {
+					it.remove();
+					size--;
+					cancelled.add(entry);
+				}
+			}
+		}
+		for (Entry entry : cancelled) {
+			entry.result.completeExceptionally(new CancellationException("Superseded " + entry.key));
+		}
+	}
+
+	/**
+	 * Drop the retries of a switch that went away.
+	 */
+	public void removeSwitch(String nodeId) {
+		SwitchRetries switchRetries;
+		synchronized (this) {
+			switchRetries = switches.remove(nodeId);
+			if (switchRetries == null) {
+				return;
+			}
+			size -= switchRetries.queue.size();
+		}
+		for (Entry entry : switchRetries.queue) {
+			entry.result.completeExceptionally(new CancellationException("Switch " + nodeId + " is gone"));
+		}
+	}
+
+	/**
+	 * @return true if the queue is full. Producers of new flow writes should hold
+	 *         back.
+	 */
+	public synchronized boolean isSaturated() {
+		return size >= getQueueSize();
+	}
+
+	public synchronized int getQueueDepth() {
+		return size;
+	}
+
+	public synchronized int getQueueDepth(String nodeId) {
+		SwitchRetries switchRetries = switches.get(nodeId);
+		return switchRetries == null ? 0 : switchRetries.queue.size();
+	}
+
+	/**
+	 * @return the number of attempts made from the queue.
+	 */
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	/**
+	 * @return the number of writes that succeeded after being retried.
+	 */
+	public long getRecoveredCount() {
+		return recoveredCount.get();
+	}
+
+	/**
+	 * @return the number of writes given up after the last attempt failed.
+	 */
+	public long getAbandonedCount() {
+		return abandonedCount.get();
+	}
+
+	/**
+	 * @return the number of failed writes not retried because the queue was
+	 *         full.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.Instructions;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.Match;
+
+/**
+ * Single owner of the flows held in memory by the flow caches. A flow is kept
+ * as a compact record that refers to its match, its instructions, its name and
+ * its remaining attributes (table, priority, timeouts, flags) by canonical id.
+ * Each distinct match, instruction list, name and attribute set is stored once,
+ * no matter how many flows on how many switches use it, and is reference
+ * counted so it is dropped when the last record that uses it is released.
+ * Flow names often carry the addresses and ports of the flow, so they are kept
+ * out of the attribute sets, which are then shared by all the flows of a kind.
+ *
+ * Two records have equal content exactly when their ids, cookies and
+ * canonical ids are equal, so comparing flow contents does not walk the
+ * match and instruction trees.
+ *
+ * All methods are synchronized.
+ *
+ * @author mranga
+ *
+ */
+public class FlowStore {
+
+	/**
+	 * Compact, immutable flow record. Use {@link FlowStore#toFlow(Record)} to get
+	 * the flow back.
+	 */
+	public static final class Record {
+		private final String flowId;
+		private final short tableId;
+		private final FlowCookie cookie;
+		private final int matchId;
+		private final int instructionsId;
+		private final int attributesId;
+		private final int flowNameId;
+
+		private Record(String flowId, short tableId, FlowCookie cookie, int matchId, int instructionsId,
+				int attributesId, int flowNameId) {
+			this.flowId = flowId;
+			this.tableId = tableId;
+			this.cookie = cookie;
+			this.matchId = matchId;
+			this.instructionsId = instructionsId;
+			this.attributesId = attributesId;
+			this.flowNameId = flowNameId;
+		}
+
+		public String getFlowId() {
+			return flowId;
+		}
+
+		public short getTableId() {
+			return tableId;
+		}
+
+		/**
+		 * @return true if the two records hold the same flow content.
+		 */
+		public boolean sameContent(Record other) {
+			return other != null && matchId == other.matchId && instructionsId == other.instructionsId
+					&& attributesId == other.attributesId && flowNameId == other.flowNameId && tableId == other.tableId
+					&& flowId.equals(other.flowId)
+					&& (cookie == null ? other.cookie == null : cookie.equals(other.cookie));
+		}
+
+		public int contentHash() {
+			int hash = flowId.hashCode();
+			hash = 31 * hash + matchId;
+			hash = 31 * hash + instructionsId;
+			hash = 31 * hash + attributesId;
+			hash = 31 * hash + flowNameId;
+			return 31 * hash + (cookie == null ? 0 : cookie.hashCode());
+		}
+	}
+
+	/*
+	 * Canonical values with their ids and reference counts. Ids of released
+	 * values are reused. Id 0 stands for null.
+	 */
+	private static final class InternTable<T> {
+		private final HashMap<T, Integer> ids = new HashMap<T, Integer>();
+		private final ArrayList<T> values = new ArrayList<T>();
+		private int[] refCounts = new int[16];
+		private final ArrayList<Integer> freeIds = new ArrayList<Integer>();
+
+		InternTable() {
+			values.add(null);
+		}
+
+		int intern(T value) {
+			if (value == null) {
+				return 0;
+			}
+			Integer id = ids.get(value);
+			if (id == null) {
+				if (freeIds.isEmpty()) {
+					id = values.size();
+					values.add(value);
+					if (id >= refCounts.length) {
+						int[] grown = new int[refCounts.length * 2];
+						System.arraycopy(refCounts, 0, grown, 0, refCounts.length);
+						refCounts = grown;
+					}
+				} else {
+					id = freeIds.remove(freeIds.size() - 1);
+					values.set(id, value);
+				}
+				ids.put(value, id);
+			}
+			refCounts[id]++;
+			return id;
+		}
+
+		T get(int id) {
+			return values.get(id);
+		}
+
+		void release(int id) {
+			if (id == 0) {
+				return;
+			}
+			if (--refCounts[id] == 0) {
+				ids.remove(values.get(id));
+				values.set(id, null);
+				freeIds.add(id);
+			}
+		}
+
+		int size() {
+			return ids.size();
+		}
+	}
+
+	private final InternTable<Match> matches = new InternTable<Match>();
+	private final InternTable<Instructions> instructions = new InternTable<Instructions>();
+	private final InternTable<Flow> attributes = new InternTable<Flow>();
+	private final InternTable<String> flowIds = new InternTable<String>();
+	private final InternTable<String> flowNames = new InternTable<String>();
+
+	/**
+	 * Intern a flow. Every record returned here must eventually be given back
+	 * with {@link #release(Record)}.
+	 */
+	public synchronized Record intern(Flow flow) {
+		/* The attributes are the flow without the parts that are stored apart. */
+		Flow flowAttributes = new FlowBuilder(flow).setId(null).setKey(null).setCookie(null).setMatch(null)
+				.setInstructions(null).setFlowName(null).build();
+		int flowIdId = flowIds.intern(flow.getId().getValue());
+		return new Record(flowIds.get(flowIdId), flow.getTableId(), flow.getCookie(), matches.intern(flow.getMatch()),
+				instructions.intern(flow.getInstructions()), attributes.intern(flowAttributes),
+				flowNames.intern(flow.getFlowName()));
+	}
+
+	public synchronized void release(Record record) {
+		if (record == null) {
+			return;
+		}
+		matches.release(record.matchId);
+		instructions.release(record.instructionsId);
+		attributes.release(record.attributesId);
+		flowNames.release(record.flowNameId);
+		flowIds.release(flowIds.ids.get(record.flowId));
+	}
+
+	/**
+	 * @return the flow held by the record. The match and instructions of the
+	 *         returned flow are the canonical (shared) instances.
+	 */
+	public synchronized Flow toFlow(Record record) {
+		FlowId flowId = new FlowId(record.flowId);
+		return new FlowBuilder(attributes.get(record.attributesId)).setId(flowId).setKey(new FlowKey(flowId))
+				.setFlowName(flowNames.get(record.flowNameId)).setCookie(record.cookie)
+				.setMatch(matches.get(record.matchId))
+				.setInstructions(instructions.get(record.instructionsId)).build();
+	}
+
+	public synchronized int getMatchCount() {
+		return matches.size();
+	}
+
+	public synchronized int getInstructionsCount() {
+		return instructions.size();
+	}
+
+	public synchronized int getAttributesCount() {
+		return attributes.size();
+	}
+
+	public synchronized int getFlowNameCount() {
+		return flowNames.size();
+	}
+
+}
@@ -23,7 +23,6 @@ package gov.nist.antd.sdnmud.impl;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -85,8 +84,6 @@ public class FlowUtils {
 	private static final Logger LOG = LoggerFactory.getLogger(FlowUtils.class);
 
 	private static AtomicLong instructionKey = new AtomicLong(0x0);
-	
-	private static HashMap<FlowId, FlowBuilder> flowTable = new HashMap<FlowId,FlowBuilder>();
 
 	private FlowUtils() {
 		// Only static methods in this class
@@ -557,7 +554,6 @@ public class FlowUtils {
 	/**********************************************************************************/
 
 	static FlowBuilder createUnconditionalDropPacketFlow(short table, FlowId flowId, FlowCookie flowCookie) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		Instruction dropInstruction = createDropInstruction();
 		InstructionsBuilder isb = new InstructionsBuilder();
@@ -569,7 +565,6 @@ public class FlowUtils {
 				.setKey(new FlowKey(flowId)).setCookie(flowCookie)
 				.setPriority(SdnMudConstants.UNCONDITIONAL_DROP_PRIORITY).setBufferId(OFConstants.ANY).setHardTimeout(0)
 				.setIdleTimeout(0).setFlags(new FlowModFlags(false, false, false, false, false));
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 
 	}
@@ -581,7 +576,6 @@ public class FlowUtils {
 		LOG.info("FlowUtils: createMetadataMatchGoToTable " + flowCookie.getValue().toString(16) + " metadata "
 				+ metadata.toString(16) + " metadataMask " + metadataMask.toString(16) + " tableId " + tableId
 				+ " targetTable " + dropTableId);
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createMetadataMatch(matchBuilder, metadata, metadataMask);
@@ -596,7 +590,6 @@ public class FlowUtils {
 				.setPriority(priority).setBufferId(OFConstants.ANY).setHardTimeout(duration).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,fb);
 		return fb;
 	}
 
@@ -606,7 +599,6 @@ public class FlowUtils {
 		LOG.info("FlowUtils: createMetadataMatchGoToTableAndSendToController " + flowCookie.getValue().toString(16)
 				+ " metadata " + metadata.toString(16) + " metadataMask " + metadataMask.toString(16) + " tableId "
 				+ tableId + " targetTable " + targetTableId);
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createMetadataMatch(matchBuilder, metadata, metadataMask);
@@ -623,13 +615,11 @@ public class FlowUtils {
 				.setBufferId(OFConstants.ANY).setHardTimeout(duration).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-                flowTable.put(flowId,fb);
 		return fb;
 	}
 
 	static FlowBuilder createUnconditionalGoToNextTableFlow(short table, FlowId flowId, FlowCookie flowCookie) {
 		LOG.info("createGoToTableFlow ");
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 
 		FlowBuilder flowBuilder = new FlowBuilder().setTableId(table)
 				.setFlowName("unconditionalGoToTable:" + (short) (table + 1)).setId(flowId).setKey(new FlowKey(flowId))
@@ -647,14 +637,12 @@ public class FlowUtils {
 		flowBuilder.setMatch(matchBuilder.build()).setInstructions(isb.build())
 				.setPriority(SdnMudConstants.UNCONDITIONAL_GOTO_PRIORITY).setBufferId(OFConstants.ANY).setHardTimeout(0)
 				.setIdleTimeout(0).setFlags(new FlowModFlags(false, false, false, false, false));
-                flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 
 	}
 
 	static FlowBuilder createEthernetMatchSendPacketToControllerFlow(BigInteger metadata, BigInteger metadataMask,
 			boolean forwardFlag, Short tableId, FlowId flowId, FlowCookie flowCookie) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		// createIpV4Match(matchBuilder);
 		createEthernetTypeMatch(matchBuilder, 0x0800);
@@ -674,13 +662,11 @@ public class FlowUtils {
 				.setPriority(SdnMudConstants.UNCONDITIONAL_DROP_PRIORITY + 1).setBufferId(OFConstants.ANY)
 				.setHardTimeout(0).setIdleTimeout(0).setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,sendToControllerFlow);
 		return sendToControllerFlow;
 	}
 
 	static FlowBuilder createIpMatchSendPacketToControllerFlow(BigInteger metadata, BigInteger metadataMask,
 			boolean forwardFlag, Short tableId, FlowId flowId, FlowCookie flowCookie) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createIpV4Match(matchBuilder);
 		createEthernetTypeMatch(matchBuilder, 0x0800);
@@ -700,7 +686,6 @@ public class FlowUtils {
 				.setPriority(SdnMudConstants.UNCONDITIONAL_DROP_PRIORITY + 1).setBufferId(OFConstants.ANY)
 				.setHardTimeout(0).setIdleTimeout(0).setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,sendToControllerFlow);
 		return sendToControllerFlow;
 	}
 
@@ -708,7 +693,6 @@ public class FlowUtils {
 			boolean sendToController) {
 
 		LOG.info("createPermitPacketsToDhcpServerFlow ");
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 
 		FlowBuilder flowBuilder = new FlowBuilder().setTableId(tableId).setFlowName("permitPacketsToDhcpServerFlow")
 				.setId(flowId).setKey(new FlowKey(flowId)).setCookie(flowCookie);
@@ -735,7 +719,6 @@ public class FlowUtils {
 				.setBufferId(OFConstants.ANY).setHardTimeout(0).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 
 	}
@@ -744,7 +727,6 @@ public class FlowUtils {
 			boolean sendToController) {
 
 		LOG.info("createPermitPacketsFromDhcpServerFlow ");
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 
 		FlowBuilder flowBuilder = new FlowBuilder().setTableId(tableId).setFlowName("permitPacketsFromDhcpServerFlow")
 				.setId(flowId).setKey(new FlowKey(flowId)).setCookie(flowCookie);
@@ -763,7 +745,6 @@ public class FlowUtils {
 				.setBufferId(OFConstants.ANY).setHardTimeout(0).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 
 	}
@@ -773,7 +754,6 @@ public class FlowUtils {
 			Short tableId, int priority, BigInteger newMetadata, BigInteger newMetadataMask, FlowId flowId,
 			FlowCookie flowCookie) {
 
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 
 		MatchBuilder matchBuilder = new MatchBuilder();
 
@@ -799,7 +779,6 @@ public class FlowUtils {
 				.setBufferId(OFConstants.ANY).setHardTimeout(0).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,fb);
 		return fb;
 	}
 
@@ -810,7 +789,6 @@ public class FlowUtils {
 		LOG.info("createMetadataSrcIpAndPortMatchGoTo metadata = " + metadata.toString(16) + " metadataMask = "
 				+ metadataMask.toString(16) + " ipv4Address = " + address.getValue() + " destinationPort = " + srcPort
 				+ " protocol " + protocol + " tableId " + tableId + " flowId " + flowId);
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		short targetTable = (short) (tableId + 1);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createMetadataMatch(matchBuilder, metadata, metadataMask);
@@ -833,14 +811,12 @@ public class FlowUtils {
 				.setPriority(priority).setBufferId(OFConstants.ANY).setHardTimeout(0).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,fb);
 		return fb;
 	}
 
 	static FlowBuilder createMetadaProtocolAndSrcDestPortMatchGoToTable(BigInteger metadata, BigInteger metadataMask,
 			short protocol, int srcPort, int destPort, short tableId, int priority, BigInteger newMetadata,
 			BigInteger newMetadataMask, boolean sendToController, FlowId flowId, FlowCookie flowCookie) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createMetadataMatch(matchBuilder, metadata, metadataMask);
 		createEthernetTypeMatch(matchBuilder, 0x800);
@@ -870,13 +846,11 @@ public class FlowUtils {
 				.setPriority(priority).setBufferId(OFConstants.ANY).setHardTimeout(0).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,fb);
 		return fb;
 	}
 
 	static FlowBuilder createSourceMacMatchSetMetadataGoToNextTableFlow(MacAddress srcMac, BigInteger metadata,
 			BigInteger metadataMask, short tableId, FlowId flowId, FlowCookie flowCookie, int timeout) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createEthernetSourceMatch(matchBuilder, srcMac);
@@ -890,7 +864,6 @@ public class FlowUtils {
 				.setHardTimeout(2 * timeout).setIdleTimeout(timeout)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,fb);
 		return fb;
 	}
 	
@@ -919,7 +892,6 @@ public class FlowUtils {
 	static FlowBuilder createDestMacMatchSetMetadataAndGoToNextTableFlow(MacAddress dstMac, BigInteger metadata,
 			BigInteger metadataMask, short tableId, FlowId flowId, FlowCookie flowCookie, int timeout) {
 
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		// createEthernetDestNoEthTypeMatch(matchBuilder, dstMac);
 		createEthernetDestMatch(matchBuilder, dstMac);
@@ -934,7 +906,6 @@ public class FlowUtils {
 				.setHardTimeout(2 * timeout).setIdleTimeout(timeout)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,fb);
 		return fb;
 	}
 	
@@ -960,7 +931,6 @@ public class FlowUtils {
 
 	static FlowBuilder createDestAddressPortProtocolMatchGoToNextFlow(Ipv4Address dnsAddress, int port, short protocol,
 			short tableId,  short nextTable, int priority, boolean sendPacketToController, FlowId flowId, FlowCookie flowCookie) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		FlowBuilder flowBuilder = new FlowBuilder().setTableId(tableId)
 				.setFlowName(String.format("permitPacketsToServerFlow(address=%s:%d,protocol=%d,sendToController=%b",
 						dnsAddress.getValue(), port, protocol, sendPacketToController))
@@ -978,7 +948,6 @@ public class FlowUtils {
 		flowBuilder.setMatch(match).setInstructions(isb.build()).setPriority(priority).setBufferId(OFConstants.ANY)
 				.setHardTimeout(0).setIdleTimeout(0).setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 	}
 
@@ -986,7 +955,6 @@ public class FlowUtils {
 			short tableId, short nextTable, 
 			int priority, boolean sendToController, FlowId flowId, FlowCookie flowCookie) {
 		
-		if ( flowTable.get(flowId) != null ) return flowTable.get(flowId);
 
 		FlowBuilder flowBuilder = new FlowBuilder().setTableId(tableId)
 				.setFlowName(String.format("SrcAddressPortProtocolMatchGoToNextFlow(address=%s:%d protocol=%d)",
@@ -1005,7 +973,6 @@ public class FlowUtils {
 		flowBuilder.setMatch(match).setInstructions(isb.build()).setPriority(priority).setBufferId(OFConstants.ANY)
 				.setHardTimeout(0).setIdleTimeout(0).setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 	}
 
@@ -1013,7 +980,6 @@ public class FlowUtils {
 			short tableId, BigInteger metadata, BigInteger metadataMask, int timeout, FlowId flowId,
 			FlowCookie flowCookie) {
 
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		FlowBuilder flowBuilder = new FlowBuilder().setTableId(tableId)
 				.setFlowName(String.format("srcIpAddressProtocolMatchGoToNext(address=%s,%d, protocol=%d)",
 						srcIp.getValue(), port, protocol))
@@ -1031,7 +997,6 @@ public class FlowUtils {
 				.setPriority(SdnMudConstants.MAX_PRIORITY).setBufferId(OFConstants.ANY).setHardTimeout(timeout / 2)
 				.setIdleTimeout(timeout).setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 	}
 
@@ -1039,7 +1004,6 @@ public class FlowUtils {
 			BigInteger metadataMask, Ipv4Address srcIp, int sourcePort, Ipv4Address dstIp, int dstPort, Short tableId,
 			int priority, Short targetTableId, FlowId flowId, FlowCookie flowCookie, int timeout) {
 
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createEthernetTypeMatch(matchBuilder, 0x800);
 		FlowUtils.createSrcDestIpv4Match(matchBuilder, srcIp, dstIp);
@@ -1064,7 +1028,6 @@ public class FlowUtils {
 				.setBufferId(OFConstants.ANY).setHardTimeout(timeout / 2).setIdleTimeout(timeout)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 
 	}
@@ -1073,7 +1036,6 @@ public class FlowUtils {
 			BigInteger metadataMask, int srcPort, int dstPort, Short tableId, int priotity, Short targetTableId,
 			FlowId flowId, FlowCookie flowCookie, int timeout) {
 
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createEthernetTypeMatch(matchBuilder, 0x800);
 		createSrcDstProtocolPortMatch(matchBuilder, SdnMudConstants.TCP_PROTOCOL, srcPort, dstPort);
@@ -1095,14 +1057,12 @@ public class FlowUtils {
 				.setBufferId(OFConstants.ANY).setHardTimeout(timeout / 2).setIdleTimeout(timeout)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 
 	}
 
 	public static FlowBuilder createMetadataMatchGoToNextTableFlow(BigInteger metadata, BigInteger metadataMask,
 			short tableId, short targetTableId, int priority, FlowId flowId, FlowCookie flowCookie, String flowName) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createEthernetTypeMatch(matchBuilder, 0x800);
 		createMetadataMatch(matchBuilder, metadata, metadataMask);
@@ -1119,14 +1079,12 @@ public class FlowUtils {
 				.setBufferId(OFConstants.ANY).setHardTimeout(0).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 	}
 
 	public static FlowBuilder createNormalFlow(boolean outputToInport, short table, FlowId flowId,
 			FlowCookie flowCookie) {
 
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		Instruction normal;
 		if (!outputToInport) {
 			normal = FlowUtils.createNormalInstruction();
@@ -1146,13 +1104,11 @@ public class FlowUtils {
 		flowBuilder.setMatch(matchBuilder.build()).setInstructions(insb.build())
 				.setPriority(SdnMudConstants.DST_MATCHED_GOTO_FLOW_PRIORITY + 1).setBufferId(OFConstants.ANY)
 				.setHardTimeout(0).setIdleTimeout(0).setFlags(new FlowModFlags(false, false, false, false, false));
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 	}
 
 	public static FlowBuilder createMetadataMatchDropFlow(BigInteger metadata, BigInteger metadataMask,short tableId, FlowId flowId, 
 			FlowCookie flowCookie, int timeout) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder  = new MatchBuilder();
 		FlowUtils.createMetadataMatch(matchBuilder, metadata, metadataMask);
 		Instruction dropInstruction = FlowUtils.createDropInstruction();
@@ -1166,7 +1122,6 @@ public class FlowUtils {
 		flowBuilder.setMatch(matchBuilder.build()).setInstructions(insb.build())
 				.setPriority(SdnMudConstants.DST_MATCHED_GOTO_FLOW_PRIORITY + 1).setBufferId(OFConstants.ANY)
 				.setHardTimeout(timeout).setIdleTimeout(0).setFlags(new FlowModFlags(false, false, false, false, false));
-        flowTable.put(flowId,flowBuilder);
 		return flowBuilder;
 		
 	}
@@ -1174,7 +1129,6 @@ public class FlowUtils {
 	
 	public static FlowBuilder createSourceMacMatchDropFlow(MacAddress srcMac, short tableId, FlowId flowId,
 			FlowCookie flowCookie, int timeout) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createEthernetSourceMatch(matchBuilder, srcMac);
 		Instruction dropInstruction = FlowUtils.createDropInstruction();
@@ -1190,13 +1144,11 @@ public class FlowUtils {
 				.setPriority(SdnMudConstants.SRC_MATCHED_GOTO_FLOW_PRIORITY).setBufferId(OFConstants.ANY)
 				.setHardTimeout(timeout).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
-        flowTable.put(flowId,fb);
 		return fb;
 	}
 	
 	public static FlowBuilder createDestinationMacMatchDropFlow(MacAddress destinationMac, short tableId, FlowId flowId,
 			FlowCookie flowCookie, int timeout) {
-        if (flowTable.get(flowId) != null ) return flowTable.get(flowId);
 		MatchBuilder matchBuilder = new MatchBuilder();
 		createEthernetDestMatch(matchBuilder, destinationMac);
 		Instruction dropInstruction = FlowUtils.createDropInstruction();
@@ -1213,7 +1165,6 @@ public class FlowUtils {
 				.setHardTimeout(timeout).setIdleTimeout(0)
 				.setFlags(new FlowModFlags(false, false, false, false, false));
 
-        flowTable.put(flowId,fb);
 		return fb;
 	}
 
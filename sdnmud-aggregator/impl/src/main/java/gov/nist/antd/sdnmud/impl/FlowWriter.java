@@ -17,7 +17,18 @@
 
 package gov.nist.antd.sdnmud.impl;
 
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Uri;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNode;
@@ -25,46 +36,201 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.ta
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.TableKey;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.AddFlowInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.AddFlowInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.RemoveFlowInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.RemoveFlowInputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.service.rev130819.SalFlowService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowRef;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.MatchBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.NodeRef;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.nodes.Node;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
 import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.JdkFutureAdapters;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
 
 /**
+ * Writes flows straight to the switches through the SalFlowService.
+ *
+ * Writes are asynchronous and pipelined. Up to flow-write-window RPCs may be
+ * outstanding per switch; further writes wait in a per-switch queue and are
+ * sent in order as responses come back. A write that needs ordering (a delete
+ * that later writes must not overtake) is a barrier: it is sent only after
+ * everything before it has completed, with the OpenFlow barrier set, and
+ * nothing after it is sent until it completes. Other writes go out without a
+ * barrier.
+ *
+ * Adds that fail are handed to the FlowRetryQueue and tried again with
+ * backoff. Removes are not retried.
+ *
+ * Flows without timeouts that the switch acknowledged are remembered until they
+ * are removed, so a switch that reconnects can be checked against them. Adding
+ * such a flow again unchanged is a no-op and is not sent.
+ *
  * @author mranga
  *
  */
 public class FlowWriter {
 
-	private SalFlowService salFlowService;
+	private final SalFlowService salFlowService;
+	private MeterManager meterManager;
+	private SdnmudProvider sdnmudProvider;
 	private static final Logger LOG = LoggerFactory.getLogger(FlowWriter.class);
 
-	public FlowWriter(SalFlowService salFlowService) {
+	static final int DEFAULT_WRITE_WINDOW = 32;
+
+	// Time a blocking write waits for the switch.
+	private static final long WRITE_TIMEOUT_SECONDS = 30;
+
+	private final ConcurrentHashMap<String, SwitchWindow> windows = new ConcurrentHashMap<String, SwitchWindow>();
+
+	private final AtomicLong completedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private final AtomicLong suppressedCount = new AtomicLong();
+
+	// Acknowledged flows that do not time out, per switch.
+	private final FlowRegistry permanentFlows;
+
+	/*
+	 * A flow RPC that has not been sent yet.
+	 */
+	private abstract static class PendingWrite {
+		final String flowId;
+		final boolean barrier;
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+		PendingWrite(String flowId, boolean barrier) {
+			this.flowId = flowId;
+			this.barrier = barrier;
+		}
+
+		abstract Future<? extends RpcResult<?>> send(SalFlowService salFlowService);
+	}
+
+	/*
+	 * Outstanding and queued writes of one switch. Guarded by its own monitor.
+	 */
+	private static final class SwitchWindow {
+		final int size;
+		final ArrayDeque<PendingWrite> waiting = new ArrayDeque<PendingWrite>();
+		int inFlight;
+		boolean barrierInFlight;
+		boolean dispatching;
+		boolean redispatch;
+
+		SwitchWindow(int size) {
+			this.size = size;
+		}
+	}
+
+	public FlowWriter(SdnmudProvider sdnmudProvider, SalFlowService salFlowService, MeterManager meterManager) {
+		this.sdnmudProvider = sdnmudProvider;
 		this.salFlowService = salFlowService;
+		this.meterManager = meterManager;
+		this.permanentFlows = new FlowRegistry(sdnmudProvider.getFlowStore());
+	}
+
+	private int getWindowSize() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getFlowWriteWindow() != null
+				&& sdnmudConfig.getFlowWriteWindow() > 0) {
+			return sdnmudConfig.getFlowWriteWindow().intValue();
+		}
+		return DEFAULT_WRITE_WINDOW;
 	}
 
-	public synchronized void writeFlow(FlowBuilder fb, InstanceIdentifier<FlowCapableNode> node) {
+	private SwitchWindow getWindow(String nodeId) {
+		SwitchWindow window = windows.get(nodeId);
+		if (window == null) {
+			SwitchWindow newWindow = new SwitchWindow(getWindowSize());
+			window = windows.putIfAbsent(nodeId, newWindow);
+			if (window == null) {
+				window = newWindow;
+			}
+		}
+		return window;
+	}
+
+	/**
+	 * Write a flow and wait for the switch to acknowledge it.
+	 */
+	public void writeFlow(FlowBuilder fb, InstanceIdentifier<FlowCapableNode> node) {
 		this.writeFlow(fb.build(), node);
 	}
+
 	public static final InstanceIdentifier<Node> getNodePath(final InstanceIdentifier<?> nodeChild) {
 
 		return nodeChild.firstIdentifierOf(Node.class);
 	}
 
+	/**
+	 * Write a flow and wait for the switch to acknowledge it.
+	 */
+	public void writeFlow(Flow flow, InstanceIdentifier<FlowCapableNode> node) {
+		try {
+			writeFlowAsync(flow, node).get(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			LOG.error("SalFlowService: problem writing the flow to switch ", e);
+		}
+	}
+
+	public CompletableFuture<Void> writeFlowAsync(FlowBuilder fb, InstanceIdentifier<FlowCapableNode> node) {
+		return this.writeFlowAsync(fb.build(), node, false);
+	}
+
+	public CompletableFuture<Void> writeFlowAsync(Flow flow, InstanceIdentifier<FlowCapableNode> node) {
+		return this.writeFlowAsync(flow, node, false);
+	}
 
-	public synchronized void writeFlow(Flow flow, InstanceIdentifier<FlowCapableNode> node) {
+	/**
+	 * Queue a flow to be added to a switch. The write is skipped if the switch
+	 * already acknowledged the same flow and it does not time out.
+	 *
+	 * @param flow    -- the flow.
+	 * @param node    -- the switch.
+	 * @param barrier -- order the write with respect to all other writes to the
+	 *                switch.
+	 * @return a future that completes when the switch has acknowledged the flow
+	 *         and completes exceptionally if the write failed.
+	 */
+	public CompletableFuture<Void> writeFlowAsync(Flow flow, InstanceIdentifier<FlowCapableNode> node,
+			boolean barrier) {
+		flow = meterManager.attachMeter(flow, node);
+		if (isPermanent(flow) && permanentFlows.containsSame(node, flow)) {
+			suppressedCount.incrementAndGet();
+			return CompletableFuture.<Void>completedFuture(null);
+		}
+		return this.addFlowAsync(flow, node, barrier);
+	}
+
+	/**
+	 * Queue a flow to be added to a switch even if it is believed to be there
+	 * already (used to repair a switch that lost flows).
+	 */
+	public CompletableFuture<Void> rewriteFlowAsync(Flow flow, InstanceIdentifier<FlowCapableNode> node) {
+		return this.addFlowAsync(meterManager.attachMeter(flow, node), node, false);
+	}
+
+	private CompletableFuture<Void> addFlowAsync(Flow flow, InstanceIdentifier<FlowCapableNode> node,
+			boolean barrier) {
 		AddFlowInputBuilder afib = new AddFlowInputBuilder();
 
 		afib.setNode(new NodeRef(getNodePath(node)));
 		afib.setTableId(flow.getTableId());
 		afib.setPriority(flow.getPriority());
-		afib.setBarrier(flow.isBarrier());
 		afib.setCookie(flow.getCookie());
 		afib.setCookieMask(flow.getCookieMask());
 		afib.setInstructions(flow.getInstructions());
@@ -74,27 +240,99 @@ public class FlowWriter {
 		afib.setMatch(flow.getMatch());
 		afib.setBufferId(flow.getBufferId());
 		afib.setFlags(flow.getFlags());
-		afib.setBarrier(true);
+		afib.setBarrier(barrier);
 		final InstanceIdentifier<Flow> path1 = node.child(Table.class, new TableKey(flow.getTableId()))
 				.child(Flow.class, flow.getKey());
 		afib.setFlowRef(new FlowRef(path1));
 		afib.setStrict(false);
 		afib.setTransactionUri(new Uri(flow.getId().getValue()));
 
-		try {
-			salFlowService.addFlow(afib.build()).get();
-		} catch (InterruptedException | ExecutionException e) {
-			LOG.error("SalFlowService: problem writing the flow to switch ", e);
+		final AddFlowInput addFlowInput = afib.build();
+		CompletableFuture<Void> future = addWithRetry(IdUtils.getNodeUri(node), flow.getTableId(),
+				flow.getId().getValue(), barrier, addFlowInput);
+		if (isPermanent(flow)) {
+			final Flow writtenFlow = flow;
+			final InstanceIdentifier<FlowCapableNode> writtenNode = node;
+			future.thenRun(new Runnable() {
+				@Override
+				public void run() {
+					permanentFlows.add(writtenNode, writtenFlow);
+				}
+			});
 		}
+		return future;
 	}
 
-	public synchronized void deleteFlows(InstanceIdentifier<FlowCapableNode> node, Flow flow) {
+	// Flow ids are only unique within a table.
+	private static String getRetryKey(short tableId, String flowId) {
+		return "flow:" + tableId + ":" + flowId;
+	}
+
+	/*
+	 * Send an add and, if it fails, hand it to the retry queue. A pending retry
+	 * of an earlier write of the same flow is dropped since this one supersedes
+	 * it.
+	 */
+	private CompletableFuture<Void> addWithRetry(final String nodeId, short tableId, final String flowId,
+			final boolean barrier, final AddFlowInput addFlowInput) {
+		final FlowRetryQueue retryQueue = sdnmudProvider.getFlowRetryQueue();
+		final String retryKey = getRetryKey(tableId, flowId);
+		retryQueue.cancel(nodeId, retryKey);
+		final FlowRetryQueue.Retry retry = new FlowRetryQueue.Retry() {
+			@Override
+			public CompletableFuture<Void> attempt() {
+				return enqueue(nodeId, new PendingWrite(flowId, barrier) {
+					@Override
+					Future<? extends RpcResult<?>> send(SalFlowService salFlowService) {
+						return salFlowService.addFlow(addFlowInput);
+					}
+				});
+			}
+		};
+		final CompletableFuture<Void> result = new CompletableFuture<Void>();
+		retry.attempt().whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override
+			public void accept(Void ignored, Throwable error) {
+				if (error == null) {
+					result.complete(null);
+				} else if (!retryQueue.retry(nodeId, retryKey, retry, result, error)) {
+					result.completeExceptionally(error);
+				}
+			}
+		});
+		return result;
+	}
+
+	private static boolean isPermanent(Flow flow) {
+		return (flow.getHardTimeout() == null || flow.getHardTimeout() == 0)
+				&& (flow.getIdleTimeout() == null || flow.getIdleTimeout() == 0);
+	}
+
+	public void deleteFlows(InstanceIdentifier<FlowCapableNode> node, Flow flow) {
+		deleteFlowAsync(node, flow);
+	}
+
+	/**
+	 * Queue a flow to be removed from a switch. Removes are barriers so that a
+	 * flow written after the remove is not removed by it.
+	 */
+	public CompletableFuture<Void> deleteFlowAsync(InstanceIdentifier<FlowCapableNode> node, Flow flow) {
+		return this.deleteFlowAsync(node, flow, false);
+	}
+
+	/**
+	 * Queue a flow to be removed from a switch.
+	 *
+	 * @param strict -- remove only the flow with exactly this match and priority
+	 *               rather than every flow the match covers.
+	 */
+	public CompletableFuture<Void> deleteFlowAsync(InstanceIdentifier<FlowCapableNode> node, Flow flow,
+			boolean strict) {
 		RemoveFlowInputBuilder afib = new RemoveFlowInputBuilder();
 
 		afib.setNode(new NodeRef(getNodePath(node)));
 		afib.setTableId(flow.getTableId());
 		afib.setPriority(flow.getPriority());
-		afib.setBarrier(flow.isBarrier());
 		afib.setCookie(flow.getCookie());
 		afib.setCookieMask(flow.getCookieMask());
 		afib.setInstructions(flow.getInstructions());
@@ -105,13 +343,237 @@ public class FlowWriter {
 		afib.setBufferId(flow.getBufferId());
 		afib.setFlags(flow.getFlags());
 		afib.setBarrier(true);
+		afib.setStrict(strict);
 		final InstanceIdentifier<Flow> path1 = node.child(Table.class, new TableKey(flow.getTableId()))
 				.child(Flow.class, flow.getKey());
 		afib.setFlowRef(new FlowRef(path1));
 
-		salFlowService.removeFlow(afib.build());
+		final RemoveFlowInput removeFlowInput = afib.build();
+		sdnmudProvider.getFlowRetryQueue().cancel(IdUtils.getNodeUri(node),
+				getRetryKey(flow.getTableId(), flow.getId().getValue()));
+		CompletableFuture<Void> future = enqueue(IdUtils.getNodeUri(node),
+				new PendingWrite(flow.getId().getValue(), true) {
+					@Override
+					Future<? extends RpcResult<?>> send(SalFlowService salFlowService) {
+						return salFlowService.removeFlow(removeFlowInput);
+					}
+				});
+		final short tableId = flow.getTableId();
+		final FlowKey flowKey = flow.getKey();
+		final InstanceIdentifier<FlowCapableNode> removedNode = node;
+		future.thenRun(new Runnable() {
+			@Override
+			public void run() {
+				permanentFlows.remove(removedNode, tableId, flowKey);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Remove, with one request, every flow of a table whose cookie has the bits of
+	 * cookieMask set as in flowCookie. See the cookie layout in SdnMudConstants.
+	 * Like other removes this is a barrier.
+	 */
+	public CompletableFuture<Void> removeFlowsByCookie(InstanceIdentifier<FlowCapableNode> node, short tableId,
+			final FlowCookie flowCookie, final BigInteger cookieMask) {
+		RemoveFlowInputBuilder rfib = new RemoveFlowInputBuilder();
+		rfib.setNode(new NodeRef(getNodePath(node)));
+		rfib.setTableId(tableId);
+		rfib.setCookie(flowCookie);
+		rfib.setCookieMask(new FlowCookie(cookieMask));
+		// An empty match covers every flow of the table.
+		rfib.setMatch(new MatchBuilder().build());
+		rfib.setStrict(false);
+		rfib.setBarrier(true);
+
+		final RemoveFlowInput removeFlowInput = rfib.build();
+		String description = "cookie " + flowCookie.getValue().toString(16) + "/" + cookieMask.toString(16)
+				+ " table " + tableId;
+		CompletableFuture<Void> future = enqueue(IdUtils.getNodeUri(node), new PendingWrite(description, true) {
+			@Override
+			Future<? extends RpcResult<?>> send(SalFlowService salFlowService) {
+				return salFlowService.removeFlow(removeFlowInput);
+			}
+		});
+		final InstanceIdentifier<FlowCapableNode> removedNode = node;
+		final short removedTableId = tableId;
+		future.thenRun(new Runnable() {
+			@Override
+			public void run() {
+				for (Flow flow : getPermanentFlows(removedNode)) {
+					if (flow.getTableId() == removedTableId && flow.getCookie() != null && flow.getCookie().getValue()
+							.and(cookieMask).equals(flowCookie.getValue().and(cookieMask))) {
+						permanentFlows.remove(removedNode, removedTableId, flow.getKey());
+					}
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * @return the flows without timeouts that the switch acknowledged and that
+	 *         have not been removed.
+	 */
+	public Collection<Flow> getPermanentFlows(InstanceIdentifier<FlowCapableNode> node) {
+		Collection<Flow> flows = permanentFlows.getFlows(node);
+		return flows == null ? new ArrayList<Flow>() : flows;
+	}
+
+	/**
+	 * Forget the flows of a switch that is gone for good.
+	 */
+	public void forgetFlows(InstanceIdentifier<FlowCapableNode> node) {
+		permanentFlows.removeNode(node);
+	}
+
+	/**
+	 * Drop the write window of a switch that disconnected. Writes still queued in
+	 * it are sent as its outstanding writes complete; a new window is made when
+	 * the switch is written to again.
+	 */
+	public void removeSwitch(String nodeId) {
+		windows.remove(nodeId);
+	}
+
+	private CompletableFuture<Void> enqueue(String nodeId, PendingWrite write) {
+		SwitchWindow window = getWindow(nodeId);
+		synchronized (window) {
+			window.waiting.add(write);
+		}
+		dispatch(window);
+		return write.future;
+	}
+
+	/*
+	 * Send the writes at the head of the queue that the window allows. Responses
+	 * that arrive on the sending thread (or concurrently) while we are sending
+	 * make us go around again rather than recurse.
+	 */
+	private void dispatch(SwitchWindow window) {
+		synchronized (window) {
+			if (window.dispatching) {
+				window.redispatch = true;
+				return;
+			}
+			window.dispatching = true;
+		}
+		ArrayList<PendingWrite> ready = new ArrayList<PendingWrite>();
+		while (true) {
+			synchronized (window) {
+				window.redispatch = false;
+				while (!window.waiting.isEmpty() && !window.barrierInFlight) {
+					PendingWrite next = window.waiting.peek();
+					if (next.barrier ? window.inFlight > 0 : window.inFlight >= window.size) {
+						break;
+					}
+					window.waiting.poll();
+					window.inFlight++;
+					window.barrierInFlight = next.barrier;
+					ready.add(next);
+				}
+				if (ready.isEmpty() && !window.redispatch) {
+					window.dispatching = false;
+					return;
+				}
+			}
+			for (PendingWrite write : ready) {
+				send(window, write);
+			}
+			ready.clear();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void send(final SwitchWindow window, final PendingWrite write) {
+		ListenableFuture<RpcResult<?>> future;
+		try {
+			Future<? extends RpcResult<?>> result = write.send(salFlowService);
+			if (result instanceof ListenableFuture) {
+				future = (ListenableFuture<RpcResult<?>>) result;
+			} else {
+				future = JdkFutureAdapters.listenInPoolThread((Future<RpcResult<?>>) result);
+			}
+		} catch (RuntimeException ex) {
+			complete(window, write, ex);
+			return;
+		}
+		Futures.addCallback(future, new FutureCallback<RpcResult<?>>() {
+			@Override
+			public void onSuccess(RpcResult<?> result) {
+				if (result != null && result.isSuccessful()) {
+					complete(window, write, null);
+				} else {
+					complete(window, write, new IllegalStateException(
+							"Flow write failed " + (result == null ? "" : result.getErrors())));
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				complete(window, write, t);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private void complete(SwitchWindow window, PendingWrite write, Throwable error) {
+		synchronized (window) {
+			window.inFlight--;
+			if (write.barrier) {
+				window.barrierInFlight = false;
+			}
+		}
+		if (error == null) {
+			completedCount.incrementAndGet();
+			write.future.complete(null);
+		} else {
+			failedCount.incrementAndGet();
+			LOG.error("SalFlowService: problem writing the flow to switch " + write.flowId, error);
+			write.future.completeExceptionally(error);
+		}
+		dispatch(window);
+	}
+
+	/**
+	 * @return the number of flow RPCs sent to the switch and not yet answered.
+	 */
+	public int getInFlightCount(String nodeId) {
+		SwitchWindow window = windows.get(nodeId);
+		if (window == null) {
+			return 0;
+		}
+		synchronized (window) {
+			return window.inFlight;
+		}
+	}
+
+	/**
+	 * @return the number of flow RPCs waiting for room in the window of the switch.
+	 */
+	public int getQueuedCount(String nodeId) {
+		SwitchWindow window = windows.get(nodeId);
+		if (window == null) {
+			return 0;
+		}
+		synchronized (window) {
+			return window.waiting.size();
+		}
+	}
+
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return the number of adds not sent because the same flow was installed.
+	 */
+	public long getSuppressedCount() {
+		return suppressedCount.get();
 	}
-	
-	
 
 }
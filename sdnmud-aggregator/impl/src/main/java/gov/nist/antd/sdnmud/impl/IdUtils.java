@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Uri;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.MacAddress;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNode;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowId;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
@@ -97,6 +98,64 @@ public class IdUtils {
 		return new FlowCookie(BigInteger.valueOf(Math.abs(getFlowHash(flowCookieId))));
 	}
 
+	/**
+	 * Create a flow cookie that carries the MUD URL id and the device id of a
+	 * flow along with its flow class (see the cookie layout in SdnMudConstants).
+	 *
+	 * @param flowClass -- one of the well known cookies.
+	 * @param mudUrlId  -- from getMudUrlId or 0.
+	 * @param deviceId  -- from getDeviceId or 0.
+	 */
+	public static FlowCookie createFlowCookie(FlowCookie flowClass, int mudUrlId, int deviceId) {
+		return new FlowCookie(getFlowClass(flowClass).getValue()
+				.or(BigInteger.valueOf(mudUrlId).shiftLeft(SdnMudConstants.COOKIE_MUD_URL_ID_SHIFT))
+				.or(BigInteger.valueOf(deviceId).shiftLeft(SdnMudConstants.COOKIE_DEVICE_ID_SHIFT)));
+	}
+
+	/**
+	 * @return the flow class of a cookie (the cookie without the MUD URL id and
+	 *         the device id).
+	 */
+	public static FlowCookie getFlowClass(FlowCookie flowCookie) {
+		if (flowCookie == null) {
+			return null;
+		}
+		return new FlowCookie(flowCookie.getValue().and(SdnMudConstants.COOKIE_FLOW_CLASS_MASK));
+	}
+
+	/*
+	 * Ids are never 0 so a cookie with the id set is told apart from one without.
+	 */
+	private static int getCookieFieldId(String key) {
+		long range = (1L << SdnMudConstants.COOKIE_FIELD_BITS) - 1;
+		return (int) (Integer.toUnsignedLong(key.hashCode()) % range) + 1;
+	}
+
+	/**
+	 * @param flowIdPrefix -- the prefix of the flow ids of a MUD profile.
+	 * @return the MUD URL id put in the cookies of the flows of the profile.
+	 */
+	public static int getMudUrlId(String flowIdPrefix) {
+		return getCookieFieldId(flowIdPrefix);
+	}
+
+	/**
+	 * @return the device id put in the cookies of the flows of a device.
+	 */
+	public static int getDeviceId(MacAddress macAddress) {
+		return getCookieFieldId(macAddress.getValue().toLowerCase());
+	}
+
+	public static int getMudUrlId(FlowCookie flowCookie) {
+		return flowCookie.getValue().and(SdnMudConstants.COOKIE_MUD_URL_ID_MASK)
+				.shiftRight(SdnMudConstants.COOKIE_MUD_URL_ID_SHIFT).intValue();
+	}
+
+	public static int getDeviceId(FlowCookie flowCookie) {
+		return flowCookie.getValue().and(SdnMudConstants.COOKIE_DEVICE_ID_MASK)
+				.shiftRight(SdnMudConstants.COOKIE_DEVICE_ID_SHIFT).intValue();
+	}
+
 	static String getAuthority(Uri uri) {
 		return getAuthority(uri.getValue());
 	}
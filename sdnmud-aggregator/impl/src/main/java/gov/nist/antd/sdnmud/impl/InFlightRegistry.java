@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single flight registry for the classification flows installed from packet-ins.
+ * Until its stamp flow is on the switch, a new MAC keeps missing the stamp tables
+ * and every such packet-in would repeat the MUD URL lookup and the flow install.
+ * The first packet-in for a (switch, MAC, direction) acquires the entry and
+ * releases it once the install is done.
+ *
+ * The first packet-in that finds the entry held is parked: its retry is run if
+ * the install does not succeed, so the MAC is not left unclassified until the
+ * device happens to send again. Further duplicates are dropped.
+ *
+ * Every acquire gets a token of its own (the install generation) and only a
+ * release with the current token frees the entry. An entry that has been held
+ * for longer than the stale timeout (the install was lost) may be taken over by
+ * the next packet-in; a late release of the lost install then does nothing.
+ *
+ * @author mranga
+ *
+ */
+public class InFlightRegistry {
+
+	private static final Logger LOG = LoggerFactory.getLogger(InFlightRegistry.class);
+
+	static final int SRC = 0;
+
+	static final int DST = 1;
+
+	static final long DEFAULT_STALE_TIMEOUT_MILLIS = 10000;
+
+	/**
+	 * Returned by tryAcquire when another install is in flight.
+	 */
+	static final long NOT_ACQUIRED = -1L;
+
+	// A token is the acquire time in its high bits and a generation count below.
+	private static final int GENERATION_BITS = 20;
+
+	private static final long GENERATION_MASK = (1L << GENERATION_BITS) - 1;
+
+	private final long staleTimeoutMillis;
+
+	private final long startTime = System.nanoTime();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private final ConcurrentHashMap<String, SwitchEntries> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong suppressedCount = new AtomicLong();
+
+	private final AtomicLong parkedCount = new AtomicLong();
+
+	private final AtomicLong retriedCount = new AtomicLong();
+
+	/*
+	 * In flight entries of a switch: per direction MAC tables from the MAC to
+	 * the token of its install, and the retries parked on each token.
+	 */
+	private static final class SwitchEntries {
+		private final MacTable[] tables = new MacTable[] { new MacTable(), new MacTable() };
+		private final ConcurrentHashMap<Long, Runnable> parked = new ConcurrentHashMap<Long, Runnable>();
+	}
+
+	public InFlightRegistry() {
+		this(DEFAULT_STALE_TIMEOUT_MILLIS);
+	}
+
+	public InFlightRegistry(long staleTimeoutMillis) {
+		this.staleTimeoutMillis = staleTimeoutMillis;
+	}
+
+	private long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+	}
+
+	private long newToken(long now) {
+		return (now << GENERATION_BITS) | (generation.incrementAndGet() & GENERATION_MASK);
+	}
+
+	private SwitchEntries getEntries(String nodeId) {
+		SwitchEntries entries = inFlight.get(nodeId);
+		if (entries == null) {
+			SwitchEntries newEntries = new SwitchEntries();
+			entries = inFlight.putIfAbsent(nodeId, newEntries);
+			if (entries == null) {
+				entries = newEntries;
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Claim the install for a MAC.
+	 *
+	 * @param nodeId    -- the switch.
+	 * @param direction -- SRC or DST.
+	 * @param mac       -- the MAC address.
+	 * @param retry     -- run if another install is in flight and does not
+	 *                  succeed (may be null).
+	 * @return the token to pass to release once the install is done, or
+	 *         NOT_ACQUIRED if another install is in flight.
+	 */
+	public long tryAcquire(String nodeId, int direction, long mac, Runnable retry) {
+		SwitchEntries entries = getEntries(nodeId);
+		MacTable table = entries.tables[direction];
+		long now = now();
+		long token = newToken(now);
+		long current = table.putIfAbsent(mac, token, NOT_ACQUIRED);
+		if (current == NOT_ACQUIRED) {
+			return token;
+		}
+		if (now - (current >>> GENERATION_BITS) > staleTimeoutMillis && table.replace(mac, current, token)) {
+			LOG.debug("InFlightRegistry: taking over stale entry for " + PacketHeader.toMacString(mac) + " on "
+					+ nodeId);
+			// This install does the work of the packet-in parked on the lost one.
+			entries.parked.remove(current);
+			return token;
+		}
+		suppressedCount.incrementAndGet();
+		if (retry != null && entries.parked.putIfAbsent(current, retry) == null) {
+			parkedCount.incrementAndGet();
+			// The install may have been released before the retry was parked.
+			if (table.get(mac, NOT_ACQUIRED) != current && entries.parked.remove(current, retry)) {
+				retriedCount.incrementAndGet();
+				retry.run();
+			}
+		}
+		return NOT_ACQUIRED;
+	}
+
+	/**
+	 * Release the entry for a MAC. Does nothing unless the token is the one the
+	 * entry is held with.
+	 *
+	 * @param token     -- the token tryAcquire returned.
+	 * @param installed -- true if the flow was installed. Otherwise the parked
+	 *                  retry (if any) is run.
+	 */
+	public void release(String nodeId, int direction, long mac, long token, boolean installed) {
+		SwitchEntries entries = inFlight.get(nodeId);
+		if (entries == null) {
+			return;
+		}
+		if (!entries.tables[direction].remove(mac, token)) {
+			LOG.debug("InFlightRegistry: ignoring release of a superseded install for "
+					+ PacketHeader.toMacString(mac) + " on " + nodeId);
+			return;
+		}
+		Runnable retry = entries.parked.remove(token);
+		if (retry != null && !installed) {
+			retriedCount.incrementAndGet();
+			retry.run();
+		}
+	}
+
+	public boolean isInFlight(String nodeId, int direction, long mac) {
+		SwitchEntries entries = inFlight.get(nodeId);
+		return entries != null && entries.tables[direction].containsKey(mac);
+	}
+
+	/**
+	 * @return the number of packet-ins not acted on because an install was in
+	 *         flight (parked or dropped).
+	 */
+	public long getSuppressedCount() {
+		return suppressedCount.get();
+	}
+
+	/**
+	 * @return the number of packet-ins parked on an install in flight.
+	 */
+	public long getParkedCount() {
+		return parkedCount.get();
+	}
+
+	/**
+	 * @return the number of parked packet-ins retried.
+	 */
+	public long getRetriedCount() {
+		return retriedCount.get();
+	}
+
+	public void removeSwitch(String nodeId) {
+		inFlight.remove(nodeId);
+	}
+
+	public void clear() {
+		inFlight.clear();
+	}
+
+}
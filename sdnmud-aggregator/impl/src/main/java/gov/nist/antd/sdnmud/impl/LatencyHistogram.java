@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed size latency histogram in the style of HdrHistogram. Values (in
+ * microseconds) are bucketed by their power of two magnitude and each magnitude
+ * is split into 2^SUB_BUCKET_BITS linear sub buckets, so any recorded value is
+ * reported within about 3% of its true value. Recording is a couple of shifts
+ * and an atomic increment; nothing is allocated.
+ *
+ * @author mranga
+ *
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	// Values are clamped to 2^MAX_MAGNITUDE - 1 microseconds (over four years).
+	private static final int MAX_MAGNITUDE = 47;
+
+	private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder totalCount = new LongAdder();
+
+	private final AtomicLong maxValue = new AtomicLong();
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) Math.max(0, value);
+		}
+		value = Math.min(value, (1L << MAX_MAGNITUDE) - 1);
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+		return ((magnitude - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+	}
+
+	/*
+	 * Largest value that maps to the bucket.
+	 */
+	static long highestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int magnitude = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		long subBucket = index & (SUB_BUCKET_COUNT - 1);
+		long lowest = (1L << magnitude) | (subBucket << (magnitude - SUB_BUCKET_BITS));
+		return lowest + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+	}
+
+	void record(long micros) {
+		counts.incrementAndGet(indexOf(micros));
+		totalCount.increment();
+		long max = maxValue.get();
+		while (micros > max && !maxValue.compareAndSet(max, micros)) {
+			max = maxValue.get();
+		}
+	}
+
+	long getTotalCount() {
+		return totalCount.sum();
+	}
+
+	long getMaxValue() {
+		return maxValue.get();
+	}
+
+	/**
+	 * @param percentile -- between 0 and 100.
+	 * @return the value at the percentile (0 if nothing was recorded).
+	 */
+	long getValueAtPercentile(double percentile) {
+		long total = totalCount.sum();
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= target) {
+				return Math.min(highestValueOf(i), maxValue.get());
+			}
+		}
+		return maxValue.get();
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.reset();
+		maxValue.set(0);
+	}
+
+}
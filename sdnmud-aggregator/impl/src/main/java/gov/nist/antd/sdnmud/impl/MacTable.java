@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open addressing hash table from a 48 bit MAC address (held in a long) to a
+ * long value such as the metadata stamped for the MAC. Keys and values are kept
+ * interleaved in a single long array so an entry costs 16 bytes and a lookup
+ * touches one cache line. Linear probing with backward shift deletion keeps
+ * the table free of tombstones.
+ *
+ * Reads are lock free (optimistic) and only fall back to a read lock if they
+ * race with a writer. Writers are serialized.
+ *
+ * @author mranga
+ *
+ */
+final class MacTable {
+
+	// MAC addresses are 48 bits so this can never be a key.
+	private static final long EMPTY = -1L;
+
+	private static final int MIN_CAPACITY = 16;
+
+	private final StampedLock lock = new StampedLock();
+
+	// key at 2 * i, value at 2 * i + 1. Capacity is a power of two.
+	private long[] slots;
+
+	private int size;
+
+	MacTable() {
+		this(MIN_CAPACITY);
+	}
+
+	MacTable(int expectedSize) {
+		this.slots = newSlots(capacityFor(expectedSize));
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		// Keep the load factor at or below one half.
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static long[] newSlots(int capacity) {
+		long[] newSlots = new long[capacity * 2];
+		Arrays.fill(newSlots, EMPTY);
+		return newSlots;
+	}
+
+	private static int hash(long mac) {
+		// 64 bit finalizer from MurmurHash3.
+		mac ^= mac >>> 33;
+		mac *= 0xff51afd7ed558ccdL;
+		mac ^= mac >>> 33;
+		mac *= 0xc4ceb9fe1a85ec53L;
+		mac ^= mac >>> 33;
+		return (int) mac;
+	}
+
+	/*
+	 * Returns the key slot index of the mac or -1. May see a torn table when
+	 * called without a lock; callers validate the stamp.
+	 */
+	private static int find(long[] table, long mac) {
+		int mask = (table.length >> 1) - 1;
+		int index = hash(mac) & mask;
+		for (int probes = 0; probes <= mask; probes++) {
+			long key = table[index << 1];
+			if (key == mac) {
+				return index << 1;
+			} else if (key == EMPTY) {
+				return -1;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param mac          -- the MAC address.
+	 * @param defaultValue -- value to return if the MAC is not present.
+	 * @return the value mapped to the MAC or defaultValue.
+	 */
+	long get(long mac, long defaultValue) {
+		long stamp = lock.tryOptimisticRead();
+		long[] table = slots;
+		int slot = find(table, mac);
+		long value = slot < 0 ? defaultValue : table[slot + 1];
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				slot = find(slots, mac);
+				value = slot < 0 ? defaultValue : slots[slot + 1];
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return value;
+	}
+
+	boolean containsKey(long mac) {
+		long stamp = lock.tryOptimisticRead();
+		boolean found = find(slots, mac) >= 0;
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				found = find(slots, mac) >= 0;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Map the MAC to the value, replacing any existing mapping.
+	 */
+	void put(long mac, long value) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = find(slots, mac);
+			if (slot >= 0) {
+				slots[slot + 1] = value;
+				return;
+			}
+			if ((size + 1) * 2 > (slots.length >> 1)) {
+				resize(slots.length);
+			}
+			insert(slots, mac, value);
+			size++;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Map the MAC to the value if it is not already present.
+	 *
+	 * @return the existing value or absentValue if the value was added.
+	 */
+	long putIfAbsent(long mac, long value, long absentValue) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = find(slots, mac);
+			if (slot >= 0) {
+				return slots[slot + 1];
+			}
+			if ((size + 1) * 2 > (slots.length >> 1)) {
+				resize(slots.length);
+			}
+			insert(slots, mac, value);
+			size++;
+			return absentValue;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Replace the value of the MAC only if it is currently mapped to expectedValue.
+	 *
+	 * @return true if the value was replaced.
+	 */
+	boolean replace(long mac, long expectedValue, long newValue) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = find(slots, mac);
+			if (slot < 0 || slots[slot + 1] != expectedValue) {
+				return false;
+			}
+			slots[slot + 1] = newValue;
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private static void insert(long[] table, long mac, long value) {
+		int mask = (table.length >> 1) - 1;
+		int index = hash(mac) & mask;
+		while (table[index << 1] != EMPTY) {
+			index = (index + 1) & mask;
+		}
+		table[(index << 1) + 1] = value;
+		table[index << 1] = mac;
+	}
+
+	private void resize(int newCapacity) {
+		long[] newSlots = newSlots(newCapacity);
+		for (int i = 0; i < slots.length; i += 2) {
+			if (slots[i] != EMPTY) {
+				insert(newSlots, slots[i], slots[i + 1]);
+			}
+		}
+		slots = newSlots;
+	}
+
+	/**
+	 * @return true if the MAC was present.
+	 */
+	boolean remove(long mac) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = find(slots, mac);
+			if (slot < 0) {
+				return false;
+			}
+			removeSlot(slot);
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Remove the MAC only if it is currently mapped to expectedValue.
+	 *
+	 * @return true if the MAC was removed.
+	 */
+	boolean remove(long mac, long expectedValue) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = find(slots, mac);
+			if (slot < 0 || slots[slot + 1] != expectedValue) {
+				return false;
+			}
+			removeSlot(slot);
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * Called with the write lock held.
+	 */
+	private void removeSlot(int slot) {
+		int mask = (slots.length >> 1) - 1;
+		int hole = slot >> 1;
+		int index = hole;
+		// Shift back entries of the probe run that follows the hole.
+		while (true) {
+			index = (index + 1) & mask;
+			long key = slots[index << 1];
+			if (key == EMPTY) {
+				break;
+			}
+			int home = hash(key) & mask;
+			// Move the entry unless its home lies cyclically in (hole, index].
+			boolean stays = hole <= index ? (hole < home && home <= index) : (hole < home || home <= index);
+			if (!stays) {
+				slots[(hole << 1) + 1] = slots[(index << 1) + 1];
+				slots[hole << 1] = key;
+				hole = index;
+			}
+		}
+		slots[hole << 1] = EMPTY;
+		size--;
+	}
+
+	void clear() {
+		long stamp = lock.writeLock();
+		try {
+			slots = newSlots(MIN_CAPACITY);
+			size = 0;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return a snapshot of the MAC addresses in the table.
+	 */
+	long[] keys() {
+		long stamp = lock.readLock();
+		try {
+			long[] keys = new long[size];
+			int k = 0;
+			for (int i = 0; i < slots.length; i += 2) {
+				if (slots[i] != EMPTY) {
+					keys[k++] = slots[i];
+				}
+			}
+			return keys;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+}
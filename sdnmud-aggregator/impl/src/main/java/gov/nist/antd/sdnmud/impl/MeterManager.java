@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.action.types.rev131112.action.action.OutputActionCase;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.action.types.rev131112.action.list.Action;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNode;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.meters.Meter;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.meters.MeterKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.OutputPortValues;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.InstructionsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.instruction.ApplyActionsCase;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.instruction.GoToTableCase;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.instruction.WriteMetadataCase;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.instruction.MeterCase;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.instruction.MeterCaseBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.instruction.meter._case.MeterBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.Instruction;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.InstructionBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.InstructionKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.NodeRef;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.service.rev130918.AddMeterInputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.service.rev130918.AddMeterOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.service.rev130918.SalMeterService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.BandId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.MeterBandType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.MeterFlags;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.MeterId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.MeterRef;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.band.type.band.type.DropBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.meter.MeterBandHeadersBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.meter.meter.band.headers.MeterBandHeader;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.meter.meter.band.headers.MeterBandHeaderBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.meter.meter.band.headers.MeterBandHeaderKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.types.rev130918.meter.meter.band.headers.meter.band.header.MeterBandTypesBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.opendaylight.yangtools.yang.common.RpcResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.JdkFutureAdapters;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Rate limits the flows that send packets to the controller. Each such flow is
+ * attached to an OpenFlow meter (one per switch per class of flow) that drops
+ * packets above the rate configured in sdnmud-config, so a flooding device is
+ * throttled at the switch rather than at the controller.
+ *
+ * An OpenFlow 1.3 meter applies to everything the flow matches, so only flows
+ * whose sole output is to the controller are metered. They may also write
+ * metadata and go on to the next table (the classification flows of unknown
+ * devices do), in which case the meter limits what they pass on as well. Flows
+ * that also output the packet (e.g. the DNS and DHCP pass through flows) are
+ * left alone so that the meter never drops forwarded traffic.
+ *
+ * Meters are added when the switch connects, without waiting for the switch to
+ * answer. Flows written before the switch has acknowledged a meter are written
+ * unmetered and are written again with the meter once it is acknowledged. If
+ * the switch refuses the meter (e.g. no meter support), the flows of that class
+ * stay unmetered.
+ *
+ * @author mranga
+ *
+ */
+public class MeterManager {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MeterManager.class);
+
+	/**
+	 * The classes of flows that are metered. The meter id on the switch is
+	 * METER_ID_START plus the ordinal.
+	 */
+	enum MeterClass {
+		SEND_TO_CONTROLLER, DNS, DHCP, DROP;
+
+		long getMeterId() {
+			return SdnMudConstants.METER_ID_START + ordinal();
+		}
+	}
+
+	private enum MeterState {
+		PENDING, INSTALLED, FAILED, DISABLED
+	}
+
+	private SdnmudProvider sdnmudProvider;
+
+	private SalMeterService salMeterService;
+
+	// node id -> state of the meter of each class on the switch.
+	private ConcurrentHashMap<String, ConcurrentHashMap<MeterClass, MeterState>> meterStates = new ConcurrentHashMap<>();
+
+	// Writes flows again with their meter (off the RPC callback thread).
+	private final ExecutorService reattachExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "sdnmud-meter-reattach");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	public MeterManager(SdnmudProvider sdnmudProvider, SalMeterService salMeterService) {
+		this.sdnmudProvider = sdnmudProvider;
+		this.salMeterService = salMeterService;
+	}
+
+	static MeterClass getMeterClass(FlowCookie flowCookie) {
+		FlowCookie cookie = IdUtils.getFlowClass(flowCookie);
+		if (cookie == null) {
+			return null;
+		} else if (cookie.equals(SdnMudConstants.SEND_TO_CONTROLLER_FLOW_COOKIE)) {
+			return MeterClass.SEND_TO_CONTROLLER;
+		} else if (cookie.equals(SdnMudConstants.DNS_REQUEST_FLOW_COOKIE)
+				|| cookie.equals(SdnMudConstants.DNS_RESPONSE_FLOW_COOKIE)) {
+			return MeterClass.DNS;
+		} else if (cookie.equals(SdnMudConstants.DH_REQUEST_FLOW_COOKIE)
+				|| cookie.equals(SdnMudConstants.DH_RESPONSE_FLOW_COOKIE)) {
+			return MeterClass.DHCP;
+		} else if (cookie.equals(SdnMudConstants.DROP_FLOW_COOKIE)
+				|| cookie.equals(SdnMudConstants.TCP_SYN_MATCH_CHECK_COOKIE)) {
+			return MeterClass.DROP;
+		}
+		return null;
+	}
+
+	/*
+	 * Rate in packets per second for the class. 0 turns metering off for the
+	 * class.
+	 */
+	private long getRate(MeterClass meterClass) {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig == null) {
+			return 0;
+		}
+		Long rate;
+		switch (meterClass) {
+		case SEND_TO_CONTROLLER:
+			rate = sdnmudConfig.getSendToControllerMeterRate();
+			break;
+		case DNS:
+			rate = sdnmudConfig.getDnsMeterRate();
+			break;
+		case DHCP:
+			rate = sdnmudConfig.getDhcpMeterRate();
+			break;
+		default:
+			rate = sdnmudConfig.getDropMeterRate();
+			break;
+		}
+		return rate == null ? 0 : rate.longValue();
+	}
+
+	private void installMeter(final MeterClass meterClass, final InstanceIdentifier<FlowCapableNode> node,
+			final ConcurrentHashMap<MeterClass, MeterState> states) {
+		final long rate = getRate(meterClass);
+		if (rate == 0) {
+			states.put(meterClass, MeterState.DISABLED);
+			return;
+		}
+		if (states.putIfAbsent(meterClass, MeterState.PENDING) != null) {
+			return;
+		}
+		MeterId meterId = new MeterId(meterClass.getMeterId());
+		BandId bandId = new BandId(0L);
+
+		DropBuilder dropBuilder = new DropBuilder();
+		dropBuilder.setDropRate(rate);
+		dropBuilder.setDropBurstSize(rate);
+
+		MeterBandHeaderBuilder mbhb = new MeterBandHeaderBuilder();
+		mbhb.setBandType(dropBuilder.build());
+		mbhb.setBandRate(rate);
+		mbhb.setBandBurstSize(rate);
+		mbhb.setBandId(bandId);
+		mbhb.setKey(new MeterBandHeaderKey(bandId));
+		// (ofpmbtDrop, ofpmbtDscpRemark, ofpmbtExperimenter)
+		mbhb.setMeterBandTypes(new MeterBandTypesBuilder().setFlags(new MeterBandType(true, false, false)).build());
+		List<MeterBandHeader> bands = new ArrayList<MeterBandHeader>();
+		bands.add(mbhb.build());
+
+		AddMeterInputBuilder amib = new AddMeterInputBuilder();
+		amib.setNode(new NodeRef(FlowWriter.getNodePath(node)));
+		amib.setMeterId(meterId);
+		amib.setMeterName("sdnmud-" + meterClass.name());
+		amib.setContainerName("sdnmud");
+		// (meterBurst, meterKbps, meterPktps, meterStats)
+		amib.setFlags(new MeterFlags(true, false, true, false));
+		amib.setMeterBandHeaders(new MeterBandHeadersBuilder().setMeterBandHeader(bands).build());
+		amib.setMeterRef(new MeterRef(node.child(Meter.class, new MeterKey(meterId))));
+		amib.setBarrier(true);
+
+		ListenableFuture<RpcResult<AddMeterOutput>> future;
+		try {
+			Future<RpcResult<AddMeterOutput>> result = salMeterService.addMeter(amib.build());
+			if (result instanceof ListenableFuture) {
+				future = (ListenableFuture<RpcResult<AddMeterOutput>>) result;
+			} else {
+				future = JdkFutureAdapters.listenInPoolThread(result);
+			}
+		} catch (RuntimeException ex) {
+			LOG.error("SalMeterService: problem writing the meter to switch ", ex);
+			states.replace(meterClass, MeterState.PENDING, MeterState.FAILED);
+			return;
+		}
+		Futures.addCallback(future, new FutureCallback<RpcResult<AddMeterOutput>>() {
+			@Override
+			public void onSuccess(RpcResult<AddMeterOutput> result) {
+				if (result != null && result.isSuccessful()) {
+					LOG.info("Installed meter " + meterClass + " rate " + rate + " pps on " + IdUtils.getNodeUri(node));
+					if (states.replace(meterClass, MeterState.PENDING, MeterState.INSTALLED)) {
+						reattachExecutor.execute(new Runnable() {
+							@Override
+							public void run() {
+								reattachMeters(meterClass, node);
+							}
+						});
+					}
+				} else {
+					LOG.error("Switch refused meter " + meterClass + " -- flows will not be rate limited "
+							+ (result == null ? "" : result.getErrors()));
+					states.replace(meterClass, MeterState.PENDING, MeterState.FAILED);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				LOG.error("SalMeterService: problem writing the meter to switch ", t);
+				states.replace(meterClass, MeterState.PENDING, MeterState.FAILED);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private ConcurrentHashMap<MeterClass, MeterState> getMeterStates(String nodeId) {
+		ConcurrentHashMap<MeterClass, MeterState> states = meterStates.get(nodeId);
+		if (states == null) {
+			meterStates.putIfAbsent(nodeId, new ConcurrentHashMap<MeterClass, MeterState>());
+			states = meterStates.get(nodeId);
+		}
+		return states;
+	}
+
+	/**
+	 * Add the meters to a switch that connected. Does not wait for the switch to
+	 * answer.
+	 *
+	 * @param node -- the switch.
+	 */
+	public void installMeters(InstanceIdentifier<FlowCapableNode> node) {
+		ConcurrentHashMap<MeterClass, MeterState> states = getMeterStates(IdUtils.getNodeUri(node));
+		for (MeterClass meterClass : MeterClass.values()) {
+			installMeter(meterClass, node, states);
+		}
+	}
+
+	private MeterState getMeterState(MeterClass meterClass, InstanceIdentifier<FlowCapableNode> node) {
+		ConcurrentHashMap<MeterClass, MeterState> states = getMeterStates(IdUtils.getNodeUri(node));
+		MeterState state = states.get(meterClass);
+		if (state == null) {
+			// The switch was not seen to connect -- add the meter for later flows.
+			installMeter(meterClass, node, states);
+			state = states.get(meterClass);
+		}
+		return state;
+	}
+
+	/*
+	 * True if every action of the flow outputs to the controller. Besides that
+	 * the flow may only write metadata and go to another table.
+	 */
+	static boolean isSendToControllerOnly(Flow flow) {
+		if (flow.getInstructions() == null || flow.getInstructions().getInstruction() == null) {
+			return false;
+		}
+		String controllerPort = OutputPortValues.CONTROLLER.toString();
+		boolean sendsToController = false;
+		for (Instruction instruction : flow.getInstructions().getInstruction()) {
+			if (instruction.getInstruction() instanceof MeterCase
+					|| instruction.getInstruction() instanceof WriteMetadataCase
+					|| instruction.getInstruction() instanceof GoToTableCase) {
+				continue;
+			}
+			if (!(instruction.getInstruction() instanceof ApplyActionsCase)) {
+				return false;
+			}
+			ApplyActionsCase applyActions = (ApplyActionsCase) instruction.getInstruction();
+			if (applyActions.getApplyActions() == null || applyActions.getApplyActions().getAction() == null) {
+				continue;
+			}
+			for (Action action : applyActions.getApplyActions().getAction()) {
+				if (!(action.getAction() instanceof OutputActionCase)) {
+					return false;
+				}
+				OutputActionCase output = (OutputActionCase) action.getAction();
+				if (output.getOutputAction() == null || output.getOutputAction().getOutputNodeConnector() == null
+						|| !controllerPort.equals(output.getOutputAction().getOutputNodeConnector().getValue())) {
+					return false;
+				}
+				sendsToController = true;
+			}
+		}
+		return sendsToController;
+	}
+
+	/**
+	 * Attach the meter for the class of the flow, if the flow is metered and
+	 * only sends packets to the controller.
+	 *
+	 * @param flow -- the flow about to be written.
+	 * @param node -- the switch.
+	 * @return the flow with a meter instruction or the flow unchanged.
+	 */
+	public Flow attachMeter(Flow flow, InstanceIdentifier<FlowCapableNode> node) {
+		MeterClass meterClass = getMeterClass(flow.getCookie());
+		if (meterClass == null || !isSendToControllerOnly(flow)
+				|| getMeterState(meterClass, node) != MeterState.INSTALLED) {
+			return flow;
+		}
+		List<Instruction> instructions = new ArrayList<Instruction>(flow.getInstructions().getInstruction());
+		int key = 0;
+		for (Instruction instruction : instructions) {
+			if (instruction.getInstruction() instanceof MeterCase) {
+				return flow;
+			}
+			key = Math.max(key, instruction.getKey().getOrder() + 1);
+		}
+		Instruction meterInstruction = new InstructionBuilder().setOrder(instructions.size())
+				.setKey(new InstructionKey(key))
+				.setInstruction(new MeterCaseBuilder()
+						.setMeter(new MeterBuilder().setMeterId(new MeterId(meterClass.getMeterId())).build())
+						.build())
+				.build();
+		instructions.add(meterInstruction);
+		return new FlowBuilder(flow).setInstructions(new InstructionsBuilder().setInstruction(instructions).build())
+				.build();
+	}
+
+	private static boolean hasMeter(Flow flow) {
+		for (Instruction instruction : flow.getInstructions().getInstruction()) {
+			if (instruction.getInstruction() instanceof MeterCase) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean needsMeter(Flow flow, MeterClass meterClass) {
+		return getMeterClass(flow.getCookie()) == meterClass && isSendToControllerOnly(flow) && !hasMeter(flow);
+	}
+
+	/*
+	 * Write the flows of the class that went out before the meter was
+	 * acknowledged again, this time with the meter.
+	 */
+	private void reattachMeters(MeterClass meterClass, InstanceIdentifier<FlowCapableNode> node) {
+		int count = 0;
+		FlowWriter flowWriter = sdnmudProvider.getFlowWriter();
+		for (Flow flow : flowWriter.getPermanentFlows(node)) {
+			if (needsMeter(flow, meterClass)) {
+				flowWriter.rewriteFlowAsync(flow, node);
+				count++;
+			}
+		}
+		FlowCommitWrapper flowCommitWrapper = sdnmudProvider.getFlowCommitWrapper();
+		Collection<Flow> flows = flowCommitWrapper.getFlows(node);
+		if (flows != null) {
+			for (Flow flow : flows) {
+				if (needsMeter(flow, meterClass)) {
+					flowCommitWrapper.writeFlowBatched(flow, node);
+					count++;
+				}
+			}
+		}
+		if (count > 0) {
+			LOG.info("reattachMeters : " + count + " flows of " + meterClass + " metered on " + IdUtils.getNodeUri(node));
+		}
+	}
+
+	/**
+	 * Forget the meters of a switch that went away (they are re-added when it
+	 * reconnects).
+	 *
+	 * @param nodeId -- the node URI of the switch.
+	 */
+	public void clearState(String nodeId) {
+		meterStates.remove(nodeId);
+	}
+
+	public void close() {
+		reattachExecutor.shutdownNow();
+	}
+
+}
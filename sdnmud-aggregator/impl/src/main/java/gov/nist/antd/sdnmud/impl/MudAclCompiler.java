@@ -0,0 +1,606 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Ipv4Prefix;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.PortNumber;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.InstructionsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.Match;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.MatchBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.Instruction;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.InstructionBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.InstructionKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.IpMatch;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.IpMatchBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.Layer4Match;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.Metadata;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.layer._3.match.Ipv4Match;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.layer._3.match.Ipv4MatchBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.layer._4.match.TcpMatch;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.layer._4.match.UdpMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles the flows generated from the ACEs of a MUD profile into a smaller
+ * set with the same effect, to save flow table (TCAM) space on the switch.
+ *
+ * The flows are lowered to rules: the IPv4 source and destination of the
+ * match become prefixes, the rest of the match is kept as is and the
+ * instructions are reduced to their content in order. On the rules the
+ * compiler
+ * <ul>
+ * <li>keeps only the last of the flows written under the same id (and
+ * addresses), as the datastore would,</li>
+ * <li>drops duplicates and rules covered by an equal priority rule with the
+ * same cookie and instructions,</li>
+ * <li>drops rules that can never match because a higher priority rule of the
+ * same table (that does not time out) matches everything they match,</li>
+ * <li>merges rules that differ only in an IPv4 address into prefix matches (two
+ * sibling prefixes of length n become one prefix of length n - 1).</li>
+ * </ul>
+ * OpenFlow 1.3 cannot mask L4 ports or the IP protocol, so rules that differ in
+ * those are only combined when one of them leaves the field out (the covered
+ * rule is dropped).
+ *
+ * One flow is emitted per remaining rule. Rules that end up with the same flow
+ * id (an ACE with several addresses) get their prefixes appended to the id so
+ * that they do not replace one another. Instruction keys are renumbered in
+ * order so a profile compiles to equal flows every time.
+ *
+ * @author mranga
+ *
+ */
+public class MudAclCompiler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MudAclCompiler.class);
+
+	private static final BigInteger ALL_ONES_64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+	private final AtomicLong ruleCount = new AtomicLong();
+
+	private final AtomicLong flowCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicLong mergedCount = new AtomicLong();
+
+	/**
+	 * Intermediate form of a flow.
+	 */
+	static final class Rule {
+		// Position of the (first) flow the rule came from.
+		final int position;
+		final Flow flow;
+		final short tableId;
+		final int priority;
+		final FlowCookie cookie;
+		// The match without the IPv4 addresses.
+		final Match rest;
+		// Prefix length -1 means the address is not matched.
+		final long srcAddress;
+		final int srcLength;
+		final long dstAddress;
+		final int dstLength;
+		final List<Instruction> instructions;
+		// Instruction content in order (instruction keys left out).
+		final List<Object> actions;
+		// Everything else about the flow (timeouts, flags).
+		final Flow attributes;
+		boolean dead;
+
+		private Rule(int position, Flow flow, Match rest, long srcAddress, int srcLength, long dstAddress,
+				int dstLength, List<Instruction> instructions, List<Object> actions, Flow attributes) {
+			this.position = position;
+			this.flow = flow;
+			this.tableId = flow.getTableId();
+			this.priority = flow.getPriority() == null ? 0 : flow.getPriority();
+			this.cookie = flow.getCookie();
+			this.rest = rest;
+			this.srcAddress = srcAddress;
+			this.srcLength = srcLength;
+			this.dstAddress = dstAddress;
+			this.dstLength = dstLength;
+			this.instructions = instructions;
+			this.actions = actions;
+			this.attributes = attributes;
+		}
+
+		Rule withSrc(long address, int length) {
+			return new Rule(position, flow, rest, address, length, dstAddress, dstLength, instructions, actions,
+					attributes);
+		}
+
+		Rule withDst(long address, int length) {
+			return new Rule(position, flow, rest, srcAddress, srcLength, address, length, instructions, actions,
+					attributes);
+		}
+
+		boolean isPermanent() {
+			return (flow.getHardTimeout() == null || flow.getHardTimeout() == 0)
+					&& (flow.getIdleTimeout() == null || flow.getIdleTimeout() == 0);
+		}
+
+		/*
+		 * Same cookie, instructions and other attributes: a packet that matches
+		 * either rule is treated the same.
+		 */
+		boolean sameTreatment(Rule other) {
+			return actions.equals(other.actions) && attributes.equals(other.attributes)
+					&& (cookie == null ? other.cookie == null : cookie.equals(other.cookie));
+		}
+	}
+
+	/*
+	 * The parts of a rule that must be equal for rules to be merged on one of
+	 * their addresses.
+	 */
+	private static List<Object> mergeKey(Rule rule, boolean onSrc) {
+		return Arrays.<Object>asList(rule.tableId, rule.priority, rule.cookie, rule.rest, rule.actions,
+				rule.attributes, rule.flow.getId().getValue(), onSrc ? rule.dstAddress : rule.srcAddress,
+				onSrc ? rule.dstLength : rule.srcLength);
+	}
+
+	static long mask(int length) {
+		return length <= 0 ? 0 : (0xFFFFFFFFL << (32 - length)) & 0xFFFFFFFFL;
+	}
+
+	private static long parseAddress(String address) {
+		String[] octets = address.split("\\.");
+		if (octets.length != 4) {
+			throw new NumberFormatException(address);
+		}
+		long value = 0;
+		for (String octet : octets) {
+			value = (value << 8) | (Integer.parseInt(octet) & 0xFF);
+		}
+		return value;
+	}
+
+	static String toPrefixString(long address, int length) {
+		return ((address >> 24) & 0xFF) + "." + ((address >> 16) & 0xFF) + "." + ((address >> 8) & 0xFF) + "."
+				+ (address & 0xFF) + "/" + length;
+	}
+
+	/*
+	 * @return {address, length} or null if the prefix cannot be parsed.
+	 */
+	private static long[] parsePrefix(Ipv4Prefix prefix) {
+		if (prefix == null) {
+			return new long[] { 0, -1 };
+		}
+		String value = prefix.getValue();
+		int slash = value.indexOf('/');
+		try {
+			int length = slash < 0 ? 32 : Integer.parseInt(value.substring(slash + 1));
+			if (length < 0 || length > 32) {
+				return null;
+			}
+			long address = parseAddress(slash < 0 ? value : value.substring(0, slash));
+			return new long[] { address & mask(length), length };
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	private static int getOrder(Instruction instruction) {
+		return instruction.getOrder() == null ? 0 : instruction.getOrder();
+	}
+
+	/**
+	 * Lower a flow to a rule.
+	 */
+	static Rule lower(Flow flow, int position) {
+		Match match = flow.getMatch() == null ? new MatchBuilder().build() : flow.getMatch();
+		Match rest = match;
+		long[] src = { 0, -1 };
+		long[] dst = { 0, -1 };
+		if (match.getLayer3Match() instanceof Ipv4Match) {
+			Ipv4Match ipv4Match = (Ipv4Match) match.getLayer3Match();
+			boolean addressesOnly = new Ipv4MatchBuilder(ipv4Match).setIpv4Source(null).setIpv4Destination(null)
+					.build().equals(new Ipv4MatchBuilder().build());
+			long[] parsedSrc = parsePrefix(ipv4Match.getIpv4Source());
+			long[] parsedDst = parsePrefix(ipv4Match.getIpv4Destination());
+			if (addressesOnly && parsedSrc != null && parsedDst != null && (parsedSrc[1] >= 0 || parsedDst[1] >= 0)) {
+				rest = new MatchBuilder(match).setLayer3Match(null).build();
+				src = parsedSrc;
+				dst = parsedDst;
+			}
+		}
+
+		ArrayList<Instruction> instructions = new ArrayList<Instruction>();
+		if (flow.getInstructions() != null && flow.getInstructions().getInstruction() != null) {
+			instructions.addAll(flow.getInstructions().getInstruction());
+		}
+		Collections.sort(instructions, new Comparator<Instruction>() {
+			@Override
+			public int compare(Instruction first, Instruction second) {
+				return Integer.compare(getOrder(first), getOrder(second));
+			}
+		});
+		ArrayList<Instruction> renumbered = new ArrayList<Instruction>(instructions.size());
+		ArrayList<Object> actions = new ArrayList<Object>(instructions.size());
+		for (Instruction instruction : instructions) {
+			renumbered.add(new InstructionBuilder(instruction).setKey(new InstructionKey(renumbered.size())).build());
+			actions.add(getOrder(instruction));
+			actions.add(instruction.getInstruction());
+		}
+		Flow attributes = new FlowBuilder(flow).setId(null).setKey(null).setCookie(null).setMatch(null)
+				.setInstructions(null).setFlowName(null).build();
+		return new Rule(position, flow, rest, src[0], (int) src[1], dst[0], (int) dst[1], renumbered, actions,
+				attributes);
+	}
+
+	private static boolean prefixCovers(long address, int length, long otherAddress, int otherLength) {
+		if (length < 0) {
+			return true;
+		}
+		if (otherLength < length) {
+			return false;
+		}
+		return (otherAddress & mask(length)) == address;
+	}
+
+	private static boolean fieldCovers(Object field, Object otherField) {
+		return field == null || field.equals(otherField);
+	}
+
+	private static boolean metadataCovers(Metadata metadata, Metadata other) {
+		if (metadata == null) {
+			return true;
+		}
+		if (other == null || metadata.getMetadata() == null || other.getMetadata() == null) {
+			return metadata.equals(other);
+		}
+		BigInteger mask = metadata.getMetadataMask() == null ? ALL_ONES_64 : metadata.getMetadataMask();
+		BigInteger otherMask = other.getMetadataMask() == null ? ALL_ONES_64 : other.getMetadataMask();
+		return mask.andNot(otherMask).signum() == 0
+				&& metadata.getMetadata().and(mask).equals(other.getMetadata().and(mask));
+	}
+
+	private static boolean ipMatchCovers(IpMatch ipMatch, IpMatch other) {
+		if (ipMatch == null) {
+			return true;
+		}
+		if (other == null) {
+			return false;
+		}
+		return fieldCovers(ipMatch.getIpProtocol(), other.getIpProtocol()) && new IpMatchBuilder(ipMatch)
+				.setIpProtocol(null).build().equals(new IpMatchBuilder(other).setIpProtocol(null).build());
+	}
+
+	private static boolean portCovers(PortNumber port, PortNumber otherPort) {
+		return port == null || port.equals(otherPort);
+	}
+
+	private static boolean layer4Covers(Layer4Match layer4Match, Layer4Match other) {
+		if (layer4Match == null) {
+			return true;
+		}
+		if (layer4Match instanceof TcpMatch && other instanceof TcpMatch) {
+			TcpMatch tcpMatch = (TcpMatch) layer4Match;
+			TcpMatch otherTcpMatch = (TcpMatch) other;
+			return portCovers(tcpMatch.getTcpSourcePort(), otherTcpMatch.getTcpSourcePort())
+					&& portCovers(tcpMatch.getTcpDestinationPort(), otherTcpMatch.getTcpDestinationPort());
+		}
+		if (layer4Match instanceof UdpMatch && other instanceof UdpMatch) {
+			UdpMatch udpMatch = (UdpMatch) layer4Match;
+			UdpMatch otherUdpMatch = (UdpMatch) other;
+			return portCovers(udpMatch.getUdpSourcePort(), otherUdpMatch.getUdpSourcePort())
+					&& portCovers(udpMatch.getUdpDestinationPort(), otherUdpMatch.getUdpDestinationPort());
+		}
+		return layer4Match.equals(other);
+	}
+
+	/*
+	 * The fields that are compared for equality only.
+	 */
+	private static Match otherFields(Match match) {
+		return new MatchBuilder(match).setMetadata(null).setEthernetMatch(null).setIpMatch(null)
+				.setLayer4Match(null).setTcpFlagsMatch(null).build();
+	}
+
+	/**
+	 * @return true if every packet that matches other also matches rule (in the
+	 *         same table).
+	 */
+	static boolean covers(Rule rule, Rule other) {
+		return rule.tableId == other.tableId
+				&& prefixCovers(rule.srcAddress, rule.srcLength, other.srcAddress, other.srcLength)
+				&& prefixCovers(rule.dstAddress, rule.dstLength, other.dstAddress, other.dstLength)
+				&& metadataCovers(rule.rest.getMetadata(), other.rest.getMetadata())
+				&& fieldCovers(rule.rest.getEthernetMatch(), other.rest.getEthernetMatch())
+				&& ipMatchCovers(rule.rest.getIpMatch(), other.rest.getIpMatch())
+				&& layer4Covers(rule.rest.getLayer4Match(), other.rest.getLayer4Match())
+				&& fieldCovers(rule.rest.getTcpFlagsMatch(), other.rest.getTcpFlagsMatch())
+				&& otherFields(rule.rest).equals(otherFields(other.rest));
+	}
+
+	/*
+	 * Mark the rules that never match or that another rule makes redundant.
+	 */
+	static int removeCovered(List<Rule> rules) {
+		HashMap<Short, ArrayList<Rule>> byTable = new HashMap<Short, ArrayList<Rule>>();
+		for (Rule rule : rules) {
+			ArrayList<Rule> tableRules = byTable.get(rule.tableId);
+			if (tableRules == null) {
+				tableRules = new ArrayList<Rule>();
+				byTable.put(rule.tableId, tableRules);
+			}
+			tableRules.add(rule);
+		}
+		int removed = 0;
+		for (ArrayList<Rule> tableRules : byTable.values()) {
+			// Highest priority first, then in input order.
+			Collections.sort(tableRules, new Comparator<Rule>() {
+				@Override
+				public int compare(Rule first, Rule second) {
+					int byPriority = Integer.compare(second.priority, first.priority);
+					return byPriority != 0 ? byPriority : Integer.compare(first.position, second.position);
+				}
+			});
+			for (int j = 0; j < tableRules.size(); j++) {
+				Rule rule = tableRules.get(j);
+				for (int i = 0; i < j; i++) {
+					Rule other = tableRules.get(i);
+					if (other.dead || !other.isPermanent() || !covers(other, rule)) {
+						continue;
+					}
+					if (other.priority > rule.priority || other.sameTreatment(rule)) {
+						rule.dead = true;
+						removed++;
+						break;
+					}
+				}
+			}
+		}
+		return removed;
+	}
+
+	/*
+	 * Merge sibling prefixes of rules that are the same except for one address.
+	 */
+	static List<Rule> mergeAddresses(List<Rule> rules, boolean onSrc) {
+		LinkedHashMap<List<Object>, ArrayList<Rule>> groups = new LinkedHashMap<List<Object>, ArrayList<Rule>>();
+		ArrayList<Rule> retval = new ArrayList<Rule>();
+		for (Rule rule : rules) {
+			if ((onSrc ? rule.srcLength : rule.dstLength) <= 0) {
+				retval.add(rule);
+				continue;
+			}
+			List<Object> key = mergeKey(rule, onSrc);
+			ArrayList<Rule> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Rule>();
+				groups.put(key, group);
+			}
+			group.add(rule);
+		}
+		for (ArrayList<Rule> group : groups.values()) {
+			if (group.size() == 1) {
+				retval.addAll(group);
+				continue;
+			}
+			// Prefix (address << 6 | length) to the rule that stands for it.
+			HashMap<Long, Rule> prefixes = new HashMap<Long, Rule>();
+			for (Rule rule : group) {
+				long address = onSrc ? rule.srcAddress : rule.dstAddress;
+				int length = onSrc ? rule.srcLength : rule.dstLength;
+				prefixes.put((address << 6) | length, rule);
+			}
+			boolean merged = true;
+			while (merged) {
+				merged = false;
+				for (Long prefix : new ArrayList<Long>(prefixes.keySet())) {
+					Rule rule = prefixes.get(prefix);
+					if (rule == null) {
+						continue;
+					}
+					int length = (int) (prefix & 0x3F);
+					long address = prefix >>> 6;
+					if (length == 0) {
+						continue;
+					}
+					long siblingAddress = address ^ (1L << (32 - length));
+					Rule sibling = prefixes.get((siblingAddress << 6) | length);
+					if (sibling == null) {
+						continue;
+					}
+					prefixes.remove(prefix);
+					prefixes.remove((siblingAddress << 6) | length);
+					long parentAddress = address & mask(length - 1);
+					Rule first = rule.position <= sibling.position ? rule : sibling;
+					prefixes.put((parentAddress << 6) | (length - 1),
+							onSrc ? first.withSrc(parentAddress, length - 1) : first.withDst(parentAddress, length - 1));
+					merged = true;
+				}
+			}
+			retval.addAll(prefixes.values());
+		}
+		return retval;
+	}
+
+	private static Flow toFlow(Rule rule, String flowId) {
+		MatchBuilder matchBuilder = new MatchBuilder(rule.rest);
+		if (rule.srcLength >= 0 || rule.dstLength >= 0) {
+			Ipv4MatchBuilder ipv4MatchBuilder = new Ipv4MatchBuilder();
+			if (rule.srcLength >= 0) {
+				ipv4MatchBuilder.setIpv4Source(new Ipv4Prefix(toPrefixString(rule.srcAddress, rule.srcLength)));
+			}
+			if (rule.dstLength >= 0) {
+				ipv4MatchBuilder.setIpv4Destination(new Ipv4Prefix(toPrefixString(rule.dstAddress, rule.dstLength)));
+			}
+			matchBuilder.setLayer3Match(ipv4MatchBuilder.build());
+		}
+		FlowId id = new FlowId(flowId);
+		return new FlowBuilder(rule.flow).setId(id).setKey(new FlowKey(id)).setMatch(matchBuilder.build())
+				.setInstructions(new InstructionsBuilder().setInstruction(rule.instructions).build()).build();
+	}
+
+	private static String describeAddresses(Rule rule) {
+		StringBuilder retval = new StringBuilder();
+		if (rule.srcLength >= 0) {
+			retval.append("src=").append(toPrefixString(rule.srcAddress, rule.srcLength));
+		}
+		if (rule.dstLength >= 0) {
+			if (retval.length() > 0) {
+				retval.append(',');
+			}
+			retval.append("dst=").append(toPrefixString(rule.dstAddress, rule.dstLength));
+		}
+		return retval.toString();
+	}
+
+	/*
+	 * Emit the flows, giving each rule of a shared flow id an id of its own.
+	 */
+	private static List<Flow> emit(List<Rule> rules) {
+		HashMap<String, Integer> idCounts = new HashMap<String, Integer>();
+		for (Rule rule : rules) {
+			String key = rule.tableId + ":" + rule.flow.getId().getValue();
+			Integer count = idCounts.get(key);
+			idCounts.put(key, count == null ? 1 : count + 1);
+		}
+		HashSet<String> used = new HashSet<String>();
+		ArrayList<Flow> retval = new ArrayList<Flow>(rules.size());
+		for (Rule rule : rules) {
+			String flowId = rule.flow.getId().getValue();
+			if (idCounts.get(rule.tableId + ":" + flowId) > 1) {
+				String addresses = describeAddresses(rule);
+				if (!addresses.isEmpty()) {
+					flowId = flowId + "/" + addresses;
+				}
+			}
+			String uniqueId = flowId;
+			for (int n = 1; !used.add(rule.tableId + ":" + uniqueId); n++) {
+				uniqueId = flowId + "#" + n;
+			}
+			retval.add(toFlow(rule, uniqueId));
+		}
+		return retval;
+	}
+
+	/**
+	 * Give a flow generated for one address of an ACE the id it gets when the ACE
+	 * is compiled with several addresses, so that flows added for addresses that
+	 * resolve later do not replace one another.
+	 */
+	static Flow withAddressId(Flow flow) {
+		Rule rule = lower(flow, 0);
+		String addresses = describeAddresses(rule);
+		if (addresses.isEmpty()) {
+			return flow;
+		}
+		return toFlow(rule, flow.getId().getValue() + "/" + addresses);
+	}
+
+	/**
+	 * Compile the flows of a MUD profile.
+	 *
+	 * @param flows -- the flows generated from the profile.
+	 * @return a smallest equivalent set of flows (as far as the rules above go).
+	 */
+	public List<Flow> compile(Collection<Flow> flows) {
+		/*
+		 * A flow written under the id of an earlier one replaces it in the
+		 * datastore, so only the last one counts. The flows of an ACE with several
+		 * addresses share an id but are kept apart by their addresses.
+		 */
+		LinkedHashMap<String, Rule> lowered = new LinkedHashMap<String, Rule>();
+		int position = 0;
+		for (Flow flow : flows) {
+			Rule rule = lower(flow, position++);
+			String key = rule.tableId + ":" + flow.getId().getValue() + "/" + describeAddresses(rule);
+			lowered.remove(key);
+			lowered.put(key, rule);
+		}
+		ArrayList<Rule> rules = new ArrayList<Rule>(lowered.values());
+		int dropped = flows.size() - rules.size() + removeCovered(rules);
+		List<Rule> live = new ArrayList<Rule>(flows.size() - dropped);
+		for (Rule rule : rules) {
+			if (!rule.dead) {
+				live.add(rule);
+			}
+		}
+		int beforeMerge = live.size();
+		live = mergeAddresses(mergeAddresses(live, false), true);
+		Collections.sort(live, new Comparator<Rule>() {
+			@Override
+			public int compare(Rule first, Rule second) {
+				return Integer.compare(first.position, second.position);
+			}
+		});
+		List<Flow> compiled = emit(live);
+
+		ruleCount.addAndGet(flows.size());
+		flowCount.addAndGet(compiled.size());
+		droppedCount.addAndGet(dropped);
+		mergedCount.addAndGet(beforeMerge - live.size());
+		LOG.info("compile : rules " + flows.size() + " dropped " + dropped + " merged " + (beforeMerge - live.size())
+				+ " flows " + compiled.size());
+		return compiled;
+	}
+
+	/**
+	 * @return the number of flows given to the compiler.
+	 */
+	public long getRuleCount() {
+		return ruleCount.get();
+	}
+
+	/**
+	 * @return the number of flows the compiler emitted.
+	 */
+	public long getFlowCount() {
+		return flowCount.get();
+	}
+
+	/**
+	 * @return the number of duplicate, redundant or shadowed rules dropped.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return the number of rules saved by merging addresses into prefixes.
+	 */
+	public long getMergedCount() {
+		return mergedCount.get();
+	}
+
+}
@@ -22,10 +22,14 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.access.control.list.rev190304.Accept;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.access.control.list.rev190304.acls.acl.Aces;
@@ -66,14 +70,20 @@ public class MudFlowsInstaller {
 
 	private SdnmudProvider sdnmudProvider;
 	static final Logger LOG = LoggerFactory.getLogger(MudFlowsInstaller.class);
-	private HashMap<String, List<NameResolutionCacheEntry>> nameResolutionCache = new HashMap<String, List<NameResolutionCacheEntry>>();
-	private HashMap<String, List<NameResolutionCacheEntry>> controllerResolutionCache = new HashMap<String, List<NameResolutionCacheEntry>>();
+	private DeferredMatchIndex nameResolutionCache = new DeferredMatchIndex();
+	private DeferredMatchIndex controllerResolutionCache = new DeferredMatchIndex();
 
 	// Tracking for reporter
 	private HashMap<String,HashSet<String>> modelMatches = new HashMap<String,HashSet<String>>();
 	private HashMap<String,HashSet<String>> manufacturerMatches = new HashMap<String,HashSet<String>>();
+
+	// Desired flows of the profile being installed (set on the installing thread only).
+	private final ThreadLocal<ArrayList<Flow>> desiredFlows = new ThreadLocal<ArrayList<Flow>>();
+
+	// Serializes installs of the same MUD profile on the same switch.
+	private final ConcurrentHashMap<String, Object> installLocks = new ConcurrentHashMap<String, Object>();
 	
-	private enum MatchesType {
+	enum MatchesType {
 		CONTROLLER_MAPPING, SAME_MANUFACTURER, MANUFACTURER, MODEL, MY_CONTROLLER, LOCAL_NETWORKS, DNS_MATCH,
 		UNKNOWN_MATCH;
 
@@ -92,7 +102,8 @@ public class MudFlowsInstaller {
 		private String mudUrl;
 		private String aceName;
 		private String aclName;
-		private List<Ipv4Address> addresses;
+		// The addresses flows have been installed for.
+		private HashSet<String> addresses = new HashSet<String>();
 		private InstanceIdentifier<FlowCapableNode> node;
 		private String domainName;
 		private boolean toFlag;
@@ -106,14 +117,101 @@ public class MudFlowsInstaller {
 			this.mudUrl = mudUrl;
 			this.aclName = aclName;
 			this.aceName = aceName;
-			this.addresses = addresses;
+			for (Ipv4Address address : addresses) {
+				this.addresses.add(address.getValue());
+			}
 			this.node = node;
 			this.domainName = domainName;
 			this.qFlag = qFlag;
 		}
+
+		/*
+		 * Identifies the ACE (and direction) the entry was made for.
+		 */
+		String getAceKey() {
+			return mudUrl + "/" + aclName + "/" + aceName + "/" + toFlag;
+		}
+	}
+
+	/**
+	 * Deferred matches indexed by node and name (DNS name or controller class) so
+	 * that a resolution only visits the entries waiting for that name. The
+	 * entries of a name are kept by ACE so that reinstalling a profile replaces
+	 * its entries.
+	 */
+	private static class DeferredMatchIndex {
+		private final HashMap<String, HashMap<String, LinkedHashMap<String, NameResolutionCacheEntry>>> index = new HashMap<String, HashMap<String, LinkedHashMap<String, NameResolutionCacheEntry>>>();
+
+		void add(String nodeId, NameResolutionCacheEntry entry) {
+			HashMap<String, LinkedHashMap<String, NameResolutionCacheEntry>> names = index.get(nodeId);
+			if (names == null) {
+				names = new HashMap<String, LinkedHashMap<String, NameResolutionCacheEntry>>();
+				index.put(nodeId, names);
+			}
+			LinkedHashMap<String, NameResolutionCacheEntry> entries = names.get(entry.domainName);
+			if (entries == null) {
+				entries = new LinkedHashMap<String, NameResolutionCacheEntry>();
+				names.put(entry.domainName, entries);
+			}
+			entries.put(entry.getAceKey(), entry);
+		}
+
+		Collection<NameResolutionCacheEntry> get(String nodeId, String name) {
+			HashMap<String, LinkedHashMap<String, NameResolutionCacheEntry>> names = index.get(nodeId);
+			if (names == null || !names.containsKey(name)) {
+				return Collections.emptyList();
+			}
+			return names.get(name).values();
+		}
+
+		boolean containsNode(String nodeId) {
+			return index.containsKey(nodeId);
+		}
+
+		Collection<String> getNames(String nodeId, String mudUrl) {
+			ArrayList<String> retval = new ArrayList<String>();
+			HashMap<String, LinkedHashMap<String, NameResolutionCacheEntry>> names = index.get(nodeId);
+			if (names != null) {
+				for (LinkedHashMap<String, NameResolutionCacheEntry> entries : names.values()) {
+					for (NameResolutionCacheEntry entry : entries.values()) {
+						if (mudUrl.contentEquals(entry.mudUrl)) {
+							retval.add(entry.domainName);
+						}
+					}
+				}
+			}
+			return retval;
+		}
+
+		void removeMudUrl(String nodeId, String mudUrl) {
+			HashMap<String, LinkedHashMap<String, NameResolutionCacheEntry>> names = index.get(nodeId);
+			if (names == null) {
+				return;
+			}
+			for (Iterator<LinkedHashMap<String, NameResolutionCacheEntry>> it = names.values().iterator(); it
+					.hasNext();) {
+				LinkedHashMap<String, NameResolutionCacheEntry> entries = it.next();
+				for (Iterator<NameResolutionCacheEntry> entryIt = entries.values().iterator(); entryIt.hasNext();) {
+					if (entryIt.next().mudUrl.equals(mudUrl)) {
+						entryIt.remove();
+					}
+				}
+				if (entries.isEmpty()) {
+					it.remove();
+				}
+			}
+		}
+
+		void removeNode(String nodeId) {
+			index.remove(nodeId);
+		}
+
+		void clear() {
+			index.clear();
+		}
 	}
 	
-	public HashSet<String> getModelMatches(Uri mudUri) {
+	private HashSet<String> modelMatches(Uri mudUri) {
 		HashSet<String> models = this.modelMatches.get(mudUri.getValue());
 		if ( models == null ) {
 			models = new HashSet<String>();
@@ -122,8 +220,8 @@ public class MudFlowsInstaller {
 		}
 		return models;
 	}
-	
-	public HashSet<String> getManufacturerMatches(Uri mudUri) {
+
+	private HashSet<String> manufacturerMatches(Uri mudUri) {
 		HashSet<String> mans = this.manufacturerMatches.get(mudUri.getValue());
 		if ( mans == null ) {
 			mans = new HashSet<String>();
@@ -131,6 +229,28 @@ public class MudFlowsInstaller {
 		}
 		return mans;
 	}
+
+	/**
+	 * @return a snapshot of the models the MUD profile matches.
+	 */
+	public synchronized HashSet<String> getModelMatches(Uri mudUri) {
+		return new HashSet<String>(modelMatches(mudUri));
+	}
+
+	/**
+	 * @return a snapshot of the manufacturers the MUD profile matches.
+	 */
+	public synchronized HashSet<String> getManufacturerMatches(Uri mudUri) {
+		return new HashSet<String>(manufacturerMatches(mudUri));
+	}
+
+	private synchronized void addModelMatch(Uri mudUri, String model) {
+		modelMatches(mudUri).add(model);
+	}
+
+	private synchronized void addManufacturerMatch(Uri mudUri, String manufacturer) {
+		manufacturerMatches(mudUri).add(manufacturer);
+	}
 	
 	
 
@@ -144,7 +264,7 @@ public class MudFlowsInstaller {
 	 * @param addresses
 	 * @param toDeviceFlag
 	 */
-	private void deferDnsMatch(InstanceIdentifier<FlowCapableNode> node, String mudUrl, String aclName, String aceName,
+	private synchronized void deferDnsMatch(InstanceIdentifier<FlowCapableNode> node, String mudUrl, String aclName, String aceName,
 			Matches matches, MatchesType matchesType, List<Ipv4Address> addresses, boolean toDeviceFlag,
 			boolean qFlag) {
 		Ipv41 ipv41 = ((Ipv4) matches.getL3()).getIpv4().getAugmentation(Ipv41.class);
@@ -152,15 +272,10 @@ public class MudFlowsInstaller {
 		String domainName = dnsName.getDomainName().getValue();
 		NameResolutionCacheEntry nameResolutionCacheEntry = new NameResolutionCacheEntry(matches, matchesType,
 				toDeviceFlag, qFlag, node, mudUrl, aclName, aceName, domainName, addresses);
-		if (!nameResolutionCache.containsKey(IdUtils.getNodeUri(node))) {
-			List<NameResolutionCacheEntry> entries = new ArrayList<NameResolutionCacheEntry>();
-			nameResolutionCache.put(IdUtils.getNodeUri(node), entries);
-		}
-		List<NameResolutionCacheEntry> entries = nameResolutionCache.get(IdUtils.getNodeUri(node));
-		entries.add(nameResolutionCacheEntry);
+		nameResolutionCache.add(IdUtils.getNodeUri(node), nameResolutionCacheEntry);
 	}
 
-	private void deferControllerMatch(InstanceIdentifier<FlowCapableNode> node, String mudUrl, String aclName,
+	private synchronized void deferControllerMatch(InstanceIdentifier<FlowCapableNode> node, String mudUrl, String aclName,
 			String aceName, Matches matches, MatchesType matchesType, List<Ipv4Address> addresses, boolean toDeviceFlag,
 			boolean qFlag) {
 
@@ -169,61 +284,64 @@ public class MudFlowsInstaller {
 		String controllerName = controllerUri != null ? controllerUri.getValue() : mudUrl;
 		NameResolutionCacheEntry nameResolutionCacheEntry = new NameResolutionCacheEntry(matches, matchesType,
 				toDeviceFlag, qFlag, node, mudUrl, aclName, aceName, controllerName, addresses);
-		if (!controllerResolutionCache.containsKey(IdUtils.getNodeUri(node))) {
-			List<NameResolutionCacheEntry> entries = new ArrayList<NameResolutionCacheEntry>();
-			controllerResolutionCache.put(IdUtils.getNodeUri(node), entries);
-		}
-		List<NameResolutionCacheEntry> entries = controllerResolutionCache.get(IdUtils.getNodeUri(node));
-		entries.add(nameResolutionCacheEntry);
+		controllerResolutionCache.add(IdUtils.getNodeUri(node), nameResolutionCacheEntry);
 	}
 
-	public void removeDnsMatch(InstanceIdentifier<FlowCapableNode> node) {
-		nameResolutionCache.remove(IdUtils.getNodeUri(node));
+	public synchronized void removeDnsMatch(InstanceIdentifier<FlowCapableNode> node) {
+		nameResolutionCache.removeNode(IdUtils.getNodeUri(node));
 	}
 
-	private void fixupNameResolution(String nodeId, String name, String address,
-			HashMap<String, List<NameResolutionCacheEntry>> nameResolutionCache) {
+	private synchronized void removeDeferredMatches(String nodeId, String mudUrl) {
+		nameResolutionCache.removeMudUrl(nodeId, mudUrl);
+		controllerResolutionCache.removeMudUrl(nodeId, mudUrl);
+	}
 
-		if (nameResolutionCache.containsKey(nodeId)) {
-			List<NameResolutionCacheEntry> entries = nameResolutionCache.get(nodeId);
-			for (NameResolutionCacheEntry entry : entries) {
-				if (entry.domainName.equals(name)) {
-					boolean found = false;
-					for (Ipv4Address ipv4Address1 : entry.addresses) {
-						if (ipv4Address1.getValue().equals(address)) {
-							// resolution already exists.
-							found = true;
-							break;
-						}
-					}
-					if (found) {
-						LOG.info("Name resolution already in the cache -- skipping");
-						continue;
-					}
-					// Found an entry in our cache
-					LOG.info("addNameResolution: add name resolution " + name + " address " + address);
-					// Entry not found in our cache - this is a new resolution.
-					entry.addresses.add(new Ipv4Address(address));
-					ArrayList<Ipv4Address> newAddress = new ArrayList<Ipv4Address>();
-					newAddress.add(new Ipv4Address(address));
-					try {
-						InstanceIdentifier<FlowCapableNode> node = this.sdnmudProvider.getNode(nodeId);
-						if (node != null) {
-							if (entry.toFlag) {
-								this.installPermitFromIpAddressToDeviceFlowRules(node, entry.mudUrl, entry.aclName,
-										entry.aceName, entry.matches, entry.matchesType, newAddress, entry.qFlag);
-							} else {
-								this.installPermitFromDeviceToIpAddressFlowRules(node, entry.mudUrl, entry.aclName,
-										entry.aceName, entry.matches, entry.matchesType, newAddress, entry.qFlag);
-							}
-						}
-					} catch (Exception e) {
-						LOG.error("Could not install flow rule ", e);
-					}
+	private synchronized void fixupNameResolution(String nodeId, String name, String address,
+			DeferredMatchIndex nameResolutionCache) {
+
+		if (!nameResolutionCache.containsNode(nodeId)) {
+			LOG.info("Cannot find node in name resolution cache." + nodeId);
+			return;
+		}
+		InstanceIdentifier<FlowCapableNode> node = this.sdnmudProvider.getNode(nodeId);
+		if (node == null) {
+			// Leave the address unrecorded so that a later resolution installs it.
+			LOG.info("fixupNameResolution: node not connected " + nodeId);
+			return;
+		}
+		for (NameResolutionCacheEntry entry : nameResolutionCache.get(nodeId, name)) {
+			if (!entry.addresses.add(address)) {
+				LOG.info("Name resolution already in the cache -- skipping");
+				continue;
+			}
+			// Entry not found in our cache - this is a new resolution.
+			LOG.info("addNameResolution: add name resolution " + name + " address " + address);
+			ArrayList<Ipv4Address> newAddress = new ArrayList<Ipv4Address>();
+			newAddress.add(new Ipv4Address(address));
+			/*
+			 * Same ids as the compiler gives: the plain id while the ACE has a single
+			 * address, an id of its own per address once it has more.
+			 */
+			boolean sharedId = entry.addresses.size() > 1;
+			// Collect the flows to set their ids before they are written.
+			desiredFlows.set(new ArrayList<Flow>());
+			try {
+				if (entry.toFlag) {
+					this.installPermitFromIpAddressToDeviceFlowRules(node, entry.mudUrl, entry.aclName,
+							entry.aceName, entry.matches, entry.matchesType, newAddress, entry.qFlag);
+				} else {
+					this.installPermitFromDeviceToIpAddressFlowRules(node, entry.mudUrl, entry.aclName,
+							entry.aceName, entry.matches, entry.matchesType, newAddress, entry.qFlag);
+				}
+				for (Flow flow : desiredFlows.get()) {
+					Flow idFlow = sharedId ? MudAclCompiler.withAddressId(flow) : flow;
+					sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(new FlowBuilder(idFlow), node);
 				}
+			} catch (Exception e) {
+				LOG.error("Could not install flow rule ", e);
+			} finally {
+				desiredFlows.remove();
 			}
-		} else {
-			LOG.info("Cannot find node in name resolution cache." + nodeId);
 		}
 	}
 
@@ -254,7 +372,7 @@ public class MudFlowsInstaller {
 		FlowBuilder fb = FlowUtils.createMetadataTcpSynSrcIpSrcPortDestIpDestPortMatchToToNextTableFlow(metadata,
 				metadataMask, sourceAddress, sourcePort, destinationAddress, destinationPort, tableId, priority,
 				sdnmudProvider.getDropTable(), fid, flowCookie, 0);
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 	}
 
 	private void registerTcpSynFlagCheck(FlowId flowId, FlowCookie flowCookie, InstanceIdentifier<FlowCapableNode> node,
@@ -267,7 +385,7 @@ public class MudFlowsInstaller {
 		FlowBuilder fb = FlowUtils.createMetadataTcpSynSrcPortAndDstPortMatchToToNextTableFlow(metadata, metadataMask,
 				sourcePort, destinationPort, tableId, priority, sdnmudProvider.getDropTable(), flowId, flowCookie, 0);
 
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 
 	}
 
@@ -275,6 +393,37 @@ public class MudFlowsInstaller {
 		this.sdnmudProvider = sdnmudProvider;
 	}
 
+	/*
+	 * Profile flows are collected for the reconciler when a profile install is in
+	 * progress on this thread and queued for the datastore otherwise (e.g. flows
+	 * added when a DNS name resolves). The MUD URL id of the profile (taken from
+	 * the flow id prefix) goes into the cookie.
+	 */
+	private void writeFlow(FlowBuilder fb, InstanceIdentifier<FlowCapableNode> node) {
+		String flowIdPrefix = FlowRegistry.getUriPrefix(fb.getId().getValue());
+		if (flowIdPrefix != null && fb.getCookie() != null) {
+			fb.setCookie(IdUtils.createFlowCookie(fb.getCookie(), IdUtils.getMudUrlId(flowIdPrefix), 0));
+		}
+		ArrayList<Flow> flows = desiredFlows.get();
+		if (flows != null) {
+			flows.add(fb.build());
+		} else {
+			sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(fb, node);
+		}
+	}
+
+	/**
+	 * @return the prefix of the ids of the flows installed for a MUD profile.
+	 */
+	static String getFlowIdPrefix(Uri mudUri) {
+		// Flow ids are built from the hash of the URL string (not of the Uri).
+		return mudUri.getValue().hashCode() + "/";
+	}
+
+	private void deleteProfileFlows(InstanceIdentifier<FlowCapableNode> node, Uri mudUri) {
+		sdnmudProvider.getFlowCommitWrapper().deleteFlows(node, getFlowIdPrefix(mudUri));
+	}
+
 	private static MatchesType matchesType(Matches matches) {
 		Matches1 matches1 = matches.getAugmentation(Matches1.class);
 
@@ -446,12 +595,12 @@ public class MudFlowsInstaller {
 				metadataMask, flowId, sdnmudProvider.getSrcMatchTable(), priority, newMetadata, newMetadataMask,
 				sdnmudProvider.getDropTable(), 0);
 
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 		fb = FlowUtils.createMetadataMatchGoToTableAndSendToControllerFlow(flowCookie, metadata, metadataMask, flowId,
 				sdnmudProvider.getDstMatchTable(), priority, newMetadata, newMetadataMask,
 				sdnmudProvider.getDropTable(), 0);
 
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 	}
 
 	private void installGotoDropTableOnQuaranteneSrcModelMetadataMatchFlow(String mudUri,
@@ -465,7 +614,7 @@ public class MudFlowsInstaller {
 		FlowBuilder fb = FlowUtils.createMetadataMatchGoToTableFlow(flowCookie, metadata, metadataMask, flowId,
 				sdnmudProvider.getSrcMatchTable(), newMetadata, newMetadataMask, sdnmudProvider.getDropTable(),
 				priority, 0);
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 	}
 
 	private void installGoToDropTableOnQuaranteneDstModelMetadataMatchFlow(String mudUri,
@@ -479,7 +628,7 @@ public class MudFlowsInstaller {
 		FlowBuilder fb = FlowUtils.createMetadataMatchGoToTableFlow(flowCookie, metadata, metadataMask, flowId,
 				sdnmudProvider.getDstMatchTable(), newMetadata, newMetadataMask, sdnmudProvider.getDropTable(),
 				priority, 0);
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 	}
 
 	/**
@@ -501,7 +650,7 @@ public class MudFlowsInstaller {
 				sdnmudProvider.getSrcMatchTable(), newMetadata, newMetadataMask, sdnmudProvider.getDropTable(),
 				priority, 0);
 
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 	}
 
 	private void installGoToDropTableOnDstModelMetadataMatchFlow(String mudUri,
@@ -515,7 +664,7 @@ public class MudFlowsInstaller {
 		FlowBuilder fb = FlowUtils.createMetadataMatchGoToTableFlow(flowCookie, metadata, metadataMask, flowId,
 				sdnmudProvider.getDstMatchTable(), newMetadata, newMetadataMask, sdnmudProvider.getDropTable(),
 				priority, 0);
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 	}
 
 	private static short getProtocol(Matches matches) {
@@ -594,7 +743,7 @@ public class MudFlowsInstaller {
 				destinationAddress, srcPort, destinationPort, protocol, ctrlFlag, sdnmudProvider.getSrcMatchTable(),
 				priority, newMetadata, newMetadataMask, flowId, flowCookie);
 
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 		if (synFlagCheck) {
 			assert protocol == SdnMudConstants.TCP_PROTOCOL;
 			boolean toDev = false;
@@ -654,7 +803,7 @@ public class MudFlowsInstaller {
 			FlowBuilder fb = FlowUtils.createMetadataSrcIpAndPortMatchGoToNextTableFlow(metadata, metadataMask,
 					srcAddress, sourcePort, destinationPort, protocol, toCtrlFlag, sdnmudProvider.getDstMatchTable(),
 					priority, newMetadata, newMetadataMask, flowId, flowCookie);
-			this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+			this.writeFlow(fb, node);
 			if (checkTcpSyn) {
 				// Check for TCP SYN when packet arrives at the controller.
 				assert protocol == SdnMudConstants.TCP_PROTOCOL;
@@ -907,14 +1056,14 @@ public class MudFlowsInstaller {
 
 		FlowBuilder fb = FlowUtils.createMetadaProtocolAndSrcDestPortMatchGoToTable(metadata, metadataMask, protocol,
 				srcPort, destinationPort, tableId, priority, newMetadata, newMetadataMask, false, flowId, flowCookie);
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		this.writeFlow(fb, node);
 		if (mudmakerHack) {
 			if ((srcPort == -1 && destinationPort != -1) || (destinationPort == -1 && srcPort != -1)) {
 				flowId = IdUtils.createFlowId(mudUri.hashCode() + "/" + aclName + "/" + aceName +  "/" + 2);
 				fb = FlowUtils.createMetadaProtocolAndSrcDestPortMatchGoToTable(metadata, metadataMask, protocol,
 						destinationPort, srcPort, tableId, priority, newMetadata, newMetadataMask, false, flowId,
 						flowCookie);
-				this.sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+				this.writeFlow(fb, node);
 			}
 		}
 
@@ -1000,14 +1149,14 @@ public class MudFlowsInstaller {
 		FlowBuilder flowBuilder = FlowUtils.createDestAddressPortProtocolMatchGoToNextFlow(address, port, protocol,
 				sdnmudProvider.getSrcMatchTable(), sdnmudProvider.getNormalRulesTable(), SdnMudConstants.MAX_PRIORITY,
 				sendToController, flowId, flowCookie);
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(flowBuilder, node);
+		sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(flowBuilder, node);
 
 		flowId = IdUtils.createFlowId("DNS_RESPONSE_PASS_THROUGH:" + address.getValue() );
 		flowCookie = SdnMudConstants.DNS_RESPONSE_FLOW_COOKIE;
 		flowBuilder = FlowUtils.createSrcAddressPortProtocolMatchGoToNextFlow(address, port, protocol,
 				sdnmudProvider.getSrcMatchTable(), sdnmudProvider.getNormalRulesTable(), SdnMudConstants.MAX_PRIORITY,
 				sendToController, flowId, flowCookie);
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(flowBuilder, node);
+		sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(flowBuilder, node);
 
 	}
 
@@ -1021,7 +1170,7 @@ public class MudFlowsInstaller {
 		FlowBuilder flowBuilder = FlowUtils.createSrcAddressPortProtocolMatchGoToNextFlow(address, port, protocol,
 				sdnmudProvider.getSrcMatchTable(), sdnmudProvider.getNormalRulesTable(), priority, false, flowId,
 				flowCookie);
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(flowBuilder, node);
+		sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(flowBuilder, node);
 	}
 
 	public static void installPermitPacketsToServer(SdnmudProvider sdnmudProvider, FlowCookie flowCookie,
@@ -1033,7 +1182,7 @@ public class MudFlowsInstaller {
 		FlowBuilder flowBuilder = FlowUtils.createDestAddressPortProtocolMatchGoToNextFlow(address, port, protocol,
 				sdnmudProvider.getSrcMatchTable(), sdnmudProvider.getNormalRulesTable(), priority, false, flowId,
 				flowCookie);
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(flowBuilder, node);
+		sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(flowBuilder, node);
 	}
 
 	public void installPermitPacketsToFromDhcp(InstanceIdentifier<FlowCapableNode> node) {
@@ -1045,14 +1194,14 @@ public class MudFlowsInstaller {
 		
 		FlowBuilder flowBuilder = FlowUtils.createToDhcpServerMatchGoToNextTableFlow(sdnmudProvider.getSrcMatchTable(),
 				sdnmudProvider.getNormalRulesTable(), flowCookie, flowId, true);
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(flowBuilder, node);
+		this.sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(flowBuilder, node);
 
 		// DHCP is local so both directions are installed on the CPE node.
 		flowCookie = SdnMudConstants.DH_RESPONSE_FLOW_COOKIE;
 		flowId = IdUtils.createFlowId(String.format("permitFromDhcp:%d", sdnmudProvider.getSrcMatchTable()));
 		flowBuilder = FlowUtils.createFromDhcpServerMatchGoToNextTableFlow(sdnmudProvider.getSrcMatchTable(),
 				sdnmudProvider.getNormalRulesTable(), flowCookie, flowId, true);
-		this.sdnmudProvider.getFlowCommitWrapper().writeFlow(flowBuilder, node);
+		this.sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(flowBuilder, node);
 	}
 
 	public void installDropBlockedMacFlows(InstanceIdentifier<FlowCapableNode> node) {
@@ -1065,7 +1214,7 @@ public class MudFlowsInstaller {
 		FlowBuilder fb = FlowUtils.createMetadataMatchGoToNextTableFlow(metadata, metadataMask,
 				sdnmudProvider.getDstMatchTable(), sdnmudProvider.getDropTable(), priority, flowId, flowCookie,
 				"dropBlockedDstMacFlow");
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(fb, node);
 
 		flowCookie = SdnMudConstants.BLOCK_SRC_MAC_FLOW_COOKIE;
 		flowId = IdUtils.createFlowId("BLOCK_SRC_MAC");
@@ -1075,7 +1224,7 @@ public class MudFlowsInstaller {
 
 		fb = FlowUtils.createMetadataMatchGoToNextTableFlow(metadata, metadataMask, sdnmudProvider.getSrcMatchTable(),
 				sdnmudProvider.getDropTable(), priority, flowId, flowCookie, "dropBlockedSrcMacFlow");
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(fb, node);
 	}
 
 	public void installAllowToDnsAndNtpFlowRules(InstanceIdentifier<FlowCapableNode> node) {
@@ -1122,7 +1271,7 @@ public class MudFlowsInstaller {
 
 		FlowBuilder fb = FlowUtils.createMetadataMatchGoToNextTableFlow(metadata, metadataMask, tableId,
 				sdnmudProvider.getNormalRulesTable(), priority, flowId, flowCookie, "unknownSrcPassThrough");
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(fb, node);
 
 		flowId = IdUtils.createFlowId(String.format("UNKNOWN_DST_PASS_THROUGH:%d", tableId));
 		metadata = BigInteger.valueOf(IdUtils.getManfuacturerId(SdnMudConstants.UNKNOWN))
@@ -1133,7 +1282,7 @@ public class MudFlowsInstaller {
 		metadataMask = SdnMudConstants.DST_MANUFACTURER_MASK.or(SdnMudConstants.DST_MODEL_MASK);
 		fb = FlowUtils.createMetadataMatchGoToNextTableFlow(metadata, metadataMask, tableId, (short) (tableId + 1),
 				priority, flowId, flowCookie, "unknownDstPassThrough");
-		sdnmudProvider.getFlowCommitWrapper().writeFlow(fb, node);
+		sdnmudProvider.getFlowCommitWrapper().writeFlowBatched(fb, node);
 
 	}
 
@@ -1147,37 +1296,54 @@ public class MudFlowsInstaller {
 	 * @param node             -- the node on which the packet was received.
 	 * @param nodeUri          -- the URI of the node.
 	 */
-	public synchronized boolean tryInstallFlows(Mud mud, String cpeNodeId) {
+	/**
+	 * Install the flows of a MUD profile on a switch. Installs of different
+	 * profiles or on different switches may run at the same time.
+	 *
+	 * @return false if the install failed or could not be done yet.
+	 */
+	public boolean tryInstallFlows(Mud mud, String cpeNodeId) {
+		synchronized (getInstallLock(cpeNodeId, mud.getMudUrl())) {
+			return doInstallFlows(mud, cpeNodeId);
+		}
+	}
+
+	private Object getInstallLock(String cpeNodeId, Uri mudUri) {
+		String key = MudInstallEngine.getInstallKey(cpeNodeId, mudUri.getValue());
+		Object lock = installLocks.get(key);
+		if (lock == null) {
+			Object newLock = new Object();
+			lock = installLocks.putIfAbsent(key, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * Remove the flows of a MUD profile from a switch together with its pending
+	 * DNS and controller matches there.
+	 */
+	public void removeFlows(Uri mudUri, String cpeNodeId) {
+		synchronized (getInstallLock(cpeNodeId, mudUri)) {
+			InstanceIdentifier<FlowCapableNode> node = this.sdnmudProvider.getNode(cpeNodeId);
+			if (node == null) {
+				return;
+			}
+			removeDeferredMatches(cpeNodeId, mudUri.getValue());
+			deleteProfileFlows(node, mudUri);
+			this.sdnmudProvider.removeMudUri(cpeNodeId, mudUri);
+		}
+	}
+
+	private boolean doInstallFlows(Mud mud, String cpeNodeId) {
 		boolean retval = true;
 
 		try {
 			final Uri mudUri = mud.getMudUrl();
 			LOG.info("***************************");
 			LOG.info("tryInstallFlows : " + mudUri.getValue());
-			HashSet<String> enabledAceNames = new HashSet<String>();
-			boolean hasQuarantineDevicePolicy = false;
-
-			if (mud.getAugmentation(
-					org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.nist.mud.rev190428.Mud1.class) != null) {
-				QuarantinedDevicePolicy qdp = mud
-						.getAugmentation(
-								org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.nist.mud.rev190428.Mud1.class)
-						.getQuarantinedDevicePolicy();
-				if (qdp != null) {
-					hasQuarantineDevicePolicy = true;
-					List<EnabledAceNames> aceNames = qdp.getEnabledAceNames();
-					for (EnabledAceNames aceName : aceNames) {
-						enabledAceNames.add(aceName.getAceName());
-					}
-					if (enabledAceNames.isEmpty()) {
-						hasQuarantineDevicePolicy = false;
-					}
-				} else {
-					hasQuarantineDevicePolicy = false;
-				}
-			} else {
-				hasQuarantineDevicePolicy = false;
-			}
 			// BUG BUG -- this has to be checked.
 			if (sdnmudProvider.getControllerClassMap(cpeNodeId) == null) {
 				LOG.info("Cannot find ControllerClass mapping for the switch  -- not installing ACLs. nodeUrl "
@@ -1187,25 +1353,22 @@ public class MudFlowsInstaller {
 				LOG.info("installFlows: Found a controllerclass mapping for the switch ");
 			}
 
-			// Delete the existing flows corresponding to this profile.
+			// Hold back while failed flow writes are waiting to be retried.
+			if (sdnmudProvider.getFlowRetryQueue().isSaturated()) {
+				LOG.info("installFlows: flow retry queue full -- deferring MUD install.");
+				return false;
+			}
 
 			String authority = IdUtils.getAuthority(mudUri);
 
-			// Remove the flow rules for the given device for this MUD url.
 			InstanceIdentifier<FlowCapableNode> node = this.sdnmudProvider.getNode(cpeNodeId);
 			if (node == null) {
 				LOG.info("installFlows -- cpe Node is null -- skipping MUD install.");
 				return false;
 			}
 
-			// Delete all the flows previously associated with this MUD URI.
-			sdnmudProvider.getPacketInDispatcher().block();
 			try {
 
-				sdnmudProvider.getFlowCommitWrapper().deleteFlows(node, mudUri.getValue(),
-						sdnmudProvider.getSrcMatchTable(), null, null);
-				sdnmudProvider.getFlowCommitWrapper().deleteFlows(node, mudUri.getValue(),
-						sdnmudProvider.getDstMatchTable(), null, null);
 				/*
 				 * Track that we have added a node for this device MAC address for this node.
 				 * i.e. we store MUD rules for this device on the given node.
@@ -1219,214 +1382,308 @@ public class MudFlowsInstaller {
 				this.sdnmudProvider.addMudUri(cpeNodeId, mudUri);
 
 				/*
-				 * Drop table is where all the unsuccessful matches land up. Push default drop
-				 * packet flows that will drop the packet if a MUD rule does not match.
+				 * The part of the profile that is the same on every switch is compiled once
+				 * for the content of the profile and reused.
 				 */
+				CompiledPolicyCache compiledPolicyCache = sdnmudProvider.getCompiledPolicyCache();
+				List<Object> content = getPolicyContent(mud);
+				CompiledPolicyCache.CompiledPolicy policy = compiledPolicyCache.get(mudUri.getValue(), content);
+				if (policy == null) {
+					policy = compilePolicy(mud, content);
+					compiledPolicyCache.put(mudUri.getValue(), policy);
+				} else {
+					LOG.info("installFlows : using compiled policy for " + mudUri.getValue());
+				}
+				retval = policy.complete;
+
+				/*
+				 * Collect the flows the profile should have on the switch. Only the
+				 * difference from what is installed is pushed at the end so the existing
+				 * flows stay in force and packet processing carries on meanwhile.
+				 */
+				ArrayList<Flow> flows = new ArrayList<Flow>(policy.flows);
+				flows.addAll(bindAddresses(policy, mudUri, node, cpeNodeId));
 
-				if (hasQuarantineDevicePolicy) {
-					this.installGotoDropTableOnQuaranteneSrcModelMetadataMatchFlow(mudUri.getValue(), node,
-							SdnMudConstants.SRC_MATCHED_DROP_ON_QUARANTINE_PRIORITY);
-					this.installGoToDropTableOnQuaranteneDstModelMetadataMatchFlow(mudUri.getValue(), node,
-							SdnMudConstants.DST_MATCHED_DROP_ON_QUARANTINE_PRIORITY);
+				// Clear the cache so can be re-poplulated after packets come in again.
+				// Is this necessary??
+				if (retval && mud.getToDevicePolicy() != null) {
+					this.sdnmudProvider.getPacketInDispatcher().clearMfgModelRules();
+				}
 
+				if (!sdnmudProvider.getMudProfileReconciler().reconcile(node, getFlowIdPrefix(mudUri), flows)) {
+					retval = false;
 				}
-				
-
-				if (hasQuarantineDevicePolicy) {
-					// If the packet is quarantined already it will hit this rule first.
-					this.installGotoDropTableOnQuaranteneSrcModelMetadataMatchFlow(mudUri.getValue(), node,
-								SdnMudConstants.SRC_MATCHED_DROP_PACKET_FLOW_PRIORITY + 1);
-					/*
-					 * Send up to the controller and go to drop table. Controller will mark it as
-					 * quarantined. Next packet will hit the higher priority flow above and bypass
-					 * this rule so the controller does not get hit all the time.
-					 */
-					this.installGoToDropTableAndSendToControllerOnSrcModelMetadataMatchFlow(mudUri.getValue(), node,
-							SdnMudConstants.SRC_MATCHED_DROP_PACKET_FLOW_PRIORITY);
-				} else {
-					this.installGoToDropTableOnSrcModelMetadataMatchFlow(mudUri.getValue(), node,
-							SdnMudConstants.SRC_MATCHED_DROP_PACKET_FLOW_PRIORITY);
+
+			} catch (Exception ex) {
+				LOG.error("MudFlowsInstaller: Exception caught installing MUD Flow ", ex);
+				retval = false;
+			}
+		} catch (Exception ex) {
+			LOG.error("MudFlowsInstaller: Exception caught installing MUD Flow ", ex);
+			retval = false;
+		}
+
+		if (!retval) {
+			LOG.error("Error installing MUD Flow rules.");
+		}
+		return retval;
+
+	}
+
+	/*
+	 * What the switch independent flows of a profile are generated from.
+	 */
+	private List<Object> getPolicyContent(Mud mud) {
+		ArrayList<Object> content = new ArrayList<Object>();
+		content.add(mud);
+		ArrayList<AccessLists> accessListsList = new ArrayList<AccessLists>();
+		if (mud.getFromDevicePolicy() != null) {
+			accessListsList.add(mud.getFromDevicePolicy().getAccessLists());
+		}
+		if (mud.getToDevicePolicy() != null) {
+			accessListsList.add(mud.getToDevicePolicy().getAccessLists());
+		}
+		for (AccessLists accessLists : accessListsList) {
+			for (AccessList accessList : accessLists.getAccessList()) {
+				content.add(this.sdnmudProvider.getAces(mud.getMudUrl(), accessList.getName()));
+			}
+		}
+		content.add(sdnmudProvider.getSrcMatchTable());
+		content.add(sdnmudProvider.getDstMatchTable());
+		content.add(sdnmudProvider.getDropTable());
+		return content;
+	}
+
+	/**
+	 * Compile the part of a MUD profile that does not depend on the switch. ACEs
+	 * that match DNS names or controller classes are recorded to be bound to the
+	 * addresses of each switch.
+	 */
+	private CompiledPolicyCache.CompiledPolicy compilePolicy(Mud mud, List<Object> content) {
+		final Uri mudUri = mud.getMudUrl();
+		LOG.info("compilePolicy : " + mudUri.getValue());
+		boolean retval = true;
+		HashSet<String> enabledAceNames = new HashSet<String>();
+		boolean hasQuarantineDevicePolicy = false;
+		ArrayList<CompiledPolicyCache.AddressBinding> bindings = new ArrayList<CompiledPolicyCache.AddressBinding>();
+
+		if (mud.getAugmentation(
+				org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.nist.mud.rev190428.Mud1.class) != null) {
+			QuarantinedDevicePolicy qdp = mud
+					.getAugmentation(
+							org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.nist.mud.rev190428.Mud1.class)
+					.getQuarantinedDevicePolicy();
+			if (qdp != null) {
+				hasQuarantineDevicePolicy = true;
+				List<EnabledAceNames> aceNames = qdp.getEnabledAceNames();
+				for (EnabledAceNames aceName : aceNames) {
+					enabledAceNames.add(aceName.getAceName());
 				}
-				this.installGoToDropTableOnDstModelMetadataMatchFlow(mudUri.getValue(), node,
-						SdnMudConstants.DST_MATCHED_DROP_PACKET_FLOW_PRIORITY);
+				if (enabledAceNames.isEmpty()) {
+					hasQuarantineDevicePolicy = false;
+				}
+			} else {
+				hasQuarantineDevicePolicy = false;
+			}
+		} else {
+			hasQuarantineDevicePolicy = false;
+		}
+
+		// The flows are not written for any switch while the policy is compiled.
+		InstanceIdentifier<FlowCapableNode> node = null;
+		desiredFlows.set(new ArrayList<Flow>());
+		try {
+
+			/*
+			 * Drop table is where all the unsuccessful matches land up. Push default drop
+			 * packet flows that will drop the packet if a MUD rule does not match.
+			 */
+
+			if (hasQuarantineDevicePolicy) {
+				this.installGotoDropTableOnQuaranteneSrcModelMetadataMatchFlow(mudUri.getValue(), node,
+						SdnMudConstants.SRC_MATCHED_DROP_ON_QUARANTINE_PRIORITY);
+				this.installGoToDropTableOnQuaranteneDstModelMetadataMatchFlow(mudUri.getValue(), node,
+						SdnMudConstants.DST_MATCHED_DROP_ON_QUARANTINE_PRIORITY);
 
+			}
+
+			if (hasQuarantineDevicePolicy) {
+				// If the packet is quarantined already it will hit this rule first.
+				this.installGotoDropTableOnQuaranteneSrcModelMetadataMatchFlow(mudUri.getValue(), node,
+						SdnMudConstants.SRC_MATCHED_DROP_PACKET_FLOW_PRIORITY + 1);
 				/*
-				 * Fetch and install the MUD ACLs. First install the "from-device" rules.
+				 * Send up to the controller and go to drop table. Controller will mark it as
+				 * quarantined. Next packet will hit the higher priority flow above and bypass
+				 * this rule so the controller does not get hit all the time.
 				 */
-				FromDevicePolicy fromDevicePolicy = mud.getFromDevicePolicy();
-				boolean fromAclFound = false;
-				if (fromDevicePolicy != null) {
-					final AccessLists accessLists = fromDevicePolicy.getAccessLists();
-					for (AccessList accessList : accessLists.getAccessList()) {
-						final String aclName = accessList.getName();
-						Aces aces = this.sdnmudProvider.getAces(mudUri, aclName);
-						if (aces != null) {
-							fromAclFound = true;
-							for (Ace ace : aces.getAce()) {
-								String aceName = ace.getName();
-								// Is this ACE enabled for quarantine access?
-								boolean qFlag = enabledAceNames.contains(aceName);
-								if (ace.getActions().getForwarding().equals(Accept.class)) {
-
-									Matches matches = ace.getMatches();
-									MatchesType matchesType = matchesType(matches);
-									LOG.info("matchType " + matchesType);
-									if (matchesType == MatchesType.DNS_MATCH) {
-										List<Ipv4Address> addresses = getMatchAddresses(node, matches);
-										if (!addresses.isEmpty()) {
-											this.installPermitFromDeviceToIpAddressFlowRules(node, mudUri.getValue(),
-													aclName, aceName, matches, matchesType, addresses, qFlag);
-										}
-										// Cache the current resolution. In case this changes we have to update
-										// it.
-										this.deferDnsMatch(node, mudUri.getValue(), aclName, aceName, matches,
-												matchesType, addresses, false, qFlag);
-									} else if (matchesType == MatchesType.CONTROLLER_MAPPING) {
-										Matches1 matches1 = matches.getAugmentation(Matches1.class);
-										Uri controllerUri = matches1.getMud().getController();
-										List<Ipv4Address> addresses = getControllerMatchAddresses(cpeNodeId, mudUri,
-												controllerUri);
-										if (!addresses.isEmpty()) {
-											this.installPermitFromDeviceToIpAddressFlowRules(node, mudUri.getValue(),
-													aclName, aceName, matches, matchesType, addresses, qFlag);
-										}
-										this.deferControllerMatch(node, mudUri.getValue(), aclName, aceName, matches,
-												matchesType, addresses, false, qFlag);
-									} else if (matchesType == MatchesType.MY_CONTROLLER) {
-										List<Ipv4Address> addresses = getControllerMatchAddresses(cpeNodeId, mudUri,
-												mudUri);
-										if (!addresses.isEmpty()) {
-											this.installPermitFromDeviceToIpAddressFlowRules(node, mudUri.getValue(),
-													aclName, aceName, matches, matchesType, addresses, qFlag);
-										}
-										this.deferControllerMatch(node, mudUri.getValue(), aclName, aceName, matches,
-												matchesType, addresses, false, qFlag);
-									} else if (matchesType == MatchesType.LOCAL_NETWORKS) {
-										this.installPermitFromDeviceToLocalNetworksFlowRule(node, mudUri.getValue(),
-												aclName, aceName, matches, matchesType, qFlag);
-									} else if (matchesType == MatchesType.MANUFACTURER) {
-										String manufacturer = getManufacturer(matches);
-										this.installPermitFromDeviceToManufacturerFlowRule(node, mudUri.getValue(),
-												aclName, aceName, manufacturer, matches, matchesType, qFlag);
-									} else if (matchesType == MatchesType.SAME_MANUFACTURER) {
-										String manufacturer = IdUtils.getAuthority(mudUri.getValue());
-										this.installPermitFromDeviceToManufacturerFlowRule(node, mudUri.getValue(),
-												aclName, aceName, manufacturer, matches, matchesType, qFlag);
-									} else if (matchesType == MatchesType.MODEL) {
-										this.installPermitFromDeviceToModelFlowRule(node, mudUri.getValue(), aclName,
-												aceName, matches, matchesType, qFlag);
-									}
-								} else {
-									LOG.error("DENY rule not implemented");
-									retval = false;
+				this.installGoToDropTableAndSendToControllerOnSrcModelMetadataMatchFlow(mudUri.getValue(), node,
+						SdnMudConstants.SRC_MATCHED_DROP_PACKET_FLOW_PRIORITY);
+			} else {
+				this.installGoToDropTableOnSrcModelMetadataMatchFlow(mudUri.getValue(), node,
+						SdnMudConstants.SRC_MATCHED_DROP_PACKET_FLOW_PRIORITY);
+			}
+			this.installGoToDropTableOnDstModelMetadataMatchFlow(mudUri.getValue(), node,
+					SdnMudConstants.DST_MATCHED_DROP_PACKET_FLOW_PRIORITY);
+
+			/*
+			 * Fetch and install the MUD ACLs. First install the "from-device" rules.
+			 */
+			FromDevicePolicy fromDevicePolicy = mud.getFromDevicePolicy();
+			boolean fromAclFound = false;
+			if (fromDevicePolicy != null) {
+				final AccessLists accessLists = fromDevicePolicy.getAccessLists();
+				for (AccessList accessList : accessLists.getAccessList()) {
+					final String aclName = accessList.getName();
+					Aces aces = this.sdnmudProvider.getAces(mudUri, aclName);
+					if (aces != null) {
+						fromAclFound = true;
+						for (Ace ace : aces.getAce()) {
+							String aceName = ace.getName();
+							// Is this ACE enabled for quarantine access?
+							boolean qFlag = enabledAceNames.contains(aceName);
+							if (ace.getActions().getForwarding().equals(Accept.class)) {
+
+								Matches matches = ace.getMatches();
+								MatchesType matchesType = matchesType(matches);
+								LOG.info("matchType " + matchesType);
+								if (matchesType == MatchesType.DNS_MATCH || matchesType == MatchesType.CONTROLLER_MAPPING
+										|| matchesType == MatchesType.MY_CONTROLLER) {
+									bindings.add(new CompiledPolicyCache.AddressBinding(aclName, aceName, matches,
+											matchesType, false, qFlag));
+								} else if (matchesType == MatchesType.LOCAL_NETWORKS) {
+									this.installPermitFromDeviceToLocalNetworksFlowRule(node, mudUri.getValue(),
+											aclName, aceName, matches, matchesType, qFlag);
+								} else if (matchesType == MatchesType.MANUFACTURER) {
+									String manufacturer = getManufacturer(matches);
+									this.installPermitFromDeviceToManufacturerFlowRule(node, mudUri.getValue(),
+											aclName, aceName, manufacturer, matches, matchesType, qFlag);
+								} else if (matchesType == MatchesType.SAME_MANUFACTURER) {
+									String manufacturer = IdUtils.getAuthority(mudUri.getValue());
+									this.installPermitFromDeviceToManufacturerFlowRule(node, mudUri.getValue(),
+											aclName, aceName, manufacturer, matches, matchesType, qFlag);
+								} else if (matchesType == MatchesType.MODEL) {
+									this.installPermitFromDeviceToModelFlowRule(node, mudUri.getValue(), aclName,
+											aceName, matches, matchesType, qFlag);
 								}
+							} else {
+								LOG.error("DENY rule not implemented");
+								retval = false;
 							}
+						}
 
-						} else {
-							LOG.info("Install FromDevicePolicy : Could not find ACEs for mudUrl " + mudUri.getValue()
-									+ " aceName " + aclName);
+					} else {
+						LOG.info("Install FromDevicePolicy : Could not find ACEs for mudUrl " + mudUri.getValue()
+								+ " aceName " + aclName);
 
-						}
 					}
 				}
+			}
 
-				boolean toAclFound = false;
-				ToDevicePolicy toDevicePolicy = mud.getToDevicePolicy();
-				if (toDevicePolicy != null) {
-					final AccessLists accessLists = toDevicePolicy.getAccessLists();
-					for (AccessList accessList : accessLists.getAccessList()) {
-						final String aclName = accessList.getName();
-						Aces aces = this.sdnmudProvider.getAces(mudUri, aclName);
-						if (aces != null) {
-							toAclFound = true;
-							for (Ace ace : aces.getAce()) {
-								final String aceName = ace.getName();
-								boolean qFlag = enabledAceNames.contains(ace.getName());
-								if (ace.getActions().getForwarding().equals(Accept.class)) {
-
-									Matches matches = ace.getMatches();
-									MatchesType matchesType = matchesType(matches);
-									LOG.info("matchType " + matchesType);
-									if (matchesType == MatchesType.DNS_MATCH) {
-										List<Ipv4Address> addresses = getMatchAddresses(node, matches);
-										if (!addresses.isEmpty()) {
-											this.installPermitFromIpAddressToDeviceFlowRules(node, mudUri.getValue(),
-													aclName, aceName, matches, matchesType, addresses, qFlag);
-										}
-										this.deferDnsMatch(node, mudUri.getValue(), aclName, aceName, matches,
-												matchesType, addresses, true, qFlag);
-									} else if (matchesType == MatchesType.CONTROLLER_MAPPING) {
-										Matches1 matches1 = matches.getAugmentation(Matches1.class);
-										Uri controllerUri = matches1.getMud().getController();
-										List<Ipv4Address> addresses = getControllerMatchAddresses(cpeNodeId, mudUri,
-												controllerUri);
-										if (!addresses.isEmpty()) {
-											this.installPermitFromIpAddressToDeviceFlowRules(node, mudUri.getValue(),
-													aclName, aceName, matches, matchesType, addresses, qFlag);
-										}
-										this.deferControllerMatch(node, mudUri.getValue(), aclName, aceName, matches,
-												matchesType, addresses, true, qFlag);
-									} else if (matchesType == MatchesType.MY_CONTROLLER) {
-										List<Ipv4Address> addresses = getControllerMatchAddresses(cpeNodeId, mudUri,
-												mudUri);
-										if (!addresses.isEmpty()) {
-											this.installPermitFromIpAddressToDeviceFlowRules(node, mudUri.getValue(),
-													aclName, aceName, matches, matchesType, addresses, qFlag);
-										}
-										this.deferControllerMatch(node, mudUri.getValue(), aclName, aceName, matches,
-												matchesType, addresses, true, qFlag);
-									} else if (matchesType == MatchesType.LOCAL_NETWORKS) {
-										this.installPermitFromLocalNetworksToDeviceFlowRule(node, mudUri.getValue(),
-												aclName, aceName, matches, matchesType, qFlag);
-									} else if (matchesType == MatchesType.MANUFACTURER) {
-										String manufacturer = getManufacturer(matches);
-										this.installPermitFromManufacturerToDeviceFlowRule(node, mudUri.getValue(),
-												aclName, aceName, manufacturer, matches, matchesType, qFlag);
-										getManufacturerMatches(mudUri).add(manufacturer);
-									} else if (matchesType == MatchesType.SAME_MANUFACTURER) {
-										String manufacturer = IdUtils.getAuthority(mudUri.getValue());
-										this.installPermitFromManufacturerToDeviceFlowRule(node, mudUri.getValue(),
-												aclName, aceName, manufacturer, matches, matchesType, qFlag);
-										getManufacturerMatches(mudUri).add(manufacturer);
-									} else if (matchesType == MatchesType.MODEL) {
-										this.installPermitFromModelToDeviceRule(node, mudUri.getValue(), aclName,
-												aceName, matches, matchesType, qFlag);
-										getModelMatches(mudUri).add(getModel(matches));
-									}
-								} else {
-									LOG.error("DENY rules not implemented");
-									retval = false;
+			boolean toAclFound = false;
+			ToDevicePolicy toDevicePolicy = mud.getToDevicePolicy();
+			if (toDevicePolicy != null) {
+				final AccessLists accessLists = toDevicePolicy.getAccessLists();
+				for (AccessList accessList : accessLists.getAccessList()) {
+					final String aclName = accessList.getName();
+					Aces aces = this.sdnmudProvider.getAces(mudUri, aclName);
+					if (aces != null) {
+						toAclFound = true;
+						for (Ace ace : aces.getAce()) {
+							final String aceName = ace.getName();
+							boolean qFlag = enabledAceNames.contains(ace.getName());
+							if (ace.getActions().getForwarding().equals(Accept.class)) {
+
+								Matches matches = ace.getMatches();
+								MatchesType matchesType = matchesType(matches);
+								LOG.info("matchType " + matchesType);
+								if (matchesType == MatchesType.DNS_MATCH || matchesType == MatchesType.CONTROLLER_MAPPING
+										|| matchesType == MatchesType.MY_CONTROLLER) {
+									bindings.add(new CompiledPolicyCache.AddressBinding(aclName, aceName, matches,
+											matchesType, true, qFlag));
+								} else if (matchesType == MatchesType.LOCAL_NETWORKS) {
+									this.installPermitFromLocalNetworksToDeviceFlowRule(node, mudUri.getValue(),
+											aclName, aceName, matches, matchesType, qFlag);
+								} else if (matchesType == MatchesType.MANUFACTURER) {
+									String manufacturer = getManufacturer(matches);
+									this.installPermitFromManufacturerToDeviceFlowRule(node, mudUri.getValue(),
+											aclName, aceName, manufacturer, matches, matchesType, qFlag);
+									addManufacturerMatch(mudUri, manufacturer);
+								} else if (matchesType == MatchesType.SAME_MANUFACTURER) {
+									String manufacturer = IdUtils.getAuthority(mudUri.getValue());
+									this.installPermitFromManufacturerToDeviceFlowRule(node, mudUri.getValue(),
+											aclName, aceName, manufacturer, matches, matchesType, qFlag);
+									addManufacturerMatch(mudUri, manufacturer);
+								} else if (matchesType == MatchesType.MODEL) {
+									this.installPermitFromModelToDeviceRule(node, mudUri.getValue(), aclName,
+											aceName, matches, matchesType, qFlag);
+									addModelMatch(mudUri, getModel(matches));
 								}
-
+							} else {
+								LOG.error("DENY rules not implemented");
+								retval = false;
 							}
-						} else {
-							LOG.info("Install ToDevicePolicy : Could not find ACEs for mudUrl " + mudUri.getValue()
-									+ " aceName " + aclName);
-						}
-					}
-					retval = fromAclFound && toAclFound;
 
-					// Clear the cache so can be re-poplulated after packets come in again.
-					// Is this necessary??
-					if (retval) {
-						this.sdnmudProvider.getPacketInDispatcher().clearMfgModelRules();
+						}
+					} else {
+						LOG.info("Install ToDevicePolicy : Could not find ACEs for mudUrl " + mudUri.getValue()
+								+ " aceName " + aclName);
 					}
-
 				}
-
-			} catch (Exception ex) {
-				LOG.error("MudFlowsInstaller: Exception caught installing MUD Flow ", ex);
-				retval = false;
+				retval = fromAclFound && toAclFound;
 			}
+
+			List<Flow> flows = sdnmudProvider.getMudAclCompiler().compile(desiredFlows.get());
+			return new CompiledPolicyCache.CompiledPolicy(content, flows, bindings, retval);
 		} finally {
-			this.sdnmudProvider.getPacketInDispatcher().unblock();
+			desiredFlows.remove();
 		}
+	}
 
-		if (!retval) {
-			LOG.error("Error installing MUD Flow rules.");
+	/**
+	 * Generate the flows of the ACEs of a compiled policy that match the DNS
+	 * names and controller classes as resolved for the switch. The ACEs are
+	 * remembered so the flows can be added to as new resolutions come in.
+	 */
+	private List<Flow> bindAddresses(CompiledPolicyCache.CompiledPolicy policy, Uri mudUri,
+			InstanceIdentifier<FlowCapableNode> node, String cpeNodeId) {
+		if (policy.bindings.isEmpty()) {
+			return new ArrayList<Flow>();
+		}
+		desiredFlows.set(new ArrayList<Flow>());
+		try {
+			for (CompiledPolicyCache.AddressBinding binding : policy.bindings) {
+				List<Ipv4Address> addresses;
+				if (binding.matchesType == MatchesType.DNS_MATCH) {
+					addresses = getMatchAddresses(node, binding.matches);
+				} else if (binding.matchesType == MatchesType.CONTROLLER_MAPPING) {
+					Matches1 matches1 = binding.matches.getAugmentation(Matches1.class);
+					Uri controllerUri = matches1.getMud().getController();
+					addresses = getControllerMatchAddresses(cpeNodeId, mudUri, controllerUri);
+				} else {
+					addresses = getControllerMatchAddresses(cpeNodeId, mudUri, mudUri);
+				}
+				if (!addresses.isEmpty()) {
+					if (binding.toDevice) {
+						this.installPermitFromIpAddressToDeviceFlowRules(node, mudUri.getValue(), binding.aclName,
+								binding.aceName, binding.matches, binding.matchesType, addresses, binding.qFlag);
+					} else {
+						this.installPermitFromDeviceToIpAddressFlowRules(node, mudUri.getValue(), binding.aclName,
+								binding.aceName, binding.matches, binding.matchesType, addresses, binding.qFlag);
+					}
+				}
+				// Cache the current resolution. In case this changes we have to update it.
+				if (binding.matchesType == MatchesType.DNS_MATCH) {
+					this.deferDnsMatch(node, mudUri.getValue(), binding.aclName, binding.aceName, binding.matches,
+							binding.matchesType, addresses, binding.toDevice, binding.qFlag);
+				} else {
+					this.deferControllerMatch(node, mudUri.getValue(), binding.aclName, binding.aceName,
+							binding.matches, binding.matchesType, addresses, binding.toDevice, binding.qFlag);
+				}
+			}
+			return sdnmudProvider.getMudAclCompiler().compile(desiredFlows.get());
+		} finally {
+			desiredFlows.remove();
 		}
-		return retval;
-
 	}
 
 	/**
@@ -1440,48 +1697,23 @@ public class MudFlowsInstaller {
 			InstanceIdentifier<FlowCapableNode> flowCapableNode = this.sdnmudProvider.getNode(uri);
 			if (flowCapableNode != null) {
 				for (Mud mud : this.sdnmudProvider.getMudProfiles()) {
-					String uriPrefix = mud.getMudUrl().getValue(); 
-					short table = sdnmudProvider.getSrcMatchTable();
-					this.sdnmudProvider.getFlowCommitWrapper().deleteFlows(flowCapableNode, uriPrefix, table, null,
-							null);
-					table = sdnmudProvider.getDstMatchTable();
-					this.sdnmudProvider.getFlowCommitWrapper().deleteFlows(flowCapableNode, uriPrefix, table, null,
-							null);
+					deleteProfileFlows(flowCapableNode, mud.getMudUrl());
 				}
 			}
 		}
-		this.nameResolutionCache.clear();
+		synchronized (this) {
+			this.nameResolutionCache.clear();
+		}
+		this.sdnmudProvider.getCompiledPolicyCache().clear();
 		LOG.info("clearMudRules: done cleaning mud rules");
 	}
 
-	public Collection<String> getDnsNames(String nodeId, String mudUrl) {
-		ArrayList<String> retval = new ArrayList<String>();
-
-		List<NameResolutionCacheEntry> entries = this.nameResolutionCache.get(nodeId);
-
-		if (entries != null) {
-			for (NameResolutionCacheEntry entry : entries) {
-				if (mudUrl.contentEquals(entry.mudUrl)) {
-					retval.add(entry.domainName);
-				}
-			}
-		}
-		return retval;
+	public synchronized Collection<String> getDnsNames(String nodeId, String mudUrl) {
+		return this.nameResolutionCache.getNames(nodeId, mudUrl);
 	}
 
-	public Collection<String> getControllers(String nodeId, String mudUrl) {
-		ArrayList<String> retval = new ArrayList<String>();
-
-		List<NameResolutionCacheEntry> entries = this.controllerResolutionCache.get(nodeId);
-
-		if (entries != null) {
-			for (NameResolutionCacheEntry entry : entries) {
-				if (mudUrl.contentEquals(entry.mudUrl)) {
-					retval.add(entry.domainName);
-				}
-			}
-		}
-		return retval;
+	public synchronized Collection<String> getControllers(String nodeId, String mudUrl) {
+		return this.controllerResolutionCache.getNames(nodeId, mudUrl);
 	}
 
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.mud.rev190128.Mud;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Installs MUD profiles on switches in parallel.
+ *
+ * Installs are queued per switch. A bounded pool of mud-install-threads
+ * workers takes the next install from the switches in turn, so a switch with
+ * many profiles does not hold up the others. Installs of different profiles,
+ * or of the same profile on different switches, run at the same time;
+ * MudFlowsInstaller serializes installs of the same profile on the same
+ * switch. Queueing a profile for a switch where it is already queued (and not
+ * yet started) shares the queued install.
+ *
+ * @author mranga
+ *
+ */
+public class MudInstallEngine {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MudInstallEngine.class);
+
+	private SdnmudProvider sdnmudProvider;
+
+	private static final class Install {
+		final String cpeNodeId;
+		final Mud mud;
+		final String key;
+		final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+
+		Install(String cpeNodeId, Mud mud, String key) {
+			this.cpeNodeId = cpeNodeId;
+			this.mud = mud;
+			this.key = key;
+		}
+	}
+
+	/*
+	 * The following are guarded by the MudInstallEngine monitor.
+	 */
+
+	// Queued installs of each switch. Switches are taken in turn, in insertion
+	// order; a switch that had its turn goes to the back.
+	private final LinkedHashMap<String, ArrayDeque<Install>> queues = new LinkedHashMap<String, ArrayDeque<Install>>();
+
+	// Queued (not yet started) installs by (switch, MUD URL).
+	private final HashMap<String, Install> queued = new HashMap<String, Install>();
+
+	private int activeWorkers;
+
+	private int running;
+
+	private ExecutorService workers;
+
+	private int nthreads;
+
+	private boolean isClosed;
+
+	private final AtomicLong submittedCount = new AtomicLong();
+
+	private final AtomicLong completedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	public MudInstallEngine(SdnmudProvider sdnmudProvider) {
+		this.sdnmudProvider = sdnmudProvider;
+	}
+
+	private int getWorkerThreads() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getMudInstallThreads() != null
+				&& sdnmudConfig.getMudInstallThreads() > 0) {
+			return sdnmudConfig.getMudInstallThreads().intValue();
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/*
+	 * The worker pool is sized from sdnmud-config which is not available until the
+	 * config listener fires, so it is started on first use. Called with the
+	 * monitor held.
+	 */
+	private ExecutorService getWorkers() {
+		if (workers == null) {
+			nthreads = getWorkerThreads();
+			LOG.info("Starting MUD install engine with " + nthreads + " workers");
+			workers = Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "sdnmud-mud-install-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return workers;
+	}
+
+	static String getInstallKey(String cpeNodeId, String mudUrl) {
+		return mudUrl + ":" + cpeNodeId;
+	}
+
+	/**
+	 * Queue the install of a MUD profile on a switch.
+	 *
+	 * @param mud       -- the profile.
+	 * @param cpeNodeId -- the switch.
+	 * @return a future that completes with the result of
+	 *         {@link MudFlowsInstaller#tryInstallFlows(Mud, String)} (false if the
+	 *         install was dropped).
+	 */
+	public synchronized CompletableFuture<Boolean> submit(Mud mud, String cpeNodeId) {
+		if (isClosed) {
+			return CompletableFuture.completedFuture(false);
+		}
+		String key = getInstallKey(cpeNodeId, mud.getMudUrl().getValue());
+		Install install = queued.get(key);
+		if (install != null) {
+			return install.future;
+		}
+		install = new Install(cpeNodeId, mud, key);
+		queued.put(key, install);
+		ArrayDeque<Install> queue = queues.get(cpeNodeId);
+		if (queue == null) {
+			queue = new ArrayDeque<Install>();
+			queues.put(cpeNodeId, queue);
+		}
+		queue.add(install);
+		submittedCount.incrementAndGet();
+		ExecutorService executor = getWorkers();
+		if (activeWorkers < nthreads) {
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						work();
+					}
+				});
+				activeWorkers++;
+			} catch (RejectedExecutionException ex) {
+				LOG.debug("MUD install engine is shut down -- not starting a worker");
+			}
+		}
+		return install.future;
+	}
+
+	/*
+	 * Take the next install, going round the switches.
+	 */
+	private synchronized Install next() {
+		Iterator<Map.Entry<String, ArrayDeque<Install>>> it = queues.entrySet().iterator();
+		if (isClosed || !it.hasNext()) {
+			activeWorkers--;
+			return null;
+		}
+		Map.Entry<String, ArrayDeque<Install>> entry = it.next();
+		it.remove();
+		Install install = entry.getValue().poll();
+		if (!entry.getValue().isEmpty()) {
+			queues.put(entry.getKey(), entry.getValue());
+		}
+		queued.remove(install.key);
+		running++;
+		return install;
+	}
+
+	private synchronized void done() {
+		running--;
+	}
+
+	private void work() {
+		Install install;
+		while ((install = next()) != null) {
+			boolean result = false;
+			try {
+				result = sdnmudProvider.getMudFlowsInstaller().tryInstallFlows(install.mud, install.cpeNodeId);
+			} catch (RuntimeException ex) {
+				LOG.error("MudInstallEngine: install of " + install.key + " failed", ex);
+			} finally {
+				done();
+			}
+			if (result) {
+				completedCount.incrementAndGet();
+			} else {
+				failedCount.incrementAndGet();
+			}
+			install.future.complete(result);
+		}
+	}
+
+	/**
+	 * Drop the queued installs of a switch that has gone away.
+	 */
+	public void removeSwitch(String cpeNodeId) {
+		ArrayDeque<Install> queue;
+		synchronized (this) {
+			queue = queues.remove(cpeNodeId);
+			if (queue == null) {
+				return;
+			}
+			for (Install install : queue) {
+				queued.remove(install.key);
+			}
+		}
+		for (Install install : queue) {
+			install.future.complete(false);
+		}
+	}
+
+	/**
+	 * @return the number of installs queued and not yet started.
+	 */
+	public synchronized int getPendingCount() {
+		return queued.size();
+	}
+
+	/**
+	 * @return the number of installs in progress.
+	 */
+	public synchronized int getRunningCount() {
+		return running;
+	}
+
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	/**
+	 * @return the number of installs that succeeded.
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 * @return the number of installs that failed (and are to be retried by the
+	 *         state change scanner).
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public void close() {
+		ArrayDeque<Install> dropped = new ArrayDeque<Install>();
+		synchronized (this) {
+			isClosed = true;
+			if (workers != null) {
+				workers.shutdownNow();
+			}
+			dropped.addAll(queued.values());
+			queued.clear();
+			queues.clear();
+		}
+		for (Install install : dropped) {
+			install.future.complete(false);
+		}
+	}
+
+}
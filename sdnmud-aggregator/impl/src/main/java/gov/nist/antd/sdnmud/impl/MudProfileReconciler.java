@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNode;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings the flows of a MUD profile on a switch to a desired state. The
+ * desired flows of a (switch, MUD URL) pair are compared with the installed
+ * flows of the profile by flow id and content (hash first, then equality) and
+ * only the difference is pushed: flows that are new, flows whose content
+ * changed and flows that are no longer wanted. Unchanged flows are not touched
+ * so re-running a reconcile with the same profile is a no-op.
+ *
+ * The difference is committed to the datastore in one transaction, or as one
+ * OpenFlow bundle when bundle-install is configured (falling back to the
+ * datastore if the switch rejects the bundle).
+ *
+ * @author mranga
+ *
+ */
+public class MudProfileReconciler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MudProfileReconciler.class);
+
+	private final SdnmudProvider sdnmudProvider;
+
+	private final AtomicLong addedCount = new AtomicLong();
+
+	private final AtomicLong modifiedCount = new AtomicLong();
+
+	private final AtomicLong deletedCount = new AtomicLong();
+
+	private final AtomicLong unchangedCount = new AtomicLong();
+
+	/**
+	 * Changes needed to go from the installed flows of a profile to the desired
+	 * ones.
+	 */
+	public static final class Diff {
+		final List<Flow> added = new ArrayList<Flow>();
+		final List<Flow> modified = new ArrayList<Flow>();
+		// Installed versions of the modified flows.
+		final List<Flow> replaced = new ArrayList<Flow>();
+		final List<Flow> deleted = new ArrayList<Flow>();
+		int unchanged;
+
+		public boolean isEmpty() {
+			return added.isEmpty() && modified.isEmpty() && deleted.isEmpty();
+		}
+
+		/**
+		 * @return the flows to write (added and modified).
+		 */
+		public List<Flow> getWrites() {
+			ArrayList<Flow> writes = new ArrayList<Flow>(added.size() + modified.size());
+			writes.addAll(added);
+			writes.addAll(modified);
+			return writes;
+		}
+
+		/**
+		 * @return the installed flows to take off the switch (deleted and the old
+		 *         versions of the modified ones).
+		 */
+		public List<Flow> getRemovals() {
+			ArrayList<Flow> removals = new ArrayList<Flow>(deleted.size() + replaced.size());
+			removals.addAll(deleted);
+			removals.addAll(replaced);
+			return removals;
+		}
+
+		@Override
+		public String toString() {
+			return "added " + added.size() + " modified " + modified.size() + " deleted " + deleted.size()
+					+ " unchanged " + unchanged;
+		}
+	}
+
+	public MudProfileReconciler(SdnmudProvider sdnmudProvider) {
+		this.sdnmudProvider = sdnmudProvider;
+	}
+
+	/*
+	 * A flow is identified by its table and id (a flow that moves to another
+	 * table is deleted and added).
+	 */
+	private static String getKey(Flow flow) {
+		return flow.getTableId() + ":" + flow.getId().getValue();
+	}
+
+	/**
+	 * Compare the desired flows of a profile with the flows installed on the
+	 * switch.
+	 *
+	 * @param node         -- the switch.
+	 * @param flowIdPrefix -- the flow id prefix of the profile.
+	 * @param desiredFlows -- the flows the profile should have on the switch.
+	 * @return the difference.
+	 */
+	public Diff diff(InstanceIdentifier<FlowCapableNode> node, String flowIdPrefix, Collection<Flow> desiredFlows) {
+		Diff diff = new Diff();
+		// Installed flows carry their meters -- compare like with like.
+		HashMap<String, Flow> desired = new HashMap<String, Flow>();
+		for (Flow flow : desiredFlows) {
+			desired.put(getKey(flow), sdnmudProvider.getMeterManager().attachMeter(flow, node));
+		}
+		HashMap<String, Flow> installed = new HashMap<String, Flow>();
+		for (Flow flow : sdnmudProvider.getFlowCommitWrapper().getFlows(node, flowIdPrefix)) {
+			installed.put(getKey(flow), flow);
+		}
+		for (Flow flow : desired.values()) {
+			Flow current = installed.remove(getKey(flow));
+			if (current == null) {
+				diff.added.add(flow);
+			} else if (current.hashCode() == flow.hashCode() && current.equals(flow)) {
+				diff.unchanged++;
+			} else {
+				diff.modified.add(flow);
+				diff.replaced.add(current);
+			}
+		}
+		diff.deleted.addAll(installed.values());
+		return diff;
+	}
+
+	/**
+	 * Push the difference to the switch.
+	 *
+	 * @return true if the changes were committed.
+	 */
+	public boolean apply(InstanceIdentifier<FlowCapableNode> node, String flowIdPrefix, Diff diff) {
+		LOG.info("reconcile : " + IdUtils.getNodeUri(node) + " " + flowIdPrefix + " " + diff);
+		addedCount.addAndGet(diff.added.size());
+		modifiedCount.addAndGet(diff.modified.size());
+		deletedCount.addAndGet(diff.deleted.size());
+		unchangedCount.addAndGet(diff.unchanged);
+		if (diff.isEmpty()) {
+			return true;
+		}
+		if (sdnmudProvider.isBundleInstall()) {
+			if (sdnmudProvider.getBundleFlowInstaller().installProfile(node, diff)) {
+				return true;
+			}
+			LOG.info("reconcile : bundle install failed -- writing changes to the datastore");
+		}
+		return sdnmudProvider.getFlowCommitWrapper().replaceFlows(node, diff.getRemovals(), diff.getWrites());
+	}
+
+	/**
+	 * Reconcile the flows of a profile on a switch.
+	 */
+	public boolean reconcile(InstanceIdentifier<FlowCapableNode> node, String flowIdPrefix,
+			Collection<Flow> desiredFlows) {
+		return apply(node, flowIdPrefix, diff(node, flowIdPrefix, desiredFlows));
+	}
+
+	public long getAddedCount() {
+		return addedCount.get();
+	}
+
+	public long getModifiedCount() {
+		return modifiedCount.get();
+	}
+
+	public long getDeletedCount() {
+		return deletedCount.get();
+	}
+
+	public long getUnchangedCount() {
+		return unchangedCount.get();
+	}
+
+}
@@ -17,7 +17,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.TimerTask;
 
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
@@ -68,7 +67,7 @@ import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 
-public class MudReportSender extends TimerTask {
+public class MudReportSender implements Runnable {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MudReportSender.class);
 	private SdnmudProvider provider;
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.yang.types.rev130715.MacAddress;
+
+/**
+ * Flyweight view of the L2/L3/L4 headers of a raw packet-in payload. The view
+ * reads fields straight out of the wrapped byte array and allocates nothing; a
+ * single instance is meant to be re-used (one per worker thread) by calling
+ * {@link #wrap(byte[])} for every packet.
+ *
+ * MAC addresses are returned as the 48 bit value in the low bits of a long and
+ * IPv4 addresses as an int in network order. Use {@link #toMacAddress(long)} and
+ * {@link #toIpString(int)} when the string form is actually needed.
+ *
+ * @author mranga
+ *
+ */
+public final class PacketHeader {
+
+	private static final int ETHER_HEADER_SIZE = 14;
+
+	private static final int VLAN_TAG_SIZE = 4;
+
+	private static final int UDP_HEADER_SIZE = 8;
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private byte[] packet;
+
+	private int length;
+
+	private int etherType;
+
+	private int innerEtherType;
+
+	private int vlanId;
+
+	// Offset of the IP header, -1 if the packet is not IPv4.
+	private int ipOffset;
+
+	// Offset of the L4 header, -1 if absent or truncated.
+	private int l4Offset;
+
+	/**
+	 * Point this view at a new packet.
+	 *
+	 * @param packet -- the raw ethernet frame.
+	 * @return this view.
+	 */
+	public PacketHeader wrap(byte[] packet) {
+		this.packet = packet;
+		this.length = packet == null ? 0 : packet.length;
+		this.etherType = -1;
+		this.innerEtherType = -1;
+		this.vlanId = -1;
+		this.ipOffset = -1;
+		this.l4Offset = -1;
+
+		if (length < ETHER_HEADER_SIZE) {
+			return this;
+		}
+		etherType = readShort(12);
+		innerEtherType = etherType;
+		int l3Offset = ETHER_HEADER_SIZE;
+		if (etherType == SdnMudConstants.ETHERTYPE_CUSTOMER_VLAN && length >= ETHER_HEADER_SIZE + VLAN_TAG_SIZE) {
+			vlanId = readShort(14) & 0x0fff;
+			innerEtherType = readShort(16);
+			l3Offset += VLAN_TAG_SIZE;
+		}
+		if (innerEtherType == SdnMudConstants.ETHERTYPE_IPV4 && length >= l3Offset + 20) {
+			ipOffset = l3Offset;
+			int ihl = (packet[ipOffset] & 0x0f) * 4;
+			if (ihl >= 20 && length >= ipOffset + ihl + 4) {
+				l4Offset = ipOffset + ihl;
+			}
+		}
+		return this;
+	}
+
+	private int readShort(int offset) {
+		return ((packet[offset] & 0xff) << 8) | (packet[offset + 1] & 0xff);
+	}
+
+	private int readInt(int offset) {
+		return ((packet[offset] & 0xff) << 24) | ((packet[offset + 1] & 0xff) << 16)
+				| ((packet[offset + 2] & 0xff) << 8) | (packet[offset + 3] & 0xff);
+	}
+
+	private long readMac(int offset) {
+		return ((long) readShort(offset) << 32) | (readInt(offset + 2) & 0xffffffffL);
+	}
+
+	public byte[] getPacket() {
+		return packet;
+	}
+
+	/**
+	 * @return the ethertype in the ethernet header (0x8100 for a VLAN tagged
+	 *         frame) or -1 for a runt frame.
+	 */
+	public int getEtherType() {
+		return etherType;
+	}
+
+	/**
+	 * @return the ethertype following the VLAN tag, or the ethertype if untagged.
+	 */
+	public int getInnerEtherType() {
+		return innerEtherType;
+	}
+
+	public boolean hasVlan() {
+		return vlanId >= 0;
+	}
+
+	public int getVlanId() {
+		return vlanId;
+	}
+
+	public long getDstMac() {
+		return length < ETHER_HEADER_SIZE ? 0 : readMac(0);
+	}
+
+	public long getSrcMac() {
+		return length < ETHER_HEADER_SIZE ? 0 : readMac(6);
+	}
+
+	public boolean isIpv4() {
+		return ipOffset >= 0;
+	}
+
+	public int getSrcIp() {
+		return ipOffset < 0 ? 0 : readInt(ipOffset + 12);
+	}
+
+	public int getDstIp() {
+		return ipOffset < 0 ? 0 : readInt(ipOffset + 16);
+	}
+
+	/**
+	 * @return the IP protocol or -1 if the packet is not IPv4.
+	 */
+	public int getProtocol() {
+		return ipOffset < 0 ? -1 : packet[ipOffset + 9] & 0xff;
+	}
+
+	private boolean hasPorts() {
+		int protocol = getProtocol();
+		return l4Offset >= 0 && (protocol == SdnMudConstants.TCP_PROTOCOL || protocol == SdnMudConstants.UDP_PROTOCOL);
+	}
+
+	/**
+	 * @return the TCP or UDP source port or -1 if there is none.
+	 */
+	public int getSrcPort() {
+		return hasPorts() ? readShort(l4Offset) : -1;
+	}
+
+	/**
+	 * @return the TCP or UDP destination port or -1 if there is none.
+	 */
+	public int getDstPort() {
+		return hasPorts() ? readShort(l4Offset + 2) : -1;
+	}
+
+	public boolean isTcpSynFlagOnAndAckFlagOff() {
+		if (getProtocol() != SdnMudConstants.TCP_PROTOCOL || l4Offset < 0 || length < l4Offset + 14) {
+			return false;
+		}
+		int flags = packet[l4Offset + 13] & 0x3f;
+		return (flags & 0x02) != 0 && (flags & 0x10) == 0;
+	}
+
+	/**
+	 * @return the offset of the TCP or UDP payload or -1 if there is none.
+	 */
+	public int getL4PayloadOffset() {
+		if (!hasPorts()) {
+			return -1;
+		}
+		int offset;
+		if (getProtocol() == SdnMudConstants.UDP_PROTOCOL) {
+			offset = l4Offset + UDP_HEADER_SIZE;
+		} else {
+			if (length < l4Offset + 13) {
+				return -1;
+			}
+			offset = l4Offset + ((packet[l4Offset + 12] >> 4) & 0x0f) * 4;
+		}
+		return offset <= length ? offset : -1;
+	}
+
+	/**
+	 * Format a MAC address the way the rest of the application keys it
+	 * (upper case, colon separated).
+	 */
+	public static String toMacString(long mac) {
+		char[] chars = new char[17];
+		for (int i = 0; i < 6; i++) {
+			int octet = (int) (mac >>> (40 - 8 * i)) & 0xff;
+			int pos = i * 3;
+			chars[pos] = HEX_DIGITS[octet >>> 4];
+			chars[pos + 1] = HEX_DIGITS[octet & 0x0f];
+			if (i < 5) {
+				chars[pos + 2] = ':';
+			}
+		}
+		return new String(chars);
+	}
+
+	public static MacAddress toMacAddress(long mac) {
+		return new MacAddress(toMacString(mac));
+	}
+
+	/**
+	 * Parse a colon separated MAC address into its 48 bit value.
+	 */
+	public static long toMacLong(String mac) {
+		long value = 0;
+		for (int i = 0; i < mac.length(); i++) {
+			int digit = Character.digit(mac.charAt(i), 16);
+			if (digit >= 0) {
+				value = (value << 4) | digit;
+			}
+		}
+		return value;
+	}
+
+	public static long toMacLong(MacAddress mac) {
+		return toMacLong(mac.getValue());
+	}
+
+	/**
+	 * Format an IPv4 address in dotted quad notation.
+	 */
+	public static String toIpString(int ip) {
+		return new StringBuilder(15).append((ip >>> 24) & 0xff).append('.').append((ip >>> 16) & 0xff).append('.')
+				.append((ip >>> 8) & 0xff).append('.').append(ip & 0xff).toString();
+	}
+
+}
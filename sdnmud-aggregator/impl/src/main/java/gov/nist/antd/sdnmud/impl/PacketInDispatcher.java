@@ -42,22 +42,21 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
-import org.opendaylight.controller.liblldp.Ethernet;
-import org.opendaylight.controller.liblldp.NetUtils;
 import org.opendaylight.controller.md.sal.binding.api.ReadWriteTransaction;
 import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
 import org.opendaylight.openflowplugin.api.OFConstants;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.IpAddress;
-import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Ipv4Address;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Uri;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.mud.reporter.extension.rev190621.mud.reporter.extension.Reporter;
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.mud.rev190128.Mud;
@@ -110,68 +109,97 @@ public class PacketInDispatcher implements PacketProcessingListener {
 
 	private static final Logger LOG = LoggerFactory.getLogger(PacketInDispatcher.class);
 
-	private int mudRelatedPacketInCounter = 0;
+	private AtomicInteger mudRelatedPacketInCounter = new AtomicInteger();
 
-	private int packetInCounter = 0;
+	private AtomicInteger packetInCounter = new AtomicInteger();
+
+	// The tables below are read and written by the packet-in pipeline workers
+	// of several switches at once.
 
 	// Set of MAC addresses that are unclassified or for which no MUD uri has been
-	// assigned.
-	private HashSet<MacAddress> unclassifiedMacAddresses = new HashSet<MacAddress>();
+	// assigned (the table value is unused).
+	private MacTable unclassifiedMacAddresses = new MacTable();
+
+	// The MAC tables below are keyed by the 48 bit MAC address and hold the
+	// metadata stamped for the MAC.
 
 	// source mac address metadata mapping.
-	private HashMap<String, BigInteger> srcMetadataMap = new HashMap<String, BigInteger>();
+	private MacTable srcMetadataMap = new MacTable();
 	// Set of Mac addresses for which a source mac classification rule exists
-	private HashMap<String, BigInteger> srcMacRuleTable = new HashMap<String, BigInteger>();
+	private MacTable srcMacRuleTable = new MacTable();
 	// Destination MAC address metadata mapping
-	private HashMap<String, BigInteger> dstMetadataMap = new HashMap<String, BigInteger>();
+	private MacTable dstMetadataMap = new MacTable();
 	// Set of mac addresses for which a dst mac classification rule exists
-	private HashMap<String, BigInteger> dstMacRuleTable = new HashMap<String, BigInteger>();
-	// Flow rules in the first two tables -- these can be cleared via an API
-	private HashSet<Flow> flowTable = new HashSet<Flow>();
+	private MacTable dstMacRuleTable = new MacTable();
+	// Flow rules in the first two tables, per node -- these can be cleared via an API
+	private FlowRegistry stampFlows;
 	// The set of mac addresses that were seen when a packet was dropped.
 	// This tracks ACL violations.
 
-	private HashMap<InstanceIdentifier<FlowCapableNode>, HashSet<MacAddress>> dropRuleMacAddressMap = new HashMap<>();
+	private ConcurrentHashMap<InstanceIdentifier<FlowCapableNode>, Set<MacAddress>> dropRuleMacAddressMap = new ConcurrentHashMap<>();
+
+	private ConcurrentHashMap<InstanceIdentifier<FlowCapableNode>, Set<String>> dropRuleControllerMap = new ConcurrentHashMap<>();
+
+	// Re-usable header view, one per pipeline worker.
+	private final ThreadLocal<PacketHeader> packetHeader = new ThreadLocal<PacketHeader>() {
+		@Override
+		protected PacketHeader initialValue() {
+			return new PacketHeader();
+		}
+	};
+
+	// Stamp flow installs in progress, keyed by (switch, MAC, direction).
+	private final InFlightRegistry inFlightRegistry = new InFlightRegistry();
 
-	private HashMap<InstanceIdentifier<FlowCapableNode>, HashSet<String>> dropRuleControllerMap = new HashMap<>();
+	// Packet-in counters and latency histograms per table and cookie.
+	private final PacketInStats packetInStats = new PacketInStats();
 
-	private Timer timer = new Timer();
+	// Serializes the read-modify-write of the MUD URL mapping learned from DHCP.
+	private final Object mappingLock = new Object();
 
 	private boolean isClosed;
 
 	private boolean isBlocked;
 
-	private class SrcMacAddressTimerTask extends TimerTask {
+	private class SrcMacAddressTimerTask implements Runnable {
 
-		private MacAddress macAddress;
+		private long macAddress;
+
+		private long metadata;
 
-		public SrcMacAddressTimerTask(MacAddress macAddress) {
+		public SrcMacAddressTimerTask(long macAddress, long metadata) {
 			this.macAddress = macAddress;
+			this.metadata = metadata;
 		}
 
 		@Override
 		public void run() {
-			PacketInDispatcher.this.srcMacRuleTable.remove(macAddress.getValue());
+			// An entry re-installed with other metadata since then is left alone.
+			PacketInDispatcher.this.srcMacRuleTable.remove(macAddress, metadata);
 		}
 
 	}
 
-	private class DstMacAddressTimerTask extends TimerTask {
-		private MacAddress macAddress;
+	private class DstMacAddressTimerTask implements Runnable {
+		private long macAddress;
+
+		private long metadata;
 
-		public DstMacAddressTimerTask(MacAddress macAddress) {
+		public DstMacAddressTimerTask(long macAddress, long metadata) {
 			this.macAddress = macAddress;
+			this.metadata = metadata;
 		}
 
 		@Override
 		public void run() {
-			PacketInDispatcher.this.dstMacRuleTable.remove(macAddress.getValue());
+			// An entry re-installed with other metadata since then is left alone.
+			PacketInDispatcher.this.dstMacRuleTable.remove(macAddress, metadata);
 
 		}
 
 	}
 
-	private class DropRuleTableTimerTask extends TimerTask {
+	private class DropRuleTableTimerTask implements Runnable {
 		private MacAddress macAddress;
 		private InstanceIdentifier<FlowCapableNode> node;
 		private String srcController;
@@ -185,8 +213,9 @@ public class PacketInDispatcher implements PacketProcessingListener {
 			this.node = node;
 		}
 
+		@Override
 		public void run() {
-			HashSet<MacAddress> macAddresses = dropRuleMacAddressMap.get(node);
+			Set<MacAddress> macAddresses = dropRuleMacAddressMap.get(node);
 			if (macAddresses != null) {
 				macAddresses.remove(macAddress);
 				if (macAddresses.isEmpty()) {
@@ -194,14 +223,14 @@ public class PacketInDispatcher implements PacketProcessingListener {
 				}
 			}
 			if (srcController != null) {
-				HashSet<String> controllers = dropRuleControllerMap.get(node);
+				Set<String> controllers = dropRuleControllerMap.get(node);
 				if (controllers != null) {
 					controllers.remove(srcController);
 				}
 			}
 
 			if (dstController != null) {
-				HashSet<String> controllers = dropRuleControllerMap.get(node);
+				Set<String> controllers = dropRuleControllerMap.get(node);
 				if (controllers != null) {
 					controllers.remove(dstController);
 				}
@@ -210,7 +239,6 @@ public class PacketInDispatcher implements PacketProcessingListener {
 	}
 
 	public void close() {
-		this.timer.cancel();
 		this.isClosed = true;
 	}
 
@@ -224,43 +252,37 @@ public class PacketInDispatcher implements PacketProcessingListener {
 
 	public PacketInDispatcher(SdnmudProvider sdnmudProvider) {
 		this.sdnmudProvider = sdnmudProvider;
+		this.stampFlows = new FlowRegistry(sdnmudProvider.getFlowStore());
 	}
 
 	public Collection<MacAddress> getUnclassifiedMacAddresses() {
-		return this.unclassifiedMacAddresses;
+		ArrayList<MacAddress> macAddresses = new ArrayList<MacAddress>();
+		for (long mac : this.unclassifiedMacAddresses.keys()) {
+			macAddresses.add(PacketHeader.toMacAddress(mac));
+		}
+		return macAddresses;
+	}
+
+	public InFlightRegistry getInFlightRegistry() {
+		return inFlightRegistry;
+	}
+
+	public PacketInStats getPacketInStats() {
+		return packetInStats;
 	}
 
 	public int getMudPacketInCount(boolean clearFlag) {
-		int retval = this.mudRelatedPacketInCounter;
-		if (clearFlag) {
-			mudRelatedPacketInCounter = 0;
-		}
-		return retval;
+		return clearFlag ? mudRelatedPacketInCounter.getAndSet(0) : mudRelatedPacketInCounter.get();
 	}
 
 	public int getPacketInCount(boolean clearFlag) {
-		int retval = this.packetInCounter;
-		if (clearFlag) {
-			packetInCounter = 0;
-		}
-		return retval;
+		return clearFlag ? packetInCounter.getAndSet(0) : packetInCounter.get();
 	}
 
 	public void clearPacketInCount() {
-		mudRelatedPacketInCounter = 0;
-		packetInCounter = 0;
-	}
-
-	private static MacAddress rawMacToMac(final byte[] rawMac) {
-		MacAddress mac = null;
-		if (rawMac != null) {
-			StringBuilder sb = new StringBuilder();
-			for (byte octet : rawMac) {
-				sb.append(String.format(":%02X", octet));
-			}
-			mac = new MacAddress(sb.substring(1));
-		}
-		return mac;
+		mudRelatedPacketInCounter.set(0);
+		packetInCounter.set(0);
+		packetInStats.clear();
 	}
 
 	/*
@@ -280,8 +302,8 @@ public class PacketInDispatcher implements PacketProcessingListener {
 			List<MacAddress> macAddressList = new ArrayList<MacAddress>();
 			Collection<MacAddress> mappedAddresses = map.get(uri);
 			for (MacAddress macAddr : mappedAddresses) {
-				if (srcMacRuleTable.containsKey(macAddr.getValue())
-						|| dstMacRuleTable.containsKey(macAddr.getValue())) {
+				long mac = PacketHeader.toMacLong(macAddr);
+				if (srcMacRuleTable.containsKey(mac) || dstMacRuleTable.containsKey(mac)) {
 					macAddressList.add(macAddr);
 				}
 			}
@@ -295,8 +317,8 @@ public class PacketInDispatcher implements PacketProcessingListener {
 		if (!this.unclassifiedMacAddresses.isEmpty()) {
 			List<MacAddress> macAddressList = new ArrayList<MacAddress>();
 			mappingInfoListBuilder.setMudUrl(new Uri(SdnMudConstants.UNCLASSIFIED));
-			for (MacAddress macAddress : this.unclassifiedMacAddresses) {
-				macAddressList.add(macAddress);
+			for (long macAddress : this.unclassifiedMacAddresses.keys()) {
+				macAddressList.add(PacketHeader.toMacAddress(macAddress));
 			}
 			mappingInfoListBuilder.setDeviceId(macAddressList);
 			mappingInfoArrayList.add(mappingInfoListBuilder.build());
@@ -354,41 +376,9 @@ public class PacketInDispatcher implements PacketProcessingListener {
 		this.sdnmudProvider.getPacketProcessingService().transmitPacket(tpib.build());
 	}
 
-	private boolean isLocalAddress(String nodeId, String ipAddress) {
-		if (sdnmudProvider.getLocalNetworksExclude(nodeId) != null) {
-			for (String host : sdnmudProvider.getLocalNetworksExclude(nodeId)) {
-				if (host.equals(ipAddress))
-					return false;
-			}
-		}
-		Map<String, List<Ipv4Address>> controllerClassMap = sdnmudProvider.getControllerClassMap(nodeId);
-		Ipv4Address ipAddr = new Ipv4Address(ipAddress);
-		for (List<Ipv4Address> addList : controllerClassMap.values()) {
-			if (addList.contains(ipAddr)) {
-				return false;
-			}
-		}
-		boolean isLocalAddress = false;
-		if (sdnmudProvider.getLocalNetworks(nodeId) != null) {
-			for (String localNetworkStr : sdnmudProvider.getLocalNetworks(nodeId)) {
-				LOG.debug("localNetworkStr = " + localNetworkStr);
-				String[] pieces = localNetworkStr.split("/");
-				int prefixLength = Integer.valueOf(pieces[1]) / 8;
-
-				String[] pieces1 = pieces[0].split("\\.");
-				String prefix = "";
-
-				for (int i = 0; i < prefixLength; i++) {
-					prefix = prefix + pieces1[i] + ".";
-				}
-				LOG.debug("prefix = " + prefix);
-				if (ipAddress.startsWith(prefix)) {
-					isLocalAddress = true;
-					break;
-				}
-			}
-		}
-		return isLocalAddress;
+	private boolean isLocalAddress(String nodeId, int ipAddress) {
+		AddressClassifier addressClassifier = sdnmudProvider.getAddressClassifier(nodeId);
+		return addressClassifier != null && addressClassifier.isLocalAddress(ipAddress);
 	}
 
 	private boolean isQuarantene(MacAddress macAddress) {
@@ -400,8 +390,74 @@ public class PacketInDispatcher implements PacketProcessingListener {
 		}
 	}
 
+	/*
+	 * Packet-in to process again if the install it duplicated does not succeed.
+	 */
+	private Runnable resubmit(final String nodeId, final PacketReceived notification) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				if (!sdnmudProvider.getPacketInPipeline().submit(nodeId, notification)) {
+					LOG.debug("Packet-in queue full for " + nodeId + " -- dropping parked packet");
+				}
+			}
+		};
+	}
+
+	/*
+	 * Hand the flow write to the install stage of the switch so the classify stage
+	 * does not wait for the switch to acknowledge it. The in flight entry for the
+	 * MAC (held with the given token) is released once the write is done (or could
+	 * not be queued) so that packet-ins arriving meanwhile do not install the same
+	 * flow again.
+	 */
+	private void installFlow(final Flow flow, final InstanceIdentifier<FlowCapableNode> node, final int direction,
+			final long mac, final long token, final Runnable onInstalled) {
+		final String nodeId = IdUtils.getNodeUri(node);
+		if (sdnmudProvider.getFlowRetryQueue().isSaturated()) {
+			// Back off while failed writes pile up; a later packet-in tries again.
+			LOG.error("Flow retry queue full -- not installing flow " + flow.getId().getValue());
+			inFlightRegistry.release(nodeId, direction, mac, token, false);
+			return;
+		}
+		final long decisionTime = System.nanoTime();
+		boolean queued = sdnmudProvider.getPacketInPipeline().install(nodeId, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sdnmudProvider.getFlowWriter().writeFlowAsync(flow, node)
+							.whenComplete(new BiConsumer<Void, Throwable>() {
+								@Override
+								public void accept(Void result, Throwable error) {
+									try {
+										if (error == null) {
+											packetInStats.recordCommit(flow.getTableId(),
+													flow.getCookie() == null ? null : flow.getCookie().getValue(),
+													decisionTime);
+											onInstalled.run();
+										}
+									} finally {
+										inFlightRegistry.release(nodeId, direction, mac, token, error == null);
+									}
+								}
+							});
+				} catch (RuntimeException ex) {
+					LOG.error("Could not install flow " + flow.getId().getValue(), ex);
+					inFlightRegistry.release(nodeId, direction, mac, token, false);
+				}
+			}
+		});
+		if (!queued) {
+			LOG.error("Install queue full -- could not install flow " + flow.getId().getValue());
+			inFlightRegistry.release(nodeId, direction, mac, token, false);
+		}
+	}
+
 	private void installSrcMacMatchStampManufacturerModelFlowRules(MacAddress srcMac, boolean isLocalAddress,
-			boolean isQurantened, boolean isBlocked, String mudUri, InstanceIdentifier<FlowCapableNode> node) {
+			boolean isQurantened, boolean isBlocked, String mudUri, InstanceIdentifier<FlowCapableNode> node,
+			long token) {
+		// Brings the profile of the device to this switch when installing on demand.
+		sdnmudProvider.getDemandProfileInstaller().onClassified(IdUtils.getNodeUri(node), mudUri);
 		String manufacturer = IdUtils.getAuthority(mudUri);
 		int manufacturerId = IdUtils.getManfuacturerId(manufacturer);
 		int modelId = IdUtils.getModelId(mudUri);
@@ -423,7 +479,8 @@ public class PacketInDispatcher implements PacketProcessingListener {
 				.or(SdnMudConstants.SRC_NETWORK_MASK).or(SdnMudConstants.SRC_QUARANTENE_MASK)
 				.or(SdnMudConstants.SRC_MAC_BLOCKED_MASK);
 
-		FlowCookie flowCookie = SdnMudConstants.SRC_MANUFACTURER_STAMP_FLOW_COOKIE;
+		FlowCookie flowCookie = IdUtils.createFlowCookie(SdnMudConstants.SRC_MANUFACTURER_STAMP_FLOW_COOKIE,
+				IdUtils.getMudUrlId(MudFlowsInstaller.getFlowIdPrefix(new Uri(mudUri))), IdUtils.getDeviceId(srcMac));
 
 		int timeout = this.sdnmudProvider.getSdnmudConfig().getMfgIdRuleCacheTimeout().intValue();
 
@@ -434,14 +491,20 @@ public class PacketInDispatcher implements PacketProcessingListener {
 
 		Flow flow = FlowUtils.createSourceMacMatchSetMetadataGoToNextTableFlow(srcMac, metadata, metadataMask,
 				sdnmudProvider.getSrcDeviceManufacturerStampTable(), flowId, flowCookie, timeout).build();
-		flowTable.add(flow);
-		sdnmudProvider.getFlowWriter().writeFlow(flow, node);
-		this.srcMetadataMap.put(srcMac.getValue(), metadata);
-		this.srcMacRuleTable.put(srcMac.getValue(), metadata);
-		timer.schedule(new SrcMacAddressTimerTask(srcMac),
-				sdnmudProvider.getSdnmudConfig().getMfgIdRuleCacheTimeout() / 2 * 1000);
-		// Classification state has changed -- broadcast it.
-		this.broadcastStateChange();
+		stampFlows.add(node, flow);
+		final long mac = PacketHeader.toMacLong(srcMac);
+		final long metadataValue = metadata.longValue();
+		this.installFlow(flow, node, InFlightRegistry.SRC, mac, token, new Runnable() {
+			@Override
+			public void run() {
+				srcMetadataMap.put(mac, metadataValue);
+				srcMacRuleTable.put(mac, metadataValue);
+				sdnmudProvider.getTimingWheel().schedule(new SrcMacAddressTimerTask(mac, metadataValue),
+						sdnmudProvider.getSdnmudConfig().getMfgIdRuleCacheTimeout() / 2 * 1000);
+				// Classification state has changed -- broadcast it.
+				broadcastStateChange();
+			}
+		});
 
 	}
 	
@@ -481,7 +544,10 @@ public class PacketInDispatcher implements PacketProcessingListener {
 
 
 	private void installDstMacMatchStampManufacturerModelFlowRules(MacAddress dstMac, boolean isLocalAddress,
-			boolean isQurarantened, boolean isBlocked, String mudUri, InstanceIdentifier<FlowCapableNode> node) {
+			boolean isQurarantened, boolean isBlocked, String mudUri, InstanceIdentifier<FlowCapableNode> node,
+			long token) {
+		// Brings the profile of the device to this switch when installing on demand.
+		sdnmudProvider.getDemandProfileInstaller().onClassified(IdUtils.getNodeUri(node), mudUri);
 
 		String manufacturer = IdUtils.getAuthority(mudUri);
 		int manufacturerId = IdUtils.getManfuacturerId(manufacturer);
@@ -504,23 +570,29 @@ public class PacketInDispatcher implements PacketProcessingListener {
 		BigInteger metadataMask = SdnMudConstants.DST_MANUFACTURER_MASK.or(SdnMudConstants.DST_MODEL_MASK)
 				.or(SdnMudConstants.DST_NETWORK_MASK).or(SdnMudConstants.DST_QURANTENE_MASK)
 				.or(SdnMudConstants.DST_MAC_BLOCKED_MASK);
-		FlowCookie flowCookie = SdnMudConstants.DST_MANUFACTURER_MODEL_FLOW_COOKIE;
+		FlowCookie flowCookie = IdUtils.createFlowCookie(SdnMudConstants.DST_MANUFACTURER_MODEL_FLOW_COOKIE,
+				IdUtils.getMudUrlId(MudFlowsInstaller.getFlowIdPrefix(new Uri(mudUri))), IdUtils.getDeviceId(dstMac));
 
 		String flowIdStr = mudUri + "/" + dstMac.getValue() + "/" + metadata.toString(16);
 
 		FlowId flowId = new FlowId(flowIdStr);
 		Flow flow = FlowUtils.createDestMacMatchSetMetadataAndGoToNextTableFlow(dstMac, metadata, metadataMask,
 				sdnmudProvider.getDstDeviceManufacturerStampTable(), flowId, flowCookie, timeout).build();
-		flowTable.add(flow);
-		this.dstMetadataMap.put(dstMac.getValue(), metadata);
-		this.dstMacRuleTable.put(dstMac.getValue(), metadata);
-		// Supress further notification processing for CacheTimeout/2 seconds (keeps the
-		// switch from flooding the controller)
-		this.timer.schedule(new DstMacAddressTimerTask(dstMac),
-				sdnmudProvider.getSdnmudConfig().getMfgIdRuleCacheTimeout() / 2 * 1000);
-
-		sdnmudProvider.getFlowWriter().writeFlow(flow, node);
-		this.broadcastStateChange();
+		stampFlows.add(node, flow);
+		final long mac = PacketHeader.toMacLong(dstMac);
+		final long metadataValue = metadata.longValue();
+		this.installFlow(flow, node, InFlightRegistry.DST, mac, token, new Runnable() {
+			@Override
+			public void run() {
+				dstMetadataMap.put(mac, metadataValue);
+				dstMacRuleTable.put(mac, metadataValue);
+				// Supress further notification processing for CacheTimeout/2 seconds (keeps
+				// the switch from flooding the controller)
+				sdnmudProvider.getTimingWheel().schedule(new DstMacAddressTimerTask(mac, metadataValue),
+						sdnmudProvider.getSdnmudConfig().getMfgIdRuleCacheTimeout() / 2 * 1000);
+				broadcastStateChange();
+			}
+		});
 	}
 
 	/**
@@ -529,15 +601,15 @@ public class PacketInDispatcher implements PacketProcessingListener {
 	public synchronized void clearMfgModelRules() {
 		LOG.info("Clear mfgModelRules");
 
-		for (String nodeId : sdnmudProvider.getMudCpeNodeIds()) {
-			InstanceIdentifier<FlowCapableNode> flowCapableNode = sdnmudProvider.getNode(nodeId);
-			if (flowCapableNode != null) {
-				for (Flow f : this.flowTable) {
-					sdnmudProvider.getFlowWriter().deleteFlows(flowCapableNode, f);
-				}
-			}
+		// One cookie / mask remove per stamp table rather than one remove per flow.
+		for (InstanceIdentifier<FlowCapableNode> flowCapableNode : this.stampFlows.getNodes()) {
+			this.stampFlows.removeNode(flowCapableNode);
+			FlowWriter flowWriter = sdnmudProvider.getFlowWriter();
+			flowWriter.removeFlowsByCookie(flowCapableNode, sdnmudProvider.getSrcDeviceManufacturerStampTable(),
+					SdnMudConstants.SRC_MANUFACTURER_STAMP_FLOW_COOKIE, SdnMudConstants.COOKIE_FLOW_CLASS_MASK);
+			flowWriter.removeFlowsByCookie(flowCapableNode, sdnmudProvider.getDstDeviceManufacturerStampTable(),
+					SdnMudConstants.DST_MANUFACTURER_MODEL_FLOW_COOKIE, SdnMudConstants.COOKIE_FLOW_CLASS_MASK);
 		}
-		this.flowTable.clear();
 		this.srcMacRuleTable.clear();
 		this.dstMacRuleTable.clear();
 		this.srcMetadataMap.clear();
@@ -545,8 +617,58 @@ public class PacketInDispatcher implements PacketProcessingListener {
 
 	}
 
+	/**
+	 * Clear the manufacturer / model stamp rules of one device so it is classified
+	 * again on its next packet. The rules of other devices are kept.
+	 *
+	 * @param macAddress -- the MAC address of the device.
+	 */
+	public synchronized void clearDeviceRules(MacAddress macAddress) {
+		LOG.info("Clear device rules " + macAddress.getValue());
+		int deviceId = IdUtils.getDeviceId(macAddress);
+		long mac = PacketHeader.toMacLong(macAddress);
+		FlowWriter flowWriter = sdnmudProvider.getFlowWriter();
+		for (InstanceIdentifier<FlowCapableNode> flowCapableNode : this.stampFlows.getNodes()) {
+			clearDeviceRules(flowWriter, flowCapableNode, sdnmudProvider.getSrcDeviceManufacturerStampTable(),
+					SdnMudConstants.SRC_MANUFACTURER_STAMP_FLOW_COOKIE, macAddress, null, deviceId);
+			clearDeviceRules(flowWriter, flowCapableNode, sdnmudProvider.getDstDeviceManufacturerStampTable(),
+					SdnMudConstants.DST_MANUFACTURER_MODEL_FLOW_COOKIE, null, macAddress, deviceId);
+		}
+		this.srcMacRuleTable.remove(mac);
+		this.dstMacRuleTable.remove(mac);
+		this.srcMetadataMap.remove(mac);
+		this.dstMetadataMap.remove(mac);
+	}
+
+	private void clearDeviceRules(FlowWriter flowWriter, InstanceIdentifier<FlowCapableNode> flowCapableNode,
+			short tableId, FlowCookie flowClass, MacAddress srcMac, MacAddress dstMac, int deviceId) {
+		Collection<Flow> flows = this.stampFlows.find(flowCapableNode, tableId, null, srcMac, dstMac);
+		boolean shared = false;
+		for (Flow flow : this.stampFlows.find(flowCapableNode, tableId, null, null, null)) {
+			if (IdUtils.getDeviceId(flow.getCookie()) == deviceId && !flows.contains(flow)) {
+				// Another device hashes to the same id -- remove flow by flow.
+				shared = true;
+				break;
+			}
+		}
+		for (Flow flow : flows) {
+			this.stampFlows.remove(flowCapableNode, tableId, flow.getKey());
+			if (shared) {
+				flowWriter.deleteFlowAsync(flowCapableNode, flow, true);
+			}
+		}
+		if (!shared) {
+			flowWriter.removeFlowsByCookie(flowCapableNode, tableId,
+					IdUtils.createFlowCookie(flowClass, 0, deviceId),
+					SdnMudConstants.COOKIE_FLOW_CLASS_MASK.or(SdnMudConstants.COOKIE_DEVICE_ID_MASK));
+		}
+	}
+
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Invoked on the notification thread. Only hands the packet to the per-switch
+	 * queue of the packet-in pipeline; the work is done in processPacket.
+	 */
 	@Override
 	public void onPacketReceived(PacketReceived notification) {
 
@@ -560,34 +682,55 @@ public class PacketInDispatcher implements PacketProcessingListener {
 			return;
 		}
 
+		String nodeId = notification.getIngress().getValue().firstKeyOf(Node.class).getId().getValue();
+
+		if (!sdnmudProvider.getPacketInPipeline().submit(nodeId, notification)) {
+			LOG.debug("Packet-in queue full for " + nodeId + " -- dropping packet");
+		}
+	}
+
+	/**
+	 * Decode and classify stage of the packet-in pipeline. Runs on a pipeline
+	 * worker; flows and datastore updates are handed on to the install stage.
+	 *
+	 * @param notification -- the packet in.
+	 */
+	void processPacket(PacketReceived notification) {
+
+		if (this.isClosed) {
+			return;
+		}
+
 		if (this.isBlocked) {
 			LOG.info("Blocked - installing flows ");
 			return;
 		}
 
-		Ethernet ethernet = new Ethernet();
-
+		long decodeStart = System.nanoTime();
 		try {
-			ethernet.deserialize(notification.getPayload(), 0,
-					notification.getPayload().length * NetUtils.NumBitsInAByte);
-
-		} catch (Exception ex) {
-			LOG.error("Error deserializing packet", ex);
+			// Decode stage: read the header fields in place from the raw packet.
+			PacketHeader header = packetHeader.get().wrap(notification.getPayload());
+			this.classifyPacket(notification, header);
+		} finally {
+			FlowCookie flowCookie = notification.getFlowCookie();
+			packetInStats.recordDecision(notification.getTableId().getValue(),
+					flowCookie == null ? null : flowCookie.getValue(), decodeStart);
 		}
+	}
 
-		// Extract various fields from the ethernet packet.
+	@SuppressWarnings("unchecked")
+	private void classifyPacket(PacketReceived notification, PacketHeader header) {
 
-		int etherType = ethernet.getEtherType() < 0 ? 0xffff + ethernet.getEtherType() + 1 : ethernet.getEtherType();
-		byte[] srcMacRaw = ethernet.getSourceMACAddress();
-		byte[] dstMacRaw = ethernet.getDestinationMACAddress();
+		int etherType = header.getEtherType();
 
-		// Extract the src mac address from the packet.
-		MacAddress srcMac = rawMacToMac(srcMacRaw);
-		MacAddress dstMac = rawMacToMac(dstMacRaw);
+		// The addresses stay in their numeric form until a branch needs the string.
+		long srcMac = header.getSrcMac();
+		long dstMac = header.getDstMac();
 
 		short tableId = notification.getTableId().getValue();
 
-		FlowCookie cookie = notification.getFlowCookie();
+		// The MUD URL and device ids do not matter here.
+		FlowCookie cookie = IdUtils.getFlowClass(notification.getFlowCookie());
 
 		String matchInPortUri = notification.getMatch().getInPort().getValue();
 
@@ -595,90 +738,112 @@ public class PacketInDispatcher implements PacketProcessingListener {
 
 		InstanceIdentifier<FlowCapableNode> node = this.sdnmudProvider.getNode(nodeId);
 
-		LOG.debug("onPacketReceived : matchInPortUri = " + matchInPortUri + " nodeId  " + nodeId + " tableId " + tableId
-				+ " srcMac " + srcMac.getValue() + " dstMac " + dstMac.getValue() + "etherType = " + etherType);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("onPacketReceived : matchInPortUri = " + matchInPortUri + " nodeId  " + nodeId + " tableId "
+					+ tableId + " srcMac " + PacketHeader.toMacString(srcMac) + " dstMac "
+					+ PacketHeader.toMacString(dstMac) + "etherType = " + etherType);
+		}
 
 		if (node == null) {
 			LOG.error("Node not found " + nodeId);
 			return;
 		}
 
-		this.packetInCounter++;
+		this.packetInCounter.incrementAndGet();
 
 		if (etherType == SdnMudConstants.ETHERTYPE_LLDP) {
 			LOG.debug("LLDP Pakcet -- dropping it");
 			return;
 		}
 
-		if (etherType == SdnMudConstants.ETHERTYPE_IPV4 || etherType == SdnMudConstants.ETHERTYPE_CUSTOMER_VLAN) {
-			String srcIp = PacketUtils.extractSrcIpStr(notification.getPayload());
-			String dstIp = PacketUtils.extractDstIpStr(notification.getPayload());
-			LOG.debug("Source IP  " + srcIp + " dest IP  " + dstIp);
-
+		if (header.isIpv4()) {
 			if (!this.sdnmudProvider.isCpeNode(nodeId)) {
 				return;
 			}
-			byte[] rawPacket = notification.getPayload();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Source IP  " + PacketHeader.toIpString(header.getSrcIp()) + " dest IP  "
+						+ PacketHeader.toIpString(header.getDstIp()));
+			}
 
 			if (tableId == sdnmudProvider.getSrcDeviceManufacturerStampTable()) {
 				// Keeps track of the number of packets seen at controller.
-				this.mudRelatedPacketInCounter++;
-				if (!srcMacRuleTable.containsKey(srcMac.getValue())) {
-					boolean isQuarantened = this.isQuarantene(srcMac);
-					boolean isBlocked = this.sdnmudProvider.getMappingDataStoreListener().isBlocked(srcMac);
-					Uri mudUri = this.sdnmudProvider.getMappingDataStoreListener().getMudUri(srcMac);
+				this.mudRelatedPacketInCounter.incrementAndGet();
+				// A packet-in that finds the install in flight is parked until it is done.
+				Runnable retry = null;
+				long srcToken = InFlightRegistry.NOT_ACQUIRED;
+				if (!srcMacRuleTable.containsKey(srcMac)) {
+					retry = resubmit(nodeId, notification);
+					srcToken = inFlightRegistry.tryAcquire(nodeId, InFlightRegistry.SRC, srcMac, retry);
+				}
+				if (srcToken != InFlightRegistry.NOT_ACQUIRED) {
+					MacAddress srcMacAddress = PacketHeader.toMacAddress(srcMac);
+					boolean isQuarantened = this.isQuarantene(srcMacAddress);
+					boolean isBlocked = this.sdnmudProvider.getMappingDataStoreListener().isBlocked(srcMacAddress);
+					Uri mudUri = this.sdnmudProvider.getMappingDataStoreListener().getMudUri(srcMacAddress);
 
 					boolean isLocalAddress = mudUri.getValue().equals(SdnMudConstants.UNCLASSIFIED)
-							&& this.isLocalAddress(nodeId, srcIp);
+							&& this.isLocalAddress(nodeId, header.getSrcIp());
 
-					installSrcMacMatchStampManufacturerModelFlowRules(srcMac, isLocalAddress, isQuarantened, isBlocked,
-							mudUri.getValue(), node);
+					installSrcMacMatchStampManufacturerModelFlowRules(srcMacAddress, isLocalAddress, isQuarantened,
+							isBlocked, mudUri.getValue(), node, srcToken);
 
 					if (isLocalAddress) {
-						this.unclassifiedMacAddresses.add(srcMac);
+						this.unclassifiedMacAddresses.put(srcMac, 0);
 					}
 				    //this.installSrcMacMatchAndDropRule(srcMac, node);
 				}
 
-				if (!dstMacRuleTable.containsKey(dstMac.getValue())) {
+				long dstToken = InFlightRegistry.NOT_ACQUIRED;
+				if (!dstMacRuleTable.containsKey(dstMac)) {
+					dstToken = inFlightRegistry.tryAcquire(nodeId, InFlightRegistry.DST, dstMac,
+							retry != null ? retry : resubmit(nodeId, notification));
+				}
+				if (dstToken != InFlightRegistry.NOT_ACQUIRED) {
+					MacAddress dstMacAddress = PacketHeader.toMacAddress(dstMac);
 					// Broadcast notification for mappings.
-					Uri mudUri = this.sdnmudProvider.getMappingDataStoreListener().getMudUri(dstMac);
+					Uri mudUri = this.sdnmudProvider.getMappingDataStoreListener().getMudUri(dstMacAddress);
 					boolean isLocalAddress = mudUri.getValue().equals(SdnMudConstants.UNCLASSIFIED)
-							&& this.isLocalAddress(nodeId, dstIp);
+							&& this.isLocalAddress(nodeId, header.getDstIp());
 					if (isLocalAddress) {
-						this.unclassifiedMacAddresses.add(dstMac);
+						this.unclassifiedMacAddresses.put(dstMac, 0);
 					}
-					boolean isQurantine = this.isQuarantene(dstMac);
-					boolean isBlocked = this.sdnmudProvider.getMappingDataStoreListener().isBlocked(dstMac);
-					installDstMacMatchStampManufacturerModelFlowRules(dstMac, isLocalAddress, isQurantine, isBlocked,
-							mudUri.getValue(), node);					
+					boolean isQurantine = this.isQuarantene(dstMacAddress);
+					boolean isBlocked = this.sdnmudProvider.getMappingDataStoreListener().isBlocked(dstMacAddress);
+					installDstMacMatchStampManufacturerModelFlowRules(dstMacAddress, isLocalAddress, isQurantine,
+							isBlocked, mudUri.getValue(), node, dstToken);
 				    //this.installDstMacMatchAndDropRule(dstMac, node);
 				}
 
 			} else if (tableId == sdnmudProvider.getDstDeviceManufacturerStampTable()) {
-				this.mudRelatedPacketInCounter++;
-				if (!dstMacRuleTable.containsKey(dstMac.getValue())) {
-					Uri mudUri = this.sdnmudProvider.getMappingDataStoreListener().getMudUri(dstMac);
+				this.mudRelatedPacketInCounter.incrementAndGet();
+				long dstToken = InFlightRegistry.NOT_ACQUIRED;
+				if (!dstMacRuleTable.containsKey(dstMac)) {
+					dstToken = inFlightRegistry.tryAcquire(nodeId, InFlightRegistry.DST, dstMac,
+							resubmit(nodeId, notification));
+				}
+				if (dstToken != InFlightRegistry.NOT_ACQUIRED) {
+					MacAddress dstMacAddress = PacketHeader.toMacAddress(dstMac);
+					Uri mudUri = this.sdnmudProvider.getMappingDataStoreListener().getMudUri(dstMacAddress);
 					boolean isLocalAddress = mudUri.getValue().equals(SdnMudConstants.UNCLASSIFIED)
-							&& this.isLocalAddress(nodeId, dstIp);
-					if (this.dstMacRuleTable.containsKey(dstMac.getValue())) {
-						LOG.info("already installed in table 1");
-						return;
-					}
-					boolean isQurantine = this.isQuarantene(dstMac);
-					boolean isBlocked = this.sdnmudProvider.getMappingDataStoreListener().isBlocked(dstMac);
+							&& this.isLocalAddress(nodeId, header.getDstIp());
+					boolean isQurantine = this.isQuarantene(dstMacAddress);
+					boolean isBlocked = this.sdnmudProvider.getMappingDataStoreListener().isBlocked(dstMacAddress);
 
-					installDstMacMatchStampManufacturerModelFlowRules(dstMac, isLocalAddress, isQurantine, isBlocked,
-							mudUri.getValue(), node);
+					installDstMacMatchStampManufacturerModelFlowRules(dstMacAddress, isLocalAddress, isQurantine,
+							isBlocked, mudUri.getValue(), node, dstToken);
 					// Broadcast notifications for mappings seen at the switch.
 				    //this.installDstMacMatchAndDropRule(dstMac, node);
 				}
 				
 
 			} else if (tableId == sdnmudProvider.getSrcMatchTable()) {
-				this.mudRelatedPacketInCounter++;
+				this.mudRelatedPacketInCounter.incrementAndGet();
 				LOG.debug("PacketInDispatcher: Packet packetIn from SDNMUD_RULES_TABLE");
-				int protocol = PacketUtils.extractIpProtocol(rawPacket);
+				int protocol = header.getProtocol();
+				String srcIp = PacketHeader.toIpString(header.getSrcIp());
+				String dstIp = PacketHeader.toIpString(header.getDstIp());
+				MacAddress srcMacAddress = PacketHeader.toMacAddress(srcMac);
+				MacAddress dstMacAddress = PacketHeader.toMacAddress(dstMac);
 
 				LOG.info("PacketInDispatcher: protocol = " + protocol + " srcIp = " + srcIp);
 
@@ -691,37 +856,19 @@ public class PacketInDispatcher implements PacketProcessingListener {
 					// TODO -- include DH Discover here.
 					if (dhcpPacket instanceof DhcpRequestPacket) {
 						DhcpRequestPacket dhcpRequestPacket = (DhcpRequestPacket) dhcpPacket;
-						String mudUrl = dhcpRequestPacket.getMudUrl();
-						synchronized (this) {
-							if (mudUrl != null) {
-								LOG.info("MUD URL = " + mudUrl);
-								MappingBuilder mb = new MappingBuilder();
-								ArrayList<MacAddress> macAddresses = new ArrayList<>();
-								Uri mudUri = new Uri(mudUrl);
-
-								HashSet<MacAddress> currentMacAddresses = sdnmudProvider.getMappingDataStoreListener()
-										.getMapping().get(mudUri);
-								macAddresses.add(srcMac);
-								if (currentMacAddresses != null) {
-									macAddresses.addAll(currentMacAddresses);
-								}
-
-								mb.setDeviceId(macAddresses);
-								mb.setMudUrl(mudUri);
-								InstanceIdentifier<Mapping> mappingId = InstanceIdentifier.builder(Mapping.class)
-										.build();
-
-								ReadWriteTransaction tx = sdnmudProvider.getDataBroker().newReadWriteTransaction();
-
-								tx.put(LogicalDatastoreType.CONFIGURATION, mappingId, mb.build());
-								try {
-									tx.submit().get();
-								} catch (InterruptedException | ExecutionException e) {
-									LOG.error("Failed to submit transaction");
+						final String mudUrl = dhcpRequestPacket.getMudUrl();
+						if (mudUrl != null) {
+							LOG.info("MUD URL = " + mudUrl);
+							final MacAddress deviceMac = srcMacAddress;
+							// The datastore commit is done in the install stage.
+							sdnmudProvider.getPacketInPipeline().install(nodeId, new Runnable() {
+								@Override
+								public void run() {
+									writeMudUrlMapping(deviceMac, mudUrl);
 								}
-							} else {
-								LOG.info("Mud URL is null");
-							}
+							});
+						} else {
+							LOG.info("Mud URL is null");
 						}
 					}
 				} else if (cookie.equals(SdnMudConstants.DH_RESPONSE_FLOW_COOKIE)) {
@@ -739,7 +886,13 @@ public class PacketInDispatcher implements PacketProcessingListener {
 				} else if (cookie.equals(SdnMudConstants.DNS_RESPONSE_FLOW_COOKIE)) {
 					LOG.info("Saw a DNS response");
 					try {
-						byte[] payload = PacketUtils.getPacketPayload(notification.getPayload(), etherType, protocol);
+						int payloadOffset = header.getL4PayloadOffset();
+						if (payloadOffset < 0) {
+							LOG.error("Truncated DNS response -- ignoring");
+							return;
+						}
+						byte[] payload = Arrays.copyOfRange(notification.getPayload(), payloadOffset,
+								notification.getPayload().length);
 						Message message = new Message(payload);
 						LOG.debug("Message = " + message);
 						Record[] records = message.getSectionArray(Section.ANSWER);
@@ -752,10 +905,17 @@ public class PacketInDispatcher implements PacketProcessingListener {
 								// Add it to the resolution cache of the MudFlows installer
 								LOG.info("A record Name = " + record.getName() + " address = "
 										+ inetAddress.getHostAddress());
-								sdnmudProvider.getNameResolutionCache().addCacheLookup(node,
-										record.getName().toString(true), inetAddress.getHostAddress());
-								sdnmudProvider.getMudFlowsInstaller().fixupDnsNameResolution(IdUtils.getNodeUri(node),
-										record.getName().toString(true), inetAddress.getHostAddress());
+								final String name = record.getName().toString(true);
+								final String address = inetAddress.getHostAddress();
+								sdnmudProvider.getNameResolutionCache().addCacheLookup(node, name, address);
+								// Installing the deferred flows writes to the switch -- do it in the install stage.
+								sdnmudProvider.getPacketInPipeline().install(nodeId, new Runnable() {
+									@Override
+									public void run() {
+										sdnmudProvider.getMudFlowsInstaller().fixupDnsNameResolution(nodeId, name,
+												address);
+									}
+								});
 							}
 						}
 					} catch (IOException e) {
@@ -764,20 +924,22 @@ public class PacketInDispatcher implements PacketProcessingListener {
 
 				} else if (cookie.equals(SdnMudConstants.DROP_FLOW_COOKIE)) {
 					LOG.info("Saw an ACL violation - device is misbehaving.");
-					if (dropRuleMacAddressMap.get(node) != null && dropRuleMacAddressMap.get(node).contains(srcMac)) {
+					if (dropRuleMacAddressMap.get(node) != null
+							&& dropRuleMacAddressMap.get(node).contains(srcMacAddress)) {
 						LOG.debug("DROP rule -- already saw the src MAC -- ingoring packet");
 						return;
 					}
-					this.catalogDroppedPacket(srcMac, dstMac, srcIp, dstIp, node);
+					this.catalogDroppedPacket(srcMacAddress, dstMacAddress, srcIp, dstIp, node);
 
 				} else if (cookie.equals(SdnMudConstants.TCP_SYN_MATCH_CHECK_COOKIE)) {
 					LOG.info("Saw a TCP SYN ACL violation");
 					// TBD -- generate event and send to update service.
-					if (dropRuleMacAddressMap.get(node) != null && dropRuleMacAddressMap.get(node).contains(srcMac)) {
+					if (dropRuleMacAddressMap.get(node) != null
+							&& dropRuleMacAddressMap.get(node).contains(srcMacAddress)) {
 						LOG.debug("DROP rule -- already saw the src MAC -- ingoring packet");
 						return;
 					}
-					this.catalogDroppedPacket(srcMac, dstMac, srcIp, dstIp, node);
+					this.catalogDroppedPacket(srcMacAddress, dstMacAddress, srcIp, dstIp, node);
 				}
 
 			}
@@ -785,13 +947,45 @@ public class PacketInDispatcher implements PacketProcessingListener {
 		}
 	}
 
+	/*
+	 * Add the MAC address to the MUD URL mapping learned from a DHCP request and
+	 * commit it.
+	 */
+	private void writeMudUrlMapping(MacAddress srcMac, String mudUrl) {
+		synchronized (mappingLock) {
+			MappingBuilder mb = new MappingBuilder();
+			ArrayList<MacAddress> macAddresses = new ArrayList<>();
+			Uri mudUri = new Uri(mudUrl);
+
+			HashSet<MacAddress> currentMacAddresses = sdnmudProvider.getMappingDataStoreListener().getMapping()
+					.get(mudUri);
+			macAddresses.add(srcMac);
+			if (currentMacAddresses != null) {
+				macAddresses.addAll(currentMacAddresses);
+			}
+
+			mb.setDeviceId(macAddresses);
+			mb.setMudUrl(mudUri);
+			InstanceIdentifier<Mapping> mappingId = InstanceIdentifier.builder(Mapping.class).build();
+
+			ReadWriteTransaction tx = sdnmudProvider.getDataBroker().newReadWriteTransaction();
+
+			tx.put(LogicalDatastoreType.CONFIGURATION, mappingId, mb.build());
+			try {
+				tx.submit().get();
+			} catch (InterruptedException | ExecutionException e) {
+				LOG.error("Failed to submit transaction");
+			}
+		}
+	}
+
 	private void catalogDroppedPacket(MacAddress srcMac, MacAddress dstMac, String srcIp, String dstIp,
 			InstanceIdentifier<FlowCapableNode> node) {
 		Uri mudUri = sdnmudProvider.getMappingDataStoreListener().getMudUri(srcMac);
-		HashSet<MacAddress> macAddresses = dropRuleMacAddressMap.get(node);
+		Set<MacAddress> macAddresses = dropRuleMacAddressMap.get(node);
 		if (macAddresses == null) {
-			macAddresses = new HashSet<MacAddress>();
-			dropRuleMacAddressMap.put(node, macAddresses);
+			dropRuleMacAddressMap.putIfAbsent(node, ConcurrentHashMap.<MacAddress>newKeySet());
+			macAddresses = dropRuleMacAddressMap.get(node);
 		}
 		macAddresses.add(srcMac);
 		this.broadcastAceViolation(srcMac, mudUri);
@@ -799,10 +993,10 @@ public class PacketInDispatcher implements PacketProcessingListener {
 		String nodeId = IdUtils.getNodeUri(node);
 		String srcController = sdnmudProvider.getControllerMappingForAddress(nodeId, srcIp);
 		if (srcController != null) {
-			HashSet<String> controllers = this.dropRuleControllerMap.get(node);
+			Set<String> controllers = this.dropRuleControllerMap.get(node);
 			if (controllers == null) {
-				controllers = new HashSet<String>();
-				dropRuleControllerMap.put(node, controllers);
+				dropRuleControllerMap.putIfAbsent(node, ConcurrentHashMap.<String>newKeySet());
+				controllers = dropRuleControllerMap.get(node);
 			}
 			controllers.add(srcController);
 		}
@@ -810,26 +1004,29 @@ public class PacketInDispatcher implements PacketProcessingListener {
 		String dstController = sdnmudProvider.getControllerMappingForAddress(nodeId, dstIp);
 
 		if (dstController != null) {
-			HashSet<String> controllers = this.dropRuleControllerMap.get(node);
+			Set<String> controllers = this.dropRuleControllerMap.get(node);
 			if (controllers == null) {
-				controllers = new HashSet<String>();
-				dropRuleControllerMap.put(node, controllers);
+				dropRuleControllerMap.putIfAbsent(node, ConcurrentHashMap.<String>newKeySet());
+				controllers = dropRuleControllerMap.get(node);
 			}
 			controllers.add(dstController);
 		}
 		// Start a timer so we will be interrupted again after this period of time.
 		// We don't want to keep getting interrupted
-		timer.schedule(new DropRuleTableTimerTask(node, srcMac, srcController, dstController),
+		sdnmudProvider.getTimingWheel().schedule(
+				new DropRuleTableTimerTask(node, srcMac, srcController, dstController),
 				SdnMudConstants.DROP_RULE_TIMEOUT * 1000 / 2);
 
 	}
 
 	public BigInteger getSrcMetadata(String macAddress) {
-		return this.srcMetadataMap.get(macAddress);
+		long metadata = this.srcMetadataMap.get(PacketHeader.toMacLong(macAddress), -1L);
+		return metadata < 0 ? null : BigInteger.valueOf(metadata);
 	}
 
 	public BigInteger getDstMetadata(String macAddress) {
-		return this.dstMetadataMap.get(macAddress);
+		long metadata = this.dstMetadataMap.get(PacketHeader.toMacLong(macAddress), -1L);
+		return metadata < 0 ? null : BigInteger.valueOf(metadata);
 	}
 	
 	/**
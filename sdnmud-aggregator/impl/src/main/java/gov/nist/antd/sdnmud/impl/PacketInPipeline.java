@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketReceived;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Staged packet-in pipeline. The notification thread only hands the packet off
+ * to a bounded per-switch queue. A shared worker pool drains the queues: the
+ * decode and classify stage runs in the switch's classify lane and anything that
+ * blocks on the switch or the datastore (flow writes, mapping commits) is handed
+ * to the switch's install lane. Each lane is drained by at most one worker at a
+ * time so packets from a switch are handled in arrival order, while a burst (or
+ * a slow commit) on one switch only ties up the workers serving that switch.
+ *
+ * @author mranga
+ *
+ */
+public class PacketInPipeline {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PacketInPipeline.class);
+
+	static final int DEFAULT_WORKER_THREADS = 4;
+
+	static final int DEFAULT_QUEUE_DEPTH = 1024;
+
+	// Max work items a worker drains from one lane before yielding to other lanes.
+	private static final int DRAIN_BATCH_SIZE = 64;
+
+	private SdnmudProvider sdnmudProvider;
+
+	private ConcurrentHashMap<String, SwitchLanes> switchLanes = new ConcurrentHashMap<>();
+
+	private volatile ExecutorService workers;
+
+	private volatile boolean isClosed;
+
+	/**
+	 * A bounded FIFO of work for a single switch together with its queue depth
+	 * metrics.
+	 */
+	class Lane implements Runnable {
+		private final String nodeId;
+		private final String stage;
+		private final ArrayBlockingQueue<Runnable> queue;
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+		private final AtomicLong enqueued = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private final AtomicInteger highWaterMark = new AtomicInteger();
+
+		Lane(String nodeId, String stage, int capacity) {
+			this.nodeId = nodeId;
+			this.stage = stage;
+			this.queue = new ArrayBlockingQueue<Runnable>(capacity);
+		}
+
+		boolean offer(Runnable work) {
+			if (!queue.offer(work)) {
+				dropped.incrementAndGet();
+				LOG.debug("{} queue full for {} -- dropping work item", stage, nodeId);
+				return false;
+			}
+			enqueued.incrementAndGet();
+			int depth = queue.size();
+			int hwm = highWaterMark.get();
+			while (depth > hwm && !highWaterMark.compareAndSet(hwm, depth)) {
+				hwm = highWaterMark.get();
+			}
+			schedule();
+			return true;
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					workers.execute(this);
+				} catch (RejectedExecutionException ex) {
+					scheduled.set(false);
+					LOG.debug("Pipeline is shut down -- not scheduling {} lane for {}", stage, nodeId);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (int i = 0; i < DRAIN_BATCH_SIZE && !isClosed; i++) {
+					Runnable work = queue.poll();
+					if (work == null) {
+						break;
+					}
+					try {
+						work.run();
+					} catch (Exception ex) {
+						LOG.error("PacketInPipeline: " + stage + " failed for " + nodeId, ex);
+					}
+				}
+			} finally {
+				scheduled.set(false);
+				// Re-arm if more work arrived while draining (or the batch was exhausted).
+				if (!queue.isEmpty() && !isClosed) {
+					schedule();
+				}
+			}
+		}
+
+		boolean isIdle() {
+			return queue.isEmpty() && !scheduled.get();
+		}
+
+		public String getNodeId() {
+			return nodeId;
+		}
+
+		public String getStage() {
+			return stage;
+		}
+
+		public int getQueueDepth() {
+			return queue.size();
+		}
+
+		public int getHighWaterMark() {
+			return highWaterMark.get();
+		}
+
+		public long getEnqueuedCount() {
+			return enqueued.get();
+		}
+
+		public long getDroppedCount() {
+			return dropped.get();
+		}
+	}
+
+	/**
+	 * The classify and install lanes of one switch.
+	 */
+	class SwitchLanes {
+		final Lane classifyLane;
+		final Lane installLane;
+
+		SwitchLanes(String nodeId, int capacity) {
+			this.classifyLane = new Lane(nodeId, "classify", capacity);
+			this.installLane = new Lane(nodeId, "install", capacity);
+		}
+	}
+
+	public PacketInPipeline(SdnmudProvider sdnmudProvider) {
+		this.sdnmudProvider = sdnmudProvider;
+	}
+
+	private int getWorkerThreads() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getPacketInWorkerThreads() != null
+				&& sdnmudConfig.getPacketInWorkerThreads() > 0) {
+			return sdnmudConfig.getPacketInWorkerThreads().intValue();
+		}
+		return DEFAULT_WORKER_THREADS;
+	}
+
+	private int getQueueCapacity() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getPacketInQueueDepth() != null
+				&& sdnmudConfig.getPacketInQueueDepth() > 0) {
+			return sdnmudConfig.getPacketInQueueDepth().intValue();
+		}
+		return DEFAULT_QUEUE_DEPTH;
+	}
+
+	/*
+	 * The worker pool is sized from sdnmud-config which is not available until the
+	 * config listener fires, so it is started on first use.
+	 */
+	private synchronized ExecutorService getWorkers() {
+		if (workers == null) {
+			final int nthreads = getWorkerThreads();
+			LOG.info("Starting packet-in pipeline with " + nthreads + " workers");
+			workers = Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "sdnmud-packet-in-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return workers;
+	}
+
+	private SwitchLanes getSwitchLanes(String nodeId) {
+		SwitchLanes lanes = switchLanes.get(nodeId);
+		if (lanes == null) {
+			getWorkers();
+			SwitchLanes newLanes = new SwitchLanes(nodeId, getQueueCapacity());
+			lanes = switchLanes.putIfAbsent(nodeId, newLanes);
+			if (lanes == null) {
+				lanes = newLanes;
+			}
+		}
+		return lanes;
+	}
+
+	/**
+	 * Queue a packet for the decode and classify stage. Called from the
+	 * notification thread; never blocks.
+	 *
+	 * @param nodeId       -- the switch the packet came from.
+	 * @param notification -- the packet in.
+	 * @return false if the switch's queue is full and the packet was dropped.
+	 */
+	public boolean submit(String nodeId, final PacketReceived notification) {
+		if (isClosed) {
+			return false;
+		}
+		return getSwitchLanes(nodeId).classifyLane.offer(new Runnable() {
+			@Override
+			public void run() {
+				sdnmudProvider.getPacketInDispatcher().processPacket(notification);
+			}
+		});
+	}
+
+	/**
+	 * Queue blocking install work (flow writes, datastore commits) for a switch.
+	 * Runs after, and independently of, the classify stage.
+	 *
+	 * @param nodeId -- the switch the work is for.
+	 * @param work   -- the install action.
+	 * @return false if the switch's install queue is full and the work was dropped.
+	 */
+	public boolean install(String nodeId, Runnable work) {
+		if (isClosed) {
+			return false;
+		}
+		return getSwitchLanes(nodeId).installLane.offer(work);
+	}
+
+	/**
+	 * Drop the queues for a switch that has gone away.
+	 */
+	public void removeSwitch(String nodeId) {
+		SwitchLanes lanes = switchLanes.remove(nodeId);
+		if (lanes != null) {
+			lanes.classifyLane.queue.clear();
+			lanes.installLane.queue.clear();
+		}
+	}
+
+	/**
+	 * Wait for the queues of a switch to drain.
+	 *
+	 * @param nodeId        -- the switch.
+	 * @param timeoutMillis -- max time to wait.
+	 * @return true if both lanes of the switch are idle.
+	 */
+	public boolean awaitIdle(String nodeId, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		SwitchLanes lanes = switchLanes.get(nodeId);
+		while (lanes != null && !(lanes.classifyLane.isIdle() && lanes.installLane.isIdle())) {
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	Collection<SwitchLanes> getSwitchLanes() {
+		return switchLanes.values();
+	}
+
+	public synchronized void close() {
+		this.isClosed = true;
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+		switchLanes.clear();
+	}
+
+}
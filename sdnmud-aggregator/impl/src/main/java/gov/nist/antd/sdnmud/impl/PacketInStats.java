@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Packet-in counters and latency histograms kept per (table id, flow cookie).
+ * The flow class of the cookie identifies the rule that sent the packet up
+ * (DHCP, DNS response, drop, TCP SYN ...) so each kind of packet-in is tracked
+ * separately; the MUD URL and device ids in the cookie are ignored.
+ *
+ * Two latencies are recorded:
+ * <ul>
+ * <li>decision -- from the start of decoding the packet-in to the end of the
+ * classify stage, keyed by the table and cookie of the packet-in.</li>
+ * <li>commit -- from the classify decision to the switch acknowledging the
+ * flow, keyed by the table and cookie of the installed flow.</li>
+ * </ul>
+ *
+ * @author mranga
+ *
+ */
+public class PacketInStats {
+
+	private static final BigInteger NO_COOKIE = BigInteger.ZERO;
+
+	// Indexed by table id; each holds the recorders for the cookies seen in it.
+	private final AtomicReferenceArray<ConcurrentHashMap<BigInteger, Recorder>> tables = new AtomicReferenceArray<>(
+			256);
+
+	/**
+	 * The counters for one table id and cookie.
+	 */
+	public static class Recorder {
+		private final short tableId;
+		private final BigInteger cookie;
+		private final LongAdder packetInCount = new LongAdder();
+		private final LatencyHistogram decisionLatency = new LatencyHistogram();
+		private final LongAdder flowCommitCount = new LongAdder();
+		private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+		Recorder(short tableId, BigInteger cookie) {
+			this.tableId = tableId;
+			this.cookie = cookie;
+		}
+
+		public short getTableId() {
+			return tableId;
+		}
+
+		public BigInteger getCookie() {
+			return cookie;
+		}
+
+		public long getPacketInCount() {
+			return packetInCount.sum();
+		}
+
+		public long getFlowCommitCount() {
+			return flowCommitCount.sum();
+		}
+
+		/**
+		 * @return decode to decision latency at the percentile in microseconds.
+		 */
+		public long getDecisionLatency(double percentile) {
+			return decisionLatency.getValueAtPercentile(percentile);
+		}
+
+		public long getMaxDecisionLatency() {
+			return decisionLatency.getMaxValue();
+		}
+
+		/**
+		 * @return decision to flow committed latency at the percentile in
+		 *         microseconds.
+		 */
+		public long getCommitLatency(double percentile) {
+			return commitLatency.getValueAtPercentile(percentile);
+		}
+
+		public long getMaxCommitLatency() {
+			return commitLatency.getMaxValue();
+		}
+
+		void reset() {
+			packetInCount.reset();
+			decisionLatency.reset();
+			flowCommitCount.reset();
+			commitLatency.reset();
+		}
+	}
+
+	private Recorder getRecorder(short tableId, BigInteger cookie) {
+		int index = tableId & 0xff;
+		if (cookie == null) {
+			cookie = NO_COOKIE;
+		} else {
+			// One recorder per kind of flow, not per profile or device.
+			cookie = cookie.and(SdnMudConstants.COOKIE_FLOW_CLASS_MASK);
+		}
+		ConcurrentHashMap<BigInteger, Recorder> recorders = tables.get(index);
+		if (recorders == null) {
+			tables.compareAndSet(index, null, new ConcurrentHashMap<BigInteger, Recorder>());
+			recorders = tables.get(index);
+		}
+		Recorder recorder = recorders.get(cookie);
+		if (recorder == null) {
+			Recorder newRecorder = new Recorder(tableId, cookie);
+			recorder = recorders.putIfAbsent(cookie, newRecorder);
+			if (recorder == null) {
+				recorder = newRecorder;
+			}
+		}
+		return recorder;
+	}
+
+	private static long elapsedMicros(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Record a packet-in whose classify stage started at startNanos.
+	 */
+	public void recordDecision(short tableId, BigInteger cookie, long startNanos) {
+		Recorder recorder = getRecorder(tableId, cookie);
+		recorder.packetInCount.increment();
+		recorder.decisionLatency.record(elapsedMicros(startNanos));
+	}
+
+	/**
+	 * Record a flow committed to the switch for a decision made at decisionNanos.
+	 */
+	public void recordCommit(short tableId, BigInteger cookie, long decisionNanos) {
+		Recorder recorder = getRecorder(tableId, cookie);
+		recorder.flowCommitCount.increment();
+		recorder.commitLatency.record(elapsedMicros(decisionNanos));
+	}
+
+	public Collection<Recorder> getRecorders() {
+		ArrayList<Recorder> retval = new ArrayList<Recorder>();
+		for (int i = 0; i < tables.length(); i++) {
+			ConcurrentHashMap<BigInteger, Recorder> recorders = tables.get(i);
+			if (recorders != null) {
+				retval.addAll(recorders.values());
+			}
+		}
+		return retval;
+	}
+
+	public void clear() {
+		for (Recorder recorder : getRecorders()) {
+			recorder.reset();
+		}
+	}
+
+}
@@ -36,12 +36,32 @@ public class QuaranteneDevicesListener implements DataTreeChangeListener<Quarant
 		// TODO Auto-generated method stub
 		LOG.info("QuaranteneDevicesListener: onDataTreeChanged" + changes.size());
 
+		HashSet<MacAddress> before = getMacAddresses(quarantineDevices);
 		for (DataTreeModification<QuarantineDevice> change : changes) {
 			if (change.getRootNode() != null) {
 				quarantineDevices = change.getRootNode().getDataAfter();
 			}
 		}
-		sdnmudProvider.getPacketInDispatcher().clearMfgModelRules();
+		HashSet<MacAddress> after = getMacAddresses(quarantineDevices);
+		// Only the devices that went in or out of quarantine are classified again.
+		HashSet<MacAddress> changed = new HashSet<MacAddress>(before);
+		changed.addAll(after);
+		for (MacAddress macAddress : changed) {
+			if (before.contains(macAddress) != after.contains(macAddress)) {
+				sdnmudProvider.getPacketInDispatcher().clearDeviceRules(macAddress);
+			}
+		}
+	}
+
+	private static HashSet<MacAddress> getMacAddresses(QuarantineDevice quarantineDevice) {
+		HashSet<MacAddress> retval = new HashSet<MacAddress>();
+		if (quarantineDevice != null && quarantineDevice.getQurantineMac() != null) {
+			for (MacAddress macAddress : quarantineDevice.getQurantineMac()) {
+				// MAC addresses are compared without regard to case.
+				retval.add(new MacAddress(macAddress.getValue().toLowerCase()));
+			}
+		}
+		return retval;
 	}
 
 }
@@ -87,6 +87,20 @@ interface SdnMudConstants {
 	static final BigInteger DST_MAC_BLOCKED_FLAG = BigInteger.valueOf(1L).shiftLeft(DST_MAC_BLOCKED_MASK_SHIFT);
 	static final BigInteger DST_MAC_BLOCKED_MASK = DST_MAC_BLOCKED_FLAG;
 
+	// Flow cookie layout (bit 63 is the most significant):
+	//   63..60  reserved (0)
+	//   59..40  MUD URL id -- hash of the flow id prefix of the MUD profile, 0 if the flow is not part of one
+	//   39..20  device id  -- hash of the device MAC address, 0 if the flow is not for a single device
+	//   19..0   flow class -- the well known cookie of the kind of flow (the cookies below)
+	// All the flows of a profile or of a device in a table can be removed with one cookie / mask delete.
+	static final int COOKIE_FIELD_BITS = 20;
+	static final BigInteger COOKIE_FLOW_CLASS_MASK = BigInteger.ONE.shiftLeft(COOKIE_FIELD_BITS)
+			.subtract(BigInteger.ONE);
+	static final int COOKIE_DEVICE_ID_SHIFT = COOKIE_FIELD_BITS;
+	static final BigInteger COOKIE_DEVICE_ID_MASK = COOKIE_FLOW_CLASS_MASK.shiftLeft(COOKIE_DEVICE_ID_SHIFT);
+	static final int COOKIE_MUD_URL_ID_SHIFT = 2 * COOKIE_FIELD_BITS;
+	static final BigInteger COOKIE_MUD_URL_ID_MASK = COOKIE_FLOW_CLASS_MASK.shiftLeft(COOKIE_MUD_URL_ID_SHIFT);
+
 	// Classification for UNKNOWN packet ( initial value before lookup )
 	static final String UNKNOWN = "UNKNOWN";
 
@@ -132,6 +146,9 @@ interface SdnMudConstants {
 
 	// Cache timeout for network and model stamping flow rules.
 	static final int ETHERTYPE_LLDP = 0x88cc;
+
+	// Meter ids used for rate limiting packets sent to the controller.
+	static final long METER_ID_START = 1000;
 	static final BigInteger DEFAULT_METADATA_MASK = BigInteger.ZERO;
 	static final BigInteger DEFAULT_METADATA = new BigInteger("FFFFFFFFFFFFFFFF",16);	
 	//static final BigInteger DEFAULT_METADATA = BigInteger.ZERO;
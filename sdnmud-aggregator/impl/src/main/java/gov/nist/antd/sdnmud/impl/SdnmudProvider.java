@@ -24,12 +24,13 @@ package gov.nist.antd.sdnmud.impl;
 import java.security.Security;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.opendaylight.controller.md.sal.binding.api.DataBroker;
@@ -61,6 +62,7 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.Nodes;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.OpendaylightInventoryListener;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.inventory.rev130819.nodes.Node;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.meter.service.rev130918.SalMeterService;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.openflowplugin.extension.onf.bundle.service.rev170124.SalBundleService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.openflow.protocol.rev130731.OpenflowProtocolService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.packet.service.rev130709.PacketProcessingService;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.nist.mud.file.cache.rev170915.MudCache;
@@ -81,6 +83,16 @@ public class SdnmudProvider {
 
 	private SalFlowService flowService;
 
+	private SalMeterService meterService;
+
+	private SalBundleService bundleService;
+
+	private BundleFlowInstaller bundleFlowInstaller;
+
+	private MudProfileReconciler mudProfileReconciler;
+
+	private MeterManager meterManager;
+
 	private PacketProcessingService packetProcessingService;
 
 	private NotificationService notificationService;
@@ -140,6 +152,8 @@ public class SdnmudProvider {
 
 	private PacketInDispatcher packetInDispatcher;
 
+	private PacketInPipeline packetInPipeline;
+
 	private RpcProviderRegistry rpcProviderRegistry;
 
 	private FlowWriter flowWriter;
@@ -170,6 +184,10 @@ public class SdnmudProvider {
 
 	private HashMap<String, ControllerclassMapping> controllerClassMaps = new HashMap<String, ControllerclassMapping>();
 
+	// Compiled local network / controller address classification per switch.
+	// Rebuilt whenever the controller class mapping of the switch changes.
+	private ConcurrentHashMap<String, AddressClassifier> addressClassifiers = new ConcurrentHashMap<>();
+
 	private NameResolutionCache nameResolutionCache;
 
 	private NotificationPublishService notificationPublishService;
@@ -184,13 +202,36 @@ public class SdnmudProvider {
 
 	private MudReportSender mudReporter;
 
+	private TimingWheel timingWheel;
+
+	private FlowStore flowStore;
+
+	private SwitchReconciler switchReconciler;
+
+	private FlowRetryQueue flowRetryQueue;
+
+	private MudInstallEngine mudInstallEngine;
+
+	private MudAclCompiler mudAclCompiler;
+
+	private CompiledPolicyCache compiledPolicyCache;
+
+	private DemandProfileInstaller demandProfileInstaller;
+
+	private TimingWheel.Timeout demandProfileInstallerTimeout;
+
+	private TimingWheel.Timeout stateChangeScannerTimeout;
+
+	private TimingWheel.Timeout mudReporterTimeout;
+
 	public SdnmudProvider(final DataBroker dataBroker, SdnmudConfig sdnmudConfig, SalFlowService flowService,
 			OpendaylightFlowStatisticsService flowStatisticsService,
 			OpendaylightDirectStatisticsService directStatisticsService,
 			PacketProcessingService packetProcessingService, NotificationService notificationService,
 			DOMDataBroker domDataBroker, SchemaService schemaService, DOMSchemaService domSchemaService,
 			NotificationPublishService notificationPublishService,
-			BindingNormalizedNodeSerializer bindingNormalizedNodeSerializer, RpcProviderRegistry rpcProviderRegistry) {
+			BindingNormalizedNodeSerializer bindingNormalizedNodeSerializer, RpcProviderRegistry rpcProviderRegistry,
+			SalMeterService meterService, SalBundleService bundleService) {
 
 		LOG.info("SdnMudProvider: SdnMudProvider - init");
 		this.dataBroker = dataBroker;
@@ -204,6 +245,8 @@ public class SdnmudProvider {
 		this.bindingNormalizedNodeSerializer = bindingNormalizedNodeSerializer;
 		this.rpcProviderRegistry = rpcProviderRegistry;
 		this.flowService = flowService;
+		this.meterService = meterService;
+		this.bundleService = bundleService;
 		this.flowStatisticsService = flowStatisticsService;
 		this.directStatisticsService = directStatisticsService;
 		// this.flowStatisticsService =
@@ -257,13 +300,40 @@ public class SdnmudProvider {
 	public void init() {
 		LOG.info("SdnmudProvider Session Initiated");
 
-		this.flowCommitWrapper = new FlowCommitWrapper(dataBroker);
-		this.flowWriter = new FlowWriter(this.flowService);
+		/* Timers for all the components */
+		this.timingWheel = new TimingWheel();
+
+		/* Compact shared storage for the flows the components keep in memory */
+		this.flowStore = new FlowStore();
+
+		/* Failed flow writes waiting to be tried again */
+		this.flowRetryQueue = new FlowRetryQueue(this);
+
+		/* Rate limits for flows that send packets to the controller */
+		this.meterManager = new MeterManager(this, this.meterService);
+		this.flowCommitWrapper = new FlowCommitWrapper(this, dataBroker, meterManager);
+		this.flowWriter = new FlowWriter(this, this.flowService, meterManager);
+		/* Atomic replacement of MUD profile flows on a switch */
+		this.bundleFlowInstaller = new BundleFlowInstaller(this, this.bundleService);
+		/* Pushes only the changed flows when a MUD profile is (re)installed */
+		this.mudProfileReconciler = new MudProfileReconciler(this);
+		/* Reduces the flows of a MUD profile before they are pushed */
+		this.mudAclCompiler = new MudAclCompiler();
+		/* Compiled MUD profiles shared by the switches they are installed on */
+		this.compiledPolicyCache = new CompiledPolicyCache();
 		this.mudFlowsInstaller = new MudFlowsInstaller(this);
+		/* Installs MUD profiles on the switches in parallel */
+		this.mudInstallEngine = new MudInstallEngine(this);
+		/* Installs MUD profiles where their devices show up (when configured) */
+		this.demandProfileInstaller = new DemandProfileInstaller(this);
 		this.datastoreUpdater = new DatastoreUpdater(this);
 		this.nameResolutionCache = new NameResolutionCache();
 		/* Listener for flow miss packets sent to the controller */
 		this.packetInDispatcher = new PacketInDispatcher(this);
+		/* Per switch queues and workers that process the flow miss packets */
+		this.packetInPipeline = new PacketInPipeline(this);
+		/* Repairs the flows of switches that reconnect */
+		this.switchReconciler = new SwitchReconciler(this, dataBroker);
 
 		/* Register listener for configuration state change */
 		InstanceIdentifier<SdnmudConfig> configWildCardPath = getConfigWildCardPath();
@@ -346,7 +416,10 @@ public class SdnmudProvider {
 		this.stateChangeScanner = new StateChangeScanner(this);
 
 		// Latency of 10 seconds for the scan.
-		new Timer(true).schedule(stateChangeScanner, 0, 5 * 1000);
+		this.stateChangeScannerTimeout = this.timingWheel.scheduleAtFixedRate(stateChangeScanner, 0, 5 * 1000);
+		// Looks for idle MUD profiles to remove when installing on demand.
+		this.demandProfileInstallerTimeout = this.timingWheel.scheduleAtFixedRate(demandProfileInstaller, 10 * 1000,
+				10 * 1000);
 
 		LOG.info("start() <--");
 
@@ -397,13 +470,19 @@ public class SdnmudProvider {
 		this.packetInDispatcherRegistration.close();
 		this.uriToMudMap.clear();
 		this.packetInDispatcher.close();
-		this.stateChangeScanner.cancel();
+		this.packetInPipeline.close();
+		this.mudInstallEngine.close();
+		this.meterManager.close();
+		this.switchReconciler.close();
+		this.stateChangeScannerTimeout.cancel();
+		this.demandProfileInstallerTimeout.cancel();
 		this.sdnmudServiceRegistration.close();
 		this.mudProfileRegistration.close();
 		this.quaranteneDevicesListenerRegistration.close();
-		if (mudReporter != null) {
-			this.mudReporter.cancel();
+		if (mudReporterTimeout != null) {
+			this.mudReporterTimeout.cancel();
 		}
+		this.timingWheel.close();
 	}
 
 	public StateChangeScanner getStateChangeScanner() {
@@ -477,7 +556,7 @@ public class SdnmudProvider {
 	 * @param nodeUri -- the node URI
 	 * @return -- the flow capable node.
 	 */
-	synchronized InstanceIdentifier<FlowCapableNode> getNode(String nodeUri) {
+	public synchronized InstanceIdentifier<FlowCapableNode> getNode(String nodeUri) {
 		return uriToNodeMap.get(nodeUri);
 	}
 
@@ -489,9 +568,16 @@ public class SdnmudProvider {
 		InstanceIdentifier<FlowCapableNode> node = this.uriToNodeMap.remove(nodeUri);
 		if (node == null) {
 			LOG.info("remvoeNode: Cannot find node to remove");
-			return;
 		}
+	}
 
+	/**
+	 * Forget the devices seen on a switch and the MUD profiles installed on it.
+	 *
+	 * @param nodeUri -- the node URI.
+	 * @param node    -- the flow capable node.
+	 */
+	synchronized void removeMudNodeState(String nodeUri, InstanceIdentifier<FlowCapableNode> node) {
 		for (Iterator<MacAddress> it = macToNodeIdMap.keySet().iterator(); it.hasNext();) {
 			MacAddress ma = it.next();
 			HashSet<String> hs = this.macToNodeIdMap.get(ma);
@@ -521,7 +607,7 @@ public class SdnmudProvider {
 	 *
 	 * @param node             -- the node to add.
 	 */
-	public void addMudNode(String manufacturerId, InstanceIdentifier<FlowCapableNode> node) {
+	public synchronized void addMudNode(String manufacturerId, InstanceIdentifier<FlowCapableNode> node) {
 
 		HashSet<InstanceIdentifier<FlowCapableNode>> nodes = this.mudNodesMap.get(manufacturerId);
 		if (nodes == null) {
@@ -561,7 +647,7 @@ public class SdnmudProvider {
 		return wakeupListener;
 	}
 
-	public void addMudUri(String cpeNodeId, Uri mudUri) {
+	public synchronized void addMudUri(String cpeNodeId, Uri mudUri) {
 		List<Uri> mudUris = this.nodeToMudUriMap.get(cpeNodeId);
 		if (mudUris == null) {
 			mudUris = new ArrayList<Uri>();
@@ -570,6 +656,13 @@ public class SdnmudProvider {
 		mudUris.add(mudUri);
 	}
 
+	public synchronized void removeMudUri(String cpeNodeId, Uri mudUri) {
+		List<Uri> mudUris = this.nodeToMudUriMap.get(cpeNodeId);
+		if (mudUris != null) {
+			mudUris.removeAll(Collections.singleton(mudUri));
+		}
+	}
+
 	public Collection<String> getMudCpeNodeIds() {
 		return this.nodeToMudUriMap.keySet();
 	}
@@ -655,6 +748,7 @@ public class SdnmudProvider {
 			List<Ipv4Address> addresses = controller.getAddressList();
 			map.put(name, addresses);
 		}
+		this.rebuildAddressClassifier(nodeId);
 
 		this.configStateChanged++;
 
@@ -675,10 +769,25 @@ public class SdnmudProvider {
 			map.put(name, addresses);
 		}
 		addresses.add(new Ipv4Address(address));
+		this.rebuildAddressClassifier(nodeId);
 
 		this.configStateChanged++;
 	}
 
+	private void rebuildAddressClassifier(String nodeId) {
+		this.addressClassifiers.put(nodeId, AddressClassifier.build(this.getLocalNetworks(nodeId),
+				this.getLocalNetworksExclude(nodeId), this.controllerMap.get(nodeId)));
+	}
+
+	/**
+	 * @param nodeUri -- the switch.
+	 * @return the compiled address classifier for the switch or null if no
+	 *         controller class mapping has been registered for it.
+	 */
+	public AddressClassifier getAddressClassifier(String nodeUri) {
+		return this.addressClassifiers.get(nodeUri);
+	}
+
 	public String getControllerMappingForAddress(String nodeId, String addressStr) {
 		Ipv4Address address = new Ipv4Address(addressStr);
 		HashMap<String, List<Ipv4Address>> map = this.controllerMap.get(nodeId);
@@ -737,9 +846,14 @@ public class SdnmudProvider {
 		this.sdnmudConfig = sdnmudConfig;
         // TODO -- check this. Why?
 		this.mudReporter = new MudReportSender(this);
-		if (sdnmudConfig.getReporterFrequency() != null) {
-			new Timer(true).schedule(mudReporter, sdnmudConfig.getReporterFrequency() / 2 * 1000,
-					sdnmudConfig.getReporterFrequency() / 2 * 1000);
+		// Replace the reporter scheduled for the previous configuration.
+		if (this.mudReporterTimeout != null) {
+			this.mudReporterTimeout.cancel();
+			this.mudReporterTimeout = null;
+		}
+		if (sdnmudConfig.getReporterFrequency() != null && sdnmudConfig.getReporterFrequency() >= 2) {
+			this.mudReporterTimeout = this.timingWheel.scheduleAtFixedRate(mudReporter,
+					sdnmudConfig.getReporterFrequency() / 2 * 1000, sdnmudConfig.getReporterFrequency() / 2 * 1000);
 		}
 	}
 
@@ -751,6 +865,62 @@ public class SdnmudProvider {
 		return this.packetInDispatcher;
 	}
 
+	public PacketInPipeline getPacketInPipeline() {
+		return this.packetInPipeline;
+	}
+
+	public MeterManager getMeterManager() {
+		return this.meterManager;
+	}
+
+	public BundleFlowInstaller getBundleFlowInstaller() {
+		return this.bundleFlowInstaller;
+	}
+
+	public MudProfileReconciler getMudProfileReconciler() {
+		return this.mudProfileReconciler;
+	}
+
+	/**
+	 * @return true if MUD profiles are installed on switches as OpenFlow bundles.
+	 */
+	public boolean isBundleInstall() {
+		return this.sdnmudConfig != null && this.sdnmudConfig.isBundleInstall() != null
+				&& this.sdnmudConfig.isBundleInstall();
+	}
+
+	public TimingWheel getTimingWheel() {
+		return this.timingWheel;
+	}
+
+	public FlowStore getFlowStore() {
+		return this.flowStore;
+	}
+
+	public SwitchReconciler getSwitchReconciler() {
+		return this.switchReconciler;
+	}
+
+	public FlowRetryQueue getFlowRetryQueue() {
+		return this.flowRetryQueue;
+	}
+
+	public MudInstallEngine getMudInstallEngine() {
+		return this.mudInstallEngine;
+	}
+
+	public MudAclCompiler getMudAclCompiler() {
+		return this.mudAclCompiler;
+	}
+
+	public CompiledPolicyCache getCompiledPolicyCache() {
+		return this.compiledPolicyCache;
+	}
+
+	public DemandProfileInstaller getDemandProfileInstaller() {
+		return this.demandProfileInstaller;
+	}
+
 	/**
 	 * @return
 	 */
@@ -75,6 +75,10 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.r
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetMudUnmappedAddressesOutputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetPacketCountOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetPacketCountOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetPacketInQueueStatsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetPacketInQueueStatsOutputBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetPacketInStatsOutput;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetPacketInStatsOutputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetQuarantineMacsOutput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetQuarantineMacsOutputBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetSrcMacClassificationInput;
@@ -87,6 +91,10 @@ import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.r
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.get.flow.rules.output.FlowRule;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.get.flow.rules.output.FlowRuleBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.get.mud.reports.output.ReportBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.get.packet.in.queue.stats.output.SwitchQueue;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.get.packet.in.queue.stats.output.SwitchQueueBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.get.packet.in.stats.output.TableCookieStats;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.get.packet.in.stats.output.TableCookieStatsBuilder;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetMudReportsInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetMudUrlsInput;
 import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.GetMudUrlsOutput;
@@ -164,6 +172,80 @@ public class SdnmudServiceImpl implements SdnmudService {
 		return new CompletedFuture<RpcResult<GetPacketCountOutput>>(result);
 	}
 
+	@Override
+	public Future<RpcResult<GetPacketInQueueStatsOutput>> getPacketInQueueStats() {
+		GetPacketInQueueStatsOutputBuilder gpiqsob = new GetPacketInQueueStatsOutputBuilder();
+		ArrayList<SwitchQueue> switchQueues = new ArrayList<SwitchQueue>();
+		for (PacketInPipeline.SwitchLanes lanes : sdnmudProvider.getPacketInPipeline().getSwitchLanes()) {
+			for (PacketInPipeline.Lane lane : new PacketInPipeline.Lane[] { lanes.classifyLane, lanes.installLane }) {
+				SwitchQueueBuilder sqb = new SwitchQueueBuilder();
+				sqb.setSwitchId(lane.getNodeId());
+				sqb.setStage(lane.getStage());
+				sqb.setQueueDepth(Long.valueOf(lane.getQueueDepth()));
+				sqb.setHighWaterMark(Long.valueOf(lane.getHighWaterMark()));
+				sqb.setEnqueuedCount(BigInteger.valueOf(lane.getEnqueuedCount()));
+				sqb.setDroppedCount(BigInteger.valueOf(lane.getDroppedCount()));
+				switchQueues.add(sqb.build());
+			}
+		}
+		gpiqsob.setSwitchQueue(switchQueues);
+		RpcResult<GetPacketInQueueStatsOutput> result = RpcResultBuilder.success(gpiqsob).build();
+		return new CompletedFuture<RpcResult<GetPacketInQueueStatsOutput>>(result);
+	}
+
+	@Override
+	public Future<RpcResult<GetPacketInStatsOutput>> getPacketInStats() {
+		GetPacketInStatsOutputBuilder gpisob = new GetPacketInStatsOutputBuilder();
+		PacketInDispatcher packetInDispatcher = sdnmudProvider.getPacketInDispatcher();
+		gpisob.setDuplicatePacketInCount(
+				BigInteger.valueOf(packetInDispatcher.getInFlightRegistry().getSuppressedCount()));
+		gpisob.setFlowWriteCount(BigInteger.valueOf(sdnmudProvider.getFlowWriter().getCompletedCount()));
+		gpisob.setFlowWriteErrorCount(BigInteger.valueOf(sdnmudProvider.getFlowWriter().getFailedCount()));
+		gpisob.setFlowWriteSuppressedCount(BigInteger.valueOf(sdnmudProvider.getFlowWriter().getSuppressedCount()
+				+ sdnmudProvider.getFlowCommitWrapper().getSuppressedCount()));
+		FlowRetryQueue flowRetryQueue = sdnmudProvider.getFlowRetryQueue();
+		gpisob.setFlowRetryQueueDepth(BigInteger.valueOf(flowRetryQueue.getQueueDepth()));
+		gpisob.setFlowRetryCount(BigInteger.valueOf(flowRetryQueue.getRetryCount()));
+		gpisob.setFlowRetrySuccessCount(BigInteger.valueOf(flowRetryQueue.getRecoveredCount()));
+		gpisob.setFlowRetryFailureCount(BigInteger.valueOf(flowRetryQueue.getAbandonedCount()));
+		gpisob.setFlowRetryRejectCount(BigInteger.valueOf(flowRetryQueue.getRejectedCount()));
+		MudInstallEngine mudInstallEngine = sdnmudProvider.getMudInstallEngine();
+		gpisob.setMudInstallPendingCount(BigInteger.valueOf(mudInstallEngine.getPendingCount()));
+		gpisob.setMudInstallRunningCount(BigInteger.valueOf(mudInstallEngine.getRunningCount()));
+		gpisob.setMudInstallCompletedCount(BigInteger.valueOf(mudInstallEngine.getCompletedCount()));
+		gpisob.setMudInstallFailedCount(BigInteger.valueOf(mudInstallEngine.getFailedCount()));
+		MudAclCompiler mudAclCompiler = sdnmudProvider.getMudAclCompiler();
+		gpisob.setMudCompilerRuleCount(BigInteger.valueOf(mudAclCompiler.getRuleCount()));
+		gpisob.setMudCompilerFlowCount(BigInteger.valueOf(mudAclCompiler.getFlowCount()));
+		gpisob.setMudCompilerDroppedCount(BigInteger.valueOf(mudAclCompiler.getDroppedCount()));
+		gpisob.setMudCompilerMergedCount(BigInteger.valueOf(mudAclCompiler.getMergedCount()));
+		CompiledPolicyCache compiledPolicyCache = sdnmudProvider.getCompiledPolicyCache();
+		gpisob.setCompiledPolicyCacheSize(BigInteger.valueOf(compiledPolicyCache.getSize()));
+		gpisob.setCompiledPolicyCacheHitCount(BigInteger.valueOf(compiledPolicyCache.getHitCount()));
+		gpisob.setCompiledPolicyCacheMissCount(BigInteger.valueOf(compiledPolicyCache.getMissCount()));
+		DemandProfileInstaller demandProfileInstaller = sdnmudProvider.getDemandProfileInstaller();
+		gpisob.setDemandInstallCount(BigInteger.valueOf(demandProfileInstaller.getInstallCount()));
+		gpisob.setDemandReclaimCount(BigInteger.valueOf(demandProfileInstaller.getReclaimCount()));
+		ArrayList<TableCookieStats> tableCookieStats = new ArrayList<TableCookieStats>();
+		for (PacketInStats.Recorder recorder : packetInDispatcher.getPacketInStats().getRecorders()) {
+			TableCookieStatsBuilder tcsb = new TableCookieStatsBuilder();
+			tcsb.setTableId(recorder.getTableId());
+			tcsb.setFlowCookie(recorder.getCookie());
+			tcsb.setPacketInCount(BigInteger.valueOf(recorder.getPacketInCount()));
+			tcsb.setDecisionLatencyP50(BigInteger.valueOf(recorder.getDecisionLatency(50)));
+			tcsb.setDecisionLatencyP99(BigInteger.valueOf(recorder.getDecisionLatency(99)));
+			tcsb.setDecisionLatencyMax(BigInteger.valueOf(recorder.getMaxDecisionLatency()));
+			tcsb.setFlowCommitCount(BigInteger.valueOf(recorder.getFlowCommitCount()));
+			tcsb.setCommitLatencyP50(BigInteger.valueOf(recorder.getCommitLatency(50)));
+			tcsb.setCommitLatencyP99(BigInteger.valueOf(recorder.getCommitLatency(99)));
+			tcsb.setCommitLatencyMax(BigInteger.valueOf(recorder.getMaxCommitLatency()));
+			tableCookieStats.add(tcsb.build());
+		}
+		gpisob.setTableCookieStats(tableCookieStats);
+		RpcResult<GetPacketInStatsOutput> result = RpcResultBuilder.success(gpisob).build();
+		return new CompletedFuture<RpcResult<GetPacketInStatsOutput>>(result);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -18,10 +18,16 @@
 
 package gov.nist.antd.sdnmud.impl;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.TimerTask;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.mud.rev190128.Mud;
 import org.slf4j.Logger;
@@ -31,11 +37,16 @@ import org.slf4j.LoggerFactory;
  * @author mranga
  *
  */
-public class StateChangeScanner extends TimerTask {
+public class StateChangeScanner implements Runnable {
 	private static final Logger LOG = LoggerFactory.getLogger(StateChangeScanner.class);
 
 	private SdnmudProvider sdnmudProvider;
-	private HashMap<String, Long> installTime = new HashMap<String, Long>();
+
+	// Time between progress reports while MUD profiles are being installed.
+	private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+	// Also updated when the demand installer removes an idle profile.
+	private ConcurrentHashMap<String, Long> installTime = new ConcurrentHashMap<String, Long>();
 
 	private HashSet<String> initialFlowsInstalled = new HashSet<String>();
 
@@ -46,7 +57,7 @@ public class StateChangeScanner extends TimerTask {
 	/*
 	 * (non-Javadoc)
 	 *
-	 * @see java.util.TimerTask#run()
+	 * @see java.lang.Runnable#run()
 	 */
 	@Override
 	public synchronized void run() {
@@ -59,6 +70,9 @@ public class StateChangeScanner extends TimerTask {
 		try {
 
 			boolean failed = false;
+			MudInstallEngine mudInstallEngine = this.sdnmudProvider.getMudInstallEngine();
+			DemandProfileInstaller demandProfileInstaller = this.sdnmudProvider.getDemandProfileInstaller();
+			final LinkedHashMap<String, CompletableFuture<Boolean>> installs = new LinkedHashMap<String, CompletableFuture<Boolean>>();
 			for (String cpeSwitch : sdnmudProvider.getCpeSwitches()) {
 
 				if (sdnmudProvider.getNode(cpeSwitch) != null) {
@@ -67,16 +81,48 @@ public class StateChangeScanner extends TimerTask {
 						this.sdnmudProvider.getWakeupListener().installInitialFlows(cpeSwitch);
 						this.initialFlowsInstalled.add(cpeSwitch);
 					}
-					MudFlowsInstaller mudFlowsInstaller = this.sdnmudProvider.getMudFlowsInstaller();
-					for (Mud mud : this.sdnmudProvider.getMudProfiles()) {
-						String key = mud.getMudUrl().getValue() + ":" + cpeSwitch;
+					for (Mud mud : new ArrayList<Mud>(this.sdnmudProvider.getMudProfiles())) {
+						String key = MudInstallEngine.getInstallKey(cpeSwitch, mud.getMudUrl().getValue());
+						// On demand, only the switches that have the profile are updated.
+						if (demandProfileInstaller.isEnabled()
+								&& !demandProfileInstaller.isInstalled(cpeSwitch, mud.getMudUrl().getValue())) {
+							continue;
+						}
 						if (!installTime.containsKey(key)) {
-							if (mudFlowsInstaller.tryInstallFlows(mud, cpeSwitch)) {
-								installTime.put(key, System.currentTimeMillis());
-							} else {
-								failed = true;
+							installs.put(key, mudInstallEngine.submit(mud, cpeSwitch));
+						}
+					}
+				}
+			}
+
+			/*
+			 * The installs run on the engine's workers. Wait for them all, reporting
+			 * progress now and then.
+			 */
+			if (!installs.isEmpty()) {
+				LOG.info("StateChangeScanner: installing " + installs.size() + " MUD profiles");
+				CompletableFuture<Void> all = CompletableFuture
+						.allOf(installs.values().toArray(new CompletableFuture<?>[installs.size()]));
+				while (true) {
+					try {
+						all.get(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+						break;
+					} catch (TimeoutException ex) {
+						int done = 0;
+						for (CompletableFuture<Boolean> install : installs.values()) {
+							if (install.isDone()) {
+								done++;
 							}
 						}
+						LOG.info("StateChangeScanner: installed " + done + " of " + installs.size()
+								+ " MUD profiles, " + mudInstallEngine.getRunningCount() + " in progress");
+					}
+				}
+				for (Map.Entry<String, CompletableFuture<Boolean>> entry : installs.entrySet()) {
+					if (entry.getValue().getNow(false)) {
+						installTime.put(entry.getKey(), System.currentTimeMillis());
+					} else {
+						failed = true;
 					}
 				}
 			}
@@ -85,7 +131,7 @@ public class StateChangeScanner extends TimerTask {
 				sdnmudProvider.clearConfigStateChanged();
 			}
 
-		} catch (RuntimeException ex) {
+		} catch (RuntimeException | InterruptedException | ExecutionException ex) {
 			LOG.error("Exception caught when processing state change : ", ex);
 
 		}
@@ -106,6 +152,15 @@ public class StateChangeScanner extends TimerTask {
 		}
 	}
 
+	/**
+	 * Forget that a MUD profile was installed on a switch.
+	 *
+	 * @param key -- see {@link MudInstallEngine#getInstallKey(String, String)}.
+	 */
+	public void forgetInstall(String key) {
+		this.installTime.remove(key);
+	}
+
 	public synchronized void clearState() {
 		this.installTime.clear();
 		this.initialFlowsInstalled.clear();
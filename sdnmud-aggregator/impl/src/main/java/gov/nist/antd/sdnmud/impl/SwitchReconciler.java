@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opendaylight.controller.md.sal.binding.api.DataBroker;
+import org.opendaylight.controller.md.sal.binding.api.ReadOnlyTransaction;
+import org.opendaylight.controller.md.sal.common.api.data.LogicalDatastoreType;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowCapableNode;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.Table;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.table.statistics.rev131215.FlowTableStatisticsData;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.params.xml.ns.yang.sdnmud.rev170915.SdnmudConfig;
+import org.opendaylight.yangtools.yang.binding.InstanceIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Repairs the flows of a switch that reconnects after a short disconnection
+ * instead of pushing them again from scratch.
+ *
+ * When a switch disconnects, the flows expected on it (the datastore flows
+ * and the flows without timeouts written directly to it) are kept for
+ * reconnect-grace-seconds. If it comes back within that time, its OPERATIONAL
+ * flow tables are read once and compared with the expected flows by table,
+ * flow id and cookie. Expected flows the switch no longer holds (or holds with
+ * another cookie) are written again, and flows of ours the switch holds but
+ * that are no longer expected are removed. Nothing else is touched.
+ *
+ * The MUD state of the switch (the devices seen on it, the deferred name
+ * matches and the profiles recorded as installed) is kept along with the
+ * flows, since the flows were installed for it. If the grace time runs out,
+ * the kept flows and the MUD state are dropped. If the flow tables of the
+ * switch cannot be read, the flows are pushed from scratch as for a new
+ * switch.
+ *
+ * @author mranga
+ *
+ */
+public class SwitchReconciler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SwitchReconciler.class);
+
+	static final long DEFAULT_GRACE_SECONDS = 60;
+
+	// The statistics of a switch that just reconnected may not be collected yet.
+	private static final int MAX_READ_ATTEMPTS = 5;
+
+	private static final long READ_RETRY_MILLIS = 2000;
+
+	// Flow ids the openflowplugin makes up for flows it did not write.
+	private static final String ALIEN_FLOW_ID_PREFIX = "#UF$";
+
+	private final SdnmudProvider sdnmudProvider;
+
+	private final DataBroker dataBroker;
+
+	// Switches that disconnected and whose flows are kept, with their grace timers.
+	private final HashMap<String, TimingWheel.Timeout> disconnected = new HashMap<String, TimingWheel.Timeout>();
+
+	private final AtomicLong reconciledCount = new AtomicLong();
+
+	private final AtomicLong fullPushCount = new AtomicLong();
+
+	private final AtomicLong repairedFlowCount = new AtomicLong();
+
+	private final AtomicLong removedFlowCount = new AtomicLong();
+
+	private final AtomicLong intactFlowCount = new AtomicLong();
+
+	// Deleting flows and pushing them from scratch block -- keep them off the
+	// timer and datastore threads.
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "sdnmud-switch-reconciler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	public SwitchReconciler(SdnmudProvider sdnmudProvider, DataBroker dataBroker) {
+		this.sdnmudProvider = sdnmudProvider;
+		this.dataBroker = dataBroker;
+	}
+
+	private long getGraceSeconds() {
+		SdnmudConfig sdnmudConfig = sdnmudProvider.getSdnmudConfig();
+		if (sdnmudConfig != null && sdnmudConfig.getReconnectGraceSeconds() != null) {
+			return sdnmudConfig.getReconnectGraceSeconds();
+		}
+		return DEFAULT_GRACE_SECONDS;
+	}
+
+	/**
+	 * Keep the flows and the MUD state of a switch that went away for the grace
+	 * time.
+	 */
+	public void onSwitchDisconnected(final String nodeUri, final InstanceIdentifier<FlowCapableNode> node) {
+		long graceSeconds = getGraceSeconds();
+		synchronized (this) {
+			TimingWheel.Timeout previous = disconnected.remove(nodeUri);
+			if (previous != null) {
+				previous.cancel();
+			}
+			if (graceSeconds > 0) {
+				disconnected.put(nodeUri, sdnmudProvider.getTimingWheel().schedule(new Runnable() {
+					@Override
+					public void run() {
+						executor.execute(new Runnable() {
+							@Override
+							public void run() {
+								expire(nodeUri, node);
+							}
+						});
+					}
+				}, graceSeconds * 1000));
+				LOG.info("onSwitchDisconnected : keeping flows of " + nodeUri + " for " + graceSeconds + " s");
+				return;
+			}
+		}
+		forgetSwitch(nodeUri, node);
+	}
+
+	private void expire(String nodeUri, InstanceIdentifier<FlowCapableNode> node) {
+		synchronized (this) {
+			TimingWheel.Timeout timeout = disconnected.get(nodeUri);
+			if (timeout == null || timeout.isCancelled()) {
+				return;
+			}
+			disconnected.remove(nodeUri);
+		}
+		LOG.info("Switch " + nodeUri + " did not reconnect in time -- dropping its flows");
+		forgetSwitch(nodeUri, node);
+	}
+
+	private void forgetSwitch(String nodeUri, InstanceIdentifier<FlowCapableNode> node) {
+		sdnmudProvider.getFlowCommitWrapper().deleteFlows(node);
+		sdnmudProvider.getFlowWriter().forgetFlows(node);
+		sdnmudProvider.getWakeupListener().clearMudState(nodeUri, node);
+	}
+
+	/**
+	 * Start reconciling a switch that connected.
+	 *
+	 * @return true if the flows of the switch were kept and are being
+	 *         reconciled. The caller should then not push the flows from
+	 *         scratch.
+	 */
+	public boolean onSwitchReconnected(String nodeUri, InstanceIdentifier<FlowCapableNode> node) {
+		synchronized (this) {
+			TimingWheel.Timeout timeout = disconnected.remove(nodeUri);
+			if (timeout == null) {
+				return false;
+			}
+			timeout.cancel();
+		}
+		LOG.info("onSwitchReconnected : reconciling " + nodeUri);
+		readFlowTables(nodeUri, node, 1);
+		return true;
+	}
+
+	private void readFlowTables(final String nodeUri, final InstanceIdentifier<FlowCapableNode> node,
+			final int attempt) {
+		final ReadOnlyTransaction transaction = dataBroker.newReadOnlyTransaction();
+		Futures.addCallback(transaction.read(LogicalDatastoreType.OPERATIONAL, node),
+				new FutureCallback<Optional<FlowCapableNode>>() {
+					@Override
+					public void onSuccess(Optional<FlowCapableNode> result) {
+						transaction.close();
+						if (result.isPresent() && hasTableStatistics(result.get())) {
+							reconcile(nodeUri, node, result.get());
+						} else if (attempt < MAX_READ_ATTEMPTS) {
+							sdnmudProvider.getTimingWheel().schedule(new Runnable() {
+								@Override
+								public void run() {
+									readFlowTables(nodeUri, node, attempt + 1);
+								}
+							}, READ_RETRY_MILLIS);
+						} else {
+							LOG.info("No flow statistics for " + nodeUri + " -- pushing flows from scratch");
+							pushFromScratch(nodeUri, node);
+						}
+					}
+
+					@Override
+					public void onFailure(Throwable t) {
+						transaction.close();
+						LOG.error("Could not read the flow tables of " + nodeUri, t);
+						pushFromScratch(nodeUri, node);
+					}
+				}, MoreExecutors.directExecutor());
+	}
+
+	/*
+	 * Tables carry statistics once the switch has been polled. Until then an
+	 * empty table does not mean the switch lost its flows.
+	 */
+	private static boolean hasTableStatistics(FlowCapableNode flowCapableNode) {
+		if (flowCapableNode.getTable() == null) {
+			return false;
+		}
+		for (Table table : flowCapableNode.getTable()) {
+			if (table.getAugmentation(FlowTableStatisticsData.class) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void pushFromScratch(final String nodeUri, final InstanceIdentifier<FlowCapableNode> node) {
+		fullPushCount.incrementAndGet();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				// What we remember of the switch is no longer to be trusted.
+				sdnmudProvider.getFlowWriter().forgetFlows(node);
+				sdnmudProvider.getWakeupListener().installFlowsFromScratch(node);
+			}
+		});
+	}
+
+	private static String idKey(short tableId, Flow flow) {
+		return tableId + ":" + flow.getId().getValue();
+	}
+
+	/*
+	 * Flows the plugin did not write have made up ids; they are recognized by
+	 * what they are. Flows that match the same packets but do something else
+	 * are different flows.
+	 */
+	private static List<Object> contentKey(short tableId, Flow flow) {
+		return Arrays.<Object>asList(tableId, flow.getPriority(), flow.getCookie(), flow.getMatch(),
+				flow.getInstructions());
+	}
+
+	private static boolean sameCookie(Flow flow, Flow other) {
+		return flow.getCookie() == null ? other.getCookie() == null : flow.getCookie().equals(other.getCookie());
+	}
+
+	private static boolean isPermanent(Flow flow) {
+		return (flow.getHardTimeout() == null || flow.getHardTimeout() == 0)
+				&& (flow.getIdleTimeout() == null || flow.getIdleTimeout() == 0);
+	}
+
+	private void reconcile(String nodeUri, InstanceIdentifier<FlowCapableNode> node, FlowCapableNode installed) {
+		short firstTable = sdnmudProvider.getTableStart();
+		short lastTable = (short) Math.max(sdnmudProvider.getNormalRulesTable(), sdnmudProvider.getDropTable());
+
+		// The flows of our tables that the switch holds.
+		HashMap<String, Flow> installedById = new HashMap<String, Flow>();
+		HashMap<List<Object>, String> installedByContent = new HashMap<List<Object>, String>();
+		for (Table table : installed.getTable()) {
+			if (table.getId() < firstTable || table.getId() > lastTable || table.getFlow() == null) {
+				continue;
+			}
+			for (Flow flow : table.getFlow()) {
+				String key = idKey(table.getId(), flow);
+				installedById.put(key, flow);
+				installedByContent.put(contentKey(table.getId(), flow), key);
+			}
+		}
+
+		LinkedHashMap<String, Flow> expected = new LinkedHashMap<String, Flow>();
+		Collection<Flow> datastoreFlows = sdnmudProvider.getFlowCommitWrapper().getFlows(node);
+		if (datastoreFlows != null) {
+			for (Flow flow : datastoreFlows) {
+				expected.put(idKey(flow.getTableId(), flow), flow);
+			}
+		}
+		for (Flow flow : sdnmudProvider.getFlowWriter().getPermanentFlows(node)) {
+			expected.put(idKey(flow.getTableId(), flow), flow);
+		}
+
+		HashSet<String> present = new HashSet<String>();
+		ArrayList<Flow> stale = new ArrayList<Flow>();
+		ArrayList<Flow> missing = new ArrayList<Flow>();
+		for (Flow flow : expected.values()) {
+			String key = idKey(flow.getTableId(), flow);
+			Flow installedFlow = installedById.get(key);
+			if (installedFlow == null) {
+				key = installedByContent.get(contentKey(flow.getTableId(), flow));
+				installedFlow = key == null ? null : installedById.get(key);
+			}
+			if (installedFlow != null && sameCookie(flow, installedFlow)) {
+				present.add(key);
+			} else {
+				if (installedFlow != null) {
+					// Same id, different flow: take it out before the rewrite.
+					present.add(key);
+					stale.add(installedFlow);
+				}
+				missing.add(flow);
+			}
+		}
+		for (Map.Entry<String, Flow> entry : installedById.entrySet()) {
+			Flow flow = entry.getValue();
+			// Flows with timeouts age out by themselves and alien flows are not ours to remove.
+			if (!present.contains(entry.getKey()) && isPermanent(flow) && flow.getId() != null
+					&& !flow.getId().getValue().startsWith(ALIEN_FLOW_ID_PREFIX)) {
+				stale.add(flow);
+			}
+		}
+
+		FlowWriter flowWriter = sdnmudProvider.getFlowWriter();
+		for (Flow flow : stale) {
+			flowWriter.deleteFlowAsync(node, flow, true);
+		}
+		for (Flow flow : missing) {
+			flowWriter.rewriteFlowAsync(flow, node);
+		}
+
+		reconciledCount.incrementAndGet();
+		repairedFlowCount.addAndGet(missing.size());
+		removedFlowCount.addAndGet(stale.size());
+		intactFlowCount.addAndGet(expected.size() - missing.size());
+		LOG.info("reconcile " + nodeUri + " : expected " + expected.size() + " installed " + installedById.size()
+				+ " rewritten " + missing.size() + " removed " + stale.size());
+	}
+
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return the number of reconnects handled by repairing differences.
+	 */
+	public long getReconciledCount() {
+		return reconciledCount.get();
+	}
+
+	/**
+	 * @return the number of reconnects that fell back to pushing all flows.
+	 */
+	public long getFullPushCount() {
+		return fullPushCount.get();
+	}
+
+	public long getRepairedFlowCount() {
+		return repairedFlowCount.get();
+	}
+
+	public long getRemovedFlowCount() {
+		return removedFlowCount.get();
+	}
+
+	public long getIntactFlowCount() {
+		return intactFlowCount.get();
+	}
+
+}
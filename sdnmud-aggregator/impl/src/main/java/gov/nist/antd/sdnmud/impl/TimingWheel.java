@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+package gov.nist.antd.sdnmud.impl;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel shared by the application for its timers. Scheduling and
+ * cancelling are O(1): new timers are queued to the wheel thread, which drops
+ * them into the bucket for their deadline (with a round count for deadlines
+ * beyond one revolution). On every tick the wheel thread collects all the expired
+ * timers of the current bucket and runs them as one batch.
+ *
+ * One shot timers run on the wheel thread and must be short (e.g. removing a
+ * cache entry). Periodic tasks, which may run for a long time (the state change
+ * scanner, the MUD reporter), run on a separate thread and a run is skipped if
+ * the previous one is still going.
+ *
+ * The number of wheel entries for one shot timers is capped. Past the cap a new
+ * timer rides on a shared entry for all the timers due in the same tick, so it
+ * still runs when it is due (and can still be cancelled on its own).
+ *
+ * @author mranga
+ *
+ */
+public class TimingWheel {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TimingWheel.class);
+
+	static final long DEFAULT_TICK_MILLIS = 100;
+
+	static final int DEFAULT_WHEEL_SIZE = 512;
+
+	static final int DEFAULT_MAX_PENDING_TIMERS = 200000;
+
+	private final long tickMillis;
+
+	private final Bucket[] wheel;
+
+	private final int mask;
+
+	private final int maxPendingTimers;
+
+	private final AtomicInteger pendingTimers = new AtomicInteger();
+
+	private final AtomicLong overflowCount = new AtomicLong();
+
+	private final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	private final ConcurrentLinkedQueue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	// Deadline tick to the shared entry for the timers scheduled past the cap.
+	private final ConcurrentHashMap<Long, CoalescedTimers> coalescedTimers =
+			new ConcurrentHashMap<Long, CoalescedTimers>();
+
+	private final Thread wheelThread;
+
+	private final ExecutorService periodicTaskExecutor;
+
+	private final long startTime;
+
+	private long tick;
+
+	private volatile boolean isClosed;
+
+	/**
+	 * Handle to a scheduled task.
+	 */
+	public final class Timeout {
+		private final Runnable task;
+		private final long deadline;
+		private final long periodMillis;
+		private final AtomicBoolean running = new AtomicBoolean(false);
+		private volatile boolean cancelled;
+		// Set when a one shot timer leaves the wheel (or its shared entry) to run.
+		private volatile boolean expired;
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout next;
+		private Timeout prev;
+
+		private Timeout(Runnable task, long deadline, long periodMillis) {
+			this.task = task;
+			this.deadline = deadline;
+			this.periodMillis = periodMillis;
+		}
+
+		/**
+		 * Cancel the task. A periodic task will not be run again. Cancelling a one
+		 * shot task that has already expired does nothing.
+		 */
+		public void cancel() {
+			if (!cancelled && !expired) {
+				cancelled = true;
+				cancelledTimeouts.add(this);
+			}
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		private boolean isPeriodic() {
+			return periodMillis > 0;
+		}
+	}
+
+	/**
+	 * The timers due in one tick that did not get a wheel entry of their own. Run
+	 * from the wheel entry scheduled for the first of them.
+	 */
+	private final class CoalescedTimers implements Runnable {
+		private final long deadlineTick;
+		private final ArrayList<Timeout> timeouts = new ArrayList<Timeout>();
+		private boolean started;
+
+		private CoalescedTimers(long deadlineTick) {
+			this.deadlineTick = deadlineTick;
+		}
+
+		/*
+		 * @return false if the timers are already running.
+		 */
+		synchronized boolean add(Timeout timeout) {
+			if (started) {
+				return false;
+			}
+			timeouts.add(timeout);
+			return true;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				started = true;
+			}
+			coalescedTimers.remove(deadlineTick, this);
+			for (Timeout timeout : timeouts) {
+				timeout.expired = true;
+				if (timeout.cancelled) {
+					continue;
+				}
+				try {
+					timeout.task.run();
+				} catch (Exception ex) {
+					LOG.error("TimingWheel: timer task failed", ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Doubly linked list of the timers that hash to one slot. Only touched by the
+	 * wheel thread.
+	 */
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void remove(Timeout timeout) {
+			if (timeout.prev != null) {
+				timeout.prev.next = timeout.next;
+			} else {
+				head = timeout.next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			} else {
+				tail = timeout.prev;
+			}
+			timeout.prev = timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		void expire(ArrayList<Timeout> expired) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					expired.add(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	public TimingWheel() {
+		this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, DEFAULT_MAX_PENDING_TIMERS);
+	}
+
+	public TimingWheel(long tickMillis, int wheelSize, int maxPendingTimers) {
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.tickMillis = tickMillis;
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		this.maxPendingTimers = maxPendingTimers;
+		this.startTime = System.nanoTime();
+		this.wheelThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runWheel();
+			}
+		}, "sdnmud-timing-wheel");
+		this.wheelThread.setDaemon(true);
+		this.periodicTaskExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "sdnmud-periodic-task-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.wheelThread.start();
+	}
+
+	private long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Run a short task once after the given delay.
+	 *
+	 * @param task        -- the task (runs on the wheel thread).
+	 * @param delayMillis -- the delay.
+	 * @return the handle for the task or null if the wheel is closed.
+	 */
+	public Timeout schedule(Runnable task, long delayMillis) {
+		if (isClosed) {
+			return null;
+		}
+		long deadline = now() + Math.max(0, delayMillis);
+		Timeout timeout = new Timeout(task, deadline, 0);
+		if (pendingTimers.incrementAndGet() <= maxPendingTimers) {
+			newTimeouts.add(timeout);
+			return timeout;
+		}
+		pendingTimers.decrementAndGet();
+		overflowCount.incrementAndGet();
+		Long deadlineTick = deadline / tickMillis;
+		while (true) {
+			CoalescedTimers coalesced = coalescedTimers.get(deadlineTick);
+			if (coalesced != null && coalesced.add(timeout)) {
+				return timeout;
+			}
+			CoalescedTimers newCoalesced = new CoalescedTimers(deadlineTick);
+			newCoalesced.add(timeout);
+			if (coalesced == null ? coalescedTimers.putIfAbsent(deadlineTick, newCoalesced) == null
+					: coalescedTimers.replace(deadlineTick, coalesced, newCoalesced)) {
+				// One wheel entry per tick on top of the cap.
+				LOG.debug("TimingWheel: too many pending timers -- sharing a wheel entry");
+				pendingTimers.incrementAndGet();
+				newTimeouts.add(new Timeout(newCoalesced, deadline, 0));
+				return timeout;
+			}
+		}
+	}
+
+	/**
+	 * Run a task repeatedly. Periodic tasks are not counted against the pending
+	 * timer cap.
+	 *
+	 * @param task               -- the task (runs on a periodic task thread).
+	 * @param initialDelayMillis -- delay before the first run.
+	 * @param periodMillis       -- time between the start of successive runs.
+	 * @return the handle for the task.
+	 */
+	public Timeout scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+		if (periodMillis <= 0) {
+			throw new IllegalArgumentException("period must be positive");
+		}
+		Timeout timeout = new Timeout(task, now() + Math.max(0, initialDelayMillis), periodMillis);
+		if (!isClosed) {
+			newTimeouts.add(timeout);
+		}
+		return timeout;
+	}
+
+	private void add(Timeout timeout, long deadline) {
+		long deadlineTick = Math.max(deadline / tickMillis, tick);
+		timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+		wheel[(int) (deadlineTick & mask)].add(timeout);
+	}
+
+	private void runWheel() {
+		ArrayList<Timeout> expired = new ArrayList<Timeout>();
+		long nextTickTime = tickMillis;
+		while (!isClosed) {
+			long sleepMillis = nextTickTime - now();
+			if (sleepMillis > 0) {
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
+					if (isClosed) {
+						break;
+					}
+				}
+				continue;
+			}
+			processCancelled();
+			transferNewTimeouts();
+			wheel[(int) (tick & mask)].expire(expired);
+			runExpired(expired);
+			expired.clear();
+			tick++;
+			nextTickTime += tickMillis;
+		}
+	}
+
+	private void transferNewTimeouts() {
+		Timeout timeout;
+		while ((timeout = newTimeouts.poll()) != null) {
+			if (timeout.cancelled) {
+				if (!timeout.isPeriodic()) {
+					pendingTimers.decrementAndGet();
+				}
+				continue;
+			}
+			add(timeout, timeout.deadline);
+		}
+	}
+
+	private void processCancelled() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			// Not yet transferred timers are dropped by transferNewTimeouts.
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+				if (!timeout.isPeriodic()) {
+					pendingTimers.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	private void runExpired(ArrayList<Timeout> expired) {
+		for (final Timeout timeout : expired) {
+			if (!timeout.isPeriodic()) {
+				// Off the wheel -- counted out here even if cancelled meanwhile.
+				timeout.expired = true;
+				pendingTimers.decrementAndGet();
+			}
+			if (timeout.cancelled) {
+				continue;
+			}
+			if (timeout.isPeriodic()) {
+				// Re-arm first so a slow run does not shift the schedule.
+				add(timeout, tick * tickMillis + Math.max(timeout.periodMillis, tickMillis));
+				if (timeout.running.compareAndSet(false, true)) {
+					periodicTaskExecutor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								timeout.task.run();
+							} catch (Exception ex) {
+								LOG.error("TimingWheel: periodic task failed", ex);
+							} finally {
+								timeout.running.set(false);
+							}
+						}
+					});
+				} else {
+					LOG.debug("TimingWheel: previous run still in progress -- skipping");
+				}
+			} else {
+				try {
+					timeout.task.run();
+				} catch (Exception ex) {
+					LOG.error("TimingWheel: timer task failed", ex);
+				}
+			}
+		}
+	}
+
+	public int getPendingTimerCount() {
+		return pendingTimers.get();
+	}
+
+	/**
+	 * @return the number of timers scheduled past the cap (on a shared entry).
+	 */
+	public long getOverflowCount() {
+		return overflowCount.get();
+	}
+
+	public void close() {
+		this.isClosed = true;
+		this.wheelThread.interrupt();
+		this.periodicTaskExecutor.shutdownNow();
+	}
+
+}
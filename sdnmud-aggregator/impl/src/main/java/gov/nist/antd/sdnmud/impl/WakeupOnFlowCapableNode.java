@@ -87,7 +87,7 @@ public class WakeupOnFlowCapableNode implements DataTreeChangeListener<FlowCapab
 		FlowBuilder fb = FlowUtils.createIpMatchSendPacketToControllerFlow(metadata, metadataMask, forwardFlag, tableId,
 				flowId, flowCookie);
 
-		this.sdnmudProvider.getFlowWriter().writeFlow(fb, node);
+		this.sdnmudProvider.getFlowWriter().writeFlowAsync(fb, node);
 	}
 
 
@@ -96,7 +96,7 @@ public class WakeupOnFlowCapableNode implements DataTreeChangeListener<FlowCapab
 		FlowCookie flowCookie = SdnMudConstants.UNCLASSIFIED_FLOW_COOKIE;
 		FlowBuilder unconditionalGoToNextFlow = FlowUtils.createUnconditionalGoToNextTableFlow(table, flowId,
 				flowCookie);
-		sdnmudProvider.getFlowWriter().writeFlow(unconditionalGoToNextFlow, node);
+		sdnmudProvider.getFlowWriter().writeFlowAsync(unconditionalGoToNextFlow, node);
 	}
 
 	private void installBroadcastRule(String nodeUri, InstanceIdentifier<FlowCapableNode> node) {
@@ -109,7 +109,7 @@ public class WakeupOnFlowCapableNode implements DataTreeChangeListener<FlowCapab
 		FlowCookie flowCookie = IdUtils.createFlowCookie("NORMAL");
 		assert sdnmudProvider.isWirelessSwitch(nodeUri);
 		FlowBuilder fb = FlowUtils.createNormalFlow(true, sdnmudProvider.getNormalRulesTable(), flowId, flowCookie);
-		sdnmudProvider.getFlowWriter().writeFlow(fb, node);
+		sdnmudProvider.getFlowWriter().writeFlowAsync(fb, node);
 	}
 
 	private void installUnditionalDropPacket(String nodeId, InstanceIdentifier<FlowCapableNode> nodePath,
@@ -118,7 +118,7 @@ public class WakeupOnFlowCapableNode implements DataTreeChangeListener<FlowCapab
 		FlowId flowId = IdUtils.createFlowId("UNCONDITIONAL_DROP:" + dropPacketTable);
 
 		FlowBuilder flow = FlowUtils.createUnconditionalDropPacketFlow(dropPacketTable, flowId, flowCookie);
-		this.sdnmudProvider.getFlowWriter().writeFlow(flow, nodePath);
+		this.sdnmudProvider.getFlowWriter().writeFlowAsync(flow, nodePath);
 	}
 
 	public void installSendToControllerFlows(String nodeUri) {
@@ -204,7 +204,7 @@ public class WakeupOnFlowCapableNode implements DataTreeChangeListener<FlowCapab
 		FlowCookie flowCookie = IdUtils.createFlowCookie("GoToNext");
 		FlowBuilder unconditionalGoToNextFlow = FlowUtils.createUnconditionalGoToNextTableFlow(table, flowId,
 				flowCookie);
-		sdnmudProvider.getFlowWriter().writeFlow(unconditionalGoToNextFlow, node);
+		sdnmudProvider.getFlowWriter().writeFlowAsync(unconditionalGoToNextFlow, node);
 	}
 
 	private synchronized void installNormalFlow(InstanceIdentifier<FlowCapableNode> node, String nodeUri) {
@@ -215,7 +215,7 @@ public class WakeupOnFlowCapableNode implements DataTreeChangeListener<FlowCapab
 		FlowBuilder fb = FlowUtils.createNormalFlow(false, sdnmudProvider.getNormalRulesTable(), flowId, flowCookie);
 		Flow normalFlow = fb.build();
 		this.normalFlows.put(nodeUri, normalFlow);
-		sdnmudProvider.getFlowWriter().writeFlow(fb.build(), node);
+		sdnmudProvider.getFlowWriter().writeFlowAsync(fb.build(), node);
 	}
 
 	private synchronized void installDefaultFlows(InstanceIdentifier<FlowCapableNode> nodePath, String nodeUri) {
@@ -238,6 +238,23 @@ public class WakeupOnFlowCapableNode implements DataTreeChangeListener<FlowCapab
 		String nodeUri = IdUtils.getNodeUri(nodePath);
 
 		LOG.info("onFlowCapableSwitchAppeared " + nodeUri);
+		// Add the meters before the flows that use them (does not block).
+		this.sdnmudProvider.getMeterManager().installMeters(nodePath);
+		if (this.sdnmudProvider.getSwitchReconciler().onSwitchReconnected(nodeUri, nodePath)) {
+			// The switch kept its flows -- only the differences are repaired.
+			this.sdnmudProvider.putInUriToNodeMap(nodeUri, nodePath);
+			return;
+		}
+		installFlowsFromScratch(nodePath);
+	}
+
+	/**
+	 * Push all the flows of a switch as if it had never been seen.
+	 *
+	 * @param nodePath -- the node path.
+	 */
+	public synchronized void installFlowsFromScratch(InstanceIdentifier<FlowCapableNode> nodePath) {
+		String nodeUri = IdUtils.getNodeUri(nodePath);
 		installDefaultFlows(nodePath,nodeUri);
 		// Stash away the URI to node path so we can reference it later.
 		this.sdnmudProvider.putInUriToNodeMap(nodeUri, nodePath);
@@ -257,16 +274,43 @@ public class WakeupOnFlowCapableNode implements DataTreeChangeListener<FlowCapab
 		LOG.info("onFlowCapableSwitchDisappeared");
 		// The URI identifies the node instance.
 		LOG.info("node URI " + nodeUri);
-		// Remove the NORMAL flow
-		this.normalFlows.remove(nodeUri);
 		// Remove the node URI from the uriToNodeMap.
 		this.sdnmudProvider.removeNode(nodeUri);
+		// Keep the installed flows and the MUD state for a while in case the
+		// switch comes back (see clearMudState).
+		this.sdnmudProvider.getSwitchReconciler().onSwitchDisconnected(nodeUri, nodePath);
+		// Meters are re-added when the switch comes back.
+		this.sdnmudProvider.getMeterManager().clearState(nodeUri);
+		// Discard any packet-ins still queued for the switch.
+		this.sdnmudProvider.getPacketInPipeline().removeSwitch(nodeUri);
+		this.sdnmudProvider.getPacketInDispatcher().getInFlightRegistry().removeSwitch(nodeUri);
+		// Drop the flow writes still waiting to be retried.
+		this.sdnmudProvider.getFlowRetryQueue().removeSwitch(nodeUri);
+		this.sdnmudProvider.getFlowWriter().removeSwitch(nodeUri);
+		// Drop the MUD profile installs still queued for the switch.
+		this.sdnmudProvider.getMudInstallEngine().removeSwitch(nodeUri);
+	}
+
+	/**
+	 * Forget the MUD state of a switch whose flows are dropped. Called by the
+	 * SwitchReconciler when the switch did not come back in time.
+	 *
+	 * @param nodeUri  -- the node URI.
+	 * @param nodePath -- the instance id of the switch.
+	 */
+	public synchronized void clearMudState(String nodeUri, InstanceIdentifier<FlowCapableNode> nodePath) {
+		// Remove the NORMAL flow
+		this.normalFlows.remove(nodeUri);
+		// Remove the devices seen on the switch.
+		this.sdnmudProvider.removeMudNodeState(nodeUri, nodePath);
 		// Remove dns resolution from the cache of the mud flows installer.
 		this.sdnmudProvider.getMudFlowsInstaller().removeDnsMatch(nodePath);
 		// Remove the cache entry from namelookup cache
 		this.sdnmudProvider.getNameResolutionCache().removeCacheLookup(nodePath);
-		// Remove the installed flows from the cache.
-		this.sdnmudProvider.getFlowCommitWrapper().deleteFlows(nodePath);
+		// The profiles are no longer installed on the switch.
+		this.sdnmudProvider.getStateChangeScanner().clearState(nodeUri);
+		// Profiles installed on demand are installed again as devices show up.
+		this.sdnmudProvider.getDemandProfileInstaller().removeNode(nodeUri);
 	}
 
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Ipv4Address;
+
+/**
+ * Tests for the address classifier: prefix boundaries, longest match between
+ * local networks, excluded hosts and controller addresses, and invalid input.
+ *
+ * @author mranga
+ *
+ */
+public class AddressClassifierTest {
+
+	private static int ip(String address) {
+		return AddressClassifier.parseAddress(address);
+	}
+
+	private static AddressClassifier build(List<String> localNetworks, List<String> excludedHosts,
+			String controller, String... controllerAddresses) {
+		HashMap<String, List<Ipv4Address>> controllers = new HashMap<String, List<Ipv4Address>>();
+		if (controller != null) {
+			Ipv4Address[] addresses = new Ipv4Address[controllerAddresses.length];
+			for (int i = 0; i < addresses.length; i++) {
+				addresses[i] = new Ipv4Address(controllerAddresses[i]);
+			}
+			controllers.put(controller, Arrays.asList(addresses));
+		}
+		return AddressClassifier.build(localNetworks, excludedHosts, controllers);
+	}
+
+	@Test
+	public void testParseAddress() {
+		assertEquals(0x0a000001, ip("10.0.0.1"));
+		assertEquals(0xc0a80101, ip("192.168.1.1"));
+		assertEquals(0, ip("0.0.0.0"));
+		assertEquals(-1, ip("255.255.255.255"));
+		for (String bad : new String[] { "", "10.0.0", "10.0.0.1.2", "256.0.0.1", "10.0.0.1000", "a.b.c.d",
+				"10..0.1", "10.0.0.1 " }) {
+			assertEquals(bad, -1, ip(bad));
+		}
+	}
+
+	@Test
+	public void testPrefixBoundaries() {
+		AddressClassifier classifier = build(Arrays.asList("192.168.1.0/24", "172.16.0.0/12"), null, null);
+		assertEquals(AddressClassifier.LOCAL, classifier.classify(ip("192.168.1.0")));
+		assertEquals(AddressClassifier.LOCAL, classifier.classify(ip("192.168.1.255")));
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("192.168.0.255")));
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("192.168.2.0")));
+		assertEquals(AddressClassifier.LOCAL, classifier.classify(ip("172.16.0.0")));
+		assertEquals(AddressClassifier.LOCAL, classifier.classify(ip("172.31.255.255")));
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("172.32.0.0")));
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("172.15.255.255")));
+	}
+
+	@Test
+	public void testHostBitsOfPrefixAreIgnored() {
+		AddressClassifier classifier = build(Collections.singletonList("10.1.2.3/8"), null, null);
+		assertTrue(classifier.isLocalAddress(ip("10.200.0.1")));
+		assertFalse(classifier.isLocalAddress(ip("11.1.2.3")));
+	}
+
+	@Test
+	public void testDefaultRouteAndHostRoute() {
+		AddressClassifier everything = build(Collections.singletonList("0.0.0.0/0"), null, null);
+		assertTrue(everything.isLocalAddress(ip("8.8.8.8")));
+		assertTrue(everything.isLocalAddress(ip("255.255.255.255")));
+
+		AddressClassifier host = build(Collections.singletonList("10.0.0.7"), null, null);
+		assertTrue(host.isLocalAddress(ip("10.0.0.7")));
+		assertFalse(host.isLocalAddress(ip("10.0.0.6")));
+		assertFalse(host.isLocalAddress(ip("10.0.0.8")));
+	}
+
+	@Test
+	public void testLongestMatch() {
+		AddressClassifier classifier = build(Arrays.asList("10.0.0.0/8", "10.1.0.0/16"),
+				Arrays.asList("10.1.0.5", "10.2.0.1"), "printers", "10.1.2.3", "10.3.0.1");
+		assertEquals(AddressClassifier.LOCAL, classifier.classify(ip("10.1.0.4")));
+		assertEquals(AddressClassifier.EXCLUDED, classifier.classify(ip("10.1.0.5")));
+		assertEquals(AddressClassifier.EXCLUDED, classifier.classify(ip("10.2.0.1")));
+		assertEquals(AddressClassifier.CONTROLLER, classifier.classify(ip("10.1.2.3")));
+		assertEquals(AddressClassifier.CONTROLLER, classifier.classify(ip("10.3.0.1")));
+		// Neighbours of the /32 entries fall back to the enclosing prefix.
+		assertEquals(AddressClassifier.LOCAL, classifier.classify(ip("10.1.2.2")));
+		assertEquals(AddressClassifier.LOCAL, classifier.classify(ip("10.3.0.0")));
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("11.0.0.1")));
+		assertFalse(classifier.isLocalAddress(ip("10.1.2.3")));
+		assertFalse(classifier.isLocalAddress(ip("10.1.0.5")));
+	}
+
+	@Test
+	public void testControllerOutsideLocalNetworks() {
+		AddressClassifier classifier = build(Collections.singletonList("10.0.0.0/8"), null, "dns", "8.8.8.8");
+		assertEquals(AddressClassifier.CONTROLLER, classifier.classify(ip("8.8.8.8")));
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("8.8.8.9")));
+	}
+
+	@Test
+	public void testControllerWinsOverExcludedHost() {
+		AddressClassifier classifier = build(Collections.singletonList("10.0.0.0/8"),
+				Collections.singletonList("10.0.0.1"), "ntp", "10.0.0.1");
+		assertEquals(AddressClassifier.CONTROLLER, classifier.classify(ip("10.0.0.1")));
+	}
+
+	@Test
+	public void testInvalidEntriesAreIgnored() {
+		AddressClassifier classifier = build(Arrays.asList("10.0.0.0/33", "bogus/8", "10.0.0/8", "20.0.0.0/x",
+				"30.0.0.0/-1", "40.0.0.0/8"), Arrays.asList("not-an-address", "40.0.0.1"), null);
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("10.0.0.1")));
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("20.0.0.1")));
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("30.0.0.1")));
+		assertEquals(AddressClassifier.LOCAL, classifier.classify(ip("40.0.0.2")));
+		assertEquals(AddressClassifier.EXCLUDED, classifier.classify(ip("40.0.0.1")));
+	}
+
+	@Test
+	public void testEmpty() {
+		AddressClassifier classifier = AddressClassifier.build(null, null, null);
+		assertEquals(AddressClassifier.UNKNOWN, classifier.classify(ip("10.0.0.1")));
+		assertFalse(classifier.isLocalAddress(0));
+	}
+
+	@Test
+	public void testManyPrefixes() {
+		// Enough nodes to grow the trie arrays several times.
+		ArrayList<String> networks = new ArrayList<String>();
+		for (int i = 0; i < 256; i++) {
+			networks.add("10." + i + ".0.0/24");
+		}
+		AddressClassifier classifier = build(networks, null, null);
+		for (int i = 0; i < 256; i++) {
+			assertTrue(classifier.isLocalAddress(ip("10." + i + ".0.200")));
+			assertFalse(classifier.isLocalAddress(ip("10." + i + ".1.0")));
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for the in flight registry: parking of duplicates, and releases tied
+ * to the install that acquired the entry.
+ *
+ * @author mranga
+ *
+ */
+public class InFlightRegistryTest {
+
+	private static final String NODE = "openflow:1";
+
+	private static final long MAC = 0x001122334455L;
+
+	private static final class CountingRetry implements Runnable {
+		private final AtomicInteger runs = new AtomicInteger();
+
+		@Override
+		public void run() {
+			runs.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testDuplicateIsParkedAndDroppedOnSuccess() {
+		InFlightRegistry registry = new InFlightRegistry();
+		CountingRetry retry = new CountingRetry();
+		long token = registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, retry);
+		assertNotEquals(InFlightRegistry.NOT_ACQUIRED, token);
+		assertTrue(registry.isInFlight(NODE, InFlightRegistry.SRC, MAC));
+
+		CountingRetry duplicate = new CountingRetry();
+		CountingRetry another = new CountingRetry();
+		assertEquals(InFlightRegistry.NOT_ACQUIRED, registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, duplicate));
+		assertEquals(InFlightRegistry.NOT_ACQUIRED, registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, another));
+		assertEquals(2, registry.getSuppressedCount());
+		assertEquals(1, registry.getParkedCount());
+
+		registry.release(NODE, InFlightRegistry.SRC, MAC, token, true);
+		assertFalse(registry.isInFlight(NODE, InFlightRegistry.SRC, MAC));
+		// The flow is in; the parked packet-in has nothing left to do.
+		assertEquals(0, duplicate.runs.get());
+		assertEquals(0, another.runs.get());
+		assertEquals(0, retry.runs.get());
+	}
+
+	@Test
+	public void testParkedDuplicateIsRetriedOnFailure() {
+		InFlightRegistry registry = new InFlightRegistry();
+		long token = registry.tryAcquire(NODE, InFlightRegistry.DST, MAC, null);
+		CountingRetry duplicate = new CountingRetry();
+		registry.tryAcquire(NODE, InFlightRegistry.DST, MAC, duplicate);
+		registry.release(NODE, InFlightRegistry.DST, MAC, token, false);
+		assertEquals(1, duplicate.runs.get());
+		assertEquals(1, registry.getRetriedCount());
+		// The retry finds the entry free.
+		assertNotEquals(InFlightRegistry.NOT_ACQUIRED, registry.tryAcquire(NODE, InFlightRegistry.DST, MAC, null));
+	}
+
+	@Test
+	public void testDirectionsAndSwitchesAreSeparate() {
+		InFlightRegistry registry = new InFlightRegistry();
+		assertNotEquals(InFlightRegistry.NOT_ACQUIRED, registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, null));
+		assertNotEquals(InFlightRegistry.NOT_ACQUIRED, registry.tryAcquire(NODE, InFlightRegistry.DST, MAC, null));
+		assertNotEquals(InFlightRegistry.NOT_ACQUIRED,
+				registry.tryAcquire("openflow:2", InFlightRegistry.SRC, MAC, null));
+		registry.removeSwitch(NODE);
+		assertFalse(registry.isInFlight(NODE, InFlightRegistry.SRC, MAC));
+		assertTrue(registry.isInFlight("openflow:2", InFlightRegistry.SRC, MAC));
+	}
+
+	@Test
+	public void testStaleReleaseDoesNotFreeNewerInstall() throws InterruptedException {
+		InFlightRegistry registry = new InFlightRegistry(20);
+		long lost = registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, null);
+		CountingRetry parkedOnLost = new CountingRetry();
+		registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, parkedOnLost);
+		Thread.sleep(50);
+
+		// The entry is stale and the next packet-in takes it over.
+		long newer = registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, null);
+		assertNotEquals(InFlightRegistry.NOT_ACQUIRED, newer);
+		assertNotEquals(lost, newer);
+
+		// The lost install completes late; the newer install keeps the entry.
+		registry.release(NODE, InFlightRegistry.SRC, MAC, lost, false);
+		assertTrue(registry.isInFlight(NODE, InFlightRegistry.SRC, MAC));
+		assertEquals(InFlightRegistry.NOT_ACQUIRED, registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, null));
+		// The packet-in parked on the lost install is covered by the newer one.
+		assertEquals(0, parkedOnLost.runs.get());
+
+		registry.release(NODE, InFlightRegistry.SRC, MAC, newer, true);
+		assertFalse(registry.isInFlight(NODE, InFlightRegistry.SRC, MAC));
+	}
+
+	@Test
+	public void testTokensAreUnique() {
+		InFlightRegistry registry = new InFlightRegistry();
+		long first = registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, null);
+		registry.release(NODE, InFlightRegistry.SRC, MAC, first, true);
+		long second = registry.tryAcquire(NODE, InFlightRegistry.SRC, MAC, null);
+		assertNotEquals(first, second);
+		// Releasing with the first token again must not free the second install.
+		registry.release(NODE, InFlightRegistry.SRC, MAC, first, true);
+		assertTrue(registry.isInFlight(NODE, InFlightRegistry.SRC, MAC));
+	}
+
+}
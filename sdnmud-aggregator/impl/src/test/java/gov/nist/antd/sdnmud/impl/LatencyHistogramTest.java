@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the latency histogram: bucket boundaries, the precision of a
+ * bucket and the percentile lookup.
+ *
+ * @author mranga
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testSmallValuesAreExact() {
+		for (long value = 0; value < 32; value++) {
+			assertEquals(value, LatencyHistogram.indexOf(value));
+			assertEquals(value, LatencyHistogram.highestValueOf((int) value));
+		}
+		assertEquals(0, LatencyHistogram.indexOf(-5));
+	}
+
+	@Test
+	public void testBucketBoundaries() {
+		int lastIndex = LatencyHistogram.indexOf(Long.MAX_VALUE);
+		for (int index = 0; index < lastIndex; index++) {
+			long highest = LatencyHistogram.highestValueOf(index);
+			// The buckets are contiguous: each ends right before the next one starts.
+			assertEquals(index, LatencyHistogram.indexOf(highest));
+			assertEquals(index + 1, LatencyHistogram.indexOf(highest + 1));
+			if (index >= 32) {
+				long lowest = LatencyHistogram.highestValueOf(index - 1) + 1;
+				// A bucket is at most 1/32 of its lowest value wide.
+				assertTrue(highest - lowest + 1 <= Math.max(1, lowest / 32));
+			}
+		}
+		// Powers of two start a bucket.
+		for (int magnitude = 5; magnitude < 47; magnitude++) {
+			long power = 1L << magnitude;
+			assertEquals(power - 1, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(power) - 1));
+		}
+		// Huge values are clamped into the last bucket.
+		assertEquals(lastIndex, LatencyHistogram.indexOf((1L << 47) - 1));
+		assertEquals(lastIndex, LatencyHistogram.indexOf(1L << 50));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+		assertEquals(1000, histogram.getTotalCount());
+		assertEquals(1000, histogram.getMaxValue());
+		assertEquals(1, histogram.getValueAtPercentile(0));
+		// The 10th value is below 32 and exact.
+		assertEquals(10, histogram.getValueAtPercentile(1));
+		assertWithinBucket(500, histogram.getValueAtPercentile(50));
+		assertWithinBucket(990, histogram.getValueAtPercentile(99));
+		// The top is capped by the largest value seen, not the bucket end.
+		assertEquals(1000, histogram.getValueAtPercentile(100));
+		assertEquals(1000, histogram.getValueAtPercentile(150));
+	}
+
+	@Test
+	public void testPercentileRoundsUp() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1);
+		histogram.record(2);
+		histogram.record(3);
+		// 50% of 3 values is 1.5, so the second value.
+		assertEquals(2, histogram.getValueAtPercentile(50));
+		assertEquals(1, histogram.getValueAtPercentile(33.3));
+		assertEquals(2, histogram.getValueAtPercentile(33.4));
+	}
+
+	@Test
+	public void testSkewedDistribution() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 990; i++) {
+			histogram.record(100);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(50000);
+		}
+		assertWithinBucket(100, histogram.getValueAtPercentile(99));
+		assertWithinBucket(50000, histogram.getValueAtPercentile(99.9));
+		assertEquals(50000, histogram.getMaxValue());
+	}
+
+	@Test
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(12345);
+		histogram.reset();
+		assertEquals(0, histogram.getTotalCount());
+		assertEquals(0, histogram.getMaxValue());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+		histogram.record(7);
+		assertEquals(7, histogram.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						histogram.record(offset * 10000 + i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, histogram.getTotalCount());
+		assertEquals(39999, histogram.getMaxValue());
+	}
+
+	private static void assertWithinBucket(long expected, long actual) {
+		assertTrue("expected about " + expected + " got " + actual,
+				actual >= expected && actual <= expected + expected / 32);
+	}
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests for the MAC table: put and replace, conditional removal, removal from
+ * the middle of probe runs, growth and reads that race a writer.
+ *
+ * @author mranga
+ *
+ */
+public class MacTableTest {
+
+	private static final long MISSING = -1L;
+
+	@Test
+	public void testPutGetReplace() {
+		MacTable macTable = new MacTable();
+		long mac = 0x001122334455L;
+		assertEquals(MISSING, macTable.get(mac, MISSING));
+		assertFalse(macTable.containsKey(mac));
+
+		macTable.put(mac, 7);
+		assertEquals(7, macTable.get(mac, MISSING));
+		macTable.put(mac, 8);
+		assertEquals(8, macTable.get(mac, MISSING));
+		assertEquals(1, macTable.size());
+
+		assertFalse(macTable.replace(mac, 7, 9));
+		assertEquals(8, macTable.get(mac, MISSING));
+		assertTrue(macTable.replace(mac, 8, 9));
+		assertEquals(9, macTable.get(mac, MISSING));
+		assertFalse(macTable.replace(0x1L, MISSING, 1));
+		assertFalse(macTable.containsKey(0x1L));
+
+		assertEquals(MISSING, macTable.putIfAbsent(0x2L, 3, MISSING));
+		assertEquals(3, macTable.putIfAbsent(0x2L, 4, MISSING));
+		assertEquals(3, macTable.get(0x2L, MISSING));
+		assertEquals(2, macTable.size());
+	}
+
+	@Test
+	public void testRemoveIfEqual() {
+		MacTable macTable = new MacTable();
+		long mac = 0xa0b0c0d0e0f0L;
+		macTable.put(mac, 1);
+		// A timer started for value 1 fires after the MAC was stamped again with 2.
+		macTable.put(mac, 2);
+		assertFalse(macTable.remove(mac, 1));
+		assertEquals(2, macTable.get(mac, MISSING));
+		assertTrue(macTable.remove(mac, 2));
+		assertFalse(macTable.containsKey(mac));
+		assertFalse(macTable.remove(mac, 2));
+		assertEquals(0, macTable.size());
+		assertTrue(macTable.isEmpty());
+	}
+
+	@Test
+	public void testEvictionKeepsProbeRunsIntact() {
+		// Enough keys to collide and to grow the table a few times.
+		MacTable macTable = new MacTable();
+		HashMap<Long, Long> expected = new HashMap<Long, Long>();
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			long mac = random.nextLong() & 0xffffffffffffL;
+			macTable.put(mac, i);
+			expected.put(mac, (long) i);
+		}
+		assertEquals(expected.size(), macTable.size());
+
+		// Remove every other key, half of them through the conditional remove.
+		int i = 0;
+		for (Long mac : expected.keySet().toArray(new Long[0])) {
+			if (i % 2 == 0) {
+				assertTrue(i % 4 == 0 ? macTable.remove(mac) : macTable.remove(mac, expected.get(mac)));
+				expected.remove(mac);
+			}
+			i++;
+		}
+		assertEquals(expected.size(), macTable.size());
+		for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+			assertEquals(entry.getValue().longValue(), macTable.get(entry.getKey(), MISSING));
+		}
+
+		long[] keys = macTable.keys();
+		Arrays.sort(keys);
+		Long[] expectedKeys = expected.keySet().toArray(new Long[0]);
+		Arrays.sort(expectedKeys);
+		assertEquals(expectedKeys.length, keys.length);
+		for (int k = 0; k < keys.length; k++) {
+			assertEquals(expectedKeys[k].longValue(), keys[k]);
+		}
+
+		macTable.clear();
+		assertTrue(macTable.isEmpty());
+		assertEquals(0, macTable.keys().length);
+	}
+
+	@Test
+	public void testSequentialMacs() {
+		// MACs of one vendor differ only in the low bits.
+		MacTable macTable = new MacTable(4);
+		long base = 0x3c5ab4000000L;
+		for (long mac = base; mac < base + 1000; mac++) {
+			macTable.put(mac, mac - base);
+		}
+		for (long mac = base; mac < base + 1000; mac += 3) {
+			assertTrue(macTable.remove(mac));
+		}
+		for (long mac = base; mac < base + 1000; mac++) {
+			long expected = (mac - base) % 3 == 0 ? MISSING : mac - base;
+			assertEquals(expected, macTable.get(mac, MISSING));
+		}
+	}
+
+	@Test
+	public void testReadsWhileWriting() throws InterruptedException {
+		final MacTable macTable = new MacTable();
+		final long stable = 0x0000000000ffL;
+		macTable.put(stable, 99);
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!done.get()) {
+					if (macTable.get(stable, MISSING) != 99) {
+						failure.set("lost the stable key");
+					}
+				}
+			}
+		});
+		reader.start();
+		// Growth and backward shifts under the reader.
+		for (int round = 0; round < 20; round++) {
+			for (long mac = 0x100; mac < 0x1100; mac++) {
+				macTable.put(mac, mac);
+			}
+			for (long mac = 0x100; mac < 0x1100; mac++) {
+				macTable.remove(mac);
+			}
+		}
+		done.set(true);
+		reader.join();
+		assertNull(failure.get());
+		assertEquals(1, macTable.size());
+	}
+
+}
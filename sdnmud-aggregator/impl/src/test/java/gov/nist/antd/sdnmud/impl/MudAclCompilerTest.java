@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.opendaylight.yang.gen.v1.urn.ietf.params.xml.ns.yang.ietf.inet.types.rev130715.Ipv4Prefix;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.FlowId;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.Flow;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.inventory.rev130819.tables.table.FlowKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.FlowCookie;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.InstructionsBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.flow.MatchBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.instruction.GoToTableCaseBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.instruction.go.to.table._case.GoToTableBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.Instruction;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.InstructionBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.flow.types.rev131026.instruction.list.InstructionKey;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.MetadataBuilder;
+import org.opendaylight.yang.gen.v1.urn.opendaylight.model.match.types.rev131026.match.layer._3.match.Ipv4MatchBuilder;
+
+import gov.nist.antd.sdnmud.impl.MudAclCompiler.Rule;
+
+/**
+ * Tests for the MUD ACL compiler: cover checks, removal of redundant rules,
+ * address merging and the handling of flows written twice under one id.
+ *
+ * @author mranga
+ *
+ */
+public class MudAclCompilerTest {
+
+	private static final short TABLE = 2;
+
+	private static final short NEXT_TABLE = 3;
+
+	private static final BigInteger PERMIT_COOKIE = BigInteger.valueOf(0x10);
+
+	private static final BigInteger DROP_COOKIE = BigInteger.valueOf(0x20);
+
+	private static List<Instruction> goToTable(short tableId) {
+		Instruction instruction = new InstructionBuilder().setOrder(0).setKey(new InstructionKey(0))
+				.setInstruction(new GoToTableCaseBuilder()
+						.setGoToTable(new GoToTableBuilder().setTableId(tableId).build()).build())
+				.build();
+		return Collections.singletonList(instruction);
+	}
+
+	private static FlowBuilder flowBuilder(short tableId, String id, int priority, BigInteger cookie) {
+		FlowId flowId = new FlowId(id);
+		return new FlowBuilder().setTableId(tableId).setId(flowId).setKey(new FlowKey(flowId)).setPriority(priority)
+				.setCookie(new FlowCookie(cookie)).setMatch(new MatchBuilder().build())
+				.setInstructions(new InstructionsBuilder().setInstruction(goToTable(NEXT_TABLE)).build());
+	}
+
+	private static Flow flow(short tableId, String id, int priority, BigInteger cookie, String src, String dst) {
+		FlowBuilder flowBuilder = flowBuilder(tableId, id, priority, cookie);
+		if (src != null || dst != null) {
+			Ipv4MatchBuilder ipv4MatchBuilder = new Ipv4MatchBuilder();
+			if (src != null) {
+				ipv4MatchBuilder.setIpv4Source(new Ipv4Prefix(src));
+			}
+			if (dst != null) {
+				ipv4MatchBuilder.setIpv4Destination(new Ipv4Prefix(dst));
+			}
+			flowBuilder.setMatch(new MatchBuilder().setLayer3Match(ipv4MatchBuilder.build()).build());
+		}
+		return flowBuilder.build();
+	}
+
+	private static Flow metadataFlow(String id, int priority, long metadata, long metadataMask) {
+		return flowBuilder(TABLE, id, priority, DROP_COOKIE).setMatch(new MatchBuilder()
+				.setMetadata(new MetadataBuilder().setMetadata(BigInteger.valueOf(metadata))
+						.setMetadataMask(BigInteger.valueOf(metadataMask)).build())
+				.build()).build();
+	}
+
+	private static List<Rule> lower(Flow... flows) {
+		ArrayList<Rule> rules = new ArrayList<Rule>();
+		for (Flow flow : flows) {
+			rules.add(MudAclCompiler.lower(flow, rules.size()));
+		}
+		return rules;
+	}
+
+	@Test
+	public void testCoversPrefix() {
+		List<Rule> rules = lower(flow(TABLE, "wide", 10, DROP_COOKIE, null, "10.0.0.0/24"),
+				flow(TABLE, "narrow", 10, DROP_COOKIE, null, "10.0.0.128/25"),
+				flow(TABLE, "any", 10, DROP_COOKIE, null, null),
+				flow(NEXT_TABLE, "other-table", 10, DROP_COOKIE, null, "10.0.0.0/24"),
+				flow(TABLE, "outside", 10, DROP_COOKIE, null, "10.0.1.0/25"));
+		Rule wide = rules.get(0);
+		Rule narrow = rules.get(1);
+		Rule any = rules.get(2);
+		assertTrue(MudAclCompiler.covers(wide, narrow));
+		assertFalse(MudAclCompiler.covers(narrow, wide));
+		assertTrue(MudAclCompiler.covers(any, wide));
+		assertFalse(MudAclCompiler.covers(wide, any));
+		assertFalse(MudAclCompiler.covers(rules.get(3), narrow));
+		assertFalse(MudAclCompiler.covers(wide, rules.get(4)));
+	}
+
+	@Test
+	public void testCoversMetadataMask() {
+		List<Rule> rules = lower(metadataFlow("model", 10, 0x1200, 0xff00), metadataFlow("device", 10, 0x1234, 0xffff),
+				metadataFlow("other-model", 10, 0x1334, 0xffff));
+		assertTrue(MudAclCompiler.covers(rules.get(0), rules.get(1)));
+		assertFalse(MudAclCompiler.covers(rules.get(1), rules.get(0)));
+		assertFalse(MudAclCompiler.covers(rules.get(0), rules.get(2)));
+	}
+
+	@Test
+	public void testRemoveCoveredShadowed() {
+		// The higher priority drop matches everything the permit matches.
+		List<Rule> rules = lower(flow(TABLE, "permit", 10, PERMIT_COOKIE, null, "10.0.0.1/32"),
+				flow(TABLE, "drop", 20, DROP_COOKIE, null, "10.0.0.0/24"));
+		assertEquals(1, MudAclCompiler.removeCovered(rules));
+		assertTrue(rules.get(0).dead);
+		assertFalse(rules.get(1).dead);
+	}
+
+	@Test
+	public void testRemoveCoveredEqualPriority() {
+		List<Rule> same = lower(flow(TABLE, "wide", 10, DROP_COOKIE, null, "10.0.0.0/24"),
+				flow(TABLE, "narrow", 10, DROP_COOKIE, null, "10.0.0.1/32"));
+		assertEquals(1, MudAclCompiler.removeCovered(same));
+		assertTrue(same.get(1).dead);
+
+		// Same priority, other cookie: which flow wins is up to the switch.
+		List<Rule> different = lower(flow(TABLE, "wide", 10, DROP_COOKIE, null, "10.0.0.0/24"),
+				flow(TABLE, "narrow", 10, PERMIT_COOKIE, null, "10.0.0.1/32"));
+		assertEquals(0, MudAclCompiler.removeCovered(different));
+	}
+
+	@Test
+	public void testRemoveCoveredKeepsRulesUnderTimedOutFlows() {
+		Flow timed = new FlowBuilder(flow(TABLE, "drop", 20, DROP_COOKIE, null, "10.0.0.0/24")).setIdleTimeout(30)
+				.build();
+		List<Rule> rules = lower(flow(TABLE, "permit", 10, PERMIT_COOKIE, null, "10.0.0.1/32"), timed);
+		assertEquals(0, MudAclCompiler.removeCovered(rules));
+
+		List<Rule> otherTable = lower(flow(NEXT_TABLE, "permit", 10, PERMIT_COOKIE, null, "10.0.0.1/32"),
+				flow(TABLE, "drop", 20, DROP_COOKIE, null, "10.0.0.0/24"));
+		assertEquals(0, MudAclCompiler.removeCovered(otherTable));
+	}
+
+	@Test
+	public void testMergeAddressesSiblings() {
+		List<Rule> rules = lower(flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.0/32"),
+				flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.1/32"),
+				flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.2/32"),
+				flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.3/32"));
+		List<Rule> merged = MudAclCompiler.mergeAddresses(rules, false);
+		assertEquals(1, merged.size());
+		assertEquals("10.0.0.0/30", MudAclCompiler.toPrefixString(merged.get(0).dstAddress, merged.get(0).dstLength));
+		// The merged rule stands in the place of the first one.
+		assertEquals(0, merged.get(0).position);
+	}
+
+	@Test
+	public void testMergeAddressesNotSiblings() {
+		// 10.0.0.1 and 10.0.0.2 are not in one /31.
+		List<Rule> rules = lower(flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.1/32"),
+				flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.2/32"));
+		assertEquals(2, MudAclCompiler.mergeAddresses(rules, false).size());
+
+		// Siblings that are treated differently stay apart.
+		List<Rule> different = lower(flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.0/32"),
+				flow(TABLE, "ace", 10, DROP_COOKIE, null, "10.0.0.1/32"));
+		assertEquals(2, MudAclCompiler.mergeAddresses(different, false).size());
+
+		// Merging on the source leaves destination only rules alone.
+		assertEquals(2, MudAclCompiler.mergeAddresses(lower(flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.0/32"),
+				flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.1/32")), true).size());
+	}
+
+	@Test
+	public void testCompileLastWriteWins() {
+		MudAclCompiler mudAclCompiler = new MudAclCompiler();
+		List<Flow> compiled = mudAclCompiler.compile(Arrays.asList(flow(TABLE, "x", 10, PERMIT_COOKIE, null, null),
+				flow(NEXT_TABLE, "y", 10, PERMIT_COOKIE, null, null), flow(TABLE, "x", 20, PERMIT_COOKIE, null, null)));
+		assertEquals(2, compiled.size());
+		// The rewrite of x takes the place of its last write.
+		assertEquals("y", compiled.get(0).getId().getValue());
+		assertEquals("x", compiled.get(1).getId().getValue());
+		assertEquals(Integer.valueOf(20), compiled.get(1).getPriority());
+		assertEquals(3, mudAclCompiler.getRuleCount());
+		assertEquals(1, mudAclCompiler.getDroppedCount());
+	}
+
+	@Test
+	public void testCompileQuarantineSrcDrop() {
+		/*
+		 * The quarantine drop of a profile is written at the quarantine priority
+		 * and then again under the same id at the drop priority. The second write
+		 * is the one the datastore keeps.
+		 */
+		String id = "12345/QUARANTINE_SRC_DROP";
+		List<Flow> compiled = new MudAclCompiler().compile(Arrays.asList(metadataFlow(id, 45, 0x1200, 0xff00),
+				metadataFlow(id, 36, 0x1200, 0xff00)));
+		assertEquals(1, compiled.size());
+		assertEquals(id, compiled.get(0).getId().getValue());
+		assertEquals(Integer.valueOf(36), compiled.get(0).getPriority());
+	}
+
+	@Test
+	public void testCompileSharedIdAddresses() {
+		Flow first = flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.1/32");
+		Flow second = flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.5/32");
+		List<Flow> compiled = new MudAclCompiler().compile(Arrays.asList(first, second));
+		assertEquals(2, compiled.size());
+		assertEquals("ace/dst=10.0.0.1/32", compiled.get(0).getId().getValue());
+		assertEquals("ace/dst=10.0.0.5/32", compiled.get(1).getId().getValue());
+		// A flow added for one more address later gets an id of the same form.
+		assertEquals("ace/dst=10.0.0.9/32", MudAclCompiler
+				.withAddressId(flow(TABLE, "ace", 10, PERMIT_COOKIE, null, "10.0.0.9/32")).getId().getValue());
+	}
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for the packet header view: tagged and untagged frames, truncated
+ * frames and frames that are not IPv4.
+ *
+ * @author mranga
+ *
+ */
+public class PacketHeaderTest {
+
+	private static final long DST_MAC = 0x0a0b0c0d0e0fL;
+
+	private static final long SRC_MAC = 0xf0e1d2c3b4a5L;
+
+	// 10.0.0.1 and 192.168.1.200
+	private static final int SRC_IP = 0x0a000001;
+
+	private static final int DST_IP = 0xc0a801c8;
+
+	private static ByteBuffer ethernet(ByteBuffer buffer, int vlanId, int etherType) {
+		buffer.putShort((short) (DST_MAC >>> 32)).putInt((int) DST_MAC);
+		buffer.putShort((short) (SRC_MAC >>> 32)).putInt((int) SRC_MAC);
+		if (vlanId >= 0) {
+			buffer.putShort((short) SdnMudConstants.ETHERTYPE_CUSTOMER_VLAN).putShort((short) vlanId);
+		}
+		return buffer.putShort((short) etherType);
+	}
+
+	private static ByteBuffer ipv4(ByteBuffer buffer, int protocol, int optionWords) {
+		buffer.put((byte) (0x40 | (5 + optionWords))).put((byte) 0).putShort((short) 0).putInt(0);
+		buffer.put((byte) 64).put((byte) protocol).putShort((short) 0).putInt(SRC_IP).putInt(DST_IP);
+		for (int i = 0; i < optionWords; i++) {
+			buffer.putInt(0x01010101);
+		}
+		return buffer;
+	}
+
+	private static ByteBuffer tcp(ByteBuffer buffer, int srcPort, int dstPort, int flags) {
+		buffer.putShort((short) srcPort).putShort((short) dstPort).putInt(0).putInt(0);
+		return buffer.put((byte) (5 << 4)).put((byte) flags).putShort((short) 0).putInt(0);
+	}
+
+	private static byte[] toBytes(ByteBuffer buffer) {
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	private static byte[] udpFrame(int vlanId) {
+		ByteBuffer buffer = ethernet(ByteBuffer.allocate(128), vlanId, SdnMudConstants.ETHERTYPE_IPV4);
+		ipv4(buffer, SdnMudConstants.UDP_PROTOCOL, 0);
+		buffer.putShort((short) 5353).putShort((short) 53).putShort((short) 12).putShort((short) 0);
+		return toBytes(buffer.putInt(0xdeadbeef));
+	}
+
+	@Test
+	public void testUntaggedUdp() {
+		PacketHeader header = new PacketHeader().wrap(udpFrame(-1));
+		assertEquals(SdnMudConstants.ETHERTYPE_IPV4, header.getEtherType());
+		assertEquals(SdnMudConstants.ETHERTYPE_IPV4, header.getInnerEtherType());
+		assertFalse(header.hasVlan());
+		assertEquals(DST_MAC, header.getDstMac());
+		assertEquals(SRC_MAC, header.getSrcMac());
+		assertTrue(header.isIpv4());
+		assertEquals(SRC_IP, header.getSrcIp());
+		assertEquals(DST_IP, header.getDstIp());
+		assertEquals(SdnMudConstants.UDP_PROTOCOL, header.getProtocol());
+		assertEquals(5353, header.getSrcPort());
+		assertEquals(53, header.getDstPort());
+		assertEquals(14 + 20 + 8, header.getL4PayloadOffset());
+		assertFalse(header.isTcpSynFlagOnAndAckFlagOff());
+	}
+
+	@Test
+	public void testVlanTaggedTcp() {
+		ByteBuffer buffer = ethernet(ByteBuffer.allocate(128), 0x2064, SdnMudConstants.ETHERTYPE_IPV4);
+		byte[] packet = toBytes(tcp(ipv4(buffer, SdnMudConstants.TCP_PROTOCOL, 0), 40000, 443, 0x02));
+		PacketHeader header = new PacketHeader().wrap(packet);
+		assertEquals(SdnMudConstants.ETHERTYPE_CUSTOMER_VLAN, header.getEtherType());
+		assertEquals(SdnMudConstants.ETHERTYPE_IPV4, header.getInnerEtherType());
+		assertTrue(header.hasVlan());
+		// The priority bits are not part of the VLAN id.
+		assertEquals(0x064, header.getVlanId());
+		assertEquals(SRC_MAC, header.getSrcMac());
+		assertEquals(SRC_IP, header.getSrcIp());
+		assertEquals(DST_IP, header.getDstIp());
+		assertEquals(40000, header.getSrcPort());
+		assertEquals(443, header.getDstPort());
+		assertTrue(header.isTcpSynFlagOnAndAckFlagOff());
+		assertEquals(packet.length, header.getL4PayloadOffset());
+
+		// SYN + ACK is not the start of a connection.
+		packet[14 + 4 + 20 + 13] = 0x12;
+		assertFalse(header.wrap(packet).isTcpSynFlagOnAndAckFlagOff());
+	}
+
+	@Test
+	public void testIpOptions() {
+		ByteBuffer buffer = ethernet(ByteBuffer.allocate(128), -1, SdnMudConstants.ETHERTYPE_IPV4);
+		byte[] packet = toBytes(tcp(ipv4(buffer, SdnMudConstants.TCP_PROTOCOL, 2), 1234, 80, 0x10));
+		PacketHeader header = new PacketHeader().wrap(packet);
+		assertEquals(1234, header.getSrcPort());
+		assertEquals(80, header.getDstPort());
+		assertEquals(14 + 28 + 20, header.getL4PayloadOffset());
+	}
+
+	@Test
+	public void testTruncatedFrames() {
+		PacketHeader header = new PacketHeader();
+
+		// Runt frame and no frame at all.
+		for (byte[] packet : new byte[][] { new byte[10], null }) {
+			header.wrap(packet);
+			assertEquals(-1, header.getEtherType());
+			assertEquals(0, header.getSrcMac());
+			assertEquals(0, header.getDstMac());
+			assertFalse(header.isIpv4());
+			assertEquals(-1, header.getProtocol());
+		}
+
+		// VLAN ethertype without room for the tag.
+		byte[] packet = toBytes(ethernet(ByteBuffer.allocate(16), -1, SdnMudConstants.ETHERTYPE_CUSTOMER_VLAN));
+		header.wrap(packet);
+		assertFalse(header.hasVlan());
+		assertEquals(SdnMudConstants.ETHERTYPE_CUSTOMER_VLAN, header.getInnerEtherType());
+		assertFalse(header.isIpv4());
+
+		// Cut in the IP header.
+		byte[] udp = udpFrame(-1);
+		header.wrap(Arrays.copyOf(udp, 14 + 19));
+		assertFalse(header.isIpv4());
+		assertEquals(0, header.getSrcIp());
+		assertEquals(-1, header.getSrcPort());
+
+		// Cut in the ports.
+		header.wrap(Arrays.copyOf(udp, 14 + 20 + 3));
+		assertTrue(header.isIpv4());
+		assertEquals(SRC_IP, header.getSrcIp());
+		assertEquals(-1, header.getSrcPort());
+		assertEquals(-1, header.getDstPort());
+		assertEquals(-1, header.getL4PayloadOffset());
+
+		// Ports present but the TCP flags and data offset are cut off.
+		ByteBuffer buffer = ethernet(ByteBuffer.allocate(128), -1, SdnMudConstants.ETHERTYPE_IPV4);
+		byte[] tcp = toBytes(tcp(ipv4(buffer, SdnMudConstants.TCP_PROTOCOL, 0), 40000, 443, 0x02));
+		header.wrap(Arrays.copyOf(tcp, 14 + 20 + 12));
+		assertEquals(443, header.getDstPort());
+		assertFalse(header.isTcpSynFlagOnAndAckFlagOff());
+		assertEquals(-1, header.getL4PayloadOffset());
+	}
+
+	@Test
+	public void testNonIpv4() {
+		PacketHeader header = new PacketHeader();
+		byte[] arp = toBytes(ethernet(ByteBuffer.allocate(64), -1, 0x0806).put(new byte[28]));
+		header.wrap(arp);
+		assertEquals(0x0806, header.getEtherType());
+		assertEquals(SRC_MAC, header.getSrcMac());
+		assertFalse(header.isIpv4());
+		assertEquals(-1, header.getProtocol());
+		assertEquals(0, header.getSrcIp());
+		assertEquals(-1, header.getSrcPort());
+		assertEquals(-1, header.getL4PayloadOffset());
+
+		byte[] lldp = toBytes(ethernet(ByteBuffer.allocate(64), -1, SdnMudConstants.ETHERTYPE_LLDP).put(new byte[32]));
+		assertEquals(SdnMudConstants.ETHERTYPE_LLDP, header.wrap(lldp).getEtherType());
+		assertFalse(header.isIpv4());
+	}
+
+	@Test
+	public void testRewrapClearsState() {
+		PacketHeader header = new PacketHeader();
+		header.wrap(udpFrame(7));
+		assertTrue(header.hasVlan());
+		assertEquals(7, header.getVlanId());
+		header.wrap(udpFrame(-1));
+		assertFalse(header.hasVlan());
+		assertEquals(-1, header.getVlanId());
+		assertEquals(53, header.getDstPort());
+	}
+
+	@Test
+	public void testAddressStrings() {
+		assertEquals("F0:E1:D2:C3:B4:A5", PacketHeader.toMacString(SRC_MAC));
+		assertEquals(SRC_MAC, PacketHeader.toMacLong("f0:e1:d2:c3:b4:a5"));
+		assertEquals(DST_MAC, PacketHeader.toMacLong(PacketHeader.toMacString(DST_MAC)));
+		assertEquals("10.0.0.1", PacketHeader.toIpString(SRC_IP));
+		assertEquals("192.168.1.200", PacketHeader.toIpString(DST_IP));
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Public Domain Oct 17, 2026.
+ *
+ * This code is released to the public domain in accordance with the following disclaimer:
+ *
+ * "This software was developed at the National Institute of Standards
+ * and Technology by employees of the Federal Government in the course of
+ * their official duties. Pursuant to title 17 Section 105 of the United
+ * States Code this software is not subject to copyright protection and is
+ * in the public domain. It is an experimental system. NIST assumes no responsibility
+ * whatsoever for its use by other parties, and makes no guarantees, expressed or
+ * implied, about its quality, reliability, or any other characteristic. We would
+ * appreciate acknowledgement if the software is used. This software can be redistributed
+ * and/or modified freely provided that any derivative works bear
+ * some notice that they are derived from it, and any modified versions bear some
+ * notice that they have been modified."
+ */
+
+
+package gov.nist.antd.sdnmud.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the timing wheel: cancelling, the pending timer cap and periodic
+ * runs that overlap.
+ *
+ * @author mranga
+ *
+ */
+public class TimingWheelTest {
+
+	private static final long TICK_MILLIS = 10;
+
+	private TimingWheel timingWheel;
+
+	@Before
+	public void setUp() {
+		timingWheel = new TimingWheel(TICK_MILLIS, 8, 2);
+	}
+
+	@After
+	public void tearDown() {
+		timingWheel.close();
+	}
+
+	private static Runnable countDown(final CountDownLatch latch) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+	}
+
+	private void awaitNoPendingTimers() throws InterruptedException {
+		for (int i = 0; i < 100 && timingWheel.getPendingTimerCount() > 0; i++) {
+			Thread.sleep(TICK_MILLIS);
+		}
+		assertEquals(0, timingWheel.getPendingTimerCount());
+	}
+
+	@Test
+	public void testRunsAfterDelayBeyondOneRevolution() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		// 8 slots of 10 ms: 250 ms is three revolutions out.
+		timingWheel.schedule(countDown(latch), 250);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250 - TICK_MILLIS);
+		awaitNoPendingTimers();
+	}
+
+	@Test
+	public void testCancelBeforeExpire() throws InterruptedException {
+		final AtomicInteger runs = new AtomicInteger();
+		TimingWheel.Timeout timeout = timingWheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, 50);
+		timeout.cancel();
+		assertTrue(timeout.isCancelled());
+		Thread.sleep(200);
+		assertEquals(0, runs.get());
+		awaitNoPendingTimers();
+	}
+
+	@Test
+	public void testCancelAfterExpire() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		TimingWheel.Timeout timeout = timingWheel.schedule(countDown(latch), 20);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		// Too late to cancel: the timer is not marked and not counted out twice.
+		timeout.cancel();
+		assertFalse(timeout.isCancelled());
+		awaitNoPendingTimers();
+	}
+
+	@Test
+	public void testOverflowIsCoalescedNotRunInline() throws InterruptedException {
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(4);
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+				latch.countDown();
+			}
+		};
+		TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[5];
+		for (int i = 0; i < timeouts.length; i++) {
+			timeouts[i] = timingWheel.schedule(task, 200);
+			assertNotNull(timeouts[i]);
+		}
+		// Past the cap of 2 the tasks wait for their deadline like the others.
+		assertEquals(0, runs.get());
+		assertEquals(3, timingWheel.getOverflowCount());
+		// A timer on a shared entry can be cancelled on its own.
+		timeouts[3].cancel();
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		assertEquals(4, runs.get());
+		awaitNoPendingTimers();
+	}
+
+	@Test
+	public void testPeriodicRunIsSkippedWhileRunning() throws InterruptedException {
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch rerun = new CountDownLatch(3);
+		TimingWheel.Timeout timeout = timingWheel.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				if (runs.incrementAndGet() == 1) {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				rerun.countDown();
+			}
+		}, 0, 20);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// Ten periods go by while the first run is blocked.
+		Thread.sleep(200);
+		assertEquals(1, runs.get());
+		release.countDown();
+		assertTrue(rerun.await(5, TimeUnit.SECONDS));
+		timeout.cancel();
+		assertTrue(timeout.isCancelled());
+		int runsAtCancel = runs.get();
+		Thread.sleep(100);
+		// At most the run that was already handed off.
+		assertTrue(runs.get() <= runsAtCancel + 1);
+	}
+
+}